@@ -0,0 +1,167 @@
+package org.boncey.jsphinx;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Attribute values for a set of documents, held a column per attribute in primitive arrays.
+ *
+ * Row i of every column belongs to {@link #getDocIds()}[i]. Integer, timestamp, boolean and bigint attributes are
+ * held as <code>long[]</code>, floats as <code>float[]</code>, strings as <code>String[]</code> and MVAs as
+ * <code>long[][]</code>.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class AttributeColumns
+{
+
+    /**
+     * The documents found, in the order requested.
+     */
+    private final long[] _docIds;
+
+    /**
+     * The row for each docId.
+     */
+    private final LongLongHashMap _rows;
+
+    /**
+     * The columns by attribute name.
+     */
+    private final Map<String, Object> _columns;
+
+    /**
+     * Default constructor.
+     *
+     * @param docIds the documents found, in the order requested.
+     * @param columns the columns by attribute name.
+     */
+    AttributeColumns(long[] docIds, Map<String, Object> columns)
+    {
+
+        _docIds = docIds;
+        _columns = new LinkedHashMap<>(columns);
+        _rows = new LongLongHashMap(docIds.length);
+        for (int i = 0; i < docIds.length; i++)
+        {
+            _rows.put(docIds[i], i);
+        }
+    }
+
+    /**
+     * Get the documents found; requested documents not in the index are left out.
+     *
+     * @return the docIds, one per row.
+     */
+    public long[] getDocIds()
+    {
+
+        return _docIds;
+    }
+
+    /**
+     * Get the number of documents found.
+     *
+     * @return the number of rows.
+     */
+    public int size()
+    {
+
+        return _docIds.length;
+    }
+
+    /**
+     * Get the row holding a document.
+     *
+     * @param docId
+     * @return the row, or -1 if the document wasn't found.
+     */
+    public int getRow(long docId)
+    {
+
+        return (int)_rows.get(docId, -1);
+    }
+
+    /**
+     * Get an integer, timestamp, boolean or bigint column.
+     *
+     * @param attribute
+     * @return the values, one per row.
+     */
+    public long[] getLongs(String attribute)
+    {
+
+        return column(attribute, long[].class);
+    }
+
+    /**
+     * Get a float column.
+     *
+     * @param attribute
+     * @return the values, one per row.
+     */
+    public float[] getFloats(String attribute)
+    {
+
+        return column(attribute, float[].class);
+    }
+
+    /**
+     * Get a string column.
+     *
+     * @param attribute
+     * @return the values, one per row.
+     */
+    public String[] getStrings(String attribute)
+    {
+
+        return column(attribute, String[].class);
+    }
+
+    /**
+     * Get an MVA column.
+     *
+     * @param attribute
+     * @return the values of each row.
+     */
+    public long[][] getMulti(String attribute)
+    {
+
+        return column(attribute, long[][].class);
+    }
+
+    /**
+     * Get a column as the expected type.
+     *
+     * @param attribute
+     * @param type
+     * @return the column.
+     */
+    private <T> T column(String attribute, Class<T> type)
+    {
+
+        Object column = _columns.get(attribute);
+        if (column == null)
+        {
+            throw new IllegalArgumentException("No attribute " + attribute + " in " + _columns.keySet());
+        }
+        if (!type.isInstance(column))
+        {
+            throw new IllegalArgumentException("Attribute " + attribute + " is a " + column.getClass().getSimpleName()
+                    + ", not a " + type.getSimpleName());
+        }
+
+        return type.cast(column);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+
+        return String.format("AttributeColumns [%d rows, attributes %s]", _docIds.length, _columns.keySet());
+    }
+}
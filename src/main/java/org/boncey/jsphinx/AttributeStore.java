@@ -0,0 +1,736 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sphx.api.SphinxException;
+import org.sphx.api.SphinxMatch;
+import org.sphx.api.SphinxResult;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An off-heap copy of a few numeric attributes for every document, so hot attributes are read from memory rather
+ * than searchd.
+ *
+ * Each document has a fixed-width record in a direct buffer hash table keyed by docId, one 8 byte slot per attribute
+ * (floats are held as their IEEE-754 bits). The store is loaded by full scans of the indexes, the delta's documents
+ * are reloaded after each delta re-index and everything after the main index is rebuilt or merged. Updates sent
+ * through the {@link AttributeUpdater} are written through to the store as they are made, including any made while a
+ * scan is running. MVA and string attributes aren't fixed width so can't be stored.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class AttributeStore implements ReindexListener
+{
+
+    /**
+     * The largest table a single direct buffer can hold.
+     */
+    private static final long MAX_TABLE_BYTES = Integer.MAX_VALUE;
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(AttributeStore.class);
+
+    /**
+     * The service whose indexes are loaded.
+     */
+    private final SearchService<?> _searchService;
+
+    /**
+     * The connections to scan over.
+     */
+    private final SphinxClientPool _pool;
+
+    /**
+     * The index names to load, space separated, or null for the main and delta indexes.
+     */
+    private final String _indexNames;
+
+    /**
+     * The attributes held.
+     */
+    private final String[] _attributes;
+
+    /**
+     * The slot of each attribute, by lower-cased name.
+     */
+    private final Map<String, Integer> _slots = new HashMap<>();
+
+    /**
+     * The size of a record: the docId then a slot per attribute.
+     */
+    private final int _recordSize;
+
+    /**
+     * Guards the table.
+     */
+    private final ReadWriteLock _lock = new ReentrantReadWriteLock();
+
+    /**
+     * Held while loading, so only one scan runs at once.
+     */
+    private final Object _loadLock = new Object();
+
+    /**
+     * Runs the loads.
+     */
+    private final ExecutorService _executor;
+
+    /**
+     * The hash table; a docId of 0 marks an empty record.
+     */
+    private Table _table;
+
+    /**
+     * Updates made while a scan is running, replayed over the scanned values; null when not scanning.
+     */
+    private List<long[]> _replay;
+
+    /**
+     * Has the first load been started?
+     */
+    private boolean _started;
+
+    /**
+     * Default constructor.
+     *
+     * @param searchService the service whose indexes are loaded.
+     * @param pool the connections to scan over.
+     * @param indexNames the index names to load, space separated, or null for the main and delta indexes.
+     * @param attributes the integer, timestamp, boolean, bigint or float attributes to hold.
+     * @param expectedDocs the expected number of documents, to size the table.
+     */
+    public AttributeStore(SearchService<?> searchService, SphinxClientPool pool, String indexNames, String[] attributes,
+            int expectedDocs)
+    {
+
+        _searchService = searchService;
+        _pool = pool;
+        _indexNames = indexNames;
+        _attributes = attributes.clone();
+        for (int i = 0; i < attributes.length; i++)
+        {
+            _slots.put(attributes[i].toLowerCase(Locale.ROOT), i);
+        }
+        _recordSize = 8 + 8 * attributes.length;
+        _table = new Table(expectedDocs);
+        _executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("jsphinx-attribute-store"));
+    }
+
+    /**
+     * Start loading the store in the background, if not already started.
+     */
+    public synchronized void start()
+    {
+
+        if (!_started)
+        {
+            _started = true;
+            _executor.execute(() -> loadQuietly(false));
+        }
+    }
+
+    /**
+     * Reload every document, replacing the store once done.
+     *
+     * @throws SphinxException
+     * @throws InterruptedException if interrupted while waiting for a connection.
+     */
+    public void load() throws SphinxException, InterruptedException
+    {
+
+        load(false);
+    }
+
+    /**
+     * Reload the delta's documents after it has been re-indexed, or everything after the main index has.
+     *
+     * @param indexName
+     */
+    @Override
+    public void reindexed(String indexName)
+    {
+
+        boolean delta = indexName.equals(_searchService.getDeltaIndexName());
+        if (delta || Arrays.asList(getIndexNames().split("[\\s,]+")).contains(indexName))
+        {
+            _executor.execute(() -> loadQuietly(delta));
+        }
+    }
+
+    /**
+     * Get an integer, timestamp, boolean or bigint attribute.
+     *
+     * @param docId
+     * @param attribute
+     * @param defaultValue returned if the document isn't held.
+     * @return the value.
+     */
+    public long getLong(long docId, String attribute, long defaultValue)
+    {
+
+        int slot = slot(attribute);
+        _lock.readLock().lock();
+        try
+        {
+            int record = _table.find(docId);
+
+            return _table.docId(record) == 0 ? defaultValue : _table.get(record, slot);
+        }
+        finally
+        {
+            _lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get a float attribute.
+     *
+     * @param docId
+     * @param attribute
+     * @param defaultValue returned if the document isn't held.
+     * @return the value.
+     */
+    public float getFloat(long docId, String attribute, float defaultValue)
+    {
+
+        int slot = slot(attribute);
+        _lock.readLock().lock();
+        try
+        {
+            int record = _table.find(docId);
+
+            return _table.docId(record) == 0 ? defaultValue : Float.intBitsToFloat((int)_table.get(record, slot));
+        }
+        finally
+        {
+            _lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get an integer, timestamp, boolean or bigint attribute for many documents.
+     *
+     * @param docIds
+     * @param attribute
+     * @param defaultValue used for documents that aren't held.
+     * @return the values, in the order of the docIds.
+     */
+    public long[] getLongs(long[] docIds, String attribute, long defaultValue)
+    {
+
+        int slot = slot(attribute);
+        long[] values = new long[docIds.length];
+        _lock.readLock().lock();
+        try
+        {
+            for (int i = 0; i < docIds.length; i++)
+            {
+                int record = _table.find(docIds[i]);
+                values[i] = _table.docId(record) == 0 ? defaultValue : _table.get(record, slot);
+            }
+        }
+        finally
+        {
+            _lock.readLock().unlock();
+        }
+
+        return values;
+    }
+
+    /**
+     * Get a float attribute for many documents.
+     *
+     * @param docIds
+     * @param attribute
+     * @param defaultValue used for documents that aren't held.
+     * @return the values, in the order of the docIds.
+     */
+    public float[] getFloats(long[] docIds, String attribute, float defaultValue)
+    {
+
+        int slot = slot(attribute);
+        float[] values = new float[docIds.length];
+        _lock.readLock().lock();
+        try
+        {
+            for (int i = 0; i < docIds.length; i++)
+            {
+                int record = _table.find(docIds[i]);
+                values[i] = _table.docId(record) == 0
+                        ? defaultValue
+                        : Float.intBitsToFloat((int)_table.get(record, slot));
+            }
+        }
+        finally
+        {
+            _lock.readLock().unlock();
+        }
+
+        return values;
+    }
+
+    /**
+     * Get the number of documents held.
+     *
+     * @return the size.
+     */
+    public int size()
+    {
+
+        _lock.readLock().lock();
+        try
+        {
+            return _table._size;
+        }
+        finally
+        {
+            _lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stop loading.
+     */
+    public void shutdown()
+    {
+
+        _executor.shutdownNow();
+    }
+
+    /**
+     * Write through an attribute update, if the store holds the attribute and the document and the update is to one
+     * of the stored indexes.
+     *
+     * @param indexNames the index names updated.
+     * @param docId
+     * @param attribute
+     * @param value the value, or a float's IEEE-754 bits.
+     */
+    void update(String indexNames, long docId, String attribute, long value)
+    {
+
+        Integer slot = _slots.get(attribute.toLowerCase(Locale.ROOT));
+        if (slot == null || !overlaps(indexNames))
+        {
+            return;
+        }
+
+        _lock.writeLock().lock();
+        try
+        {
+            set(_table, docId, slot, value);
+            if (_replay != null)
+            {
+                _replay.add(new long[] { docId, slot, value });
+            }
+        }
+        finally
+        {
+            _lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Load, logging any failure.
+     *
+     * @param deltaOnly
+     */
+    private void loadQuietly(boolean deltaOnly)
+    {
+
+        try
+        {
+            load(deltaOnly);
+        }
+        catch (SphinxException e)
+        {
+            _log.error("Unable to load attribute store", e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Scan the indexes into the store.
+     *
+     * @param deltaOnly true to add the delta's documents to the current table, false to replace the table.
+     * @throws SphinxException
+     * @throws InterruptedException
+     */
+    private void load(boolean deltaOnly) throws SphinxException, InterruptedException
+    {
+
+        synchronized (_loadLock)
+        {
+            scan(deltaOnly);
+        }
+    }
+
+    /**
+     * Scan the indexes into the store.
+     *
+     * @param deltaOnly true to add the delta's documents to the current table, false to replace the table.
+     * @throws SphinxException
+     * @throws InterruptedException
+     */
+    private void scan(boolean deltaOnly) throws SphinxException, InterruptedException
+    {
+
+        long start = System.currentTimeMillis();
+        String indexNames = deltaOnly ? _searchService.getDeltaIndexName() : getIndexNames();
+        Table[] table = new Table[1];
+        _lock.writeLock().lock();
+        try
+        {
+            _replay = new ArrayList<>();
+            table[0] = deltaOnly ? _table : null;
+        }
+        finally
+        {
+            _lock.writeLock().unlock();
+        }
+
+        try
+        {
+            IndexScanner.scan(_pool, indexNames, String.join(", ", _attributes), res -> {
+                if (table[0] == null)
+                {
+                    table[0] = new Table(res.totalFound);
+                }
+                int[] positions = positions(res);
+                _lock.writeLock().lock();
+                try
+                {
+                    for (SphinxMatch match : res.matches)
+                    {
+                        for (int slot = 0; slot < positions.length; slot++)
+                        {
+                            Object value = match.attrValues.get(positions[slot]);
+                            long raw = value instanceof Float
+                                    ? Float.floatToIntBits((Float)value) & 0xFFFFFFFFL
+                                    : ((Number)value).longValue();
+                            table[0] = put(table[0], match.docId, slot, raw);
+                        }
+                    }
+                    if (deltaOnly)
+                    {
+                        _table = table[0];
+                    }
+                }
+                finally
+                {
+                    _lock.writeLock().unlock();
+                }
+            });
+
+            _lock.writeLock().lock();
+            try
+            {
+                for (long[] update : _replay)
+                {
+                    set(table[0], update[0], (int)update[1], update[2]);
+                }
+                _table = table[0];
+            }
+            finally
+            {
+                _lock.writeLock().unlock();
+            }
+        }
+        finally
+        {
+            _lock.writeLock().lock();
+            _replay = null;
+            _lock.writeLock().unlock();
+        }
+
+        _log.info("Loaded attribute store from " + indexNames + ", " + size() + " documents in "
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Find where each stored attribute is in a result's matches.
+     *
+     * @param res
+     * @return the position of each attribute.
+     */
+    private int[] positions(SphinxResult res)
+    {
+
+        int[] positions = new int[_attributes.length];
+        for (int slot = 0; slot < _attributes.length; slot++)
+        {
+            positions[slot] = -1;
+            for (int i = 0; i < res.attrNames.length; i++)
+            {
+                if (res.attrNames[i].equalsIgnoreCase(_attributes[slot]))
+                {
+                    positions[slot] = i;
+                }
+            }
+            if (positions[slot] < 0)
+            {
+                throw new IllegalArgumentException("No attribute " + _attributes[slot] + " in " + Arrays.toString(res.attrNames));
+            }
+        }
+
+        return positions;
+    }
+
+    /**
+     * Get the index names to load.
+     *
+     * @return the index names, space separated.
+     */
+    private String getIndexNames()
+    {
+
+        if (_indexNames != null)
+        {
+            return _indexNames;
+        }
+
+        String mainIndexName = _searchService.getMainIndexName();
+
+        return mainIndexName != null ? mainIndexName + " " + _searchService.getDeltaIndexName() : _searchService.getDeltaIndexName();
+    }
+
+    /**
+     * Does an update's index list include any of the stored indexes?
+     *
+     * @param indexNames
+     * @return true if so.
+     */
+    private boolean overlaps(String indexNames)
+    {
+
+        List<String> stored = Arrays.asList(getIndexNames().split("[\\s,]+"));
+        for (String indexName : indexNames.split("[\\s,]+"))
+        {
+            if (stored.contains(indexName))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Get an attribute's slot.
+     *
+     * @param attribute
+     * @return the slot.
+     */
+    private int slot(String attribute)
+    {
+
+        Integer slot = _slots.get(attribute.toLowerCase(Locale.ROOT));
+        if (slot == null)
+        {
+            throw new IllegalArgumentException("Attribute " + attribute + " is not stored, only " + Arrays.toString(_attributes));
+        }
+
+        return slot;
+    }
+
+    /**
+     * Set an attribute of a document already in the table.
+     *
+     * @param table
+     * @param docId
+     * @param slot
+     * @param value
+     */
+    private static void set(Table table, long docId, int slot, long value)
+    {
+
+        int record = table.find(docId);
+        if (table.docId(record) != 0)
+        {
+            table.set(record, slot, value);
+        }
+    }
+
+    /**
+     * Set an attribute, adding the document if need be.
+     *
+     * @param table
+     * @param docId
+     * @param slot
+     * @param value
+     * @return the table, which is replaced if it had to grow.
+     */
+    private Table put(Table table, long docId, int slot, long value)
+    {
+
+        int record = table.find(docId);
+        if (table.docId(record) == 0)
+        {
+            if ((table._size + 1) * 4L > table._capacity * 3L)
+            {
+                table = table.grow();
+                record = table.find(docId);
+            }
+            table.add(record, docId);
+        }
+        table.set(record, slot, value);
+
+        return table;
+    }
+
+    /**
+     * An open addressing hash table of fixed-width records in a direct buffer.
+     */
+    private class Table
+    {
+
+        /**
+         * The records.
+         */
+        private final ByteBuffer _buffer;
+
+        /**
+         * The number of records, a power of two.
+         */
+        private final int _capacity;
+
+        /**
+         * The number of documents held.
+         */
+        private int _size;
+
+        /**
+         * Default constructor.
+         *
+         * @param expected the expected number of documents.
+         */
+        Table(long expected)
+        {
+
+            long capacity = Long.highestOneBit(Math.max(expected * 4 / 3, 16) - 1) << 1;
+            if (capacity * _recordSize > MAX_TABLE_BYTES)
+            {
+                throw new IllegalStateException("Attribute store can't hold " + expected + " documents");
+            }
+            _capacity = (int)capacity;
+            _buffer = ByteBuffer.allocateDirect(_capacity * _recordSize);
+        }
+
+        /**
+         * Find the record holding the docId, or the empty record where it would go.
+         *
+         * @param docId
+         * @return the record.
+         */
+        int find(long docId)
+        {
+
+            long z = docId * 0x9E3779B97F4A7C15L;
+            int mask = _capacity - 1;
+            int record = (int)(z ^ (z >>> 32)) & mask;
+            while (true)
+            {
+                long key = docId(record);
+                if (key == docId || key == 0)
+                {
+                    return record;
+                }
+                record = (record + 1) & mask;
+            }
+        }
+
+        /**
+         * Get the docId in a record.
+         *
+         * @param record
+         * @return the docId, or 0 if empty.
+         */
+        long docId(int record)
+        {
+
+            return _buffer.getLong(record * _recordSize);
+        }
+
+        /**
+         * Get an attribute from a record.
+         *
+         * @param record
+         * @param slot
+         * @return the value.
+         */
+        long get(int record, int slot)
+        {
+
+            return _buffer.getLong(record * _recordSize + 8 + slot * 8);
+        }
+
+        /**
+         * Set an attribute in a record.
+         *
+         * @param record
+         * @param slot
+         * @param value
+         */
+        void set(int record, int slot, long value)
+        {
+
+            _buffer.putLong(record * _recordSize + 8 + slot * 8, value);
+        }
+
+        /**
+         * Claim an empty record for a docId.
+         *
+         * @param record
+         * @param docId
+         */
+        void add(int record, long docId)
+        {
+
+            _buffer.putLong(record * _recordSize, docId);
+            _size++;
+        }
+
+        /**
+         * Copy the records into a table twice the size.
+         *
+         * @return the new table.
+         */
+        Table grow()
+        {
+
+            Table grown = new Table(_capacity * 3L / 2 + 1);
+            for (int record = 0; record < _capacity; record++)
+            {
+                long docId = docId(record);
+                if (docId != 0)
+                {
+                    int target = grown.find(docId);
+                    grown.add(target, docId);
+                    for (int slot = 0; slot < _attributes.length; slot++)
+                    {
+                        grown.set(target, slot, get(record, slot));
+                    }
+                }
+            }
+
+            return grown;
+        }
+    }
+}
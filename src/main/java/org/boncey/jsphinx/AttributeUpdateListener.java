@@ -0,0 +1,33 @@
+package org.boncey.jsphinx;
+
+import java.util.Collection;
+
+/**
+ * Notified when a batch of attribute updates has been sent to searchd.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public interface AttributeUpdateListener
+{
+
+    /**
+     * Called once a batch of updates to the indexes has been sent.
+     *
+     * @param indexNames the index names updated, space separated.
+     */
+    void attributesUpdated(String indexNames);
+
+    /**
+     * Called once a batch of updates to the indexes has been sent, with the attributes updated; calls
+     * {@link #attributesUpdated(String)} by default.
+     *
+     * @param indexNames the index names updated, space separated.
+     * @param attributes the attributes updated.
+     */
+    default void attributesUpdated(String indexNames, Collection<String> attributes)
+    {
+
+        attributesUpdated(indexNames);
+    }
+}
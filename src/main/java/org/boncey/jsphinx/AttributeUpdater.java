@@ -0,0 +1,738 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sphx.api.SphinxClient;
+import org.sphx.api.SphinxException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers attribute updates and writes them to searchd in batches, behind the caller.
+ *
+ * Updates are merged by index, docId and attribute so only the latest value is sent. The buffer is flushed once it
+ * holds a batch worth of updates or on a timer, whichever comes first, with documents updating the same attributes
+ * sent together in a single <code>UpdateAttributes</code> request. Flushes are sent one at a time, so a later value for
+ * a document never overtakes an earlier one. Callers block while the buffer is full. Optionally
+ * <code>FlushAttributes</code> is called on a schedule, so searchd writes the updated attributes to disk in groups.
+ *
+ * searchd's binary update protocol carries 32 bit values, so BIGINT attributes can't be updated through it and
+ * integer values must fit in a signed or unsigned int; larger values are rejected up front rather than silently
+ * truncated. Float values are sent as their IEEE-754 bit pattern.
+ *
+ * Bulk MVA updates are sent straight away rather than buffered, packing many documents into each request.
+ *
+ * Given an {@link IndexRouter}, each update is only sent to those of its indexes that can hold the document. Given
+ * an {@link AttributeStore}, updates to the attributes it holds are written through to it as they are made.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class AttributeUpdater
+{
+
+    /**
+     * The default size limit of a bulk MVA update request, half searchd's default max_packet_size.
+     */
+    public static final int DEFAULT_MVA_REQUEST_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(AttributeUpdater.class);
+
+    /**
+     * The connections to send updates over.
+     */
+    private final SphinxClientPool _pool;
+
+    /**
+     * The number of updates that triggers a flush, and the most sent in one request.
+     */
+    private final int _batchSize;
+
+    /**
+     * The maximum number of buffered updates before callers block.
+     */
+    private final int _capacity;
+
+    /**
+     * Chooses the indexes each update goes to, or null to send it to every index given.
+     */
+    private final IndexRouter _router;
+
+    /**
+     * The client-side attribute store to write updates through to, or null.
+     */
+    private final AttributeStore _store;
+
+    /**
+     * Notified as each batch of updates is sent.
+     */
+    private final List<AttributeUpdateListener> _listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Runs the flushes.
+     */
+    private final ScheduledExecutorService _executor;
+
+    /**
+     * Held while taking and sending a batch of updates, so concurrent flushes send in the order they were buffered.
+     */
+    private final Object _sendLock = new Object();
+
+    /**
+     * Buffered values by index, then attribute, then docId.
+     */
+    private Map<String, Map<String, LongLongHashMap>> _pending = new HashMap<>();
+
+    /**
+     * The number of buffered updates.
+     */
+    private int _size;
+
+    /**
+     * Is a flush already queued?
+     */
+    private boolean _flushQueued;
+
+    /**
+     * Have updates been sent since the last FlushAttributes?
+     */
+    private volatile boolean _unflushed;
+
+    /**
+     * Default constructor.
+     *
+     * @param pool the connections to send updates over.
+     * @param batchSize the number of updates that triggers a flush.
+     * @param capacity the maximum number of buffered updates before callers block.
+     * @param flushInterval the longest an update is buffered for, in milliseconds.
+     * @param flushAttributesInterval how often to call FlushAttributes, in milliseconds (0 never).
+     */
+    public AttributeUpdater(SphinxClientPool pool, int batchSize, int capacity, long flushInterval,
+            long flushAttributesInterval)
+    {
+
+        this(pool, batchSize, capacity, flushInterval, flushAttributesInterval, null, null);
+    }
+
+    /**
+     * Constructor that routes updates to the indexes that can hold each document and writes them through to a
+     * client-side store.
+     *
+     * @param pool the connections to send updates over.
+     * @param batchSize the number of updates that triggers a flush.
+     * @param capacity the maximum number of buffered updates before callers block.
+     * @param flushInterval the longest an update is buffered for, in milliseconds.
+     * @param flushAttributesInterval how often to call FlushAttributes, in milliseconds (0 never).
+     * @param router chooses the indexes each update goes to, or null to send it to every index given.
+     * @param store the client-side attribute store to write updates through to, or null.
+     */
+    public AttributeUpdater(SphinxClientPool pool, int batchSize, int capacity, long flushInterval,
+            long flushAttributesInterval, IndexRouter router, AttributeStore store)
+    {
+
+        if (batchSize <= 0 || capacity < batchSize)
+        {
+            throw new IllegalArgumentException("Invalid batch size " + batchSize + " or capacity " + capacity);
+        }
+
+        _pool = pool;
+        _batchSize = batchSize;
+        _capacity = capacity;
+        _router = router;
+        _store = store;
+        _executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("jsphinx-update"));
+        _executor.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        if (flushAttributesInterval > 0)
+        {
+            _executor.scheduleWithFixedDelay(this::flushAttributes, flushAttributesInterval, flushAttributesInterval,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Update an integer, timestamp or boolean attribute.
+     *
+     * @param index the index name(s) to update.
+     * @param docId
+     * @param attribute
+     * @param value must fit in 32 bits.
+     * @throws InterruptedException if interrupted while waiting for space in the buffer.
+     * @throws IllegalStateException if the updater has been shut down.
+     */
+    public void update(String index, long docId, String attribute, long value) throws InterruptedException
+    {
+
+        if (value < Integer.MIN_VALUE || value > 0xFFFFFFFFL)
+        {
+            throw new IllegalArgumentException("Value " + value + " for " + attribute + " does not fit in 32 bits");
+        }
+
+        if (_store != null)
+        {
+            _store.update(index, docId, attribute, value);
+        }
+        buffer(index, docId, attribute, value);
+    }
+
+    /**
+     * Update a float attribute.
+     *
+     * @param index the index name(s) to update.
+     * @param docId
+     * @param attribute
+     * @param value
+     * @throws InterruptedException if interrupted while waiting for space in the buffer.
+     * @throws IllegalStateException if the updater has been shut down.
+     */
+    public void update(String index, long docId, String attribute, float value) throws InterruptedException
+    {
+
+        if (_store != null)
+        {
+            _store.update(index, docId, attribute, Float.floatToIntBits(value));
+        }
+        buffer(index, docId, attribute, Float.floatToIntBits(value));
+    }
+
+    /**
+     * Replace MVA attribute values on many documents, packing as many documents into each request as fit in
+     * {@link #DEFAULT_MVA_REQUEST_BYTES}.
+     *
+     * @param index the index name(s) to update.
+     * @param attrs the MVA attributes to update.
+     * @param docIds the documents to update.
+     * @param values the new values for each document, one array per attribute.
+     * @return the number of documents updated by each request.
+     * @throws SphinxException if a request failed.
+     * @throws InterruptedException if interrupted while waiting for a connection.
+     */
+    public int[] updateMva(String index, String[] attrs, long[] docIds, int[][][] values)
+            throws SphinxException, InterruptedException
+    {
+
+        return updateMva(index, attrs, docIds, values, DEFAULT_MVA_REQUEST_BYTES);
+    }
+
+    /**
+     * Replace MVA attribute values on many documents, packing as many documents into each request as fit in the size
+     * limit. The requests are sent back to back over a single pooled connection; MVA updates bypass the write-behind
+     * buffer.
+     *
+     * @param index the index name(s) to update.
+     * @param attrs the MVA attributes to update.
+     * @param docIds the documents to update.
+     * @param values the new values for each document, one array per attribute.
+     * @param maxBytes the size limit of each request.
+     * @return the number of documents updated by each request.
+     * @throws SphinxException if a request failed.
+     * @throws InterruptedException if interrupted while waiting for a connection.
+     */
+    public int[] updateMva(String index, String[] attrs, long[] docIds, int[][][] values, int maxBytes)
+            throws SphinxException, InterruptedException
+    {
+
+        if (docIds.length != values.length)
+        {
+            throw new SphinxException("docIds and values must be the same length");
+        }
+        if (_router == null)
+        {
+            return sendMva(index, attrs, docIds, values, maxBytes);
+        }
+
+        // Group the documents by the indexes that can hold them
+        Map<String, List<Integer>> byIndex = new LinkedHashMap<>();
+        for (int i = 0; i < docIds.length; i++)
+        {
+            String routed = _router.route(index, docIds[i]);
+            if (routed != null)
+            {
+                byIndex.computeIfAbsent(routed, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        List<int[]> counts = new ArrayList<>();
+        int total = 0;
+        for (Map.Entry<String, List<Integer>> entry : byIndex.entrySet())
+        {
+            List<Integer> docs = entry.getValue();
+            long[] routedIds = new long[docs.size()];
+            int[][][] routedValues = new int[docs.size()][][];
+            for (int i = 0; i < routedIds.length; i++)
+            {
+                routedIds[i] = docIds[docs.get(i)];
+                routedValues[i] = values[docs.get(i)];
+            }
+            int[] updated = sendMva(entry.getKey(), attrs, routedIds, routedValues, maxBytes);
+            counts.add(updated);
+            total += updated.length;
+        }
+
+        int[] result = new int[total];
+        int pos = 0;
+        for (int[] updated : counts)
+        {
+            System.arraycopy(updated, 0, result, pos, updated.length);
+            pos += updated.length;
+        }
+
+        return result;
+    }
+
+    /**
+     * Send MVA updates to the given indexes in requests within the size limit.
+     *
+     * @param index the index name(s) to update.
+     * @param attrs the MVA attributes to update.
+     * @param docIds the documents to update.
+     * @param values the new values for each document, one array per attribute.
+     * @param maxBytes the size limit of each request.
+     * @return the number of documents updated by each request.
+     * @throws SphinxException if a request failed.
+     * @throws InterruptedException if interrupted while waiting for a connection.
+     */
+    private int[] sendMva(String index, String[] attrs, long[] docIds, int[][][] values, int maxBytes)
+            throws SphinxException, InterruptedException
+    {
+
+        long header = 4 + index.length() * 4L + 8;
+        for (String attr : attrs)
+        {
+            header += 4 + attr.length() * 4L + 4;
+        }
+
+        List<Integer> counts = new ArrayList<>();
+        SphinxClient sphinx = _pool.borrow();
+        try
+        {
+            int from = 0;
+            while (from < docIds.length)
+            {
+                // Always send at least one document, even if it alone exceeds the limit
+                long bytes = header;
+                int to = from;
+                do
+                {
+                    bytes += docBytes(values[to]);
+                    to++;
+                }
+                while (to < docIds.length && bytes + docBytes(values[to]) <= maxBytes);
+
+                int updated = sphinx.UpdateAttributesMVA(index, attrs, Arrays.copyOfRange(docIds, from, to),
+                        Arrays.copyOfRange(values, from, to), false);
+                if (updated < 0)
+                {
+                    throw new SphinxException("Sphinx Error: " + sphinx.GetLastError());
+                }
+                counts.add(updated);
+                _unflushed = true;
+
+                if (_log.isDebugEnabled())
+                {
+                    _log.debug("Updated " + Arrays.toString(attrs) + " on " + updated + " of " + (to - from) + " documents in " + index);
+                }
+                from = to;
+            }
+        }
+        finally
+        {
+            _pool.release(sphinx);
+            if (!counts.isEmpty())
+            {
+                fireUpdated(index, Arrays.asList(attrs));
+            }
+        }
+
+        int[] result = new int[counts.size()];
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = counts.get(i);
+        }
+
+        return result;
+    }
+
+    /**
+     * Send all buffered updates now, waiting for any flush already sending to finish first.
+     *
+     * @throws SphinxException if any request failed.
+     */
+    public void flush() throws SphinxException
+    {
+
+        synchronized (_sendLock)
+        {
+            Map<String, Map<String, LongLongHashMap>> pending;
+            synchronized (this)
+            {
+                pending = _pending;
+                _pending = new HashMap<>();
+                _size = 0;
+                _flushQueued = false;
+                notifyAll();
+            }
+
+            SphinxException failure = null;
+            for (Map.Entry<String, Map<String, LongLongHashMap>> entry : pending.entrySet())
+            {
+                try
+                {
+                    send(entry.getKey(), entry.getValue());
+                }
+                catch (SphinxException e)
+                {
+                    failure = e;
+                }
+                // Some of the updates may have been applied even if a request failed
+                fireUpdated(entry.getKey(), entry.getValue().keySet());
+            }
+
+            if (failure != null)
+            {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Add a listener to be notified as each batch of updates is sent.
+     *
+     * @param listener
+     */
+    public void addUpdateListener(AttributeUpdateListener listener)
+    {
+
+        _listeners.add(listener);
+    }
+
+    /**
+     * Remove an update listener.
+     *
+     * @param listener
+     */
+    public void removeUpdateListener(AttributeUpdateListener listener)
+    {
+
+        _listeners.remove(listener);
+    }
+
+    /**
+     * Get the number of buffered updates.
+     *
+     * @return the size.
+     */
+    public synchronized int size()
+    {
+
+        return _size;
+    }
+
+    /**
+     * Send any buffered updates and stop; further updates are rejected.
+     */
+    public void shutdown()
+    {
+
+        _executor.shutdown();
+        flushQuietly();
+        flushAttributes();
+    }
+
+    /**
+     * Buffer an update, blocking while the buffer is full.
+     *
+     * @param index
+     * @param docId
+     * @param attribute
+     * @param value
+     * @throws InterruptedException
+     * @throws IllegalStateException if the updater has been shut down.
+     */
+    private synchronized void buffer(String index, long docId, String attribute, long value) throws InterruptedException
+    {
+
+        checkRunning();
+        String routed = _router != null ? _router.route(index, docId) : index;
+        if (routed == null)
+        {
+            // No index can hold the document
+            return;
+        }
+
+        while (_size >= _capacity)
+        {
+            queueFlush();
+            wait();
+            checkRunning();
+        }
+
+        LongLongHashMap values = _pending.computeIfAbsent(routed, k -> new HashMap<>())
+                .computeIfAbsent(attribute, k -> new LongLongHashMap());
+        if (!values.containsKey(docId))
+        {
+            _size++;
+        }
+        values.put(docId, value);
+
+        if (_size >= _batchSize)
+        {
+            queueFlush();
+        }
+    }
+
+    /**
+     * Put back updates that couldn't be sent, unless they've since been superseded.
+     *
+     * @param index
+     * @param attrs
+     * @param rows
+     */
+    private synchronized void requeue(String index, String[] attrs, long[][] rows)
+    {
+
+        Map<String, LongLongHashMap> byAttr = _pending.computeIfAbsent(index, k -> new HashMap<>());
+        for (int a = 0; a < attrs.length; a++)
+        {
+            LongLongHashMap values = byAttr.computeIfAbsent(attrs[a], k -> new LongLongHashMap());
+            for (long[] row : rows)
+            {
+                if (!values.containsKey(row[0]))
+                {
+                    values.put(row[0], row[a + 1]);
+                    _size++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Notify the listeners that updates to the indexes have been sent.
+     *
+     * @param index
+     * @param attributes the attributes updated.
+     */
+    private void fireUpdated(String index, Collection<String> attributes)
+    {
+
+        for (AttributeUpdateListener listener : _listeners)
+        {
+            try
+            {
+                listener.attributesUpdated(index, attributes);
+            }
+            catch (RuntimeException e)
+            {
+                _log.error("Update listener " + listener + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * Reject updates once shut down, as nothing would flush them; a caller waiting for space would wait forever.
+     *
+     * @throws IllegalStateException if the updater has been shut down.
+     */
+    private void checkRunning()
+    {
+
+        if (_executor.isShutdown())
+        {
+            throw new IllegalStateException("Attribute updater has been shut down");
+        }
+    }
+
+    /**
+     * Queue a flush on the background thread, if one isn't already.
+     */
+    private void queueFlush()
+    {
+
+        if (!_flushQueued && !_executor.isShutdown())
+        {
+            _flushQueued = true;
+            _executor.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Flush, logging any failure.
+     */
+    private void flushQuietly()
+    {
+
+        try
+        {
+            flush();
+        }
+        catch (SphinxException e)
+        {
+            _log.error("Unable to send attribute updates: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Ask searchd to write updated attributes to disk, if anything has been updated since last time.
+     */
+    private void flushAttributes()
+    {
+
+        if (!_unflushed)
+        {
+            return;
+        }
+        _unflushed = false;
+
+        SphinxClient sphinx = null;
+        try
+        {
+            sphinx = _pool.borrow();
+            if (sphinx.FlushAttributes() < 0)
+            {
+                _log.error("Unable to flush attributes: " + sphinx.GetLastError());
+            }
+        }
+        catch (SphinxException e)
+        {
+            _log.error("Unable to flush attributes: " + e.getMessage());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            if (sphinx != null)
+            {
+                _pool.release(sphinx);
+            }
+        }
+    }
+
+    /**
+     * Get the size of a document's MVA update on the wire.
+     *
+     * @param values the values for each attribute.
+     * @return the size in bytes.
+     */
+    private static long docBytes(int[][] values)
+    {
+
+        long bytes = 8;
+        for (int[] attrValues : values)
+        {
+            bytes += 4 + attrValues.length * 4L;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Send the updates for an index, one request per set of attributes updated together.
+     *
+     * @param index
+     * @param byAttr values by attribute then docId.
+     * @throws SphinxException
+     */
+    private void send(String index, Map<String, LongLongHashMap> byAttr) throws SphinxException
+    {
+
+        // Group the docIds by the attributes they update
+        Map<Long, List<String>> attrsByDoc = new HashMap<>();
+        for (Map.Entry<String, LongLongHashMap> entry : new TreeMap<>(byAttr).entrySet())
+        {
+            for (long docId : entry.getValue().keys())
+            {
+                attrsByDoc.computeIfAbsent(docId, k -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+        Map<List<String>, List<Long>> docsByAttrs = new LinkedHashMap<>();
+        for (Map.Entry<Long, List<String>> entry : attrsByDoc.entrySet())
+        {
+            docsByAttrs.computeIfAbsent(entry.getValue(), k -> new ArrayList<>()).add(entry.getKey());
+        }
+
+        for (Map.Entry<List<String>, List<Long>> entry : docsByAttrs.entrySet())
+        {
+            String[] attrs = entry.getKey().toArray(new String[0]);
+            List<Long> docIds = entry.getValue();
+            for (int from = 0; from < docIds.size(); from += _batchSize)
+            {
+                int to = Math.min(from + _batchSize, docIds.size());
+                long[][] rows = new long[to - from][];
+                for (int i = from; i < to; i++)
+                {
+                    long docId = docIds.get(i);
+                    long[] row = new long[attrs.length + 1];
+                    row[0] = docId;
+                    for (int a = 0; a < attrs.length; a++)
+                    {
+                        row[a + 1] = byAttr.get(attrs[a]).get(docId, 0);
+                    }
+                    rows[i - from] = row;
+                }
+                send(index, attrs, rows);
+            }
+        }
+    }
+
+    /**
+     * Send one UpdateAttributes request, requeueing the updates if searchd couldn't be reached.
+     *
+     * @param index
+     * @param attrs
+     * @param rows
+     * @throws SphinxException
+     */
+    private void send(String index, String[] attrs, long[][] rows) throws SphinxException
+    {
+
+        SphinxClient sphinx;
+        try
+        {
+            sphinx = _pool.borrow();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            requeue(index, attrs, rows);
+            throw new SphinxException("Interrupted sending attribute updates");
+        }
+
+        try
+        {
+            int updated = sphinx.UpdateAttributes(index, attrs, rows);
+            if (updated < 0)
+            {
+                if (sphinx.IsConnectError())
+                {
+                    requeue(index, attrs, rows);
+                }
+                throw new SphinxException("Sphinx Error: " + sphinx.GetLastError());
+            }
+            _unflushed = true;
+
+            if (_log.isDebugEnabled())
+            {
+                _log.debug("Updated " + Arrays.toString(attrs) + " on " + updated + " of " + rows.length + " documents in " + index);
+            }
+        }
+        finally
+        {
+            _pool.release(sphinx);
+        }
+    }
+}
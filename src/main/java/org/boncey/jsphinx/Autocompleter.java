@@ -0,0 +1,355 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sphx.api.SphinxClient;
+import org.sphx.api.SphinxException;
+import org.sphx.api.SphinxKeyword;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Autocompletes search terms from an in-memory {@link PrefixIndex}, without touching searchd.
+ *
+ * The vocabulary is seeded with {@link #load(Collection)} (e.g. from the output of
+ * <code>indexer --buildstops --buildfreqs</code>) and grows with the words searched for. Words are looked up with
+ * <code>BuildKeywords</code> so the vocabulary holds them as typed (after searchd's case folding) rather than their
+ * stemmed forms, and words that aren't indexed are dropped. Document frequencies are re-fetched after every
+ * re-index. The prefix index is
+ * rebuilt in the background and swapped in, so completions are served from the previous one in the meantime.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class Autocompleter implements ReindexListener
+{
+
+    /**
+     * The maximum number of terms to send to searchd in one request.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * The maximum number of searched for words waiting to be looked up; any more are dropped.
+     */
+    private static final int MAX_PENDING_WORDS = 4 * BATCH_SIZE;
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(Autocompleter.class);
+
+    /**
+     * Sphinx host.
+     */
+    private final String _host;
+
+    /**
+     * Sphinx port.
+     */
+    private final int _port;
+
+    /**
+     * The index to take statistics from.
+     */
+    private final String _indexName;
+
+    /**
+     * The number of suggestions to precompute for short prefixes.
+     */
+    private final int _suggestions;
+
+    /**
+     * The vocabulary and document frequencies the prefix index is built from.
+     */
+    private final Map<String, Long> _terms = new HashMap<>();
+
+    /**
+     * Has the vocabulary changed since the prefix index was built?
+     */
+    private volatile boolean _dirty;
+
+    /**
+     * Searched for words waiting to be looked up, guarded by the vocabulary.
+     */
+    private final Set<String> _pendingWords = new HashSet<>();
+
+    /**
+     * Is a background look up of searched for words waiting to run?
+     */
+    private final AtomicBoolean _lookupQueued = new AtomicBoolean();
+
+    /**
+     * Is a background rebuild waiting to run?
+     */
+    private final AtomicBoolean _rebuildQueued = new AtomicBoolean();
+
+    /**
+     * Held while building, so a build from an older vocabulary never replaces a newer one.
+     */
+    private final Object _rebuildLock = new Object();
+
+    /**
+     * Rebuilds the prefix index and refreshes the vocabulary.
+     */
+    private final ExecutorService _executor;
+
+    /**
+     * The current prefix index.
+     */
+    private volatile PrefixIndex _prefixIndex;
+
+    /**
+     * Default constructor.
+     *
+     * @param host Sphinx host.
+     * @param port Sphinx port.
+     * @param indexName the single index to take statistics from.
+     * @param suggestions the typical number of suggestions requested.
+     */
+    public Autocompleter(String host, int port, String indexName, int suggestions)
+    {
+
+        _host = host;
+        _port = port;
+        _indexName = indexName;
+        _suggestions = suggestions;
+        _prefixIndex = new PrefixIndex(_terms, suggestions);
+        _executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("jsphinx-autocomplete"));
+    }
+
+    /**
+     * Get the most frequent indexed terms starting with the prefix; words added since the prefix index was last built
+     * are included once the background rebuild this triggers has finished.
+     *
+     * @param prefix
+     * @param max the maximum number of terms to return.
+     * @return the terms, most frequent first.
+     */
+    public List<String> complete(String prefix, int max)
+    {
+
+        if (_dirty && _rebuildQueued.compareAndSet(false, true))
+        {
+            _executor.execute(() -> {
+                _rebuildQueued.set(false);
+                rebuild();
+            });
+        }
+
+        return _prefixIndex.complete(prefix.toLowerCase(), max);
+    }
+
+    /**
+     * Add the terms to the vocabulary, fetching their document frequencies from searchd.
+     *
+     * @param terms
+     * @throws SphinxException
+     */
+    public void load(Collection<String> terms) throws SphinxException
+    {
+
+        Map<String, Long> fetched = fetch(new ArrayList<>(terms));
+        synchronized (_terms)
+        {
+            _terms.putAll(fetched);
+        }
+        rebuild();
+    }
+
+    /**
+     * Add the words of a search query to the vocabulary; new words are looked up in the background and the prefix
+     * index is rebuilt on next use. Field names (<code>@title</code>) are skipped.
+     *
+     * @param query the query as searched for.
+     */
+    public void addQuery(String query)
+    {
+
+        if (query == null)
+        {
+            return;
+        }
+
+        boolean added = false;
+        int[] spans = Tokenizer.spans(query);
+        synchronized (_terms)
+        {
+            for (int i = 0; i < spans.length && _pendingWords.size() < MAX_PENDING_WORDS; i += 2)
+            {
+                if (spans[i] > 0 && query.charAt(spans[i] - 1) == '@')
+                {
+                    continue;
+                }
+
+                String word = query.substring(spans[i], spans[i + 1]).toLowerCase();
+                if (!_terms.containsKey(word))
+                {
+                    added |= _pendingWords.add(word);
+                }
+            }
+        }
+
+        if (added && _lookupQueued.compareAndSet(false, true))
+        {
+            _executor.execute(this::lookup);
+        }
+    }
+
+    /**
+     * Re-fetch the document frequencies of the whole vocabulary and rebuild, in the background.
+     */
+    @Override
+    public void reindexed(String indexName)
+    {
+
+        _executor.execute(this::refresh);
+    }
+
+    /**
+     * Stop any background rebuild.
+     */
+    public void shutdown()
+    {
+
+        _executor.shutdownNow();
+    }
+
+    /**
+     * Look up the searched for words waiting to be added and add those that are indexed.
+     */
+    private void lookup()
+    {
+
+        _lookupQueued.set(false);
+        List<String> words;
+        synchronized (_terms)
+        {
+            words = new ArrayList<>(_pendingWords);
+            _pendingWords.clear();
+        }
+        if (words.isEmpty())
+        {
+            return;
+        }
+
+        try
+        {
+            Map<String, Long> fetched = fetch(words);
+            synchronized (_terms)
+            {
+                for (Map.Entry<String, Long> entry : fetched.entrySet())
+                {
+                    Long previous = _terms.put(entry.getKey(), entry.getValue());
+                    _dirty |= !entry.getValue().equals(previous);
+                }
+            }
+        }
+        catch (SphinxException e)
+        {
+            _log.warn("Unable to look up searched for words: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Re-fetch the document frequencies of the whole vocabulary and rebuild.
+     */
+    private void refresh()
+    {
+
+        List<String> terms;
+        synchronized (_terms)
+        {
+            terms = new ArrayList<>(_terms.keySet());
+        }
+
+        try
+        {
+            Map<String, Long> fetched = fetch(terms);
+            synchronized (_terms)
+            {
+                // Only drop the terms that were fetched; words added in the meantime are kept
+                for (String term : terms)
+                {
+                    if (!fetched.containsKey(term))
+                    {
+                        _terms.remove(term);
+                    }
+                }
+                _terms.putAll(fetched);
+            }
+            rebuild();
+        }
+        catch (SphinxException e)
+        {
+            _log.warn("Unable to refresh autocomplete terms: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuild the prefix index from a copy of the vocabulary and swap it in.
+     */
+    public void rebuild()
+    {
+
+        synchronized (_rebuildLock)
+        {
+            long start = System.currentTimeMillis();
+            Map<String, Long> terms;
+            synchronized (_terms)
+            {
+                terms = new HashMap<>(_terms);
+                _dirty = false;
+            }
+            PrefixIndex prefixIndex = new PrefixIndex(terms, _suggestions);
+            _prefixIndex = prefixIndex;
+
+            if (_log.isDebugEnabled())
+            {
+                _log.debug("Built prefix index of " + prefixIndex.size() + " terms in " + (System.currentTimeMillis() - start) + "ms");
+            }
+        }
+    }
+
+    /**
+     * Fetch the document frequencies of the terms, dropping any that aren't indexed.
+     *
+     * @param terms
+     * @return the frequencies of the indexed terms.
+     * @throws SphinxException
+     */
+    private Map<String, Long> fetch(List<String> terms) throws SphinxException
+    {
+
+        Map<String, Long> fetched = new HashMap<>();
+        SphinxClient sphinx = new SphinxClient(_host, _port);
+        for (int from = 0; from < terms.size(); from += BATCH_SIZE)
+        {
+            List<String> batch = terms.subList(from, Math.min(from + BATCH_SIZE, terms.size()));
+            SphinxKeyword[] keywords = sphinx.BuildKeywordList(String.join(" ", batch), _indexName, true);
+            if (keywords == null)
+            {
+                throw new SphinxException("Sphinx Error: " + sphinx.GetLastError());
+            }
+
+            for (SphinxKeyword keyword : keywords)
+            {
+                if (keyword.docs > 0)
+                {
+                    fetched.put(keyword.tokenized.toLowerCase(), keyword.docs);
+                }
+            }
+        }
+
+        return fetched;
+    }
+}
@@ -0,0 +1,506 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A persistent, append-only journal of document changes held in a memory-mapped file.
+ *
+ * The application records each change as it happens. The journal also keeps two checkpoints: how far the main index
+ * is up to (moved on by a merge or full rebuild) and how far the delta index is up to (moved on by a delta re-index).
+ * From these it can tell how much has changed, to choose between a delta re-index, a merge and a full rebuild, and a
+ * delta {@link DocumentSource} (see {@link ChangeJournalSource}) can open the same file read-only, from the indexer's
+ * process, to read exactly the documents changed since the main index was built.
+ *
+ * Records before the main checkpoint are discarded by {@link #compact()}, which must only be called while no delta
+ * re-index is reading the journal.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class ChangeJournal implements Closeable
+{
+
+    /**
+     * The kinds of change.
+     */
+    public enum ChangeType
+    {
+        INSERT, UPDATE, DELETE
+    }
+
+    /**
+     * Identifies a journal file.
+     */
+    private static final int MAGIC = 0x4A534A4C;
+
+    /**
+     * The file format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The size of the file header.
+     */
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * Offset of the end of the journal within the header.
+     */
+    private static final int END_OFFSET = 8;
+
+    /**
+     * Offset of the main index checkpoint within the header.
+     */
+    private static final int MAIN_OFFSET = 16;
+
+    /**
+     * Offset of the delta index checkpoint within the header.
+     */
+    private static final int DELTA_OFFSET = 24;
+
+    /**
+     * The size of a record (docId, timestamp, change type).
+     */
+    private static final int RECORD_SIZE = 20;
+
+    /**
+     * The initial file size.
+     */
+    private static final int INITIAL_SIZE = 1024 * 1024;
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(ChangeJournal.class);
+
+    /**
+     * The journal file.
+     */
+    private final File _path;
+
+    /**
+     * The open file.
+     */
+    private final RandomAccessFile _file;
+
+    /**
+     * Was the journal opened read-only?
+     */
+    private final boolean _readOnly;
+
+    /**
+     * The mapped file.
+     */
+    private MappedByteBuffer _buffer;
+
+    /**
+     * Default constructor.
+     *
+     * @param file the journal file, created if it doesn't exist.
+     * @throws IOException if the file exists but isn't a change journal.
+     */
+    public ChangeJournal(File file) throws IOException
+    {
+
+        this(file, false);
+    }
+
+    /**
+     * Open a journal, optionally read-only, e.g. from another process that's reading the changes.
+     *
+     * @param file the journal file; created if it doesn't exist, unless read-only.
+     * @param readOnly open the journal read-only.
+     * @throws IOException if the file isn't a change journal, or doesn't exist when read-only.
+     */
+    public ChangeJournal(File file, boolean readOnly) throws IOException
+    {
+
+        _path = file;
+        _readOnly = readOnly;
+        _file = new RandomAccessFile(file, readOnly ? "r" : "rw");
+        boolean created = _file.length() == 0 && !readOnly;
+        if (!created && (_file.length() < HEADER_SIZE || _file.readInt() != MAGIC || _file.readInt() != VERSION))
+        {
+            // Never truncate a file we can't read, it may hold changes not yet indexed
+            _file.close();
+            throw new IOException(file + " is not a change journal");
+        }
+
+        if (created)
+        {
+            _file.setLength(INITIAL_SIZE);
+        }
+        _buffer = _file.getChannel().map(readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, 0,
+                _file.length());
+
+        if (!created)
+        {
+            _log.info("Opened change journal " + file + (readOnly ? " read-only" : "") + " with "
+                    + getPending(HEADER_SIZE) + " changes");
+        }
+        else
+        {
+            _buffer.putInt(0, MAGIC);
+            _buffer.putInt(4, VERSION);
+            _buffer.putLong(END_OFFSET, HEADER_SIZE);
+            _buffer.putLong(MAIN_OFFSET, HEADER_SIZE);
+            _buffer.putLong(DELTA_OFFSET, HEADER_SIZE);
+            _log.info("Created change journal " + file);
+        }
+    }
+
+    /**
+     * Record a change to a document.
+     *
+     * @param docId
+     * @param type
+     * @throws IOException if the journal couldn't grow.
+     */
+    public synchronized void record(long docId, ChangeType type) throws IOException
+    {
+
+        checkWritable();
+        long end = getEnd();
+        if (end + RECORD_SIZE > _buffer.capacity())
+        {
+            grow();
+        }
+
+        int pos = (int)end;
+        _buffer.putLong(pos, docId);
+        _buffer.putLong(pos + 8, System.currentTimeMillis());
+        _buffer.putInt(pos + 16, type.ordinal());
+
+        // Publish the record only once it's complete
+        _buffer.putLong(END_OFFSET, end + RECORD_SIZE);
+    }
+
+    /**
+     * Get the position after the last record; take this before starting an indexer run and pass it to the matching
+     * checkpoint once the run succeeds.
+     *
+     * @return the end position.
+     */
+    public synchronized long getEnd()
+    {
+
+        return _buffer.getLong(END_OFFSET);
+    }
+
+    /**
+     * Get how far the main index is up to.
+     *
+     * @return the main index checkpoint.
+     */
+    public synchronized long getMainCheckpoint()
+    {
+
+        return _buffer.getLong(MAIN_OFFSET);
+    }
+
+    /**
+     * Get how far the delta index is up to.
+     *
+     * @return the delta index checkpoint.
+     */
+    public synchronized long getDeltaCheckpoint()
+    {
+
+        return _buffer.getLong(DELTA_OFFSET);
+    }
+
+    /**
+     * Record that the main index is up to the given position, e.g. after a merge or full rebuild.
+     *
+     * @param position
+     */
+    public synchronized void setMainCheckpoint(long position)
+    {
+
+        checkWritable();
+        _buffer.putLong(MAIN_OFFSET, position);
+        if (getDeltaCheckpoint() < position)
+        {
+            _buffer.putLong(DELTA_OFFSET, position);
+        }
+    }
+
+    /**
+     * Record that the delta index is up to the given position, after a delta re-index.
+     *
+     * @param position
+     */
+    public synchronized void setDeltaCheckpoint(long position)
+    {
+
+        checkWritable();
+        _buffer.putLong(DELTA_OFFSET, position);
+    }
+
+    /**
+     * Get the number of changes recorded after a position.
+     *
+     * @param position
+     * @return the number of records.
+     */
+    public synchronized long getPending(long position)
+    {
+
+        return (getEnd() - position) / RECORD_SIZE;
+    }
+
+    /**
+     * Get the time of the oldest change recorded after a position.
+     *
+     * @param position
+     * @return the time in milliseconds, or 0 if nothing has changed.
+     */
+    public synchronized long getOldestChange(long position)
+    {
+
+        return position < getEnd() ? _buffer.getLong((int)position + 8) : 0;
+    }
+
+    /**
+     * Get the documents changed after a position, latest change per document.
+     *
+     * @param position
+     * @return the changes.
+     */
+    public synchronized ChangeSet getChanges(long position)
+    {
+
+        long end = getEnd();
+        if (_readOnly && end > _buffer.capacity())
+        {
+            // Grown by the writing process since this one mapped it
+            remap();
+        }
+        LongLongHashMap changes = new LongLongHashMap((int)Math.min((end - position) / RECORD_SIZE, 1 << 20));
+        for (long pos = position; pos < end; pos += RECORD_SIZE)
+        {
+            changes.put(_buffer.getLong((int)pos), _buffer.getInt((int)pos + 16));
+        }
+
+        return new ChangeSet(changes, end);
+    }
+
+    /**
+     * Get the documents the delta index should hold: those changed since the main index was built.
+     *
+     * @return the changes.
+     */
+    public synchronized ChangeSet getDeltaChanges()
+    {
+
+        return getChanges(getMainCheckpoint());
+    }
+
+    /**
+     * Discard the records the main index already holds, moving the rest to the start of the journal.
+     */
+    public synchronized void compact()
+    {
+
+        checkWritable();
+        long main = getMainCheckpoint();
+        long end = getEnd();
+        if (main == HEADER_SIZE)
+        {
+            return;
+        }
+
+        // Copy forwards a chunk at a time; the destination is always before the source
+        int length = (int)(end - main);
+        byte[] chunk = new byte[64 * 1024];
+        for (int done = 0; done < length; done += chunk.length)
+        {
+            int size = Math.min(chunk.length, length - done);
+            _buffer.position((int)main + done);
+            _buffer.get(chunk, 0, size);
+            _buffer.position(HEADER_SIZE + done);
+            _buffer.put(chunk, 0, size);
+        }
+
+        long shift = main - HEADER_SIZE;
+        _buffer.putLong(DELTA_OFFSET, Math.max(HEADER_SIZE, getDeltaCheckpoint() - shift));
+        _buffer.putLong(MAIN_OFFSET, HEADER_SIZE);
+        _buffer.putLong(END_OFFSET, HEADER_SIZE + length);
+
+        if (_log.isDebugEnabled())
+        {
+            _log.debug("Compacted change journal " + _path + ", discarded " + shift / RECORD_SIZE + " changes");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+
+        if (!_readOnly)
+        {
+            _buffer.force();
+        }
+        _file.close();
+    }
+
+    /**
+     * Reject changes to a journal opened read-only.
+     *
+     * @throws IllegalStateException if read-only.
+     */
+    private void checkWritable()
+    {
+
+        if (_readOnly)
+        {
+            throw new IllegalStateException("Change journal " + _path + " is open read-only");
+        }
+    }
+
+    /**
+     * Map the whole file again, after another process has grown it.
+     */
+    private void remap()
+    {
+
+        try
+        {
+            _buffer = _file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, _file.length());
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to map change journal " + _path, e);
+        }
+    }
+
+    /**
+     * Double the size of the file.
+     *
+     * @throws IOException
+     */
+    private void grow() throws IOException
+    {
+
+        long size = (long)_buffer.capacity() * 2;
+        if (size > Integer.MAX_VALUE)
+        {
+            throw new IOException("Change journal " + _path + " is full, merge or rebuild to compact it");
+        }
+
+        _buffer.force();
+        _file.setLength(size);
+        _buffer = _file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    /**
+     * The documents changed after a position in the journal.
+     */
+    public static class ChangeSet
+    {
+
+        /**
+         * The latest change type ordinal for each document.
+         */
+        private final LongLongHashMap _changes;
+
+        /**
+         * The journal position the changes run up to.
+         */
+        private final long _end;
+
+        /**
+         * Default constructor.
+         *
+         * @param changes
+         * @param end
+         */
+        ChangeSet(LongLongHashMap changes, long end)
+        {
+
+            _changes = changes;
+            _end = end;
+        }
+
+        /**
+         * Get the number of documents changed.
+         *
+         * @return the size.
+         */
+        public int size()
+        {
+
+            return _changes.size();
+        }
+
+        /**
+         * Get the journal position the changes run up to.
+         *
+         * @return the end position.
+         */
+        public long getEnd()
+        {
+
+            return _end;
+        }
+
+        /**
+         * Get the latest change to a document.
+         *
+         * @param docId
+         * @return the change, or null if unchanged.
+         */
+        public ChangeType getChange(long docId)
+        {
+
+            long type = _changes.get(docId, -1);
+
+            return type < 0 ? null : ChangeType.values()[(int)type];
+        }
+
+        /**
+         * Get every changed document, including deleted ones; use as the delta's kill-list.
+         *
+         * @return the docIds, in no particular order.
+         */
+        public long[] getChanged()
+        {
+
+            return _changes.keys();
+        }
+
+        /**
+         * Get the changed documents that still exist; these are the documents to index.
+         *
+         * @return the docIds, in no particular order.
+         */
+        public long[] getLive()
+        {
+
+            long[] changed = _changes.keys();
+            int live = 0;
+            for (long docId : changed)
+            {
+                if (_changes.get(docId, -1) != ChangeType.DELETE.ordinal())
+                {
+                    changed[live++] = docId;
+                }
+            }
+
+            return Arrays.copyOf(changed, live);
+        }
+    }
+}
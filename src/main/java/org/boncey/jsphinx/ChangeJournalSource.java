@@ -0,0 +1,175 @@
+package org.boncey.jsphinx;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A delta {@link DocumentSource} fed from a {@link ChangeJournal}: it streams exactly the documents changed since the
+ * main index was built and kill-lists every changed document, including deleted ones, so the main index's copies are
+ * suppressed.
+ *
+ * The journal is opened read-only and the changes read once, when the source is created, so it can run as the
+ * delta's <code>xmlpipe_command</code> while the application keeps recording changes. Subclasses load the documents
+ * in docId order, a batch at a time.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public abstract class ChangeJournalSource implements DocumentSource
+{
+
+    /**
+     * The default number of documents loaded at a time.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * The documents changed since the main index was built, including deleted ones.
+     */
+    private final long[] _changed;
+
+    /**
+     * The changed documents that still exist, in docId order.
+     */
+    private final long[] _live;
+
+    /**
+     * The number of documents loaded at a time.
+     */
+    private final int _batchSize;
+
+    /**
+     * The position in the live docIds of the next batch.
+     */
+    private int _next;
+
+    /**
+     * The documents in the current batch.
+     */
+    private Iterator<PipeDocument> _batch = Collections.emptyIterator();
+
+    /**
+     * Default constructor.
+     *
+     * @param journalFile the change journal the application records changes in.
+     * @throws IOException if the journal can't be read.
+     */
+    protected ChangeJournalSource(File journalFile) throws IOException
+    {
+
+        this(journalFile, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor setting the batch size.
+     *
+     * @param journalFile the change journal the application records changes in.
+     * @param batchSize the number of documents loaded at a time.
+     * @throws IOException if the journal can't be read.
+     */
+    protected ChangeJournalSource(File journalFile, int batchSize) throws IOException
+    {
+
+        ChangeJournal.ChangeSet changes;
+        try (ChangeJournal journal = new ChangeJournal(journalFile, true))
+        {
+            changes = journal.getDeltaChanges();
+        }
+
+        _changed = changes.getChanged();
+        _live = changes.getLive();
+        Arrays.sort(_live);
+        _batchSize = batchSize;
+    }
+
+    /**
+     * Load a batch of documents; any that no longer exist are left out.
+     *
+     * @param docIds the docIds to load, in ascending order.
+     * @return the documents.
+     * @throws IOException
+     */
+    protected abstract List<PipeDocument> load(long[] docIds) throws IOException;
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UncheckedIOException if a batch can't be loaded.
+     */
+    @Override
+    public boolean hasNext()
+    {
+
+        while (!_batch.hasNext() && _next < _live.length)
+        {
+            int to = Math.min(_next + _batchSize, _live.length);
+            try
+            {
+                _batch = load(Arrays.copyOfRange(_live, _next, to)).iterator();
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException("Unable to load documents " + _live[_next] + " to " + _live[to - 1], e);
+            }
+            _next = to;
+        }
+
+        return _batch.hasNext();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PipeDocument next()
+    {
+
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+
+        return _batch.next();
+    }
+
+    /**
+     * Get every document changed since the main index was built.
+     *
+     * @return the ids.
+     */
+    @Override
+    public PrimitiveIterator.OfLong getKillList()
+    {
+
+        return Arrays.stream(_changed).iterator();
+    }
+
+    /**
+     * Get the number of documents changed since the main index was built.
+     *
+     * @return the number, including deleted documents.
+     */
+    public int getChangedCount()
+    {
+
+        return _changed.length;
+    }
+
+    /**
+     * Nothing to release by default; the journal is closed once read.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException
+    {
+
+    }
+}
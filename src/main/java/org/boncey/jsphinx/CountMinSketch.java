@@ -0,0 +1,132 @@
+package org.boncey.jsphinx;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A count-min sketch for estimating how often a key has been seen in constant memory.
+ *
+ * Estimates never undercount but may overcount when keys collide in every row.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class CountMinSketch
+{
+
+    /**
+     * The number of counters in each row.
+     */
+    private final int _width;
+
+    /**
+     * The counters, one row per hash function.
+     */
+    private final long[][] _counts;
+
+    /**
+     * Default constructor.
+     *
+     * @param width the number of counters per row, more reduces overcounting.
+     * @param depth the number of rows, more reduces the chance of overcounting.
+     */
+    public CountMinSketch(int width, int depth)
+    {
+
+        if (width <= 0 || depth <= 0)
+        {
+            throw new IllegalArgumentException("Invalid sketch dimensions " + width + " x " + depth);
+        }
+
+        _width = width;
+        _counts = new long[depth][width];
+    }
+
+    /**
+     * Count an occurrence of the key.
+     *
+     * @param key
+     * @return the new estimated count for the key.
+     */
+    public synchronized long add(String key)
+    {
+
+        long hash = hash(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < _counts.length; row++)
+        {
+            int col = column(hash, row);
+            estimate = Math.min(estimate, ++_counts[row][col]);
+        }
+
+        return estimate;
+    }
+
+    /**
+     * Get the estimated count for the key.
+     *
+     * @param key
+     * @return the estimated count.
+     */
+    public synchronized long estimate(String key)
+    {
+
+        long hash = hash(key);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < _counts.length; row++)
+        {
+            estimate = Math.min(estimate, _counts[row][column(hash, row)]);
+        }
+
+        return estimate;
+    }
+
+    /**
+     * Halve every count so that recent activity outweighs old.
+     */
+    public synchronized void decay()
+    {
+
+        for (long[] row : _counts)
+        {
+            for (int col = 0; col < row.length; col++)
+            {
+                row[col] >>>= 1;
+            }
+        }
+    }
+
+    /**
+     * Get the column for the given hash in the given row (double hashing).
+     *
+     * @param hash
+     * @param row
+     * @return the column.
+     */
+    private int column(long hash, int row)
+    {
+
+        int h1 = (int)hash;
+        int h2 = (int)(hash >>> 32);
+
+        return ((h1 + row * h2) & Integer.MAX_VALUE) % _width;
+    }
+
+    /**
+     * Hash the key (64 bit FNV-1a).
+     *
+     * @param key
+     * @return the hash.
+     */
+    private static long hash(String key)
+    {
+
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8))
+        {
+            hash ^= (b & 0xFF);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+}
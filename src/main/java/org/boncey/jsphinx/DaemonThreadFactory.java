@@ -0,0 +1,48 @@
+package org.boncey.jsphinx;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads for background work, so they never keep the JVM alive.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+class DaemonThreadFactory implements ThreadFactory
+{
+
+    /**
+     * The thread name prefix.
+     */
+    private final String _name;
+
+    /**
+     * The number of threads created.
+     */
+    private final AtomicInteger _count = new AtomicInteger();
+
+    /**
+     * Default constructor.
+     *
+     * @param name the thread name prefix.
+     */
+    DaemonThreadFactory(String name)
+    {
+
+        _name = name;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Thread newThread(Runnable runnable)
+    {
+
+        Thread thread = new Thread(runnable, _name + "-" + _count.incrementAndGet());
+        thread.setDaemon(true);
+
+        return thread;
+    }
+}
@@ -0,0 +1,115 @@
+package org.boncey.jsphinx;
+
+/**
+ * A Bloom filter of docIds: answers "might this index hold the document?" with no false negatives.
+ *
+ * Sized for an expected number of documents and false positive rate; adding more than expected still works but
+ * raises the false positive rate. Adds are not thread safe, so fill the filter before sharing it.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+class DocIdBloomFilter
+{
+
+    /**
+     * The bits.
+     */
+    private final long[] _bits;
+
+    /**
+     * The number of bits.
+     */
+    private final long _size;
+
+    /**
+     * The number of hash functions.
+     */
+    private final int _hashes;
+
+    /**
+     * Default constructor.
+     *
+     * @param expected the expected number of documents.
+     * @param falsePositiveRate the acceptable false positive rate, e.g. 0.01.
+     */
+    DocIdBloomFilter(long expected, double falsePositiveRate)
+    {
+
+        long n = Math.max(expected, 1);
+        long bits = (long)Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        bits = Math.max(64, Math.min(bits, (long)Integer.MAX_VALUE * 64));
+        _bits = new long[(int)((bits + 63) / 64)];
+        _size = _bits.length * 64L;
+        _hashes = Math.max(1, (int)Math.round((double)_size / n * Math.log(2)));
+    }
+
+    /**
+     * Add a document.
+     *
+     * @param docId
+     */
+    void add(long docId)
+    {
+
+        long hash = mix(docId);
+        long h1 = hash >>> 32;
+        long h2 = hash & 0xFFFFFFFFL | 1;
+        for (int i = 0; i < _hashes; i++)
+        {
+            long bit = Long.remainderUnsigned(h1 + i * h2, _size);
+            _bits[(int)(bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Might the document have been added?
+     *
+     * @param docId
+     * @return false if the document was definitely not added.
+     */
+    boolean mightContain(long docId)
+    {
+
+        long hash = mix(docId);
+        long h1 = hash >>> 32;
+        long h2 = hash & 0xFFFFFFFFL | 1;
+        for (int i = 0; i < _hashes; i++)
+        {
+            long bit = Long.remainderUnsigned(h1 + i * h2, _size);
+            if ((_bits[(int)(bit >>> 6)] & 1L << bit) == 0)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the size of the filter.
+     *
+     * @return the number of bytes used.
+     */
+    long getBytes()
+    {
+
+        return _bits.length * 8L;
+    }
+
+    /**
+     * Spread the bits of a docId, since docIds are usually sequential.
+     *
+     * @param docId
+     * @return the hash.
+     */
+    private static long mix(long docId)
+    {
+
+        long z = docId + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,38 @@
+package org.boncey.jsphinx;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+import java.util.stream.LongStream;
+
+/**
+ * Supplies documents to a {@link PipeWriter} one at a time, so any number can be streamed in constant memory.
+ *
+ * Implementations used from the command line need a public no-argument constructor, or one taking the remaining
+ * command line arguments as a String[].
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public interface DocumentSource extends Iterator<PipeDocument>, Closeable
+{
+
+    /**
+     * Get the schema of the documents.
+     *
+     * @return the schema.
+     */
+    PipeSchema getSchema();
+
+    /**
+     * Get the ids of documents to suppress in older indexes, e.g. those changed or deleted since the main index was
+     * built. Read after the last document.
+     *
+     * @return the ids, none by default.
+     */
+    default PrimitiveIterator.OfLong getKillList()
+    {
+
+        return LongStream.empty().iterator();
+    }
+}
@@ -0,0 +1,808 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A local, compressed store of document text keyed by docId, so excerpts can be built without loading documents from
+ * the database.
+ *
+ * Documents are appended to a file in blocks, each compressed on its own and read back through memory-mapped segments.
+ * The block headers (which hold the docIds uncompressed) are scanned on open to rebuild the in-memory index without
+ * decompressing anything. Storing a docId again supersedes the earlier copy; storing null removes it, and
+ * {@link #compact()} rewrites the file without the superseded copies.
+ *
+ * Several processes can share a store, e.g. an <code>xmlpipe_command</code> writing documents as they're indexed
+ * (see {@link StoringDocumentSource}) while the application reads them. Appends and compaction are serialized through
+ * a lock on a <code>.lock</code> file alongside the store, each process picks up blocks appended by others on its next
+ * write or {@link #refresh()}, and a compacted file replacing the one a process has open is reopened.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class DocumentStore implements Closeable
+{
+
+    /**
+     * Identifies a document store file.
+     */
+    private static final int MAGIC = 0x4A534453;
+
+    /**
+     * The file format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The size of the file header.
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * The size of a mapped segment; blocks never straddle segments.
+     */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * The maximum number of documents in a block.
+     */
+    private static final int MAX_BLOCK_DOCS = 0xFFFF;
+
+    /**
+     * The number of decompressed blocks to cache.
+     */
+    private static final int CACHED_BLOCKS = 64;
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(DocumentStore.class);
+
+    /**
+     * The store file.
+     */
+    private final File _path;
+
+    /**
+     * The lock file shared with other processes, or null if not shared.
+     */
+    private final FileChannel _lock;
+
+    /**
+     * The open file.
+     */
+    private RandomAccessFile _file;
+
+    /**
+     * Identifies the open file, to tell when it's been replaced by a compacted copy.
+     */
+    private Object _fileKey;
+
+    /**
+     * The target uncompressed size of a block.
+     */
+    private final int _blockSize;
+
+    /**
+     * The mapped segments of the file.
+     */
+    private final List<MappedByteBuffer> _segments = new ArrayList<>();
+
+    /**
+     * The location of each stored document, as block offset &lt;&lt; 16 | position in block.
+     */
+    private final LongLongHashMap _locations = new LongLongHashMap();
+
+    /**
+     * Documents not yet written to a block.
+     */
+    private final Map<Long, String> _pending = new LinkedHashMap<>();
+
+    /**
+     * The uncompressed size of the pending documents.
+     */
+    private int _pendingSize;
+
+    /**
+     * Recently decompressed blocks, keyed by offset.
+     */
+    private final Map<Long, byte[]> _blocks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest)
+        {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+
+    /**
+     * Where the next block will be written.
+     */
+    private long _end;
+
+    /**
+     * The number of entries in the file's blocks, including superseded copies and removals.
+     */
+    private long _entries;
+
+    /**
+     * Default constructor.
+     *
+     * @param file the store file, created if it doesn't exist.
+     * @param blockSize the target uncompressed size of each block (e.g. 64KB).
+     * @throws IOException
+     */
+    public DocumentStore(File file, int blockSize) throws IOException
+    {
+
+        this(file, blockSize, true);
+    }
+
+    /**
+     * Open a store, optionally shared with other processes.
+     *
+     * @param file the store file, created if it doesn't exist.
+     * @param blockSize the target uncompressed size of each block.
+     * @param shared lock the store against other processes.
+     * @throws IOException
+     */
+    private DocumentStore(File file, int blockSize, boolean shared) throws IOException
+    {
+
+        _path = file;
+        _blockSize = blockSize;
+        _lock = shared ? FileChannel.open(new File(file.getPath() + ".lock").toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE) : null;
+        try
+        {
+            FileLock lock = lock();
+            try
+            {
+                open();
+            }
+            finally
+            {
+                unlock(lock);
+            }
+        }
+        catch (IOException e)
+        {
+            if (_lock != null)
+            {
+                _lock.close();
+            }
+            throw e;
+        }
+        _log.info("Opened document store " + file + " with " + _locations.size() + " documents");
+    }
+
+    /**
+     * Store a document, replacing any earlier version.
+     *
+     * @param docId
+     * @param text the text or null to remove the document.
+     * @throws IOException
+     */
+    public synchronized void put(long docId, String text) throws IOException
+    {
+
+        String previous = _pending.put(docId, text);
+        _pendingSize += text == null ? 0 : text.length();
+        _pendingSize -= previous == null ? 0 : previous.length();
+        if (_pendingSize >= _blockSize || _pending.size() >= MAX_BLOCK_DOCS)
+        {
+            FileLock lock = lock();
+            try
+            {
+                catchUp();
+                writeBlock();
+            }
+            finally
+            {
+                unlock(lock);
+            }
+        }
+    }
+
+    /**
+     * Get a document.
+     *
+     * @param docId
+     * @return the text or null if not stored.
+     * @throws IOException
+     */
+    public synchronized String get(long docId) throws IOException
+    {
+
+        if (_pending.containsKey(docId))
+        {
+            return _pending.get(docId);
+        }
+
+        long location = _locations.get(docId, -1);
+        if (location < 0)
+        {
+            return null;
+        }
+
+        byte[] block = readBlock(location >>> 16);
+        int ordinal = (int)(location & 0xFFFF);
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        int start = ordinal == 0 ? buffer.getInt(block.length - 4) : buffer.getInt((ordinal - 1) * 4);
+        int end = buffer.getInt(ordinal * 4);
+
+        return new String(block, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get several documents.
+     *
+     * @param docIds
+     * @return the text of each document, null where not stored.
+     * @throws IOException
+     */
+    public synchronized String[] get(long[] docIds) throws IOException
+    {
+
+        String[] docs = new String[docIds.length];
+        for (int i = 0; i < docIds.length; i++)
+        {
+            docs[i] = get(docIds[i]);
+        }
+
+        return docs;
+    }
+
+    /**
+     * Get the number of stored documents.
+     *
+     * @return the size.
+     */
+    public synchronized int size()
+    {
+
+        int size = _locations.size();
+        for (Map.Entry<Long, String> entry : _pending.entrySet())
+        {
+            if (entry.getValue() == null && _locations.containsKey(entry.getKey()))
+            {
+                size--;
+            }
+            else if (entry.getValue() != null && !_locations.containsKey(entry.getKey()))
+            {
+                size++;
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Write any pending documents and force them to disk.
+     *
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException
+    {
+
+        if (!_pending.isEmpty())
+        {
+            FileLock lock = lock();
+            try
+            {
+                catchUp();
+                writeBlock();
+            }
+            finally
+            {
+                unlock(lock);
+            }
+        }
+        _file.getChannel().force(false);
+    }
+
+    /**
+     * Pick up documents written by other processes since this one last wrote or refreshed.
+     *
+     * @throws IOException
+     */
+    public synchronized void refresh() throws IOException
+    {
+
+        FileLock lock = lock();
+        try
+        {
+            catchUp();
+        }
+        finally
+        {
+            unlock(lock);
+        }
+    }
+
+    /**
+     * Get the proportion of the stored entries that are superseded copies or removals, which {@link #compact()} would
+     * reclaim.
+     *
+     * @return the ratio, from 0 to 1.
+     */
+    public synchronized double getGarbageRatio()
+    {
+
+        return _entries == 0 ? 0 : 1 - (double)_locations.size() / _entries;
+    }
+
+    /**
+     * Rewrite the store with only the current copy of each document, replacing the file.
+     *
+     * Other processes holding the store open reopen the compacted file before their next write, so this is safe
+     * while they're idle; a process that has buffered documents but not yet written them keeps them buffered.
+     *
+     * @throws IOException
+     */
+    public synchronized void compact() throws IOException
+    {
+
+        FileLock lock = lock();
+        try
+        {
+            catchUp();
+            if (!_pending.isEmpty())
+            {
+                writeBlock();
+            }
+
+            long start = System.currentTimeMillis();
+            long before = _end;
+            File compactFile = new File(_path.getPath() + ".compact");
+            Files.deleteIfExists(compactFile.toPath());
+            try (DocumentStore compacted = new DocumentStore(compactFile, _blockSize, false))
+            {
+                // Copy block by block, so each block is only decompressed once
+                long offset = HEADER_SIZE;
+                ByteBuffer header = ByteBuffer.allocate(12);
+                while (offset < _end)
+                {
+                    long remaining = SEGMENT_SIZE - offset % SEGMENT_SIZE;
+                    header.clear();
+                    int blockLength = 0;
+                    if (remaining >= header.capacity() && _file.getChannel().read(header, offset) == header.capacity())
+                    {
+                        blockLength = header.getInt(0);
+                    }
+                    if (blockLength == 0)
+                    {
+                        offset += remaining;
+                        continue;
+                    }
+
+                    int count = header.getInt(4);
+                    ByteBuffer ids = ByteBuffer.allocate(count * 8);
+                    _file.getChannel().read(ids, offset + 12);
+                    for (int i = 0; i < count; i++)
+                    {
+                        long docId = ids.getLong(i * 8);
+                        if (docId >= 0 && _locations.get(docId, -1) == (offset << 16 | i))
+                        {
+                            compacted.put(docId, get(docId));
+                        }
+                    }
+                    offset += 4 + blockLength;
+                }
+            }
+
+            _segments.clear();
+            _blocks.clear();
+            _file.close();
+            Files.move(compactFile.toPath(), _path.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            open();
+            _log.info("Compacted document store " + _path + " from " + before + " to " + _end + " bytes in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        }
+        finally
+        {
+            unlock(lock);
+        }
+    }
+
+    /**
+     * Flush and close the store.
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+
+        try
+        {
+            flush();
+            _segments.clear();
+            _file.close();
+        }
+        finally
+        {
+            if (_lock != null)
+            {
+                _lock.close();
+            }
+        }
+    }
+
+    /**
+     * Lock the store against other processes.
+     *
+     * @return the lock, or null if the store isn't shared.
+     * @throws IOException
+     */
+    private FileLock lock() throws IOException
+    {
+
+        return _lock != null ? _lock.lock() : null;
+    }
+
+    /**
+     * Release a lock taken by {@link #lock()}.
+     *
+     * @param lock the lock, or null if the store isn't shared.
+     * @throws IOException
+     */
+    private void unlock(FileLock lock) throws IOException
+    {
+
+        if (lock != null)
+        {
+            lock.release();
+        }
+    }
+
+    /**
+     * Open the file and scan it, creating it if need be; called with the lock held.
+     *
+     * @throws IOException
+     */
+    private void open() throws IOException
+    {
+
+        _file = new RandomAccessFile(_path, "rw");
+        _fileKey = Files.readAttributes(_path.toPath(), BasicFileAttributes.class).fileKey();
+        if (_file.length() < HEADER_SIZE)
+        {
+            _file.setLength(0);
+            _file.writeInt(MAGIC);
+            _file.writeInt(VERSION);
+        }
+        else if (_file.readInt() != MAGIC || _file.readInt() != VERSION)
+        {
+            _file.close();
+            throw new IOException(_path + " is not a document store");
+        }
+
+        _locations.clear();
+        _segments.clear();
+        _blocks.clear();
+        _end = HEADER_SIZE;
+        _entries = 0;
+        scan();
+    }
+
+    /**
+     * Reopen the file if another process has replaced it with a compacted copy, then pick up any blocks appended
+     * since the last scan; called with the lock held.
+     *
+     * @throws IOException
+     */
+    private void catchUp() throws IOException
+    {
+
+        Object fileKey = Files.readAttributes(_path.toPath(), BasicFileAttributes.class).fileKey();
+        if (fileKey != null && !fileKey.equals(_fileKey))
+        {
+            _file.close();
+            open();
+        }
+        else
+        {
+            scan();
+        }
+    }
+
+    /**
+     * Compress the pending documents into a block and append it; called with the lock held.
+     *
+     * Block layout: total length, document count, uncompressed payload length and the docIds (complemented for
+     * removed documents), then the compressed payload: the end offset of each document's text, the UTF-8 text and
+     * finally the start offset of the first document's text.
+     *
+     * @throws IOException
+     */
+    private void writeBlock() throws IOException
+    {
+
+        int count = _pending.size();
+        long[] docIds = new long[count];
+        byte[][] texts = new byte[count][];
+        int n = 0;
+        int length = count * 4 + 4;
+        for (Map.Entry<Long, String> entry : _pending.entrySet())
+        {
+            String text = entry.getValue();
+            docIds[n] = text == null ? ~entry.getKey() : entry.getKey();
+            texts[n] = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+            length += texts[n].length;
+            n++;
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        int offset = count * 4;
+        for (byte[] text : texts)
+        {
+            offset += text.length;
+            payload.putInt(offset);
+        }
+        for (byte[] text : texts)
+        {
+            payload.put(text);
+        }
+        payload.putInt(count * 4);
+
+        byte[] compressed = compress(payload.array());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(12 + count * 8 + compressed.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(8 + count * 8 + compressed.length);
+        out.writeInt(count);
+        out.writeInt(length);
+        for (long docId : docIds)
+        {
+            out.writeLong(docId);
+        }
+        out.write(compressed);
+        byte[] block = bytes.toByteArray();
+        if (block.length > SEGMENT_SIZE)
+        {
+            throw new IOException("Block of " + block.length + " bytes is too large");
+        }
+
+        long blockOffset = _end;
+        if (blockOffset / SEGMENT_SIZE != (blockOffset + block.length - 1) / SEGMENT_SIZE)
+        {
+            // Leave a hole rather than straddle segments
+            blockOffset = (blockOffset / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+        }
+
+        _file.getChannel().write(ByteBuffer.wrap(block), blockOffset);
+        _end = blockOffset + block.length;
+        _blocks.put(blockOffset, payload.array());
+        index(blockOffset, docIds);
+
+        _pending.clear();
+        _pendingSize = 0;
+    }
+
+    /**
+     * Scan the block headers to rebuild the index, truncating any partially written block.
+     *
+     * @throws IOException
+     */
+    private void scan() throws IOException
+    {
+
+        long length = _file.length();
+        ByteBuffer header = ByteBuffer.allocate(12);
+        while (_end < length)
+        {
+            long remaining = SEGMENT_SIZE - _end % SEGMENT_SIZE;
+            header.clear();
+            int blockLength = 0;
+            if (remaining >= header.capacity() && _file.getChannel().read(header, _end) == header.capacity())
+            {
+                blockLength = header.getInt(0);
+            }
+            if (blockLength == 0)
+            {
+                _end = Math.min(_end + remaining, length);
+                continue;
+            }
+
+            int count = header.getInt(4);
+            if (blockLength < 8 || _end + 4 + blockLength > length || count < 0 || count > MAX_BLOCK_DOCS)
+            {
+                _log.warn("Truncating partially written block at " + _end);
+                _file.setLength(_end);
+                break;
+            }
+
+            ByteBuffer ids = ByteBuffer.allocate(count * 8);
+            _file.getChannel().read(ids, _end + 12);
+            long[] docIds = new long[count];
+            for (int i = 0; i < count; i++)
+            {
+                docIds[i] = ids.getLong(i * 8);
+            }
+            index(_end, docIds);
+            _end += 4 + blockLength;
+        }
+    }
+
+    /**
+     * Record the location of each document in a block.
+     *
+     * @param blockOffset
+     * @param docIds the docIds, complemented for removed documents.
+     */
+    private void index(long blockOffset, long[] docIds)
+    {
+
+        _entries += docIds.length;
+        for (int i = 0; i < docIds.length; i++)
+        {
+            if (docIds[i] < 0)
+            {
+                _locations.remove(~docIds[i]);
+            }
+            else
+            {
+                _locations.put(docIds[i], blockOffset << 16 | i);
+            }
+        }
+    }
+
+    /**
+     * Read and decompress a block, caching the result.
+     *
+     * @param blockOffset
+     * @return the uncompressed payload.
+     * @throws IOException
+     */
+    private byte[] readBlock(long blockOffset) throws IOException
+    {
+
+        byte[] payload = _blocks.get(blockOffset);
+        if (payload != null)
+        {
+            return payload;
+        }
+
+        ByteBuffer segment = segment(blockOffset).duplicate();
+        int pos = (int)(blockOffset % SEGMENT_SIZE);
+        int blockLength = segment.getInt(pos);
+        int count = segment.getInt(pos + 4);
+        int length = segment.getInt(pos + 8);
+        int compressedStart = pos + 12 + count * 8;
+        int compressedLength = blockLength - 8 - count * 8;
+
+        byte[] compressed = new byte[compressedLength];
+        segment.position(compressedStart);
+        segment.get(compressed);
+
+        payload = decompress(compressed, length);
+        _blocks.put(blockOffset, payload);
+
+        return payload;
+    }
+
+    /**
+     * Get the mapped segment containing the offset, mapping it if need be.
+     *
+     * @param offset
+     * @return the segment.
+     * @throws IOException
+     */
+    private MappedByteBuffer segment(long offset) throws IOException
+    {
+
+        int index = (int)(offset / SEGMENT_SIZE);
+        long start = index * SEGMENT_SIZE;
+        long mappedLength = Math.min(SEGMENT_SIZE, _end - start);
+        while (_segments.size() <= index)
+        {
+            _segments.add(null);
+        }
+
+        // Remap once the segment has grown past what was mapped
+        MappedByteBuffer segment = _segments.get(index);
+        if (segment == null || segment.capacity() < mappedLength)
+        {
+            segment = _file.getChannel().map(FileChannel.MapMode.READ_ONLY, start, mappedLength);
+            _segments.set(index, segment);
+        }
+
+        return segment;
+    }
+
+    /**
+     * Compress a payload.
+     *
+     * @param data
+     * @return the compressed data.
+     */
+    private static byte[] compress(byte[] data)
+    {
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try
+        {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished())
+            {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+
+            return out.toByteArray();
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompress a payload.
+     *
+     * @param compressed
+     * @param length the uncompressed length.
+     * @return the data.
+     * @throws IOException
+     */
+    private static byte[] decompress(byte[] compressed, int length) throws IOException
+    {
+
+        Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput(compressed);
+            byte[] data = new byte[length];
+            int n = 0;
+            while (n < length && !inflater.finished())
+            {
+                int inflated = inflater.inflate(data, n, length - n);
+                if (inflated == 0 && inflater.needsInput())
+                {
+                    break;
+                }
+                n += inflated;
+            }
+            if (n != length)
+            {
+                throw new IOException("Corrupt block, expected " + length + " bytes but got " + n);
+            }
+
+            return data;
+        }
+        catch (DataFormatException e)
+        {
+            throw new IOException("Corrupt block", e);
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package org.boncey.jsphinx;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Typed options for building excerpts, with the same defaults as <code>BuildExcerpts</code>.
+ *
+ * @see <a href="http://sphinxsearch.com/docs/current.html#api-func-buildexcerpts">Sphinx docs</a>
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class ExcerptOptions
+{
+
+    /**
+     * Inserted before each keyword match.
+     */
+    private String _beforeMatch = "<b>";
+
+    /**
+     * Inserted after each keyword match.
+     */
+    private String _afterMatch = "</b>";
+
+    /**
+     * Inserted between excerpt chunks.
+     */
+    private String _chunkSeparator = "...";
+
+    /**
+     * The HTML stripping mode.
+     */
+    private String _htmlStripMode = "index";
+
+    /**
+     * The maximum snippet size, in characters.
+     */
+    private int _limit = 256;
+
+    /**
+     * The number of words to pick around each matching keyword block.
+     */
+    private int _around = 5;
+
+    /**
+     * The maximum number of passages (0 for no limit).
+     */
+    private int _limitPassages;
+
+    /**
+     * The maximum number of keywords (0 for no limit).
+     */
+    private int _limitWords;
+
+    /**
+     * The starting value of the %PASSAGE_ID% macro.
+     */
+    private int _startPassageId = 1;
+
+    /**
+     * Highlight exact phrase matches only.
+     */
+    private boolean _exactPhrase;
+
+    /**
+     * Extract the single best passage only.
+     */
+    private boolean _singlePassage;
+
+    /**
+     * Additionally break passages by phrase boundary characters.
+     */
+    private boolean _useBoundaries;
+
+    /**
+     * Sort passages by relevance rather than position.
+     */
+    private boolean _weightOrder;
+
+    /**
+     * Treat the words as an extended query.
+     */
+    private boolean _queryMode;
+
+    /**
+     * Ignore the snippet length limit until all keywords are included.
+     */
+    private boolean _forceAllWords;
+
+    /**
+     * Treat documents as file names to load.
+     */
+    private boolean _loadFiles;
+
+    /**
+     * Return an empty string rather than the document start if there's no match.
+     */
+    private boolean _allowEmpty;
+
+    /**
+     * The options as a BuildExcerpts map, built on first use.
+     */
+    private Map<String, Object> _map;
+
+    public String getBeforeMatch()
+    {
+        return _beforeMatch;
+    }
+
+    public void setBeforeMatch(String beforeMatch)
+    {
+        _beforeMatch = beforeMatch;
+        _map = null;
+    }
+
+    public String getAfterMatch()
+    {
+        return _afterMatch;
+    }
+
+    public void setAfterMatch(String afterMatch)
+    {
+        _afterMatch = afterMatch;
+        _map = null;
+    }
+
+    public String getChunkSeparator()
+    {
+        return _chunkSeparator;
+    }
+
+    public void setChunkSeparator(String chunkSeparator)
+    {
+        _chunkSeparator = chunkSeparator;
+        _map = null;
+    }
+
+    public String getHtmlStripMode()
+    {
+        return _htmlStripMode;
+    }
+
+    public void setHtmlStripMode(String htmlStripMode)
+    {
+        _htmlStripMode = htmlStripMode;
+        _map = null;
+    }
+
+    public int getLimit()
+    {
+        return _limit;
+    }
+
+    public void setLimit(int limit)
+    {
+        _limit = limit;
+        _map = null;
+    }
+
+    public int getAround()
+    {
+        return _around;
+    }
+
+    public void setAround(int around)
+    {
+        _around = around;
+        _map = null;
+    }
+
+    public int getLimitPassages()
+    {
+        return _limitPassages;
+    }
+
+    public void setLimitPassages(int limitPassages)
+    {
+        _limitPassages = limitPassages;
+        _map = null;
+    }
+
+    public int getLimitWords()
+    {
+        return _limitWords;
+    }
+
+    public void setLimitWords(int limitWords)
+    {
+        _limitWords = limitWords;
+        _map = null;
+    }
+
+    public int getStartPassageId()
+    {
+        return _startPassageId;
+    }
+
+    public void setStartPassageId(int startPassageId)
+    {
+        _startPassageId = startPassageId;
+        _map = null;
+    }
+
+    public boolean isExactPhrase()
+    {
+        return _exactPhrase;
+    }
+
+    public void setExactPhrase(boolean exactPhrase)
+    {
+        _exactPhrase = exactPhrase;
+        _map = null;
+    }
+
+    public boolean isSinglePassage()
+    {
+        return _singlePassage;
+    }
+
+    public void setSinglePassage(boolean singlePassage)
+    {
+        _singlePassage = singlePassage;
+        _map = null;
+    }
+
+    public boolean isUseBoundaries()
+    {
+        return _useBoundaries;
+    }
+
+    public void setUseBoundaries(boolean useBoundaries)
+    {
+        _useBoundaries = useBoundaries;
+        _map = null;
+    }
+
+    public boolean isWeightOrder()
+    {
+        return _weightOrder;
+    }
+
+    public void setWeightOrder(boolean weightOrder)
+    {
+        _weightOrder = weightOrder;
+        _map = null;
+    }
+
+    public boolean isQueryMode()
+    {
+        return _queryMode;
+    }
+
+    public void setQueryMode(boolean queryMode)
+    {
+        _queryMode = queryMode;
+        _map = null;
+    }
+
+    public boolean isForceAllWords()
+    {
+        return _forceAllWords;
+    }
+
+    public void setForceAllWords(boolean forceAllWords)
+    {
+        _forceAllWords = forceAllWords;
+        _map = null;
+    }
+
+    public boolean isLoadFiles()
+    {
+        return _loadFiles;
+    }
+
+    public void setLoadFiles(boolean loadFiles)
+    {
+        _loadFiles = loadFiles;
+        _map = null;
+    }
+
+    public boolean isAllowEmpty()
+    {
+        return _allowEmpty;
+    }
+
+    public void setAllowEmpty(boolean allowEmpty)
+    {
+        _allowEmpty = allowEmpty;
+        _map = null;
+    }
+
+    /**
+     * Get the options as a complete, read-only map for <code>BuildExcerpts</code>.
+     *
+     * As every option is present <code>BuildExcerpts</code> has nothing to fill in, so the same map can be shared by
+     * concurrent requests.
+     *
+     * @return the options.
+     */
+    @SuppressWarnings("boxing")
+    public synchronized Map<String, Object> toMap()
+    {
+
+        if (_map == null)
+        {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("before_match", _beforeMatch);
+            map.put("after_match", _afterMatch);
+            map.put("chunk_separator", _chunkSeparator);
+            map.put("html_strip_mode", _htmlStripMode);
+            map.put("limit", _limit);
+            map.put("limit_passages", _limitPassages);
+            map.put("limit_words", _limitWords);
+            map.put("around", _around);
+            map.put("start_passage_id", _startPassageId);
+            map.put("exact_phrase", _exactPhrase ? 1 : 0);
+            map.put("single_passage", _singlePassage ? 1 : 0);
+            map.put("use_boundaries", _useBoundaries ? 1 : 0);
+            map.put("weight_order", _weightOrder ? 1 : 0);
+            map.put("load_files", _loadFiles ? 1 : 0);
+            map.put("allow_empty", _allowEmpty ? 1 : 0);
+            map.put("query_mode", _queryMode ? 1 : 0);
+            map.put("force_all_words", _forceAllWords ? 1 : 0);
+            _map = Collections.unmodifiableMap(map);
+        }
+
+        return _map;
+    }
+
+    /**
+     * Get a key identifying these options, used for caching.
+     *
+     * @return the key.
+     */
+    public String getCacheKey()
+    {
+
+        return toMap().toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+
+        return String.format("ExcerptOptions %s", toMap());
+    }
+}
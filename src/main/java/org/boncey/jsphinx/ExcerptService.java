@@ -0,0 +1,354 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sphx.api.SphinxClient;
+import org.sphx.api.SphinxException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds excerpts by splitting the documents into size-balanced chunks sent to searchd in parallel.
+ *
+ * Snippets are cached by document id, document version, words, index and options so that pagination and repeat
+ * visits don't regenerate them.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class ExcerptService
+{
+
+    /**
+     * The smallest chunk worth sending on its own, in characters.
+     */
+    private static final int MIN_CHUNK_CHARS = 16 * 1024;
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(ExcerptService.class);
+
+    /**
+     * The connections to send chunks over.
+     */
+    private final SphinxClientPool _pool;
+
+    /**
+     * The maximum number of chunks to send at once.
+     */
+    private final int _parallelism;
+
+    /**
+     * Sends the chunks.
+     */
+    private final ExecutorService _executor;
+
+    /**
+     * The cached snippets, least recently used first.
+     */
+    private final Map<String, String> _snippets;
+
+    /**
+     * Default constructor.
+     *
+     * @param pool the connections to send chunks over.
+     * @param parallelism the maximum number of chunks to send at once.
+     * @param cacheSize the maximum number of snippets to cache.
+     */
+    public ExcerptService(SphinxClientPool pool, int parallelism, final int cacheSize)
+    {
+
+        _pool = pool;
+        _parallelism = parallelism;
+        _executor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("jsphinx-excerpt"));
+        _snippets = new LinkedHashMap<String, String>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+            {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Build excerpts for the documents, using cached snippets where possible.
+     *
+     * @param docIds the id of each document.
+     * @param versions the version of each document, e.g. its last updated time.
+     * @param docs the text of each document.
+     * @param index the index whose settings to use.
+     * @param words the words to highlight.
+     * @param options
+     * @return the snippets, in document order.
+     * @throws SphinxException
+     */
+    public String[] buildExcerpts(long[] docIds, long[] versions, String[] docs, String index, String words,
+            ExcerptOptions options) throws SphinxException
+    {
+
+        if (docIds.length != docs.length || versions.length != docs.length)
+        {
+            throw new SphinxException("docIds, versions and docs must be the same length");
+        }
+
+        String[] snippets = new String[docs.length];
+        String[] keys = new String[docs.length];
+        List<Integer> missing = new ArrayList<>();
+        synchronized (_snippets)
+        {
+            for (int i = 0; i < docs.length; i++)
+            {
+                keys[i] = String.format("%d|%d|%s|%s|%s", docIds[i], versions[i], index, words, options.getCacheKey());
+                snippets[i] = _snippets.get(keys[i]);
+                if (snippets[i] == null)
+                {
+                    missing.add(i);
+                }
+            }
+        }
+
+        if (missing.isEmpty())
+        {
+            return snippets;
+        }
+
+        String[] missingDocs = new String[missing.size()];
+        for (int i = 0; i < missingDocs.length; i++)
+        {
+            missingDocs[i] = docs[missing.get(i)];
+        }
+        String[] built = buildExcerpts(missingDocs, index, words, options);
+
+        synchronized (_snippets)
+        {
+            for (int i = 0; i < built.length; i++)
+            {
+                int pos = missing.get(i);
+                snippets[pos] = built[i];
+                _snippets.put(keys[pos], built[i]);
+            }
+        }
+
+        return snippets;
+    }
+
+    /**
+     * Build excerpts for documents held in the local document store, using cached snippets where possible.
+     *
+     * @param docIds the id of each document.
+     * @param versions the version of each document, e.g. its last updated time.
+     * @param store the store holding the document text; documents not stored are treated as empty.
+     * @param index the index whose settings to use.
+     * @param words the words to highlight.
+     * @param options
+     * @return the snippets, in document order.
+     * @throws SphinxException
+     */
+    public String[] buildExcerpts(long[] docIds, long[] versions, DocumentStore store, String index, String words,
+            ExcerptOptions options) throws SphinxException
+    {
+
+        String[] docs;
+        try
+        {
+            docs = store.get(docIds);
+        }
+        catch (IOException e)
+        {
+            throw new SphinxException("Unable to read documents: " + e.getMessage());
+        }
+
+        for (int i = 0; i < docs.length; i++)
+        {
+            if (docs[i] == null)
+            {
+                docs[i] = "";
+            }
+        }
+
+        return buildExcerpts(docIds, versions, docs, index, words, options);
+    }
+
+    /**
+     * Build excerpts for the documents without caching.
+     *
+     * @param docs the text of each document.
+     * @param index the index whose settings to use.
+     * @param words the words to highlight.
+     * @param options
+     * @return the snippets, in document order.
+     * @throws SphinxException
+     */
+    public String[] buildExcerpts(String[] docs, String index, String words, ExcerptOptions options)
+            throws SphinxException
+    {
+
+        int[][] chunks = chunk(docs);
+        List<Future<String[]>> futures = new ArrayList<>(chunks.length);
+        for (int[] chunk : chunks)
+        {
+            String[] chunkDocs = new String[chunk.length];
+            for (int i = 0; i < chunk.length; i++)
+            {
+                chunkDocs[i] = docs[chunk[i]];
+            }
+            futures.add(_executor.submit(() -> send(chunkDocs, index, words, options)));
+        }
+
+        String[] snippets = new String[docs.length];
+        try
+        {
+            for (int c = 0; c < chunks.length; c++)
+            {
+                String[] chunkSnippets = futures.get(c).get();
+                for (int i = 0; i < chunks[c].length; i++)
+                {
+                    snippets[chunks[c][i]] = chunkSnippets[i];
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SphinxException("Interrupted building excerpts");
+        }
+        catch (ExecutionException e)
+        {
+            throw new SphinxException("Unable to build excerpts: " + e.getCause().getMessage());
+        }
+        finally
+        {
+            for (Future<String[]> future : futures)
+            {
+                future.cancel(true);
+            }
+        }
+
+        return snippets;
+    }
+
+    /**
+     * Remove all cached snippets.
+     */
+    public void clear()
+    {
+
+        synchronized (_snippets)
+        {
+            _snippets.clear();
+        }
+    }
+
+    /**
+     * Stop sending chunks.
+     */
+    public void shutdown()
+    {
+
+        _executor.shutdownNow();
+    }
+
+    /**
+     * Split the documents into chunks of roughly equal total size, largest documents first into the lightest chunk.
+     *
+     * @param docs
+     * @return the document positions in each chunk, each in ascending order.
+     */
+    private int[][] chunk(String[] docs)
+    {
+
+        long total = 0;
+        List<Integer> order = new ArrayList<>(docs.length);
+        for (int i = 0; i < docs.length; i++)
+        {
+            total += docs[i].length();
+            order.add(i);
+        }
+
+        int chunks = (int)Math.max(1, Math.min(Math.min(_parallelism, docs.length), total / MIN_CHUNK_CHARS));
+        order.sort((a, b) -> Integer.compare(docs[b].length(), docs[a].length()));
+
+        long[] sizes = new long[chunks];
+        int[] counts = new int[chunks];
+        int[] chunkOf = new int[docs.length];
+        for (int doc : order)
+        {
+            int lightest = 0;
+            for (int c = 1; c < chunks; c++)
+            {
+                if (sizes[c] < sizes[lightest])
+                {
+                    lightest = c;
+                }
+            }
+            sizes[lightest] += docs[doc].length();
+            chunkOf[doc] = lightest;
+            counts[lightest]++;
+        }
+
+        int[][] result = new int[chunks][];
+        for (int c = 0; c < chunks; c++)
+        {
+            result[c] = new int[counts[c]];
+            counts[c] = 0;
+        }
+        for (int doc = 0; doc < docs.length; doc++)
+        {
+            int c = chunkOf[doc];
+            result[c][counts[c]++] = doc;
+        }
+
+        return result;
+    }
+
+    /**
+     * Send a chunk of documents to searchd over a pooled connection.
+     *
+     * @param docs
+     * @param index
+     * @param words
+     * @param options
+     * @return the snippets.
+     * @throws SphinxException
+     * @throws InterruptedException
+     */
+    private String[] send(String[] docs, String index, String words, ExcerptOptions options)
+            throws SphinxException, InterruptedException
+    {
+
+        if (docs.length == 0)
+        {
+            return docs;
+        }
+
+        SphinxClient sphinx = _pool.borrow();
+        try
+        {
+            String[] snippets = sphinx.BuildExcerpts(docs, index, words, options.toMap());
+            if (snippets == null)
+            {
+                throw new SphinxException("Sphinx Error: " + sphinx.GetLastError());
+            }
+            if (_log.isDebugEnabled())
+            {
+                _log.debug("Built " + docs.length + " excerpts");
+            }
+
+            return snippets;
+        }
+        finally
+        {
+            _pool.release(sphinx);
+        }
+    }
+}
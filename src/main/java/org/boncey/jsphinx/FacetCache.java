@@ -0,0 +1,197 @@
+package org.boncey.jsphinx;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded cache of facet counts, keyed by search and facet, each valid until an attribute it depends on changes.
+ *
+ * Every cached count is dropped when the indexes change, after a re-index or merge. A batch of attribute updates only
+ * drops the counts that group by, count distinct values of or filter on an updated attribute. Counts are stored
+ * against the sequence number taken before they were queried, so counts from a query that was running when their
+ * attributes changed are never cached.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class FacetCache
+{
+
+    /**
+     * The cached counts, least recently used first.
+     */
+    private final Map<String, CachedCounts> _counts;
+
+    /**
+     * The sequence number of the latest change.
+     */
+    private long _sequence;
+
+    /**
+     * The sequence number when every count was last dropped.
+     */
+    private long _generation;
+
+    /**
+     * The sequence number when each attribute was last updated, since every count was last dropped.
+     */
+    private final Map<String, Long> _updated = new HashMap<>();
+
+    /**
+     * Default constructor.
+     *
+     * @param maxEntries the maximum number of facet counts to cache.
+     */
+    public FacetCache(final int maxEntries)
+    {
+
+        _counts = new LinkedHashMap<String, CachedCounts>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedCounts> eldest)
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get the sequence number of the latest change; take this before querying and pass it to {@link #put}.
+     *
+     * @return the sequence number.
+     */
+    public synchronized long getGeneration()
+    {
+
+        return _sequence;
+    }
+
+    /**
+     * Get cached counts.
+     *
+     * @param key
+     * @return the counts, or null if not cached or since invalidated.
+     */
+    public synchronized FacetCounts get(String key)
+    {
+
+        CachedCounts entry = _counts.get(key);
+
+        return entry != null ? entry._counts : null;
+    }
+
+    /**
+     * Cache counts, unless the indexes or any of the attributes they depend on have changed since they were queried.
+     *
+     * @param key
+     * @param generation the sequence number when the query was sent.
+     * @param counts
+     * @param attributes the attributes the counts depend on: those grouped by, counted or filtered on.
+     */
+    public synchronized void put(String key, long generation, FacetCounts counts, Set<String> attributes)
+    {
+
+        if (generation < _generation)
+        {
+            return;
+        }
+        for (String attribute : attributes)
+        {
+            if (_updated.getOrDefault(attribute, 0L) > generation)
+            {
+                return;
+            }
+        }
+
+        _counts.put(key, new CachedCounts(counts, attributes));
+    }
+
+    /**
+     * Drop the counts that depend on any of the updated attributes.
+     *
+     * @param attributes
+     */
+    public synchronized void attributesUpdated(Collection<String> attributes)
+    {
+
+        long sequence = ++_sequence;
+        for (String attribute : attributes)
+        {
+            _updated.put(attribute, sequence);
+        }
+
+        Iterator<CachedCounts> iterator = _counts.values().iterator();
+        while (iterator.hasNext())
+        {
+            Set<String> dependencies = iterator.next()._attributes;
+            for (String attribute : attributes)
+            {
+                if (dependencies.contains(attribute))
+                {
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop every cached count.
+     *
+     * @return the new sequence number.
+     */
+    public synchronized long nextGeneration()
+    {
+
+        _counts.clear();
+        _updated.clear();
+        _generation = ++_sequence;
+
+        return _generation;
+    }
+
+    /**
+     * Get the number of cached counts.
+     *
+     * @return the size.
+     */
+    public synchronized int size()
+    {
+
+        return _counts.size();
+    }
+
+    /**
+     * Cached counts with the attributes they depend on.
+     */
+    private static class CachedCounts
+    {
+
+        /**
+         * The counts.
+         */
+        private final FacetCounts _counts;
+
+        /**
+         * The attributes grouped by, counted or filtered on.
+         */
+        private final Set<String> _attributes;
+
+        /**
+         * Default constructor.
+         *
+         * @param counts
+         * @param attributes
+         */
+        CachedCounts(FacetCounts counts, Set<String> attributes)
+        {
+
+            _counts = counts;
+            _attributes = attributes;
+        }
+    }
+}
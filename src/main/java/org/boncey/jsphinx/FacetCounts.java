@@ -0,0 +1,133 @@
+package org.boncey.jsphinx;
+
+/**
+ * The counts for one facet: its most common values with the number of matches having each, most common first.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class FacetCounts
+{
+
+    /**
+     * The attribute grouped by.
+     */
+    private final String _attribute;
+
+    /**
+     * The values.
+     */
+    private final long[] _values;
+
+    /**
+     * The number of matches with each value.
+     */
+    private final int[] _counts;
+
+    /**
+     * The number of distinct values of the distinct attribute for each value, or null.
+     */
+    private final int[] _distinctCounts;
+
+    /**
+     * Default constructor.
+     *
+     * @param attribute
+     * @param values
+     * @param counts
+     * @param distinctCounts
+     */
+    FacetCounts(String attribute, long[] values, int[] counts, int[] distinctCounts)
+    {
+
+        _attribute = attribute;
+        _values = values;
+        _counts = counts;
+        _distinctCounts = distinctCounts;
+    }
+
+    /**
+     * Get the attribute grouped by.
+     *
+     * @return the attribute.
+     */
+    public String getAttribute()
+    {
+
+        return _attribute;
+    }
+
+    /**
+     * Get the number of values counted.
+     *
+     * @return the size.
+     */
+    public int size()
+    {
+
+        return _values.length;
+    }
+
+    /**
+     * Get the values.
+     *
+     * @return the values, most common first.
+     */
+    public long[] getValues()
+    {
+
+        return _values;
+    }
+
+    /**
+     * Get the number of matches with each value.
+     *
+     * @return the counts, in the order of the values.
+     */
+    public int[] getCounts()
+    {
+
+        return _counts;
+    }
+
+    /**
+     * Get the number of distinct values of the distinct attribute for each value.
+     *
+     * @return the counts in the order of the values, or null if no distinct attribute was given.
+     */
+    public int[] getDistinctCounts()
+    {
+
+        return _distinctCounts;
+    }
+
+    /**
+     * Get the number of matches with a value.
+     *
+     * @param value
+     * @return the count, or 0 if the value isn't among those counted.
+     */
+    public int getCount(long value)
+    {
+
+        for (int i = 0; i < _values.length; i++)
+        {
+            if (_values[i] == value)
+            {
+                return _counts[i];
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+
+        return String.format("FacetCounts [_attribute=%s, %d values]", _attribute, _values.length);
+    }
+}
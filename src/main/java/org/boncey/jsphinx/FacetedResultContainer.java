@@ -0,0 +1,68 @@
+package org.boncey.jsphinx;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Search results together with the counts for each facet.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class FacetedResultContainer extends SearchResultContainer
+{
+
+    /**
+     * The counts by facet attribute, in the order requested.
+     */
+    private final Map<String, FacetCounts> _facets;
+
+    /**
+     * Field constructor.
+     *
+     * @param searchIds
+     * @param totalResults
+     * @param facets the counts by facet attribute, in the order requested.
+     */
+    public FacetedResultContainer(List<Long> searchIds, int totalResults, Map<String, FacetCounts> facets)
+    {
+
+        super(searchIds, totalResults);
+        _facets = facets;
+    }
+
+    /**
+     * Get the counts for every facet.
+     *
+     * @return the counts by facet attribute, in the order requested.
+     */
+    public Map<String, FacetCounts> getFacets()
+    {
+
+        return Collections.unmodifiableMap(_facets);
+    }
+
+    /**
+     * Get the counts for a facet.
+     *
+     * @param attribute
+     * @return the counts, or null if the attribute wasn't a facet.
+     */
+    public FacetCounts getFacet(String attribute)
+    {
+
+        return _facets.get(attribute);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+
+        return String.format("FacetedResultContainer [_searchIds=%s, _totalResults=%s, _facets=%s]", getSearchIds(),
+                getTotalResults(), _facets.keySet());
+    }
+}
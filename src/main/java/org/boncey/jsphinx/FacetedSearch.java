@@ -0,0 +1,173 @@
+package org.boncey.jsphinx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The facets to count alongside a search: for each, the attribute to group the matches by, how many of its values to
+ * count and optionally an attribute to count distinct values of per group.
+ *
+ * Pass to {@link SearchService#facetedSearch(SearchCommand, FacetedSearch)}, which sends the search and a group-by
+ * query per facet in a single multi-query request.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class FacetedSearch
+{
+
+    /**
+     * The default number of values counted per facet.
+     */
+    public static final int DEFAULT_MAX_VALUES = 20;
+
+    /**
+     * The facets, in the order added.
+     */
+    private final List<Facet> _facets = new ArrayList<>();
+
+    /**
+     * Count the most common values of an attribute.
+     *
+     * @param attribute
+     * @return this, for chaining.
+     */
+    public FacetedSearch addFacet(String attribute)
+    {
+
+        return addFacet(attribute, DEFAULT_MAX_VALUES, null);
+    }
+
+    /**
+     * Count the most common values of an attribute.
+     *
+     * @param attribute
+     * @param maxValues the number of values to count.
+     * @return this, for chaining.
+     */
+    public FacetedSearch addFacet(String attribute, int maxValues)
+    {
+
+        return addFacet(attribute, maxValues, null);
+    }
+
+    /**
+     * Count the most common values of an attribute, and the distinct values of another attribute for each.
+     *
+     * @param attribute
+     * @param maxValues the number of values to count.
+     * @param distinctAttribute the attribute to count distinct values of, or null.
+     * @return this, for chaining.
+     */
+    public FacetedSearch addFacet(String attribute, int maxValues, String distinctAttribute)
+    {
+
+        _facets.add(new Facet(attribute, maxValues, distinctAttribute));
+
+        return this;
+    }
+
+    /**
+     * Get the facets.
+     *
+     * @return the facets, in the order added.
+     */
+    public List<Facet> getFacets()
+    {
+
+        return Collections.unmodifiableList(_facets);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+
+        return String.format("FacetedSearch [_facets=%s]", _facets);
+    }
+
+    /**
+     * A facet to count.
+     */
+    public static class Facet
+    {
+
+        /**
+         * The attribute to group by.
+         */
+        private final String _attribute;
+
+        /**
+         * The number of values to count.
+         */
+        private final int _maxValues;
+
+        /**
+         * The attribute to count distinct values of, or null.
+         */
+        private final String _distinctAttribute;
+
+        /**
+         * Default constructor.
+         *
+         * @param attribute
+         * @param maxValues
+         * @param distinctAttribute
+         */
+        Facet(String attribute, int maxValues, String distinctAttribute)
+        {
+
+            _attribute = attribute;
+            _maxValues = maxValues;
+            _distinctAttribute = distinctAttribute;
+        }
+
+        /**
+         * Get the attribute to group by.
+         *
+         * @return the attribute.
+         */
+        public String getAttribute()
+        {
+
+            return _attribute;
+        }
+
+        /**
+         * Get the number of values to count.
+         *
+         * @return the maximum number of values.
+         */
+        public int getMaxValues()
+        {
+
+            return _maxValues;
+        }
+
+        /**
+         * Get the attribute to count distinct values of.
+         *
+         * @return the attribute, or null.
+         */
+        public String getDistinctAttribute()
+        {
+
+            return _distinctAttribute;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+
+            return _distinctAttribute == null
+                    ? String.format("%s(%d)", _attribute, _maxValues)
+                    : String.format("%s(%d, distinct %s)", _attribute, _maxValues, _distinctAttribute);
+        }
+    }
+}
@@ -0,0 +1,533 @@
+package org.boncey.jsphinx;
+
+import org.sphx.api.SphinxException;
+import org.sphx.api.SphinxKeyword;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Builds excerpts locally rather than on searchd, supporting the same options as <code>BuildExcerpts</code>.
+ *
+ * The query is turned into keywords with their tokenized and normalized forms, and the document words into their
+ * normalized forms, both through the {@link KeywordCache} so the index's own morphology is applied (usually without a
+ * round trip). A document word matches a keyword if it equals its tokenized form or normalizes to the same form.
+ * Passages of <code>around</code> words
+ * either side of each match are scored by the number of distinct keywords then total matches, and the best are picked
+ * within the <code>limit</code>, <code>limit_words</code> and <code>limit_passages</code> options.
+ *
+ * <code>html_strip_mode=strip</code> removes tags, any other mode leaves the text as is; <code>query_mode</code> is
+ * implied, as query operators are dropped when tokenizing; <code>load_files</code> is not supported.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class Highlighter
+{
+
+    /**
+     * Matches HTML tags.
+     */
+    private static final Pattern TAGS = Pattern.compile("<[^>]*>");
+
+    /**
+     * Source of the keyword forms.
+     */
+    private final KeywordCache _keywordCache;
+
+    /**
+     * Default constructor.
+     *
+     * @param keywordCache source of the keyword forms.
+     */
+    public Highlighter(KeywordCache keywordCache)
+    {
+
+        _keywordCache = keywordCache;
+    }
+
+    /**
+     * Build excerpts for the documents.
+     *
+     * @param docs the text of each document.
+     * @param index the index whose tokenizing and morphology to use.
+     * @param words the words to highlight.
+     * @param options
+     * @return the snippets, in document order.
+     * @throws SphinxException
+     */
+    public String[] highlight(String[] docs, String index, String words, ExcerptOptions options) throws SphinxException
+    {
+
+        List<SphinxKeyword> keywords = _keywordCache.getKeywords(words, index);
+        String[] texts = new String[docs.length];
+        Set<String> tokens = new HashSet<>();
+        for (int i = 0; i < docs.length; i++)
+        {
+            texts[i] = strip(docs[i], options);
+            if (!keywords.isEmpty())
+            {
+                tokens.addAll(Tokenizer.tokenize(texts[i]));
+            }
+        }
+
+        Map<String, String> normalized = normalize(tokens, index);
+        String[] snippets = new String[docs.length];
+        for (int i = 0; i < docs.length; i++)
+        {
+            snippets[i] = highlight(texts[i], keywords, normalized, options);
+        }
+
+        return snippets;
+    }
+
+    /**
+     * Build an excerpt for a document.
+     *
+     * @param doc the text of the document.
+     * @param index the index whose tokenizing and morphology to use.
+     * @param words the words to highlight.
+     * @param options
+     * @return the snippet.
+     * @throws SphinxException
+     */
+    public String highlight(String doc, String index, String words, ExcerptOptions options) throws SphinxException
+    {
+
+        return highlight(new String[] { doc }, index, words, options)[0];
+    }
+
+    /**
+     * Get the normalized form of each document word.
+     *
+     * @param tokens the distinct document words.
+     * @param index
+     * @return the normalized form by word.
+     * @throws SphinxException
+     */
+    private Map<String, String> normalize(Set<String> tokens, String index) throws SphinxException
+    {
+
+        return tokens.isEmpty() ? Collections.<String, String>emptyMap() : _keywordCache.getNormalized(tokens, index);
+    }
+
+    /**
+     * Remove tags from the document if asked to.
+     *
+     * @param doc
+     * @param options
+     * @return the text to build the excerpt from.
+     */
+    private static String strip(String doc, ExcerptOptions options)
+    {
+
+        return "strip".equals(options.getHtmlStripMode()) ? TAGS.matcher(doc).replaceAll("") : doc;
+    }
+
+    /**
+     * Build an excerpt for a document.
+     *
+     * @param text the text of the document, with tags already stripped if asked to.
+     * @param keywords
+     * @param normalized the normalized form of each document word.
+     * @param options
+     * @return the snippet.
+     */
+    private String highlight(String text, List<SphinxKeyword> keywords, Map<String, String> normalized,
+            ExcerptOptions options)
+    {
+
+        int[] spans = Tokenizer.spans(text);
+        int[] matches = match(text, spans, keywords, normalized, options.isExactPhrase());
+        int words = matches.length;
+
+        int first = -1;
+        for (int i = 0; i < words && first < 0; i++)
+        {
+            first = matches[i] >= 0 ? i : -1;
+        }
+
+        int limit = options.getLimit();
+        if (first < 0)
+        {
+            if (options.isAllowEmpty())
+            {
+                return "";
+            }
+
+            // No matches, so return the start of the document
+            int end = text.length();
+            if (limit > 0 && end > limit)
+            {
+                int last = -1;
+                for (int i = 0; i < words && spans[i * 2 + 1] <= limit; i++)
+                {
+                    last = i;
+                }
+                end = last >= 0 ? spans[last * 2 + 1] : Math.min(limit, end);
+            }
+            return end < text.length() ? text.substring(0, end) + options.getChunkSeparator() : text;
+        }
+
+        if ((limit <= 0 || text.length() <= limit) && options.getLimitPassages() <= 0 && !options.isSinglePassage() &&
+                (options.getLimitWords() <= 0 || words <= options.getLimitWords()))
+        {
+            // The whole document fits
+            StringBuilder snippet = new StringBuilder(text.length() + 32);
+            render(snippet, text, spans, matches, 0, words - 1, 0, text.length(), options, options.getStartPassageId());
+            return snippet.toString();
+        }
+
+        List<Passage> selected = select(passages(text, spans, matches, options), spans, keywords.size(), options);
+        if (!options.isWeightOrder())
+        {
+            selected.sort((a, b) -> Integer.compare(a._start, b._start));
+        }
+
+        StringBuilder snippet = new StringBuilder(limit > 0 ? limit + 64 : 256);
+        for (int i = 0; i < selected.size(); i++)
+        {
+            Passage passage = selected.get(i);
+            if (i > 0 || passage._start > 0)
+            {
+                snippet.append(options.getChunkSeparator());
+            }
+            render(snippet, text, spans, matches, passage._start, passage._end, spans[passage._start * 2],
+                    spans[passage._end * 2 + 1], options, options.getStartPassageId() + i);
+        }
+        if (!selected.isEmpty() && selected.get(selected.size() - 1)._end < words - 1)
+        {
+            snippet.append(options.getChunkSeparator());
+        }
+
+        return snippet.toString();
+    }
+
+    /**
+     * Match each word of the text against the keywords.
+     *
+     * @param text
+     * @param spans
+     * @param keywords
+     * @param normalized the normalized form of each document word.
+     * @param exactPhrase only keep matches that form the whole phrase, in order.
+     * @return the matching keyword of each word, or -1.
+     */
+    private int[] match(String text, int[] spans, List<SphinxKeyword> keywords, Map<String, String> normalized,
+            boolean exactPhrase)
+    {
+
+        String[] tokenizedForms = new String[keywords.size()];
+        String[] normalizedForms = new String[keywords.size()];
+        for (int k = 0; k < tokenizedForms.length; k++)
+        {
+            tokenizedForms[k] = keywords.get(k).tokenized.toLowerCase();
+            normalizedForms[k] = keywords.get(k).normalized.toLowerCase();
+        }
+
+        int[] matches = new int[spans.length / 2];
+        for (int i = 0; i < matches.length; i++)
+        {
+            String word = text.substring(spans[i * 2], spans[i * 2 + 1]).toLowerCase();
+            String form = normalized.get(word);
+            matches[i] = -1;
+            for (int k = 0; k < tokenizedForms.length && matches[i] < 0; k++)
+            {
+                if (word.equals(tokenizedForms[k]) || (form != null && form.equals(normalizedForms[k])))
+                {
+                    matches[i] = k;
+                }
+            }
+        }
+
+        if (exactPhrase && !keywords.isEmpty())
+        {
+            int[] phrase = new int[matches.length];
+            Arrays.fill(phrase, -1);
+            for (int i = 0; i + keywords.size() <= matches.length; i++)
+            {
+                boolean found = true;
+                for (int k = 0; k < keywords.size() && found; k++)
+                {
+                    found = matches[i + k] == k;
+                }
+                for (int k = 0; found && k < keywords.size(); k++)
+                {
+                    phrase[i + k] = k;
+                }
+            }
+            matches = phrase;
+        }
+
+        return matches;
+    }
+
+    /**
+     * Build the candidate passages around the matches, merging any that overlap.
+     *
+     * @param text
+     * @param spans
+     * @param matches
+     * @param options
+     * @return the passages, in document order.
+     */
+    private List<Passage> passages(String text, int[] spans, int[] matches, ExcerptOptions options)
+    {
+
+        List<Passage> passages = new ArrayList<>();
+        int around = Math.max(options.getAround(), 0);
+        Passage current = null;
+        for (int i = 0; i < matches.length; i++)
+        {
+            if (matches[i] < 0)
+            {
+                continue;
+            }
+
+            int start = Math.max(0, i - around);
+            int end = Math.min(matches.length - 1, i + around);
+            if (options.isUseBoundaries())
+            {
+                for (int j = start; j < i; j++)
+                {
+                    if (isBoundary(text, spans, j))
+                    {
+                        start = j + 1;
+                    }
+                }
+                for (int j = i; j < end; j++)
+                {
+                    if (isBoundary(text, spans, j))
+                    {
+                        end = j;
+                        break;
+                    }
+                }
+            }
+
+            if (current != null && start <= current._end + 1 && !options.isSinglePassage())
+            {
+                current._end = Math.max(current._end, end);
+            }
+            else
+            {
+                current = new Passage(start, end, i);
+                passages.add(current);
+            }
+            current._keywords.set(matches[i]);
+            current._hits++;
+        }
+
+        return passages;
+    }
+
+    /**
+     * Pick the best passages within the limits.
+     *
+     * @param passages
+     * @param spans
+     * @param keywords the number of keywords.
+     * @param options
+     * @return the selected passages, best first.
+     */
+    private List<Passage> select(List<Passage> passages, int[] spans, int keywords, ExcerptOptions options)
+    {
+
+        List<Passage> ranked = new ArrayList<>(passages);
+        ranked.sort((a, b) -> a.score() != b.score() ? Long.compare(b.score(), a.score()) : Integer.compare(a._start, b._start));
+
+        int limit = options.getLimit();
+        int limitWords = options.getLimitWords();
+        int limitPassages = options.isSinglePassage() ? 1 : options.getLimitPassages();
+        List<Passage> selected = new ArrayList<>();
+        BitSet covered = new BitSet(keywords);
+        int chars = 0;
+        int words = 0;
+        for (Passage passage : ranked)
+        {
+            if (limitPassages > 0 && selected.size() >= limitPassages)
+            {
+                break;
+            }
+
+            int passageChars = spans[passage._end * 2 + 1] - spans[passage._start * 2];
+            int passageWords = passage._end - passage._start + 1;
+            boolean forced = options.isForceAllWords() && !isSubset(passage._keywords, covered);
+            if (!forced && ((limit > 0 && chars + passageChars > limit) || (limitWords > 0 && words + passageWords > limitWords)))
+            {
+                continue;
+            }
+
+            selected.add(passage);
+            covered.or(passage._keywords);
+            chars += passageChars;
+            words += passageWords;
+        }
+
+        if (selected.isEmpty() && !ranked.isEmpty())
+        {
+            // Even the best passage is too long, so trim it to fit, keeping its first match central
+            Passage best = ranked.get(0);
+            while (best._start < best._end && ((limit > 0 && spans[best._end * 2 + 1] - spans[best._start * 2] > limit) ||
+                    (limitWords > 0 && best._end - best._start + 1 > limitWords)))
+            {
+                if (best._firstMatch - best._start > best._end - best._firstMatch)
+                {
+                    best._start++;
+                }
+                else
+                {
+                    best._end--;
+                }
+            }
+            selected.add(best);
+        }
+
+        return selected;
+    }
+
+    /**
+     * Append the text between the given offsets, highlighting matches.
+     *
+     * @param snippet
+     * @param text
+     * @param spans
+     * @param matches
+     * @param startWord
+     * @param endWord
+     * @param from
+     * @param to
+     * @param options
+     * @param passageId
+     */
+    private void render(StringBuilder snippet, String text, int[] spans, int[] matches, int startWord, int endWord,
+            int from, int to, ExcerptOptions options, int passageId)
+    {
+
+        String id = String.valueOf(passageId);
+        String before = options.getBeforeMatch().replace("%PASSAGE_ID%", id);
+        String after = options.getAfterMatch().replace("%PASSAGE_ID%", id);
+        int pos = from;
+        for (int i = startWord; i <= endWord; i++)
+        {
+            int start = spans[i * 2];
+            int end = spans[i * 2 + 1];
+            snippet.append(text, pos, start);
+            if (matches[i] >= 0)
+            {
+                snippet.append(before).append(text, start, end).append(after);
+            }
+            else
+            {
+                snippet.append(text, start, end);
+            }
+            pos = end;
+        }
+        snippet.append(text, pos, to);
+    }
+
+    /**
+     * Does a sentence end after the given word?
+     *
+     * @param text
+     * @param spans
+     * @param word
+     * @return true if so.
+     */
+    private static boolean isBoundary(String text, int[] spans, int word)
+    {
+
+        int end = word * 2 + 2 < spans.length ? spans[word * 2 + 2] : text.length();
+        for (int i = spans[word * 2 + 1]; i < end; i++)
+        {
+            char c = text.charAt(i);
+            if (c == '.' || c == '!' || c == '?' || c == '\n')
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Is every bit of a set in b?
+     *
+     * @param a
+     * @param b
+     * @return true if so.
+     */
+    private static boolean isSubset(BitSet a, BitSet b)
+    {
+
+        BitSet remainder = (BitSet)a.clone();
+        remainder.andNot(b);
+
+        return remainder.isEmpty();
+    }
+
+    /**
+     * A candidate passage.
+     */
+    private static class Passage
+    {
+
+        /**
+         * The first word.
+         */
+        private int _start;
+
+        /**
+         * The last word.
+         */
+        private int _end;
+
+        /**
+         * The first matching word.
+         */
+        private final int _firstMatch;
+
+        /**
+         * The keywords matched.
+         */
+        private final BitSet _keywords = new BitSet();
+
+        /**
+         * The number of matches.
+         */
+        private int _hits;
+
+        /**
+         * Default constructor.
+         *
+         * @param start
+         * @param end
+         * @param firstMatch
+         */
+        Passage(int start, int end, int firstMatch)
+        {
+
+            _start = start;
+            _end = end;
+            _firstMatch = firstMatch;
+        }
+
+        /**
+         * Score by distinct keywords, then total matches.
+         *
+         * @return the score.
+         */
+        long score()
+        {
+
+            return _keywords.cardinality() * 1000L + _hits;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sphx.api.SphinxException;
+import org.sphx.api.SphinxMatch;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a Bloom filter of the docIds in each index so attribute updates are only sent to the indexes that can hold
+ * each document.
+ *
+ * An index's filter is dropped before the indexer runs on it and rebuilt once it has been re-indexed, by paging
+ * through the index's docIds with full scan queries. If a change journal is available the delta's filter is built
+ * straight from it instead, on the assumption that the delta holds the documents the journal records as changed since
+ * the main index was built. Until an index has a filter every update is sent to it, so documents are never missed;
+ * false positives only cost a wasted update.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class IndexRouter implements ReindexListener
+{
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(IndexRouter.class);
+
+    /**
+     * The connections to scan the indexes over.
+     */
+    private final SphinxClientPool _pool;
+
+    /**
+     * The service whose indexes are routed to.
+     */
+    private final SearchService<?> _searchService;
+
+    /**
+     * The acceptable false positive rate.
+     */
+    private final double _falsePositiveRate;
+
+    /**
+     * The filter for each index that has one.
+     */
+    private final Map<String, DocIdBloomFilter> _filters = new ConcurrentHashMap<>();
+
+    /**
+     * The number of times each index has been invalidated, so a scan started before an invalidation is discarded.
+     */
+    private final Map<String, Long> _versions = new ConcurrentHashMap<>();
+
+    /**
+     * Builds the filters in the background.
+     */
+    private final ExecutorService _executor;
+
+    /**
+     * Default constructor.
+     *
+     * @param searchService the service whose indexes are routed to; its change journal, if any, is used to build the
+     * delta's filter.
+     * @param pool the connections to scan the indexes over.
+     * @param falsePositiveRate the acceptable false positive rate, e.g. 0.01.
+     */
+    public IndexRouter(SearchService<?> searchService, SphinxClientPool pool, double falsePositiveRate)
+    {
+
+        _searchService = searchService;
+        _pool = pool;
+        _falsePositiveRate = falsePositiveRate;
+        _executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("jsphinx-router"));
+    }
+
+    /**
+     * Choose the indexes an update to a document should go to.
+     *
+     * @param indexes the candidate index names, space or comma separated.
+     * @param docId
+     * @return the indexes that might hold the document, space separated, or null if none do.
+     */
+    public String route(String indexes, long docId)
+    {
+
+        StringBuilder routed = new StringBuilder(indexes.length());
+        for (String indexName : indexes.split("[\\s,]+"))
+        {
+            if (indexName.isEmpty())
+            {
+                continue;
+            }
+            DocIdBloomFilter filter = _filters.get(indexName);
+            if (filter == null || filter.mightContain(docId))
+            {
+                if (routed.length() > 0)
+                {
+                    routed.append(' ');
+                }
+                routed.append(indexName);
+            }
+        }
+
+        return routed.length() > 0 ? routed.toString() : null;
+    }
+
+    /**
+     * Stop routing by the indexes' filters, e.g. because the indexer is about to rotate them.
+     *
+     * @param indexNames
+     */
+    public void invalidate(String... indexNames)
+    {
+
+        synchronized (_versions)
+        {
+            for (String indexName : indexNames)
+            {
+                _versions.merge(indexName, 1L, Long::sum);
+                _filters.remove(indexName);
+            }
+        }
+    }
+
+    /**
+     * Build the indexes' filters in the background.
+     *
+     * @param indexNames
+     */
+    public void load(String... indexNames)
+    {
+
+        for (String indexName : indexNames)
+        {
+            long version = _versions.getOrDefault(indexName, 0L);
+            _executor.execute(() -> build(indexName, version));
+        }
+    }
+
+    /**
+     * Rebuild the index's filter.
+     *
+     * @param indexName
+     */
+    @Override
+    public void reindexed(String indexName)
+    {
+
+        invalidate(indexName);
+        load(indexName);
+    }
+
+    /**
+     * Stop building filters.
+     */
+    public void shutdown()
+    {
+
+        _executor.shutdownNow();
+    }
+
+    /**
+     * Build an index's filter, unless it has been invalidated since the build was requested.
+     *
+     * @param indexName
+     * @param version
+     */
+    private void build(String indexName, long version)
+    {
+
+        long start = System.currentTimeMillis();
+        DocIdBloomFilter filter;
+        try
+        {
+            ChangeJournal changeJournal = _searchService.getChangeJournal();
+            if (indexName.equals(_searchService.getDeltaIndexName()) && changeJournal != null)
+            {
+                long[] docIds = changeJournal.getDeltaChanges().getLive();
+                filter = new DocIdBloomFilter(docIds.length, _falsePositiveRate);
+                for (long docId : docIds)
+                {
+                    filter.add(docId);
+                }
+            }
+            else
+            {
+                filter = scan(indexName);
+            }
+        }
+        catch (SphinxException e)
+        {
+            _log.error("Unable to build docId filter for " + indexName + ", sending it every update", e);
+            return;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        synchronized (_versions)
+        {
+            if (_versions.getOrDefault(indexName, 0L) == version)
+            {
+                _filters.put(indexName, filter);
+            }
+        }
+        if (_log.isDebugEnabled())
+        {
+            _log.debug("Built " + filter.getBytes() + " byte docId filter for " + indexName + " in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    /**
+     * Page through an index's docIds in order, adding them to a new filter.
+     *
+     * @param indexName
+     * @return the filter.
+     * @throws SphinxException
+     * @throws InterruptedException
+     */
+    private DocIdBloomFilter scan(String indexName) throws SphinxException, InterruptedException
+    {
+
+        DocIdBloomFilter[] filter = new DocIdBloomFilter[1];
+        IndexScanner.scan(_pool, indexName, "*", res -> {
+            if (filter[0] == null)
+            {
+                filter[0] = new DocIdBloomFilter(res.totalFound, _falsePositiveRate);
+            }
+            for (SphinxMatch match : res.matches)
+            {
+                filter[0].add(match.docId);
+            }
+        });
+
+        return filter[0];
+    }
+}
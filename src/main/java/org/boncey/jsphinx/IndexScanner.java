@@ -0,0 +1,79 @@
+package org.boncey.jsphinx;
+
+import org.sphx.api.SphinxClient;
+import org.sphx.api.SphinxException;
+import org.sphx.api.SphinxResult;
+
+import java.util.function.Consumer;
+
+/**
+ * Pages through every document in an index in docId order, with full scan queries.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+final class IndexScanner
+{
+
+    /**
+     * The number of documents fetched per query; searchd's default max_matches.
+     */
+    static final int PAGE_SIZE = 1000;
+
+    /**
+     * Not instantiable.
+     */
+    private IndexScanner()
+    {
+
+    }
+
+    /**
+     * Scan the index, passing each page of matches to the handler; the first page's <code>totalFound</code> gives the
+     * number of documents.
+     *
+     * @param pool the connections to scan over.
+     * @param indexNames the index name(s) to scan; a later index's documents replace an earlier one's.
+     * @param select the attributes to fetch, or "*".
+     * @param handler receives each page.
+     * @throws SphinxException
+     * @throws InterruptedException if interrupted while waiting for a connection.
+     */
+    static void scan(SphinxClientPool pool, String indexNames, String select, Consumer<SphinxResult> handler)
+            throws SphinxException, InterruptedException
+    {
+
+        SphinxClient sphinx = pool.borrow();
+        try
+        {
+            sphinx.ResetFilters();
+            sphinx.ResetGroupBy();
+            sphinx.SetMatchMode(SphinxClient.SPH_MATCH_FULLSCAN);
+            sphinx.SetSortMode(SphinxClient.SPH_SORT_EXTENDED, "@id ASC");
+            sphinx.SetSelect(select);
+            sphinx.SetLimits(0, PAGE_SIZE, PAGE_SIZE);
+
+            long from = 1;
+            while (true)
+            {
+                sphinx.ResetFilters();
+                sphinx.SetFilterRange("@id", from, Long.MAX_VALUE, false);
+                SphinxResult res = sphinx.Query("", indexNames);
+                if (res == null)
+                {
+                    throw new SphinxException("Sphinx Error: " + sphinx.GetLastError());
+                }
+                handler.accept(res);
+                if (res.matches.length < PAGE_SIZE)
+                {
+                    return;
+                }
+                from = res.matches[res.matches.length - 1].docId + 1;
+            }
+        }
+        finally
+        {
+            pool.release(sphinx);
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sphx.api.SphinxException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the Sphinx indexer, pumping its stdout and stderr while it runs so a chatty indexer can't fill the pipe and
+ * hang, and killing it if it runs for too long.
+ *
+ * The indexer's progress lines are parsed into {@link IndexerStats} for each index it builds or merges.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class Indexer
+{
+
+    /**
+     * The most output kept from a run, in characters; older output is dropped.
+     */
+    private static final int MAX_OUTPUT_CHARS = 64 * 1024;
+
+    /**
+     * How long to wait for the indexer to exit after asking it to stop, in milliseconds.
+     */
+    private static final long KILL_GRACE_MILLIS = 5000;
+
+    /**
+     * Matches "indexing index 'name'..." and "merging index 'delta' into index 'main'...".
+     */
+    private static final Pattern INDEX_LINE = Pattern.compile("^(?:indexing|merging) index '([^']+)'(?: into index '([^']+)')?");
+
+    /**
+     * Matches "collected 1234 docs, 5.6 MB".
+     */
+    private static final Pattern COLLECTED_LINE = Pattern.compile("^collected (\\d+) docs");
+
+    /**
+     * Matches "total 1234 docs, 5678 bytes".
+     */
+    private static final Pattern TOTAL_DOCS_LINE = Pattern.compile("^total (\\d+) docs, (\\d+) bytes");
+
+    /**
+     * Matches "total 0.015 sec, 12335 bytes/sec, 255.65 docs/sec".
+     */
+    private static final Pattern TOTAL_TIME_LINE = Pattern.compile("^total ([\\d.]+) sec, [\\d.]+ bytes/sec, ([\\d.]+) docs/sec");
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(Indexer.class);
+
+    /**
+     * The indexer command.
+     */
+    private final String _indexCommand;
+
+    /**
+     * The Sphinx config file.
+     */
+    private final String _configFile;
+
+    /**
+     * The longest a run may take before it's killed, in milliseconds (0 no limit).
+     */
+    private final long _timeout;
+
+    /**
+     * Limits when and how the indexer runs, or null for no limits.
+     */
+    private final IndexerGovernor _governor;
+
+    /**
+     * Default constructor.
+     *
+     * @param indexCommand the indexer command.
+     * @param configFile the Sphinx config file.
+     * @param timeout the longest a run may take before it's killed, in milliseconds (0 no limit).
+     */
+    public Indexer(String indexCommand, String configFile, long timeout)
+    {
+
+        this(indexCommand, configFile, timeout, null);
+    }
+
+    /**
+     * Constructor with resource limits.
+     *
+     * @param indexCommand the indexer command.
+     * @param configFile the Sphinx config file.
+     * @param timeout the longest a run may take before it's killed, in milliseconds (0 no limit).
+     * @param governor limits when and how the indexer runs, or null for no limits.
+     */
+    public Indexer(String indexCommand, String configFile, long timeout, IndexerGovernor governor)
+    {
+
+        _indexCommand = indexCommand;
+        _configFile = configFile;
+        _timeout = timeout;
+        _governor = governor;
+    }
+
+    /**
+     * Run the indexer with the given arguments, e.g. <code>--rotate delta</code>.
+     *
+     * @param args the arguments after <code>--config</code>.
+     * @return the progress figures for each index built or merged.
+     * @throws IOException if the indexer couldn't be started.
+     * @throws SphinxException if the indexer failed or timed out.
+     */
+    public List<IndexerStats> run(String... args) throws IOException, SphinxException
+    {
+
+        List<String> command = new ArrayList<>();
+        command.add(_indexCommand);
+        command.add("--config");
+        command.add(_configFile);
+        command.addAll(Arrays.asList(args));
+
+        if (_governor == null)
+        {
+            return run(command);
+        }
+
+        try
+        {
+            _governor.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SphinxException("Interrupted waiting to run indexer: " + command);
+        }
+        try
+        {
+            return run(_governor.wrap(command));
+        }
+        finally
+        {
+            _governor.release();
+        }
+    }
+
+    /**
+     * Run the command.
+     *
+     * @param command
+     * @return the progress figures for each index built or merged.
+     * @throws IOException if the indexer couldn't be started.
+     * @throws SphinxException if the indexer failed or timed out.
+     */
+    private List<IndexerStats> run(List<String> command) throws IOException, SphinxException
+    {
+
+        long start = System.currentTimeMillis();
+        Process proc = new ProcessBuilder(command).start();
+        Output output = new Output();
+        Thread stdout = pump(proc.getInputStream(), output, false);
+        Thread stderr = pump(proc.getErrorStream(), output, true);
+
+        try
+        {
+            boolean exited = true;
+            if (_timeout > 0)
+            {
+                exited = proc.waitFor(_timeout, TimeUnit.MILLISECONDS);
+            }
+            else
+            {
+                proc.waitFor();
+            }
+
+            if (!exited)
+            {
+                kill(proc);
+                _log.error("Indexer timed out after " + _timeout + "ms");
+                _log.error(output.toString());
+                throw new SphinxException("Indexer timed out after " + _timeout + "ms: " + command);
+            }
+
+            stdout.join(KILL_GRACE_MILLIS);
+            stderr.join(KILL_GRACE_MILLIS);
+        }
+        catch (InterruptedException e)
+        {
+            kill(proc);
+            Thread.currentThread().interrupt();
+            throw new SphinxException("Interrupted waiting for indexer: " + command);
+        }
+
+        if (proc.exitValue() != 0)
+        {
+            _log.error("Indexer failed: " + command);
+            _log.error(output.toString());
+            throw new SphinxException(output.toString());
+        }
+
+        long runMillis = System.currentTimeMillis() - start;
+        List<IndexerStats> stats = output.getStats();
+        for (IndexerStats indexStats : stats)
+        {
+            indexStats.setRunMillis(runMillis);
+        }
+
+        if (_log.isDebugEnabled())
+        {
+            _log.debug("Output from " + command);
+            _log.debug(output.toString());
+            for (IndexerStats indexStats : stats)
+            {
+                _log.debug(indexStats.toString());
+            }
+        }
+
+        return stats;
+    }
+
+    /**
+     * Stop the indexer, forcibly if it doesn't exit promptly.
+     *
+     * @param proc
+     */
+    private void kill(Process proc)
+    {
+
+        proc.destroy();
+        try
+        {
+            if (!proc.waitFor(KILL_GRACE_MILLIS, TimeUnit.MILLISECONDS))
+            {
+                proc.destroyForcibly();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            proc.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Read a stream line by line on a background thread.
+     *
+     * @param stream
+     * @param output where to send the lines.
+     * @param error is this stderr?
+     * @return the thread.
+     */
+    private Thread pump(InputStream stream, Output output, boolean error)
+    {
+
+        Thread thread = new DaemonThreadFactory(error ? "jsphinx-indexer-err" : "jsphinx-indexer-out").newThread(() -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(stream)))
+            {
+                String line = in.readLine();
+                while (line != null)
+                {
+                    output.add(line, error);
+                    line = in.readLine();
+                }
+            }
+            catch (IOException e)
+            {
+                _log.debug("Indexer output closed: " + e.getMessage());
+            }
+        });
+        thread.start();
+
+        return thread;
+    }
+
+    /**
+     * The output of an indexer run and the progress figures parsed from it.
+     */
+    private static class Output
+    {
+
+        /**
+         * The most recent output.
+         */
+        private final StringBuilder _text = new StringBuilder();
+
+        /**
+         * The progress figures for each index seen so far.
+         */
+        private final List<IndexerStats> _stats = new ArrayList<>();
+
+        /**
+         * Add a line of output.
+         *
+         * @param line
+         * @param error is this from stderr?
+         */
+        synchronized void add(String line, boolean error)
+        {
+
+            if (error)
+            {
+                _text.append("[stderr] ");
+            }
+            _text.append(line).append("\n");
+            if (_text.length() > MAX_OUTPUT_CHARS)
+            {
+                _text.delete(0, _text.length() - MAX_OUTPUT_CHARS);
+            }
+
+            if (!error)
+            {
+                parse(line.trim());
+            }
+        }
+
+        /**
+         * Get the progress figures for each index.
+         *
+         * @return the stats.
+         */
+        synchronized List<IndexerStats> getStats()
+        {
+
+            return new ArrayList<>(_stats);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public synchronized String toString()
+        {
+
+            return _text.toString();
+        }
+
+        /**
+         * Parse a progress line.
+         *
+         * @param line
+         */
+        private void parse(String line)
+        {
+
+            Matcher matcher = INDEX_LINE.matcher(line);
+            if (matcher.find())
+            {
+                _stats.add(new IndexerStats(matcher.group(2) != null ? matcher.group(2) : matcher.group(1)));
+                return;
+            }
+
+            if (_stats.isEmpty())
+            {
+                return;
+            }
+            IndexerStats current = _stats.get(_stats.size() - 1);
+
+            matcher = COLLECTED_LINE.matcher(line);
+            if (matcher.find())
+            {
+                current.setDocuments(Long.parseLong(matcher.group(1)));
+                return;
+            }
+
+            matcher = TOTAL_DOCS_LINE.matcher(line);
+            if (matcher.find())
+            {
+                current.setDocuments(Long.parseLong(matcher.group(1)));
+                current.setBytes(Long.parseLong(matcher.group(2)));
+                return;
+            }
+
+            matcher = TOTAL_TIME_LINE.matcher(line);
+            if (matcher.find())
+            {
+                current.setElapsedSeconds(Double.parseDouble(matcher.group(1)));
+                current.setDocsPerSecond(Double.parseDouble(matcher.group(2)));
+            }
+        }
+    }
+}
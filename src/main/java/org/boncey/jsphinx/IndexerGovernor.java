@@ -0,0 +1,176 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps indexer runs from hurting search latency.
+ *
+ * Limits the number of indexer processes running at once, runs them under resource-limiting wrappers such as
+ * <code>nice</code> and <code>ionice</code>, and postpones starting a run while searches are slower than the latency
+ * SLO, up to a maximum postponement so indexing can't be starved forever.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class IndexerGovernor
+{
+
+    /**
+     * The percentile the SLO applies to.
+     */
+    private static final double SLO_PERCENTILE = 99;
+
+    /**
+     * How often to re-check latency while postponing, in milliseconds.
+     */
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(IndexerGovernor.class);
+
+    /**
+     * Limits the number of indexer processes at once.
+     */
+    private final Semaphore _permits;
+
+    /**
+     * The command to run the indexer under, e.g. <code>nice -n 19 ionice -c 3</code>.
+     */
+    private final List<String> _wrapper;
+
+    /**
+     * The recent search latencies, or null to ignore latency.
+     */
+    private final LatencyMonitor _monitor;
+
+    /**
+     * The p99 search latency to stay under, in milliseconds.
+     */
+    private final double _sloMillis;
+
+    /**
+     * The longest to postpone a run, in milliseconds.
+     */
+    private final long _maxPostpone;
+
+    /**
+     * Default constructor.
+     *
+     * @param concurrency the maximum number of indexer processes at once.
+     * @param wrapper the command to run the indexer under, may be empty.
+     * @param monitor the recent search latencies, or null to ignore latency.
+     * @param sloMillis the p99 search latency to stay under, in milliseconds.
+     * @param maxPostpone the longest to postpone a run, in milliseconds.
+     */
+    public IndexerGovernor(int concurrency, List<String> wrapper, LatencyMonitor monitor, double sloMillis,
+            long maxPostpone)
+    {
+
+        _permits = new Semaphore(concurrency, true);
+        _wrapper = new ArrayList<>(wrapper);
+        _monitor = monitor;
+        _sloMillis = sloMillis;
+        _maxPostpone = maxPostpone;
+    }
+
+    /**
+     * Build the wrapper command for the given priorities.
+     *
+     * @param nice the CPU niceness, or null to leave it alone.
+     * @param ioniceClass the IO scheduling class (1 realtime, 2 best-effort, 3 idle), or null to leave it alone.
+     * @param ioniceLevel the IO priority within the class, or null for the default.
+     * @return the wrapper command.
+     */
+    public static List<String> wrapper(Integer nice, Integer ioniceClass, Integer ioniceLevel)
+    {
+
+        List<String> wrapper = new ArrayList<>();
+        if (nice != null)
+        {
+            wrapper.addAll(Arrays.asList("nice", "-n", nice.toString()));
+        }
+        if (ioniceClass != null)
+        {
+            wrapper.addAll(Arrays.asList("ionice", "-c", ioniceClass.toString()));
+            if (ioniceLevel != null)
+            {
+                wrapper.addAll(Arrays.asList("-n", ioniceLevel.toString()));
+            }
+        }
+
+        return wrapper;
+    }
+
+    /**
+     * Wrap the indexer command.
+     *
+     * @param command
+     * @return the wrapped command.
+     */
+    List<String> wrap(List<String> command)
+    {
+
+        List<String> wrapped = new ArrayList<>(_wrapper);
+        wrapped.addAll(command);
+
+        return wrapped;
+    }
+
+    /**
+     * Wait for a free indexer slot and for search latency to be within the SLO.
+     *
+     * @throws InterruptedException
+     */
+    void acquire() throws InterruptedException
+    {
+
+        _permits.acquire();
+        if (_monitor == null || _sloMillis <= 0)
+        {
+            return;
+        }
+
+        long deadline = System.currentTimeMillis() + _maxPostpone;
+        double latency = _monitor.getPercentile(SLO_PERCENTILE);
+        try
+        {
+            while (latency > _sloMillis && System.currentTimeMillis() < deadline)
+            {
+                if (_log.isDebugEnabled())
+                {
+                    _log.debug("Postponing indexer, p99 search latency " + latency + "ms over SLO of " + _sloMillis + "ms");
+                }
+                TimeUnit.MILLISECONDS.sleep(CHECK_INTERVAL_MILLIS);
+                latency = _monitor.getPercentile(SLO_PERCENTILE);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            _permits.release();
+            throw e;
+        }
+
+        if (latency > _sloMillis)
+        {
+            _log.warn("Starting indexer after postponing for " + _maxPostpone + "ms, p99 search latency still " + latency + "ms");
+        }
+    }
+
+    /**
+     * Give back an indexer slot.
+     */
+    void release()
+    {
+
+        _permits.release();
+    }
+}
@@ -0,0 +1,184 @@
+package org.boncey.jsphinx;
+
+/**
+ * Progress figures for one index from an indexer run, as reported by the indexer.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class IndexerStats
+{
+
+    /**
+     * The index name.
+     */
+    private final String _indexName;
+
+    /**
+     * The number of documents collected.
+     */
+    private long _documents;
+
+    /**
+     * The number of bytes of text collected.
+     */
+    private long _bytes;
+
+    /**
+     * The indexing rate, in documents per second.
+     */
+    private double _docsPerSecond;
+
+    /**
+     * The time the indexer spent on the index, in seconds.
+     */
+    private double _elapsedSeconds;
+
+    /**
+     * The wall clock time of the whole indexer run, in milliseconds.
+     */
+    private long _runMillis;
+
+    /**
+     * Default constructor.
+     *
+     * @param indexName
+     */
+    IndexerStats(String indexName)
+    {
+
+        _indexName = indexName;
+    }
+
+    /**
+     * Get the index name.
+     *
+     * @return the index name.
+     */
+    public String getIndexName()
+    {
+
+        return _indexName;
+    }
+
+    /**
+     * Get the number of documents collected.
+     *
+     * @return the documents.
+     */
+    public long getDocuments()
+    {
+
+        return _documents;
+    }
+
+    /**
+     * Get the number of bytes of text collected.
+     *
+     * @return the bytes.
+     */
+    public long getBytes()
+    {
+
+        return _bytes;
+    }
+
+    /**
+     * Get the indexing rate.
+     *
+     * @return the documents per second.
+     */
+    public double getDocsPerSecond()
+    {
+
+        return _docsPerSecond;
+    }
+
+    /**
+     * Get the time the indexer spent on the index.
+     *
+     * @return the elapsed time in seconds.
+     */
+    public double getElapsedSeconds()
+    {
+
+        return _elapsedSeconds;
+    }
+
+    /**
+     * Get the wall clock time of the whole indexer run.
+     *
+     * @return the run time in milliseconds.
+     */
+    public long getRunMillis()
+    {
+
+        return _runMillis;
+    }
+
+    /**
+     * Set the number of documents collected.
+     *
+     * @param documents
+     */
+    void setDocuments(long documents)
+    {
+
+        _documents = documents;
+    }
+
+    /**
+     * Set the number of bytes of text collected.
+     *
+     * @param bytes
+     */
+    void setBytes(long bytes)
+    {
+
+        _bytes = bytes;
+    }
+
+    /**
+     * Set the indexing rate.
+     *
+     * @param docsPerSecond
+     */
+    void setDocsPerSecond(double docsPerSecond)
+    {
+
+        _docsPerSecond = docsPerSecond;
+    }
+
+    /**
+     * Set the time the indexer spent on the index.
+     *
+     * @param elapsedSeconds
+     */
+    void setElapsedSeconds(double elapsedSeconds)
+    {
+
+        _elapsedSeconds = elapsedSeconds;
+    }
+
+    /**
+     * Set the wall clock time of the whole indexer run.
+     *
+     * @param runMillis
+     */
+    void setRunMillis(long runMillis)
+    {
+
+        _runMillis = runMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+
+        return String.format("%s: %d docs, %d bytes, %.3f sec, %.2f docs/sec (run %d ms)", _indexName, _documents,
+                _bytes, _elapsedSeconds, _docsPerSecond, _runMillis);
+    }
+}
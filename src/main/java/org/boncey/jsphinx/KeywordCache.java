@@ -0,0 +1,341 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sphx.api.SphinxClient;
+import org.sphx.api.SphinxException;
+import org.sphx.api.SphinxKeyword;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A bounded cache of keyword statistics from {@link SphinxClient#BuildKeywordList}, keyed by index and token.
+ *
+ * Tokens are split locally (see {@link Tokenizer}) and only those not already cached are sent to searchd, in a single
+ * request. Tokens searchd doesn't return (e.g. stopwords) are remembered as such. After an index is re-indexed the
+ * statistics cached against that index name are refreshed in the background; statistics cached against any other
+ * name (e.g. a distributed index over it) are left until they're evicted or {@link #clear()}ed.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class KeywordCache implements ReindexListener
+{
+
+    /**
+     * The maximum number of tokens to send to searchd in one request.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * Marks a token searchd doesn't index.
+     */
+    private static final SphinxKeyword NOT_INDEXED = new SphinxKeyword("", "", 0, 0);
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(KeywordCache.class);
+
+    /**
+     * Sphinx host.
+     */
+    private final String _host;
+
+    /**
+     * Sphinx port.
+     */
+    private final int _port;
+
+    /**
+     * The cached keywords, keyed by index and token, least recently used first.
+     */
+    private final Map<String, SphinxKeyword> _keywords;
+
+    /**
+     * Refreshes keywords after a re-index.
+     */
+    private final ExecutorService _executor;
+
+    /**
+     * The indexes waiting to be refreshed.
+     */
+    private final Set<String> _pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Default constructor.
+     *
+     * @param host Sphinx host.
+     * @param port Sphinx port.
+     * @param maxEntries the maximum number of keywords to cache.
+     */
+    public KeywordCache(String host, int port, final int maxEntries)
+    {
+
+        _host = host;
+        _port = port;
+        _keywords = new LinkedHashMap<String, SphinxKeyword>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SphinxKeyword> eldest)
+            {
+                return size() > maxEntries;
+            }
+        };
+        _executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("jsphinx-keywords"));
+    }
+
+    /**
+     * Get the statistics of each indexed keyword in the query, in query order.
+     *
+     * @param query
+     * @param index a single index name.
+     * @return the keywords.
+     * @throws SphinxException
+     */
+    public List<SphinxKeyword> getKeywords(String query, String index) throws SphinxException
+    {
+
+        List<String> tokens = Tokenizer.tokenize(query);
+        List<SphinxKeyword> keywords = new ArrayList<>(tokens.size());
+        List<String> missing = new ArrayList<>();
+
+        synchronized (_keywords)
+        {
+            for (String token : tokens)
+            {
+                if (!_keywords.containsKey(key(index, token)))
+                {
+                    missing.add(token);
+                }
+            }
+        }
+
+        if (!missing.isEmpty())
+        {
+            fetch(index, missing);
+        }
+
+        synchronized (_keywords)
+        {
+            for (String token : tokens)
+            {
+                SphinxKeyword keyword = _keywords.get(key(index, token));
+                if (keyword != null && keyword != NOT_INDEXED)
+                {
+                    keywords.add(keyword);
+                }
+            }
+        }
+
+        return keywords;
+    }
+
+    /**
+     * Get the statistics of a single token.
+     *
+     * @param token
+     * @param index a single index name.
+     * @return the keyword or null if the token isn't indexed.
+     * @throws SphinxException
+     */
+    public SphinxKeyword getKeyword(String token, String index) throws SphinxException
+    {
+
+        List<SphinxKeyword> keywords = getKeywords(token, index);
+
+        return keywords.isEmpty() ? null : keywords.get(0);
+    }
+
+    /**
+     * Get the normalized form of each token, as the index's morphology stores it.
+     *
+     * @param tokens lower-cased tokens, e.g. the words of a document.
+     * @param index a single index name.
+     * @return the lower-cased normalized form by token, without the tokens searchd doesn't index (e.g. stopwords).
+     * @throws SphinxException
+     */
+    public Map<String, String> getNormalized(Collection<String> tokens, String index) throws SphinxException
+    {
+
+        Map<String, SphinxKeyword> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        synchronized (_keywords)
+        {
+            for (String token : tokens)
+            {
+                SphinxKeyword keyword = _keywords.get(key(index, token));
+                if (keyword == null)
+                {
+                    missing.add(token);
+                }
+                else
+                {
+                    found.put(token, keyword);
+                }
+            }
+        }
+
+        if (!missing.isEmpty())
+        {
+            // Taken from what was fetched, as a large document may not fit in the cache
+            found.putAll(fetch(index, missing));
+        }
+
+        Map<String, String> normalized = new HashMap<>();
+        for (Map.Entry<String, SphinxKeyword> entry : found.entrySet())
+        {
+            if (entry.getValue() != NOT_INDEXED)
+            {
+                normalized.put(entry.getKey(), entry.getValue().normalized.toLowerCase());
+            }
+        }
+
+        return normalized;
+    }
+
+    /**
+     * Refresh the statistics of the keywords cached for the index, in the background.
+     */
+    @Override
+    public void reindexed(String indexName)
+    {
+
+        // A refresh already waiting will see the new index too
+        if (_pending.add(indexName))
+        {
+            _executor.execute(() -> {
+                _pending.remove(indexName);
+                refresh(indexName);
+            });
+        }
+    }
+
+    /**
+     * Stop refreshing keywords.
+     */
+    public void shutdown()
+    {
+
+        _executor.shutdownNow();
+    }
+
+    /**
+     * Remove all cached keywords.
+     */
+    public void clear()
+    {
+
+        synchronized (_keywords)
+        {
+            _keywords.clear();
+        }
+    }
+
+    /**
+     * Refresh the statistics of the keywords cached for an index.
+     *
+     * @param indexName
+     */
+    private void refresh(String indexName)
+    {
+
+        String prefix = key(indexName, "");
+        List<String> tokens = new ArrayList<>();
+        synchronized (_keywords)
+        {
+            for (String key : _keywords.keySet())
+            {
+                if (key.startsWith(prefix))
+                {
+                    tokens.add(key.substring(prefix.length()));
+                }
+            }
+        }
+
+        if (tokens.isEmpty())
+        {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        try
+        {
+            fetch(indexName, tokens);
+        }
+        catch (SphinxException e)
+        {
+            _log.warn("Unable to refresh keywords for " + indexName + ": " + e.getMessage());
+            return;
+        }
+
+        if (_log.isDebugEnabled())
+        {
+            _log.debug("Refreshed " + tokens.size() + " keywords for " + indexName + " in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    /**
+     * Fetch statistics for the tokens from searchd and cache them.
+     *
+     * @param index
+     * @param tokens
+     * @return the keyword for each token, or {@link #NOT_INDEXED}.
+     * @throws SphinxException
+     */
+    private Map<String, SphinxKeyword> fetch(String index, List<String> tokens) throws SphinxException
+    {
+
+        Map<String, SphinxKeyword> fetched = new HashMap<>();
+        SphinxClient sphinx = new SphinxClient(_host, _port);
+        for (int from = 0; from < tokens.size(); from += BATCH_SIZE)
+        {
+            List<String> batch = tokens.subList(from, Math.min(from + BATCH_SIZE, tokens.size()));
+            SphinxKeyword[] keywords = sphinx.BuildKeywordList(String.join(" ", batch), index, true);
+            if (keywords == null)
+            {
+                throw new SphinxException("Sphinx Error: " + sphinx.GetLastError());
+            }
+
+            synchronized (_keywords)
+            {
+                for (String token : batch)
+                {
+                    _keywords.put(key(index, token), NOT_INDEXED);
+                    fetched.put(token, NOT_INDEXED);
+                }
+                for (SphinxKeyword keyword : keywords)
+                {
+                    String token = keyword.tokenized.toLowerCase();
+                    _keywords.put(key(index, token), keyword);
+                    fetched.put(token, keyword);
+                }
+            }
+        }
+
+        return fetched;
+    }
+
+    /**
+     * Get the cache key for a token in an index.
+     *
+     * @param index
+     * @param token
+     * @return the key.
+     */
+    private static String key(String index, String token)
+    {
+
+        return index + '\u0000' + token;
+    }
+}
@@ -0,0 +1,96 @@
+package org.boncey.jsphinx;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the latency of recent searches so background work can back off while searches are slow.
+ *
+ * Keeps the most recent samples in a ring buffer, ignoring any older than the window.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class LatencyMonitor
+{
+
+    /**
+     * The latencies, in microseconds.
+     */
+    private final long[] _latencies;
+
+    /**
+     * When each latency was recorded, in milliseconds.
+     */
+    private final long[] _recorded;
+
+    /**
+     * How long samples count for, in milliseconds.
+     */
+    private final long _window;
+
+    /**
+     * The next slot to write.
+     */
+    private int _next;
+
+    /**
+     * Default constructor.
+     *
+     * @param samples the maximum number of samples to keep.
+     * @param window how long samples count for, in milliseconds.
+     */
+    public LatencyMonitor(int samples, long window)
+    {
+
+        _latencies = new long[samples];
+        _recorded = new long[samples];
+        _window = window;
+    }
+
+    /**
+     * Record a search's latency.
+     *
+     * @param nanos the latency in nanoseconds.
+     */
+    public synchronized void record(long nanos)
+    {
+
+        _latencies[_next] = nanos / 1000;
+        _recorded[_next] = System.currentTimeMillis();
+        _next = (_next + 1) % _latencies.length;
+    }
+
+    /**
+     * Get a percentile of the recent latencies.
+     *
+     * @param percentile between 0 and 100, e.g. 99.
+     * @return the latency in milliseconds, or 0 if there are no recent searches.
+     */
+    public double getPercentile(double percentile)
+    {
+
+        long[] recent = new long[_latencies.length];
+        int count = 0;
+        synchronized (this)
+        {
+            long cutoff = System.currentTimeMillis() - _window;
+            for (int i = 0; i < _latencies.length; i++)
+            {
+                if (_recorded[i] > cutoff)
+                {
+                    recent[count++] = _latencies[i];
+                }
+            }
+        }
+
+        if (count == 0)
+        {
+            return 0;
+        }
+
+        Arrays.sort(recent, 0, count);
+        int rank = (int)Math.ceil(percentile / 100 * count) - 1;
+
+        return recent[Math.max(0, Math.min(rank, count - 1))] / 1000.0;
+    }
+}
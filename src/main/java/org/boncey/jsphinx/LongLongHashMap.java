@@ -0,0 +1,245 @@
+package org.boncey.jsphinx;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map of primitive longs to longs, avoiding boxing for large docId maps.
+ *
+ * {@link Long#MIN_VALUE} can't be used as a key. Not thread safe.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+class LongLongHashMap
+{
+
+    /**
+     * Marks an empty slot.
+     */
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    /**
+     * The keys.
+     */
+    private long[] _keys;
+
+    /**
+     * The values.
+     */
+    private long[] _values;
+
+    /**
+     * The number of entries.
+     */
+    private int _size;
+
+    /**
+     * Default constructor.
+     */
+    LongLongHashMap()
+    {
+
+        this(16);
+    }
+
+    /**
+     * Constructor with an expected number of entries.
+     *
+     * @param expected
+     */
+    LongLongHashMap(int expected)
+    {
+
+        int capacity = Integer.highestOneBit(Math.max(expected * 2, 16) - 1) << 1;
+        _keys = new long[capacity];
+        _values = new long[capacity];
+        Arrays.fill(_keys, EMPTY);
+    }
+
+    /**
+     * Get the value for the key.
+     *
+     * @param key
+     * @param defaultValue returned if the key isn't present.
+     * @return the value.
+     */
+    long get(long key, long defaultValue)
+    {
+
+        int slot = find(key);
+
+        return _keys[slot] == EMPTY ? defaultValue : _values[slot];
+    }
+
+    /**
+     * Is the key present?
+     *
+     * @param key
+     * @return true if present.
+     */
+    boolean containsKey(long key)
+    {
+
+        return _keys[find(key)] != EMPTY;
+    }
+
+    /**
+     * Set the value for the key.
+     *
+     * @param key
+     * @param value
+     */
+    void put(long key, long value)
+    {
+
+        if (key == EMPTY)
+        {
+            throw new IllegalArgumentException("Invalid key " + key);
+        }
+
+        int slot = find(key);
+        if (_keys[slot] == EMPTY)
+        {
+            _keys[slot] = key;
+            _size++;
+        }
+        _values[slot] = value;
+
+        if (_size * 2 > _keys.length)
+        {
+            resize();
+        }
+    }
+
+    /**
+     * Remove the key.
+     *
+     * @param key
+     * @return true if it was present.
+     */
+    boolean remove(long key)
+    {
+
+        int slot = find(key);
+        if (_keys[slot] == EMPTY)
+        {
+            return false;
+        }
+
+        // Shift back any following entries that would no longer be reachable
+        int mask = _keys.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (_keys[next] != EMPTY)
+        {
+            int ideal = hash(_keys[next]) & mask;
+            if (((next - ideal) & mask) >= ((next - gap) & mask))
+            {
+                _keys[gap] = _keys[next];
+                _values[gap] = _values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        _keys[gap] = EMPTY;
+        _size--;
+
+        return true;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    void clear()
+    {
+
+        Arrays.fill(_keys, EMPTY);
+        _size = 0;
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return the size.
+     */
+    int size()
+    {
+
+        return _size;
+    }
+
+    /**
+     * Get a copy of the keys, in no particular order.
+     *
+     * @return the keys.
+     */
+    long[] keys()
+    {
+
+        long[] keys = new long[_size];
+        int n = 0;
+        for (long key : _keys)
+        {
+            if (key != EMPTY)
+            {
+                keys[n++] = key;
+            }
+        }
+
+        return keys;
+    }
+
+    /**
+     * Find the slot holding the key, or the empty slot where it would go.
+     *
+     * @param key
+     * @return the slot.
+     */
+    private int find(long key)
+    {
+
+        int mask = _keys.length - 1;
+        int slot = hash(key) & mask;
+        while (_keys[slot] != EMPTY && _keys[slot] != key)
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Double the capacity.
+     */
+    private void resize()
+    {
+
+        long[] keys = _keys;
+        long[] values = _values;
+        _keys = new long[keys.length * 2];
+        _values = new long[keys.length * 2];
+        Arrays.fill(_keys, EMPTY);
+        _size = 0;
+        for (int i = 0; i < keys.length; i++)
+        {
+            if (keys[i] != EMPTY)
+            {
+                put(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Spread the bits of the key.
+     *
+     * @param key
+     * @return the hash.
+     */
+    private static int hash(long key)
+    {
+
+        long h = key * 0x9E3779B97F4A7C15L;
+
+        return (int)(h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,463 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A cache of search results held in a memory-mapped file so it survives a restart.
+ *
+ * The file is a header followed by a fixed number of fixed-size slots; a key hashes to exactly one slot and a newer
+ * entry simply overwrites an older one. Each entry stores the docIds delta-encoded as variable length integers.
+ * Entries are tagged with the index generation they were written under and are ignored once the generation moves
+ * on, e.g. after a re-index. The header also records a fingerprint of the index files the entries were read from, so
+ * an owner can tell whether the indexes were rebuilt while the cache was closed.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class MappedResultCache implements Closeable
+{
+
+    /**
+     * Identifies a cache file.
+     */
+    private static final int MAGIC = 0x4A535243;
+
+    /**
+     * The file format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The size of the file header.
+     */
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * Offset of the generation within the header.
+     */
+    private static final int GENERATION_OFFSET = 16;
+
+    /**
+     * Offset of the index fingerprint within the header.
+     */
+    private static final int FINGERPRINT_OFFSET = 24;
+
+    /**
+     * The size of the fixed part of a slot (hash, generation, expiry, total, key and payload lengths).
+     */
+    private static final int SLOT_HEADER_SIZE = 32;
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(MappedResultCache.class);
+
+    /**
+     * The number of slots.
+     */
+    private final int _slots;
+
+    /**
+     * The size of each slot in bytes.
+     */
+    private final int _slotSize;
+
+    /**
+     * How long an entry is valid for, in milliseconds (0 for no expiry).
+     */
+    private final long _ttl;
+
+    /**
+     * The open file.
+     */
+    private final RandomAccessFile _file;
+
+    /**
+     * The mapped file.
+     */
+    private final MappedByteBuffer _buffer;
+
+    /**
+     * The current index generation.
+     */
+    private long _generation;
+
+    /**
+     * The fingerprint of the index files the current generation was read from.
+     */
+    private long _indexFingerprint;
+
+    /**
+     * Default constructor.
+     *
+     * @param file the cache file, created if it doesn't exist.
+     * @param slots the number of entries the cache can hold.
+     * @param slotSize the maximum size of an entry in bytes.
+     * @param ttl how long an entry is valid for, in milliseconds (0 for no expiry).
+     * @throws IOException
+     */
+    public MappedResultCache(File file, int slots, int slotSize, long ttl) throws IOException
+    {
+
+        if (slots <= 0 || slotSize <= SLOT_HEADER_SIZE || slotSize > 0xFFFF)
+        {
+            throw new IllegalArgumentException("Invalid cache dimensions " + slots + " x " + slotSize);
+        }
+
+        _slots = slots;
+        _slotSize = slotSize;
+        _ttl = ttl;
+        long size = HEADER_SIZE + (long)slots * slotSize;
+        if (size > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Cache of " + size + " bytes is too large to map");
+        }
+
+        _file = new RandomAccessFile(file, "rw");
+        try
+        {
+            boolean valid = _file.length() == size && _file.readInt() == MAGIC && _file.readInt() == VERSION &&
+                    _file.readInt() == slots && _file.readInt() == slotSize;
+            if (!valid)
+            {
+                // Truncating and re-extending the file zeroes every slot
+                _file.setLength(0);
+                _file.setLength(size);
+            }
+            _buffer = _file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            if (valid)
+            {
+                _generation = _buffer.getLong(GENERATION_OFFSET);
+                _indexFingerprint = _buffer.getLong(FINGERPRINT_OFFSET);
+                _log.info("Opened result cache " + file + " at generation " + _generation);
+            }
+            else
+            {
+                _buffer.putInt(0, MAGIC);
+                _buffer.putInt(4, VERSION);
+                _buffer.putInt(8, slots);
+                _buffer.putInt(12, slotSize);
+                _buffer.putLong(GENERATION_OFFSET, _generation);
+                _buffer.putLong(FINGERPRINT_OFFSET, _indexFingerprint);
+                _log.info("Created result cache " + file);
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            _file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the cached results for the given key.
+     *
+     * @param key
+     * @return the results or null if not cached, expired or from an older generation.
+     */
+    public synchronized SearchResultContainer get(String key)
+    {
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(keyBytes);
+        int pos = slotOffset(hash);
+
+        if (_buffer.getLong(pos) != hash || _buffer.getLong(pos + 8) != _generation)
+        {
+            return null;
+        }
+
+        long expires = _buffer.getLong(pos + 16);
+        if (expires != 0 && expires < System.currentTimeMillis())
+        {
+            return null;
+        }
+
+        int total = _buffer.getInt(pos + 24);
+        int keyLength = _buffer.getShort(pos + 28) & 0xFFFF;
+        int payloadLength = _buffer.getShort(pos + 30) & 0xFFFF;
+        if (keyLength != keyBytes.length)
+        {
+            return null;
+        }
+
+        int dataPos = pos + SLOT_HEADER_SIZE;
+        for (int i = 0; i < keyLength; i++)
+        {
+            if (_buffer.get(dataPos + i) != keyBytes[i])
+            {
+                return null;
+            }
+        }
+
+        return new SearchResultContainer(decode(dataPos + keyLength, payloadLength), total);
+    }
+
+    /**
+     * Cache the results for the given key; results too large for a slot are not cached.
+     *
+     * @param key
+     * @param results
+     */
+    public synchronized void put(String key, SearchResultContainer results)
+    {
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = encode(results.getSearchIds());
+        if (SLOT_HEADER_SIZE + keyBytes.length + payload.length > _slotSize)
+        {
+            if (_log.isDebugEnabled())
+            {
+                _log.debug("Results for '" + key + "' too large to cache");
+            }
+            return;
+        }
+
+        long hash = hash(keyBytes);
+        int pos = slotOffset(hash);
+
+        // Clear the hash first so a crash mid-write leaves an empty slot rather than a corrupt one
+        _buffer.putLong(pos, 0L);
+        _buffer.putLong(pos + 8, _generation);
+        _buffer.putLong(pos + 16, _ttl > 0 ? System.currentTimeMillis() + _ttl : 0L);
+        _buffer.putInt(pos + 24, results.getTotalResults());
+        _buffer.putShort(pos + 28, (short)keyBytes.length);
+        _buffer.putShort(pos + 30, (short)payload.length);
+
+        int dataPos = pos + SLOT_HEADER_SIZE;
+        for (int i = 0; i < keyBytes.length; i++)
+        {
+            _buffer.put(dataPos + i, keyBytes[i]);
+        }
+        dataPos += keyBytes.length;
+        for (int i = 0; i < payload.length; i++)
+        {
+            _buffer.put(dataPos + i, payload[i]);
+        }
+        _buffer.putLong(pos, hash);
+    }
+
+    /**
+     * Get the current index generation.
+     *
+     * @return the generation.
+     */
+    public synchronized long getGeneration()
+    {
+
+        return _generation;
+    }
+
+    /**
+     * Set the index generation, entries written under any other generation are ignored from now on.
+     *
+     * @param generation
+     */
+    public synchronized void setGeneration(long generation)
+    {
+
+        _generation = generation;
+        _buffer.putLong(GENERATION_OFFSET, generation);
+    }
+
+    /**
+     * Move on to the next index generation, invalidating all current entries.
+     *
+     * @return the new generation.
+     */
+    public synchronized long nextGeneration()
+    {
+
+        setGeneration(_generation + 1);
+        return _generation;
+    }
+
+    /**
+     * Get the fingerprint of the index files the current generation was read from.
+     *
+     * @return the fingerprint, 0 if never set.
+     */
+    public synchronized long getIndexFingerprint()
+    {
+
+        return _indexFingerprint;
+    }
+
+    /**
+     * Record the fingerprint of the index files, moving on to the next generation if it differs from the last one.
+     *
+     * @param indexFingerprint
+     * @return true if the generation moved on.
+     */
+    public synchronized boolean setIndexFingerprint(long indexFingerprint)
+    {
+
+        if (indexFingerprint == _indexFingerprint)
+        {
+            return false;
+        }
+
+        _indexFingerprint = indexFingerprint;
+        _buffer.putLong(FINGERPRINT_OFFSET, indexFingerprint);
+        nextGeneration();
+
+        return true;
+    }
+
+    /**
+     * Flush the cache to disk and close it.
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+
+        _buffer.force();
+        _file.close();
+    }
+
+    /**
+     * Get the file offset of the slot for the given hash.
+     *
+     * @param hash
+     * @return the offset.
+     */
+    private int slotOffset(long hash)
+    {
+
+        return HEADER_SIZE + (int)((hash & Long.MAX_VALUE) % _slots) * _slotSize;
+    }
+
+    /**
+     * Hash the key (64 bit FNV-1a); never returns 0 as that marks an empty slot.
+     *
+     * @param key
+     * @return the hash.
+     */
+    private static long hash(byte[] key)
+    {
+
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key)
+        {
+            hash ^= (b & 0xFF);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Encode the ids as zig-zag variable length deltas.
+     *
+     * @param ids
+     * @return the encoded ids.
+     */
+    private static byte[] encode(List<Long> ids)
+    {
+
+        byte[] out = new byte[10 * (ids.size() + 1)];
+        int pos = writeVarLong(out, 0, ids.size());
+        long previous = 0;
+        for (Long id : ids)
+        {
+            long delta = id - previous;
+            pos = writeVarLong(out, pos, (delta << 1) ^ (delta >> 63));
+            previous = id;
+        }
+
+        return Arrays.copyOf(out, pos);
+    }
+
+    /**
+     * Decode ids encoded by {@link #encode(List)}.
+     *
+     * @param pos the position of the encoded ids in the buffer.
+     * @param length the length of the encoded ids.
+     * @return the ids.
+     */
+    private List<Long> decode(int pos, int length)
+    {
+
+        int[] cursor = new int[] { pos };
+        int count = (int)readVarLong(cursor);
+        List<Long> ids = new ArrayList<>(count);
+        long previous = 0;
+        for (int i = 0; i < count && cursor[0] < pos + length; i++)
+        {
+            long zigzag = readVarLong(cursor);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            ids.add(previous);
+        }
+
+        return ids;
+    }
+
+    /**
+     * Write a variable length long.
+     *
+     * @param out
+     * @param pos
+     * @param value
+     * @return the position after the value.
+     */
+    private static int writeVarLong(byte[] out, int pos, long value)
+    {
+
+        while ((value & ~0x7FL) != 0)
+        {
+            out[pos++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte)value;
+
+        return pos;
+    }
+
+    /**
+     * Read a variable length long from the buffer, advancing the cursor.
+     *
+     * @param cursor a single element array holding the read position.
+     * @return the value.
+     */
+    private long readVarLong(int[] cursor)
+    {
+
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do
+        {
+            b = _buffer.get(cursor[0]++);
+            value |= (long)(b & 0x7F) << shift;
+            shift += 7;
+        }
+        while ((b & 0x80) != 0 && shift < 64);
+
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+
+        return String.format("MappedResultCache [_slots=%s, _slotSize=%s, _generation=%s]", _slots, _slotSize, _generation);
+    }
+}
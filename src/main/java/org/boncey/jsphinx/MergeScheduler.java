@@ -0,0 +1,183 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges the delta index into the main index when the delta gets too big or too slow to re-index, or once a day in a
+ * quiet window.
+ *
+ * Merges go through the same {@link ReindexScheduler} as delta re-indexes, so the two never run at once.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class MergeScheduler implements ReindexListener
+{
+
+    /**
+     * How often to check for the quiet window, in minutes.
+     */
+    private static final long CHECK_INTERVAL_MINUTES = 1;
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(MergeScheduler.class);
+
+    /**
+     * The service whose indexes to merge.
+     */
+    private final SearchService<?> _searchService;
+
+    /**
+     * Merge once the delta holds this many documents (0 never).
+     */
+    private final long _maxDeltaDocs;
+
+    /**
+     * Merge once a delta re-index takes this long, in milliseconds (0 never).
+     */
+    private final long _maxDeltaMillis;
+
+    /**
+     * The start of the quiet window, or null if there isn't one.
+     */
+    private final LocalTime _windowStart;
+
+    /**
+     * The end of the quiet window.
+     */
+    private final LocalTime _windowEnd;
+
+    /**
+     * Checks for the quiet window.
+     */
+    private final ScheduledExecutorService _executor;
+
+    /**
+     * The day of the last merge in the quiet window.
+     */
+    private volatile LocalDate _lastWindowMerge;
+
+    /**
+     * Default constructor.
+     *
+     * @param searchService the service whose indexes to merge.
+     * @param maxDeltaDocs merge once the delta holds this many documents (0 never).
+     * @param maxDeltaMillis merge once a delta re-index takes this long, in milliseconds (0 never).
+     * @param window the daily quiet window, e.g. <code>02:00-04:00</code>, or null for none.
+     */
+    public MergeScheduler(SearchService<?> searchService, long maxDeltaDocs, long maxDeltaMillis, String window)
+    {
+
+        _searchService = searchService;
+        _maxDeltaDocs = maxDeltaDocs;
+        _maxDeltaMillis = maxDeltaMillis;
+
+        if (window != null)
+        {
+            String[] times = window.split("-");
+            if (times.length != 2)
+            {
+                throw new IllegalArgumentException("Invalid merge window " + window + ", expected e.g. 02:00-04:00");
+            }
+            _windowStart = LocalTime.parse(times[0].trim());
+            _windowEnd = LocalTime.parse(times[1].trim());
+            _executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("jsphinx-merge"));
+            _executor.scheduleWithFixedDelay(this::checkWindow, CHECK_INTERVAL_MINUTES, CHECK_INTERVAL_MINUTES,
+                    TimeUnit.MINUTES);
+        }
+        else
+        {
+            _windowStart = null;
+            _windowEnd = null;
+            _executor = null;
+        }
+    }
+
+    /**
+     * Check the delta's size and indexing time after it's re-indexed.
+     *
+     * @param indexName
+     */
+    @Override
+    public void reindexed(String indexName)
+    {
+
+        if (!indexName.equals(_searchService.getDeltaIndexName()))
+        {
+            return;
+        }
+
+        IndexerStats stats = _searchService.getIndexerStats(indexName);
+        if (stats == null)
+        {
+            return;
+        }
+
+        if (_maxDeltaDocs > 0 && stats.getDocuments() >= _maxDeltaDocs)
+        {
+            merge("delta holds " + stats.getDocuments() + " documents");
+        }
+        else if (_maxDeltaMillis > 0 && stats.getRunMillis() >= _maxDeltaMillis)
+        {
+            merge("delta re-index took " + stats.getRunMillis() + "ms");
+        }
+    }
+
+    /**
+     * Stop checking for the quiet window.
+     */
+    public void shutdown()
+    {
+
+        if (_executor != null)
+        {
+            _executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Merge once a day in the quiet window, if the delta isn't known to be empty.
+     */
+    private void checkWindow()
+    {
+
+        LocalTime now = LocalTime.now();
+        boolean inWindow = _windowStart.isBefore(_windowEnd)
+                ? !now.isBefore(_windowStart) && now.isBefore(_windowEnd)
+                : !now.isBefore(_windowStart) || now.isBefore(_windowEnd);
+        LocalDate today = LocalDate.now();
+        if (!inWindow || today.equals(_lastWindowMerge))
+        {
+            return;
+        }
+
+        _lastWindowMerge = today;
+        IndexerStats stats = _searchService.getIndexerStats(_searchService.getDeltaIndexName());
+        if (stats == null || stats.getDocuments() > 0)
+        {
+            merge("quiet window");
+        }
+    }
+
+    /**
+     * Request a merge in the background.
+     *
+     * @param reason logged.
+     */
+    private void merge(String reason)
+    {
+
+        _log.info("Merging " + _searchService.getDeltaIndexName() + " into " + _searchService.getMainIndexName()
+                + ": " + reason);
+        _searchService.mergeDeltaAsync();
+    }
+}
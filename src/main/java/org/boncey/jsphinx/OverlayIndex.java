@@ -0,0 +1,337 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory inverted index of documents changed since the last re-index, so they are searchable straight away.
+ *
+ * A document put here replaces whatever searchd holds for the same docId, and a deleted document hides it. Every
+ * change is stamped with a sequence number; take {@link #mark()} before an indexer run and pass it to
+ * {@link #clearTo(long)} once the run succeeds to drop the changes the index now covers. Once the overlay holds its
+ * maximum number of documents the oldest are dropped.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class OverlayIndex
+{
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(OverlayIndex.class);
+
+    /**
+     * The maximum number of documents held.
+     */
+    private final int _maxDocs;
+
+    /**
+     * The documents, oldest change first.
+     */
+    private final LinkedHashMap<Long, Entry> _docs = new LinkedHashMap<>();
+
+    /**
+     * The documents containing each word, with the number of occurrences.
+     */
+    private final Map<String, LongLongHashMap> _postings = new HashMap<>();
+
+    /**
+     * The last sequence number issued.
+     */
+    private long _sequence;
+
+    /**
+     * Default constructor.
+     *
+     * @param maxDocs the maximum number of documents held.
+     */
+    public OverlayIndex(int maxDocs)
+    {
+
+        _maxDocs = maxDocs;
+    }
+
+    /**
+     * Add or replace a document.
+     *
+     * @param docId
+     * @param text the document's full text, all fields together.
+     */
+    public void put(long docId, String text)
+    {
+
+        put(docId, text, null);
+    }
+
+    /**
+     * Add or replace a document, with the attribute values its matches are sorted by.
+     *
+     * @param docId
+     * @param text the document's full text, all fields together.
+     * @param attributes the document's attribute values by name, or null; those missing sort ahead of searchd's
+     * matches.
+     */
+    public synchronized void put(long docId, String text, Map<String, ? extends Number> attributes)
+    {
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (String word : Tokenizer.tokenize(text))
+        {
+            counts.merge(word, 1, Integer::sum);
+        }
+
+        replace(docId, new Entry(++_sequence, counts.keySet().toArray(new String[0]),
+                attributes != null ? new HashMap<>(attributes) : null));
+        for (Map.Entry<String, Integer> count : counts.entrySet())
+        {
+            _postings.computeIfAbsent(count.getKey(), k -> new LongLongHashMap()).put(docId, count.getValue());
+        }
+    }
+
+    /**
+     * Hide a deleted document.
+     *
+     * @param docId
+     */
+    public synchronized void delete(long docId)
+    {
+
+        replace(docId, new Entry(++_sequence, null, null));
+    }
+
+    /**
+     * Is the document held here, so searchd's copy is stale?
+     *
+     * @param docId
+     * @return true if changed since the last re-index.
+     */
+    public synchronized boolean contains(long docId)
+    {
+
+        return _docs.containsKey(docId);
+    }
+
+    /**
+     * Get an attribute value of a document held here.
+     *
+     * @param docId
+     * @param attribute
+     * @return the value, or null if the document or value isn't held.
+     */
+    public synchronized Number getAttribute(long docId, String attribute)
+    {
+
+        Entry entry = _docs.get(docId);
+
+        return entry != null && entry._attributes != null ? entry._attributes.get(attribute) : null;
+    }
+
+    /**
+     * Find the documents containing every word of the phrase, most occurrences first then most recently changed.
+     *
+     * @param phrase
+     * @return the matching docIds.
+     */
+    public synchronized List<Long> search(String phrase)
+    {
+
+        List<String> words = Tokenizer.tokenize(phrase);
+        List<Long> matches = new ArrayList<>();
+        if (words.isEmpty() || _docs.isEmpty())
+        {
+            return matches;
+        }
+
+        // Walk the shortest posting list, checking the others
+        LongLongHashMap shortest = null;
+        List<LongLongHashMap> postings = new ArrayList<>(words.size());
+        for (String word : words)
+        {
+            LongLongHashMap posting = _postings.get(word);
+            if (posting == null)
+            {
+                return matches;
+            }
+            postings.add(posting);
+            if (shortest == null || posting.size() < shortest.size())
+            {
+                shortest = posting;
+            }
+        }
+
+        Map<Long, Long> scores = new HashMap<>();
+        for (long docId : shortest.keys())
+        {
+            long score = 0;
+            for (LongLongHashMap posting : postings)
+            {
+                long count = posting.get(docId, 0);
+                if (count == 0)
+                {
+                    score = 0;
+                    break;
+                }
+                score += count;
+            }
+            if (score > 0)
+            {
+                scores.put(docId, score);
+                matches.add(docId);
+            }
+        }
+
+        matches.sort((a, b) -> {
+            int cmp = Long.compare(scores.get(b), scores.get(a));
+            return cmp != 0 ? cmp : Long.compare(_docs.get(b)._sequence, _docs.get(a)._sequence);
+        });
+
+        return matches;
+    }
+
+    /**
+     * Get the sequence number of the latest change.
+     *
+     * @return the mark.
+     */
+    public synchronized long mark()
+    {
+
+        return _sequence;
+    }
+
+    /**
+     * Drop the changes made up to a mark, once a re-index covers them.
+     *
+     * @param mark
+     */
+    public synchronized void clearTo(long mark)
+    {
+
+        Iterator<Map.Entry<Long, Entry>> iterator = _docs.entrySet().iterator();
+        int cleared = 0;
+        while (iterator.hasNext())
+        {
+            Map.Entry<Long, Entry> doc = iterator.next();
+            if (doc.getValue()._sequence > mark)
+            {
+                break;
+            }
+            unindex(doc.getKey(), doc.getValue());
+            iterator.remove();
+            cleared++;
+        }
+
+        if (_log.isDebugEnabled())
+        {
+            _log.debug("Cleared " + cleared + " documents from overlay, " + _docs.size() + " remain");
+        }
+    }
+
+    /**
+     * Get the number of documents held.
+     *
+     * @return the size.
+     */
+    public synchronized int size()
+    {
+
+        return _docs.size();
+    }
+
+    /**
+     * Replace any entry for the document, moving it to the newest position.
+     *
+     * @param docId
+     * @param entry
+     */
+    private void replace(long docId, Entry entry)
+    {
+
+        Entry old = _docs.remove(docId);
+        if (old != null)
+        {
+            unindex(docId, old);
+        }
+        _docs.put(docId, entry);
+
+        if (_docs.size() > _maxDocs)
+        {
+            Iterator<Map.Entry<Long, Entry>> iterator = _docs.entrySet().iterator();
+            Map.Entry<Long, Entry> eldest = iterator.next();
+            unindex(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+            _log.warn("Overlay full, dropped document " + eldest.getKey() + " until the next re-index");
+        }
+    }
+
+    /**
+     * Remove a document's postings.
+     *
+     * @param docId
+     * @param entry
+     */
+    private void unindex(long docId, Entry entry)
+    {
+
+        if (entry._words == null)
+        {
+            return;
+        }
+
+        for (String word : entry._words)
+        {
+            LongLongHashMap posting = _postings.get(word);
+            posting.remove(docId);
+            if (posting.size() == 0)
+            {
+                _postings.remove(word);
+            }
+        }
+    }
+
+    /**
+     * A document held in the overlay.
+     */
+    private static class Entry
+    {
+
+        /**
+         * The sequence number of the change.
+         */
+        private final long _sequence;
+
+        /**
+         * The distinct words, or null if deleted.
+         */
+        private final String[] _words;
+
+        /**
+         * The attribute values, or null if none were given.
+         */
+        private final Map<String, Number> _attributes;
+
+        /**
+         * Default constructor.
+         *
+         * @param sequence
+         * @param words
+         * @param attributes
+         */
+        Entry(long sequence, String[] words, Map<String, Number> attributes)
+        {
+
+            _sequence = sequence;
+            _words = words;
+            _attributes = attributes;
+        }
+    }
+}
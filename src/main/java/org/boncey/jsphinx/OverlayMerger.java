@@ -0,0 +1,187 @@
+package org.boncey.jsphinx;
+
+import org.sphx.api.SphinxMatch;
+import org.sphx.api.SphinxResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges the matches of an {@link OverlayIndex} into searchd's results.
+ *
+ * searchd is queried for every match up to the end of the requested page (see {@link #getWindow(int, int)}), hits
+ * for documents changed since the last re-index are dropped as stale, the overlay's matches are merged in and the
+ * page is sliced out, so a match pushed off one page leads the next. When sorting by an attribute, overlay matches
+ * holding that attribute (see {@link OverlayIndex#put(long, String, Map)}) take their place in the order; when sorting
+ * by relevance, or for matches without the attribute, they lead.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class OverlayMerger
+{
+
+    /**
+     * The overlay to merge.
+     */
+    private final OverlayIndex _overlay;
+
+    /**
+     * The most matches searchd will return.
+     */
+    private final int _maxMatches;
+
+    /**
+     * Default constructor.
+     *
+     * @param overlay the overlay to merge.
+     * @param maxMatches the most matches searchd will return.
+     */
+    public OverlayMerger(OverlayIndex overlay, int maxMatches)
+    {
+
+        _overlay = overlay;
+        _maxMatches = maxMatches;
+    }
+
+    /**
+     * Get the overlay's matches for a search phrase; the overlay only matches text, so check them against the
+     * search's filters before merging them.
+     *
+     * @param searchPhrase
+     * @return the docIds, best match first.
+     */
+    public List<Long> search(String searchPhrase)
+    {
+
+        return _overlay.search(searchPhrase);
+    }
+
+    /**
+     * Do searchd's results hold documents changed since the last re-index?
+     *
+     * @param results
+     * @return true if any are held in the overlay.
+     */
+    public boolean hasStale(SearchResultContainer results)
+    {
+
+        if (_overlay.size() == 0)
+        {
+            return false;
+        }
+
+        for (Long docId : results.getSearchIds())
+        {
+            if (_overlay.contains(docId))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Get the number of matches to fetch from searchd, from the first, to merge a page; enough extra to refill it if
+     * every overlay document turns out to be stale.
+     *
+     * @param offset
+     * @param limit
+     * @return the number of matches.
+     */
+    public int getWindow(int offset, int limit)
+    {
+
+        return Math.min(offset + limit + _overlay.size(), _maxMatches);
+    }
+
+    /**
+     * Merge the overlay's matches into searchd's and slice out a page.
+     *
+     * @param hits the overlay's matches.
+     * @param res searchd's matches, from the first up to the window.
+     * @param offset
+     * @param limit
+     * @param sortField the attribute the search is sorted by, or null if sorted by relevance.
+     * @param descending is the attribute sorted in descending order?
+     * @return the merged page.
+     */
+    public SearchResultContainer merge(List<Long> hits, SphinxResult res, int offset, int limit, String sortField,
+            boolean descending)
+    {
+
+        int sortIndex = sortField != null ? Arrays.asList(res.attrNames).indexOf(sortField) : -1;
+
+        // Overlay matches go first so they lead ties, and the sort is stable
+        List<Long> merged = new ArrayList<>(hits.size() + res.matches.length);
+        Map<Long, Number> values = new HashMap<>();
+        for (Long docId : hits)
+        {
+            merged.add(docId);
+            if (sortIndex >= 0)
+            {
+                values.put(docId, _overlay.getAttribute(docId, sortField));
+            }
+        }
+
+        int stale = 0;
+        for (SphinxMatch match : res.matches)
+        {
+            if (_overlay.contains(match.docId))
+            {
+                stale++;
+                continue;
+            }
+            merged.add(match.docId);
+            if (sortIndex >= 0)
+            {
+                Object value = match.attrValues.get(sortIndex);
+                values.put(match.docId, value instanceof Number ? (Number) value : null);
+            }
+        }
+
+        if (sortIndex >= 0)
+        {
+            merged.sort((a, b) -> {
+                Number valueA = values.get(a);
+                Number valueB = values.get(b);
+                if (valueA == null || valueB == null)
+                {
+                    return valueA == null ? (valueB == null ? 0 : -1) : 1;
+                }
+                int cmp = compareValues(valueA, valueB);
+                return descending ? -cmp : cmp;
+            });
+        }
+
+        List<Long> searchIds = new ArrayList<>(limit);
+        if (offset < merged.size())
+        {
+            searchIds.addAll(merged.subList(offset, Math.min(offset + limit, merged.size())));
+        }
+
+        return new SearchResultContainer(searchIds, Math.max(0, res.total - stale) + hits.size());
+    }
+
+    /**
+     * Compare two attribute values, exactly for integers.
+     *
+     * @param a
+     * @param b
+     * @return the comparison.
+     */
+    private static int compareValues(Number a, Number b)
+    {
+
+        if ((a instanceof Long || a instanceof Integer) && (b instanceof Long || b instanceof Integer))
+        {
+            return Long.compare(a.longValue(), b.longValue());
+        }
+
+        return Double.compare(a.doubleValue(), b.doubleValue());
+    }
+}
@@ -0,0 +1,491 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sphx.api.SphinxClient;
+import org.sphx.api.SphinxException;
+import org.sphx.api.SphinxMatch;
+import org.sphx.api.SphinxResult;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs saved searches against the documents added by each delta re-index and reports only the new matches.
+ *
+ * After a delta re-index the percolator finds the highest docId now in the delta, restricts every saved search to
+ * docIds above its own high-water mark, and sends them to searchd packed into multi-query <code>RunQueries</code>
+ * batches over several pooled connections at once. This relies on new documents getting ascending docIds; the very
+ * first re-index only sets the high-water mark, and a saved search only matches documents added after it.
+ *
+ * Each saved search's mark moves on once its batch has run, so when a batch fails only its searches are run again
+ * next time. Given a state file, the marks are saved after every run and loaded at startup, so a restart neither
+ * drops nor repeats notifications.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class Percolator<S extends SearchCommand> implements ReindexListener
+{
+
+    /**
+     * Receives the new matches for a saved search.
+     */
+    public interface Listener
+    {
+
+        /**
+         * Called with the new documents matching a saved search.
+         *
+         * @param savedSearchId
+         * @param docIds
+         */
+        void matched(String savedSearchId, List<Long> docIds);
+    }
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(Percolator.class);
+
+    /**
+     * The state file property holding the overall high-water mark.
+     */
+    private static final String HIGH_WATER = "highWater";
+
+    /**
+     * The prefix of the state file properties holding each saved search's mark.
+     */
+    private static final String SEARCH_PREFIX = "search.";
+
+    /**
+     * The service whose searches are run.
+     */
+    private final SearchService<S> _searchService;
+
+    /**
+     * The connections to run batches over.
+     */
+    private final SphinxClientPool _pool;
+
+    /**
+     * The number of saved searches per RunQueries batch.
+     */
+    private final int _batchSize;
+
+    /**
+     * The maximum number of new matches reported per saved search.
+     */
+    private final int _maxMatches;
+
+    /**
+     * Receives the matches.
+     */
+    private final Listener _listener;
+
+    /**
+     * The saved searches by id.
+     */
+    private final Map<String, S> _savedSearches = new ConcurrentHashMap<>();
+
+    /**
+     * Runs percolations one at a time, in the background.
+     */
+    private final ExecutorService _runner;
+
+    /**
+     * Runs the batches in parallel.
+     */
+    private final ExecutorService _executor;
+
+    /**
+     * The file the high-water marks are saved to, or null to keep them in memory.
+     */
+    private final File _stateFile;
+
+    /**
+     * The highest docId percolated by each saved search.
+     */
+    private final Map<String, Long> _marks = new ConcurrentHashMap<>();
+
+    /**
+     * The highest docId already percolated, or -1 before the first run.
+     */
+    private volatile long _highWater = -1;
+
+    /**
+     * Default constructor.
+     *
+     * @param searchService the service whose searches are run.
+     * @param pool the connections to run batches over.
+     * @param batchSize the number of saved searches per RunQueries batch (searchd's max_batch_queries, 32 by
+     * default).
+     * @param parallelism the number of batches to run at once.
+     * @param maxMatches the maximum number of new matches reported per saved search.
+     * @param listener receives the matches.
+     * @param stateFile the file to save the high-water marks to, or null to keep them in memory.
+     */
+    public Percolator(SearchService<S> searchService, SphinxClientPool pool, int batchSize, int parallelism,
+            int maxMatches, Listener listener, File stateFile)
+    {
+
+        _searchService = searchService;
+        _pool = pool;
+        _batchSize = batchSize;
+        _maxMatches = maxMatches;
+        _listener = listener;
+        _stateFile = stateFile;
+        if (stateFile != null && stateFile.exists())
+        {
+            try
+            {
+                loadState();
+            }
+            catch (IOException | NumberFormatException e)
+            {
+                _log.error("Unable to load percolation state " + stateFile + ", starting afresh", e);
+                _marks.clear();
+                _highWater = -1;
+            }
+        }
+        _runner = Executors.newSingleThreadExecutor(new DaemonThreadFactory("jsphinx-percolate"));
+        _executor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("jsphinx-percolate-batch"));
+    }
+
+    /**
+     * Add or replace a saved search; a new one matches documents added from now on, one known from the state file
+     * carries on from its saved mark.
+     *
+     * @param savedSearchId
+     * @param searchCommand
+     */
+    public void addSavedSearch(String savedSearchId, S searchCommand)
+    {
+
+        _marks.putIfAbsent(savedSearchId, _highWater);
+        _savedSearches.put(savedSearchId, searchCommand);
+    }
+
+    /**
+     * Remove a saved search.
+     *
+     * @param savedSearchId
+     */
+    public void removeSavedSearch(String savedSearchId)
+    {
+
+        _savedSearches.remove(savedSearchId);
+        _marks.remove(savedSearchId);
+    }
+
+    /**
+     * Percolate in the background after the delta has been re-indexed.
+     *
+     * @param indexName
+     */
+    @Override
+    public void reindexed(String indexName)
+    {
+
+        if (indexName.equals(_searchService.getDeltaIndexName()))
+        {
+            _runner.execute(() -> {
+                try
+                {
+                    percolate();
+                }
+                catch (SphinxException e)
+                {
+                    _log.error("Unable to percolate saved searches", e);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+    }
+
+    /**
+     * Run every saved search against the documents added since its last run, blocking until done.
+     *
+     * The marks of the batches that succeeded are saved even if another fails.
+     *
+     * @return the number of saved searches with new matches.
+     * @throws SphinxException if a batch failed.
+     * @throws InterruptedException
+     */
+    public synchronized int percolate() throws SphinxException, InterruptedException
+    {
+
+        List<Map.Entry<String, S>> searches = new ArrayList<>(_savedSearches.entrySet());
+        long lowest = _highWater;
+        for (Map.Entry<String, S> entry : searches)
+        {
+            long mark = _marks.getOrDefault(entry.getKey(), _highWater);
+            if (mark >= 0)
+            {
+                lowest = Math.min(lowest, mark);
+            }
+        }
+
+        long to = getMaxDocId(Math.max(lowest + 1, 1));
+        if (to < 0)
+        {
+            return 0;
+        }
+        if (_highWater < 0)
+        {
+            _highWater = to;
+            for (Map.Entry<String, S> entry : searches)
+            {
+                _marks.put(entry.getKey(), to);
+            }
+            saveState();
+            _log.info("Percolation starts after docId " + to);
+            return 0;
+        }
+
+        // Only run the searches that haven't yet seen the newest documents
+        List<Map.Entry<String, S>> pending = new ArrayList<>(searches.size());
+        for (Map.Entry<String, S> entry : searches)
+        {
+            long mark = _marks.computeIfAbsent(entry.getKey(), k -> _highWater);
+            if (mark < 0)
+            {
+                // Added during the first run
+                _marks.put(entry.getKey(), _highWater);
+            }
+            else if (mark < to)
+            {
+                pending.add(entry);
+            }
+        }
+
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int start = 0; start < pending.size(); start += _batchSize)
+        {
+            List<Map.Entry<String, S>> batch = pending.subList(start, Math.min(start + _batchSize, pending.size()));
+            futures.add(_executor.submit(() -> runBatch(batch, to)));
+        }
+
+        int matched = 0;
+        Throwable failure = null;
+        for (Future<Integer> future : futures)
+        {
+            try
+            {
+                matched += future.get();
+            }
+            catch (ExecutionException e)
+            {
+                failure = e.getCause();
+                _log.error("Percolation batch failed, its saved searches will run again next time", failure);
+            }
+        }
+
+        _highWater = Math.max(_highWater, to);
+        saveState();
+        if (failure != null)
+        {
+            throw new SphinxException("Unable to percolate: " + failure.getMessage());
+        }
+        if (_log.isDebugEnabled())
+        {
+            _log.debug("Percolated " + pending.size() + " saved searches up to docId " + to + ", " + matched + " matched");
+        }
+
+        return matched;
+    }
+
+    /**
+     * Stop percolating.
+     */
+    public void shutdown()
+    {
+
+        _runner.shutdownNow();
+        _executor.shutdownNow();
+    }
+
+    /**
+     * Find the highest docId in the delta index.
+     *
+     * @param from the lowest docId to consider.
+     * @return the docId, or -1 if there are no documents from there on.
+     * @throws SphinxException
+     * @throws InterruptedException
+     */
+    private long getMaxDocId(long from) throws SphinxException, InterruptedException
+    {
+
+        SphinxClient sphinx = _pool.borrow();
+        try
+        {
+            sphinx.ResetFilters();
+            sphinx.ResetGroupBy();
+            sphinx.SetMatchMode(SphinxClient.SPH_MATCH_FULLSCAN);
+            sphinx.SetSortMode(SphinxClient.SPH_SORT_EXTENDED, "@id DESC");
+            sphinx.SetFilterRange("@id", from, Long.MAX_VALUE, false);
+            sphinx.SetLimits(0, 1, 1);
+            SphinxResult res = sphinx.Query("", _searchService.getDeltaIndexName());
+            if (res == null)
+            {
+                throw new SphinxException("Sphinx Error: " + sphinx.GetLastError());
+            }
+
+            return res.matches.length > 0 ? res.matches[0].docId : -1;
+        }
+        finally
+        {
+            _pool.release(sphinx);
+        }
+    }
+
+    /**
+     * Run a batch of saved searches in one multi-query, each over the documents above its mark, and move on the marks
+     * of those that ran.
+     *
+     * @param batch
+     * @param to the highest new docId.
+     * @return the number of saved searches with new matches.
+     * @throws SphinxException
+     * @throws InterruptedException
+     */
+    private int runBatch(List<Map.Entry<String, S>> batch, long to) throws SphinxException, InterruptedException
+    {
+
+        SphinxClient sphinx = _pool.borrow();
+        try
+        {
+            for (Map.Entry<String, S> entry : batch)
+            {
+                S searchCommand = entry.getValue();
+                sphinx.ResetFilters();
+                sphinx.ResetGroupBy();
+                _searchService.configure(searchCommand, sphinx);
+                sphinx.SetFilterRange("@id", _marks.getOrDefault(entry.getKey(), to) + 1, to, false);
+                sphinx.SetLimits(0, _maxMatches, _maxMatches);
+                sphinx.AddQuery(searchCommand.getSearchPhrase(), searchCommand.getIndexNames(), entry.getKey());
+            }
+
+            SphinxResult[] results = sphinx.RunQueries();
+            if (results == null)
+            {
+                throw new SphinxException("Sphinx Error: " + sphinx.GetLastError());
+            }
+
+            int matched = 0;
+            for (int i = 0; i < results.length; i++)
+            {
+                String savedSearchId = batch.get(i).getKey();
+                if (results[i].getStatus() == SphinxClient.SEARCHD_ERROR)
+                {
+                    _log.error("Saved search " + savedSearchId + " failed: " + results[i].error);
+                    continue;
+                }
+                if (results[i].matches.length == 0)
+                {
+                    _marks.replace(savedSearchId, to);
+                    continue;
+                }
+
+                List<Long> docIds = new ArrayList<>(results[i].matches.length);
+                for (SphinxMatch match : results[i].matches)
+                {
+                    docIds.add(match.docId);
+                }
+                matched++;
+                try
+                {
+                    _listener.matched(savedSearchId, docIds);
+                }
+                catch (RuntimeException e)
+                {
+                    _log.error("Percolation listener failed for " + savedSearchId, e);
+                }
+                _marks.replace(savedSearchId, to);
+            }
+
+            return matched;
+        }
+        finally
+        {
+            _pool.release(sphinx);
+        }
+    }
+
+    /**
+     * Load the high-water marks from the state file.
+     *
+     * @throws IOException
+     */
+    private void loadState() throws IOException
+    {
+
+        Properties state = new Properties();
+        try (InputStream in = new FileInputStream(_stateFile))
+        {
+            state.load(in);
+        }
+
+        _highWater = Long.parseLong(state.getProperty(HIGH_WATER, "-1"));
+        for (String name : state.stringPropertyNames())
+        {
+            if (name.startsWith(SEARCH_PREFIX))
+            {
+                _marks.put(name.substring(SEARCH_PREFIX.length()), Long.parseLong(state.getProperty(name)));
+            }
+        }
+        _log.info("Loaded percolation state for " + _marks.size() + " saved searches up to docId " + _highWater);
+    }
+
+    /**
+     * Save the high-water marks to the state file, if there is one, replacing it atomically.
+     */
+    private void saveState()
+    {
+
+        if (_stateFile == null)
+        {
+            return;
+        }
+
+        Properties state = new Properties();
+        state.setProperty(HIGH_WATER, String.valueOf(_highWater));
+        for (Map.Entry<String, Long> mark : _marks.entrySet())
+        {
+            state.setProperty(SEARCH_PREFIX + mark.getKey(), String.valueOf(mark.getValue()));
+        }
+
+        File tmpFile = new File(_stateFile.getPath() + ".tmp");
+        try
+        {
+            try (OutputStream out = new FileOutputStream(tmpFile))
+            {
+                state.store(out, "Percolation high-water marks");
+            }
+            Files.move(tmpFile.toPath(), _stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            _log.error("Unable to save percolation state " + _stateFile, e);
+        }
+    }
+}
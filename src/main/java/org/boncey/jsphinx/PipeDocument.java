@@ -0,0 +1,60 @@
+package org.boncey.jsphinx;
+
+/**
+ * A document fed to the indexer through xmlpipe2 or tsvpipe.
+ *
+ * Values are in {@link PipeSchema} order, fields then attributes: Strings for fields and string attributes, Numbers
+ * for numeric attributes, Booleans or Numbers for bool attributes and long[] or int[] for multi attributes. Null
+ * values are written as empty.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class PipeDocument
+{
+
+    /**
+     * The document id.
+     */
+    private final long _id;
+
+    /**
+     * The values, in schema order.
+     */
+    private final Object[] _values;
+
+    /**
+     * Default constructor.
+     *
+     * @param id the document id.
+     * @param values the values, in schema order.
+     */
+    public PipeDocument(long id, Object... values)
+    {
+
+        _id = id;
+        _values = values;
+    }
+
+    /**
+     * Get the document id.
+     *
+     * @return the id.
+     */
+    public long getId()
+    {
+
+        return _id;
+    }
+
+    /**
+     * Get the values.
+     *
+     * @return the values, in schema order.
+     */
+    public Object[] getValues()
+    {
+
+        return _values;
+    }
+}
@@ -0,0 +1,141 @@
+package org.boncey.jsphinx;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The full-text fields and attributes of documents fed to the indexer through xmlpipe2 or tsvpipe, in the order their
+ * values appear in each {@link PipeDocument}.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class PipeSchema
+{
+
+    /**
+     * The attribute types, named as in xmlpipe2.
+     */
+    public enum AttributeType
+    {
+        INT("int"), BIGINT("bigint"), FLOAT("float"), TIMESTAMP("timestamp"), BOOL("bool"), STRING("string"),
+        MULTI("multi");
+
+        /**
+         * The xmlpipe2 type name.
+         */
+        private final String _name;
+
+        /**
+         * Default constructor.
+         *
+         * @param name the xmlpipe2 type name.
+         */
+        AttributeType(String name)
+        {
+
+            _name = name;
+        }
+
+        /**
+         * Get the xmlpipe2 type name.
+         *
+         * @return the name.
+         */
+        public String getName()
+        {
+
+            return _name;
+        }
+    }
+
+    /**
+     * The full-text field names.
+     */
+    private final List<String> _fields = new ArrayList<>();
+
+    /**
+     * The attribute names.
+     */
+    private final List<String> _attributes = new ArrayList<>();
+
+    /**
+     * The attribute types.
+     */
+    private final List<AttributeType> _types = new ArrayList<>();
+
+    /**
+     * Add a full-text field; fields come before attributes in each document.
+     *
+     * @param name
+     * @return this schema.
+     */
+    public PipeSchema addField(String name)
+    {
+
+        _fields.add(name);
+
+        return this;
+    }
+
+    /**
+     * Add an attribute.
+     *
+     * @param name
+     * @param type
+     * @return this schema.
+     */
+    public PipeSchema addAttribute(String name, AttributeType type)
+    {
+
+        _attributes.add(name);
+        _types.add(type);
+
+        return this;
+    }
+
+    /**
+     * Get the full-text field names.
+     *
+     * @return the fields.
+     */
+    public List<String> getFields()
+    {
+
+        return Collections.unmodifiableList(_fields);
+    }
+
+    /**
+     * Get the attribute names.
+     *
+     * @return the attributes.
+     */
+    public List<String> getAttributes()
+    {
+
+        return Collections.unmodifiableList(_attributes);
+    }
+
+    /**
+     * Get the attribute types.
+     *
+     * @return the types, in attribute order.
+     */
+    public List<AttributeType> getTypes()
+    {
+
+        return Collections.unmodifiableList(_types);
+    }
+
+    /**
+     * Get the number of values in each document.
+     *
+     * @return the number of fields plus attributes.
+     */
+    public int size()
+    {
+
+        return _fields.size() + _attributes.size();
+    }
+}
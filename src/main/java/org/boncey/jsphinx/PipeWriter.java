@@ -0,0 +1,149 @@
+package org.boncey.jsphinx;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+
+/**
+ * Streams documents from a {@link DocumentSource} to the indexer, for use as an <code>xmlpipe_command</code> or
+ * <code>tsvpipe_command</code> in place of an SQL source.
+ *
+ * Run from the command line as:
+ *
+ * <pre>
+ * java -cp ... org.boncey.jsphinx.PipeWriter xmlpipe2|tsvpipe com.example.MyDocumentSource [args...]
+ * </pre>
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public abstract class PipeWriter
+{
+
+    /**
+     * The output buffer size.
+     */
+    protected static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Write every document from the source, then its kill-list where supported, and close the source.
+     *
+     * @param source
+     * @param out the stream to write to; flushed but not closed.
+     * @return the number of documents written.
+     * @throws IOException
+     */
+    public abstract long write(DocumentSource source, OutputStream out) throws IOException;
+
+    /**
+     * Format an attribute value.
+     *
+     * @param value
+     * @param type
+     * @return the value as text.
+     */
+    protected static String format(Object value, PipeSchema.AttributeType type)
+    {
+
+        if (value == null)
+        {
+            return "";
+        }
+
+        switch (type)
+        {
+            case BOOL:
+                if (value instanceof Boolean)
+                {
+                    return (Boolean)value ? "1" : "0";
+                }
+                return ((Number)value).longValue() != 0 ? "1" : "0";
+            case MULTI:
+                if (value instanceof long[])
+                {
+                    return join((long[])value);
+                }
+                if (value instanceof int[])
+                {
+                    return join(Arrays.stream((int[])value).asLongStream().toArray());
+                }
+                return value.toString();
+            default:
+                return value.toString();
+        }
+    }
+
+    /**
+     * Join MVA values with commas.
+     *
+     * @param values
+     * @return the joined values.
+     */
+    private static String join(long[] values)
+    {
+
+        StringBuilder joined = new StringBuilder(values.length * 8);
+        for (int i = 0; i < values.length; i++)
+        {
+            if (i > 0)
+            {
+                joined.append(',');
+            }
+            joined.append(values[i]);
+        }
+
+        return joined.toString();
+    }
+
+    /**
+     * Stream documents to stdout.
+     *
+     * @param args the format (xmlpipe2 or tsvpipe), the DocumentSource class name and any arguments for the source.
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception
+    {
+
+        if (args.length < 2)
+        {
+            System.err.println("Usage: PipeWriter xmlpipe2|tsvpipe <DocumentSource class> [args...]");
+            System.exit(1);
+        }
+
+        PipeWriter writer;
+        if (args[0].equals("xmlpipe2"))
+        {
+            writer = new XmlPipe2Writer();
+        }
+        else if (args[0].equals("tsvpipe"))
+        {
+            writer = new TsvPipeWriter();
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unknown format " + args[0] + ", expected xmlpipe2 or tsvpipe");
+        }
+
+        Class<? extends DocumentSource> sourceClass = Class.forName(args[1]).asSubclass(DocumentSource.class);
+        String[] sourceArgs = Arrays.copyOfRange(args, 2, args.length);
+        DocumentSource source;
+        try
+        {
+            Constructor<? extends DocumentSource> constructor = sourceClass.getConstructor(String[].class);
+            source = constructor.newInstance((Object)sourceArgs);
+        }
+        catch (NoSuchMethodException e)
+        {
+            source = sourceClass.getConstructor().newInstance();
+        }
+
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), BUFFER_SIZE);
+        long documents = writer.write(source, out);
+        out.close();
+        System.err.println("Wrote " + documents + " documents");
+    }
+}
@@ -0,0 +1,265 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sphx.api.SphinxException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the most popular searches and keeps their cached results fresh.
+ *
+ * Search frequency is estimated with a {@link CountMinSketch} and the top K searches are kept as heavy hitters. These
+ * are re-run on a schedule (which should be shorter than the cache time to live) and straight after a re-index, so
+ * popular searches are always served from the cache.
+ *
+ * Note: the search commands are retained, so they should not be modified once they've been searched with.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class PopularQueryRefresher<S extends SearchCommand> implements ReindexListener
+{
+
+    /**
+     * Width of the count-min sketch.
+     */
+    private static final int SKETCH_WIDTH = 4096;
+
+    /**
+     * Depth of the count-min sketch.
+     */
+    private static final int SKETCH_DEPTH = 4;
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(PopularQueryRefresher.class);
+
+    /**
+     * The service to refresh results for.
+     */
+    private final SearchService<S> _searchService;
+
+    /**
+     * The number of heavy hitters to track.
+     */
+    private final int _topK;
+
+    /**
+     * Search frequency estimates.
+     */
+    private final CountMinSketch _sketch;
+
+    /**
+     * The heavy hitters, keyed by cache key.
+     */
+    private final Map<String, HeavyHitter<S>> _heavyHitters;
+
+    /**
+     * Runs the refreshes.
+     */
+    private final ScheduledExecutorService _executor;
+
+    /**
+     * Default constructor.
+     *
+     * @param searchService the service to refresh results for.
+     * @param topK the number of popular searches to keep fresh.
+     * @param interval how often to refresh, in seconds.
+     */
+    public PopularQueryRefresher(SearchService<S> searchService, int topK, long interval)
+    {
+
+        _searchService = searchService;
+        _topK = topK;
+        _sketch = new CountMinSketch(SKETCH_WIDTH, SKETCH_DEPTH);
+        _heavyHitters = new HashMap<>();
+        _executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("jsphinx-refresh"));
+        _executor.scheduleWithFixedDelay(this::refresh, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Record that a search has been made.
+     *
+     * @param searchCommand
+     * @param key the key its results are cached under.
+     */
+    public void record(S searchCommand, String key)
+    {
+
+        long count = _sketch.add(key);
+
+        synchronized (_heavyHitters)
+        {
+            HeavyHitter<S> hitter = _heavyHitters.get(key);
+            if (hitter != null)
+            {
+                hitter._count = count;
+                return;
+            }
+
+            if (_heavyHitters.size() >= _topK)
+            {
+                String minKey = null;
+                long minCount = Long.MAX_VALUE;
+                for (Map.Entry<String, HeavyHitter<S>> entry : _heavyHitters.entrySet())
+                {
+                    if (entry.getValue()._count < minCount)
+                    {
+                        minKey = entry.getKey();
+                        minCount = entry.getValue()._count;
+                    }
+                }
+
+                if (count <= minCount)
+                {
+                    return;
+                }
+                _heavyHitters.remove(minKey);
+            }
+
+            _heavyHitters.put(key, new HeavyHitter<>(searchCommand, count));
+        }
+    }
+
+    /**
+     * Get the current heavy hitters, most popular first.
+     *
+     * @return the search commands.
+     */
+    public List<S> getPopularSearches()
+    {
+
+        List<HeavyHitter<S>> hitters;
+        synchronized (_heavyHitters)
+        {
+            hitters = new ArrayList<>(_heavyHitters.values());
+        }
+        hitters.sort((a, b) -> Long.compare(b._count, a._count));
+
+        List<S> searches = new ArrayList<>(hitters.size());
+        for (HeavyHitter<S> hitter : hitters)
+        {
+            searches.add(hitter._searchCommand);
+        }
+
+        return searches;
+    }
+
+    /**
+     * Refresh the cached results of the popular searches now, in the background.
+     */
+    public void refreshNow()
+    {
+
+        _executor.execute(this::refresh);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reindexed(String indexName)
+    {
+
+        refreshNow();
+    }
+
+    /**
+     * Refresh once however many indexes were rotated in.
+     *
+     * @param indexNames
+     */
+    @Override
+    public void reindexed(List<String> indexNames)
+    {
+
+        refreshNow();
+    }
+
+    /**
+     * Stop refreshing.
+     */
+    public void shutdown()
+    {
+
+        _executor.shutdownNow();
+    }
+
+    /**
+     * Re-run the popular searches and decay their counts so new favourites can take over.
+     */
+    private void refresh()
+    {
+
+        List<S> searches = getPopularSearches();
+        long start = System.currentTimeMillis();
+        for (S searchCommand : searches)
+        {
+            try
+            {
+                _searchService.refresh(searchCommand);
+            }
+            catch (SphinxException e)
+            {
+                _log.warn("Unable to refresh " + searchCommand + ": " + e.getMessage());
+            }
+            catch (RuntimeException e)
+            {
+                // Thrown out of a scheduled task this would cancel every later refresh
+                _log.error("Unable to refresh " + searchCommand, e);
+            }
+        }
+
+        _sketch.decay();
+        synchronized (_heavyHitters)
+        {
+            for (HeavyHitter<S> hitter : _heavyHitters.values())
+            {
+                hitter._count >>>= 1;
+            }
+        }
+
+        if (_log.isDebugEnabled())
+        {
+            _log.debug("Refreshed " + searches.size() + " popular searches in " + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    /**
+     * A popular search and its estimated count.
+     */
+    private static class HeavyHitter<S>
+    {
+
+        /**
+         * The search.
+         */
+        private final S _searchCommand;
+
+        /**
+         * The estimated count.
+         */
+        private long _count;
+
+        /**
+         * Default constructor.
+         *
+         * @param searchCommand
+         * @param count
+         */
+        HeavyHitter(S searchCommand, long count)
+        {
+
+            _searchCommand = searchCommand;
+            _count = count;
+        }
+    }
+}
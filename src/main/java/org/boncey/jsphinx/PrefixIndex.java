@@ -0,0 +1,272 @@
+package org.boncey.jsphinx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, compact prefix index of terms and their document frequencies, for autocomplete.
+ *
+ * Terms are stored sorted in a single char array, so a prefix matches a contiguous range found by binary search. The
+ * most frequent completions of every one and two character prefix are precomputed, as those ranges are the largest.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class PrefixIndex
+{
+
+    /**
+     * The longest prefix with precomputed completions.
+     */
+    private static final int PRECOMPUTED_LENGTH = 2;
+
+    /**
+     * The characters of all terms, in sorted term order.
+     */
+    private final char[] _chars;
+
+    /**
+     * The start of each term in {@link #_chars}, plus a final end offset.
+     */
+    private final int[] _offsets;
+
+    /**
+     * The document frequency of each term.
+     */
+    private final long[] _docs;
+
+    /**
+     * The number of completions precomputed per short prefix.
+     */
+    private final int _precomputed;
+
+    /**
+     * The most frequent term ordinals for each short prefix.
+     */
+    private final Map<String, int[]> _top;
+
+    /**
+     * Default constructor.
+     *
+     * @param terms the terms and their document frequencies.
+     * @param precomputed the number of completions to precompute for short prefixes.
+     */
+    public PrefixIndex(Map<String, Long> terms, int precomputed)
+    {
+
+        String[] sorted = terms.keySet().toArray(new String[0]);
+        Arrays.sort(sorted);
+
+        int length = 0;
+        for (String term : sorted)
+        {
+            length += term.length();
+        }
+
+        _chars = new char[length];
+        _offsets = new int[sorted.length + 1];
+        _docs = new long[sorted.length];
+        int pos = 0;
+        for (int i = 0; i < sorted.length; i++)
+        {
+            _offsets[i] = pos;
+            sorted[i].getChars(0, sorted[i].length(), _chars, pos);
+            pos += sorted[i].length();
+            _docs[i] = terms.get(sorted[i]);
+        }
+        _offsets[sorted.length] = pos;
+
+        _precomputed = precomputed;
+        _top = new HashMap<>();
+        for (int i = 0; i < sorted.length; i++)
+        {
+            for (int len = 1; len <= PRECOMPUTED_LENGTH && len <= sorted[i].length(); len++)
+            {
+                String prefix = sorted[i].substring(0, len);
+                if (!_top.containsKey(prefix))
+                {
+                    _top.put(prefix, top(prefix, precomputed));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the most frequent terms starting with the prefix.
+     *
+     * @param prefix
+     * @param max the maximum number of terms to return.
+     * @return the terms, most frequent first.
+     */
+    public List<String> complete(String prefix, int max)
+    {
+
+        int[] ordinals;
+        if (prefix.length() > 0 && prefix.length() <= PRECOMPUTED_LENGTH && max <= _precomputed)
+        {
+            // Absent means no term has this prefix
+            ordinals = _top.get(prefix);
+        }
+        else
+        {
+            ordinals = top(prefix, max);
+        }
+
+        List<String> terms = new ArrayList<>();
+        if (ordinals != null)
+        {
+            for (int i = 0; i < ordinals.length && i < max; i++)
+            {
+                terms.add(term(ordinals[i]));
+            }
+        }
+
+        return terms;
+    }
+
+    /**
+     * Get the document frequency of a term.
+     *
+     * @param term
+     * @return the frequency or 0 if not present.
+     */
+    public long getDocs(String term)
+    {
+
+        int ordinal = lowerBound(term);
+        if (ordinal < _docs.length && compare(ordinal, term, false) == 0)
+        {
+            return _docs[ordinal];
+        }
+
+        return 0;
+    }
+
+    /**
+     * Get the number of terms.
+     *
+     * @return the size.
+     */
+    public int size()
+    {
+
+        return _docs.length;
+    }
+
+    /**
+     * Find the most frequent terms with the prefix by scanning its range.
+     *
+     * @param prefix
+     * @param max
+     * @return the ordinals, most frequent first.
+     */
+    private int[] top(String prefix, int max)
+    {
+
+        if (max <= 0)
+        {
+            return new int[0];
+        }
+
+        int[] best = new int[max];
+        int found = 0;
+        for (int i = lowerBound(prefix); i < _docs.length && compare(i, prefix, true) == 0; i++)
+        {
+            if (found < max)
+            {
+                best[found++] = i;
+            }
+            else if (_docs[i] > _docs[best[found - 1]])
+            {
+                best[found - 1] = i;
+            }
+            else
+            {
+                continue;
+            }
+
+            // Insertion sort the new entry into place, most frequent first
+            for (int j = found - 1; j > 0 && _docs[best[j]] > _docs[best[j - 1]]; j--)
+            {
+                int tmp = best[j];
+                best[j] = best[j - 1];
+                best[j - 1] = tmp;
+            }
+        }
+
+        return Arrays.copyOf(best, found);
+    }
+
+    /**
+     * Find the first term not less than the key.
+     *
+     * @param key
+     * @return the ordinal.
+     */
+    private int lowerBound(String key)
+    {
+
+        int low = 0;
+        int high = _docs.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (compare(mid, key, false) < 0)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Compare a term with a key.
+     *
+     * @param ordinal the term.
+     * @param key
+     * @param prefix only compare the first key-length characters of the term.
+     * @return negative, zero or positive as the term is less than, equal to or greater than the key.
+     */
+    private int compare(int ordinal, String key, boolean prefix)
+    {
+
+        int start = _offsets[ordinal];
+        int length = _offsets[ordinal + 1] - start;
+        int n = Math.min(length, key.length());
+        for (int i = 0; i < n; i++)
+        {
+            int diff = _chars[start + i] - key.charAt(i);
+            if (diff != 0)
+            {
+                return diff;
+            }
+        }
+
+        if (prefix && length >= key.length())
+        {
+            return 0;
+        }
+
+        return length - key.length();
+    }
+
+    /**
+     * Get a term.
+     *
+     * @param ordinal
+     * @return the term.
+     */
+    private String term(int ordinal)
+    {
+
+        return new String(_chars, _offsets[ordinal], _offsets[ordinal + 1] - _offsets[ordinal]);
+    }
+}
@@ -0,0 +1,282 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sphx.api.SphinxException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rebuilds a set of indexes in parallel, then rotates them all into searchd in one step.
+ *
+ * Each index is built by its own <code>indexer --rotate --nohup</code> process, which leaves the new index files
+ * alongside the live ones without signalling searchd. The slowest indexes (by their last run) start first. Once every
+ * index has been built searchd is sent a single SIGHUP so they all rotate together; if any index fails nothing is
+ * rotated and the new files of every index in the set are deleted, so a later rotation can't pick them up.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class RebuildOrchestrator
+{
+
+    /**
+     * Matches the pid_file setting in the Sphinx config.
+     */
+    private static final Pattern PID_FILE = Pattern.compile("^\\s*pid_file\\s*=\\s*(\\S+)", Pattern.MULTILINE);
+
+    /**
+     * Matches an index section in the Sphinx config, with its name and body.
+     */
+    private static final Pattern INDEX_SECTION = Pattern.compile("^\\s*index\\s+(\\w+)(?:\\s*:\\s*\\w+)?\\s*\\{([^}]*)\\}",
+            Pattern.MULTILINE);
+
+    /**
+     * Matches the path setting within an index section.
+     */
+    private static final Pattern INDEX_PATH = Pattern.compile("^\\s*path\\s*=\\s*(\\S+)", Pattern.MULTILINE);
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(RebuildOrchestrator.class);
+
+    /**
+     * Runs the indexer.
+     */
+    private final Indexer _indexer;
+
+    /**
+     * The maximum number of indexes to build at once.
+     */
+    private final int _parallelism;
+
+    /**
+     * The searchd pid file.
+     */
+    private final File _pidFile;
+
+    /**
+     * The path of each index, from the Sphinx config.
+     */
+    private final Map<String, String> _indexPaths;
+
+    /**
+     * Default constructor.
+     *
+     * @param indexer runs the indexer; its governor's limit on processes at once applies across the whole rebuild.
+     * @param parallelism the maximum number of indexes to build at once.
+     * @param pidFile the searchd pid file.
+     * @param indexPaths the path of each index, see {@link #findIndexPaths(String)}.
+     */
+    public RebuildOrchestrator(Indexer indexer, int parallelism, File pidFile, Map<String, String> indexPaths)
+    {
+
+        _indexer = indexer;
+        _parallelism = parallelism;
+        _pidFile = pidFile;
+        _indexPaths = indexPaths;
+    }
+
+    /**
+     * Find the searchd pid file named in a Sphinx config file.
+     *
+     * @param configFile
+     * @return the pid file, or null if the config doesn't name one.
+     * @throws IOException
+     */
+    public static File findPidFile(String configFile) throws IOException
+    {
+
+        String config = new String(Files.readAllBytes(new File(configFile).toPath()), StandardCharsets.UTF_8);
+        Matcher matcher = PID_FILE.matcher(config);
+
+        return matcher.find() ? new File(matcher.group(1)) : null;
+    }
+
+    /**
+     * Find the path of each index in a Sphinx config file; the index files are the path plus an extension.
+     *
+     * @param configFile
+     * @return the paths by index name; distributed indexes, which have no path, are left out.
+     * @throws IOException
+     */
+    public static Map<String, String> findIndexPaths(String configFile) throws IOException
+    {
+
+        String config = new String(Files.readAllBytes(new File(configFile).toPath()), StandardCharsets.UTF_8);
+        Map<String, String> paths = new LinkedHashMap<>();
+        Matcher section = INDEX_SECTION.matcher(config);
+        while (section.find())
+        {
+            Matcher path = INDEX_PATH.matcher(section.group(2));
+            if (path.find())
+            {
+                paths.put(section.group(1), path.group(1));
+            }
+        }
+
+        return paths;
+    }
+
+    /**
+     * Rebuild the indexes and rotate them into searchd together.
+     *
+     * @param indexNames
+     * @param previous the stats from earlier runs, used to start the slowest indexes first; may be empty.
+     * @return the stats for each index, including how long its indexer process took.
+     * @throws IOException
+     * @throws SphinxException if any index failed, in which case nothing was rotated.
+     */
+    public Map<String, IndexerStats> rebuild(List<String> indexNames, Map<String, IndexerStats> previous)
+            throws IOException, SphinxException
+    {
+
+        List<String> order = new ArrayList<>(indexNames);
+        order.sort((a, b) -> Long.compare(runMillis(previous.get(b)), runMillis(previous.get(a))));
+
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(_parallelism, order.size())),
+                new DaemonThreadFactory("jsphinx-rebuild"));
+        Map<String, Future<List<IndexerStats>>> futures = new LinkedHashMap<>();
+        try
+        {
+            for (String indexName : order)
+            {
+                futures.put(indexName, executor.submit(() -> _indexer.run("--rotate", "--nohup", indexName)));
+            }
+
+            Map<String, IndexerStats> stats = new LinkedHashMap<>();
+            List<String> failed = new ArrayList<>();
+            for (Map.Entry<String, Future<List<IndexerStats>>> entry : futures.entrySet())
+            {
+                try
+                {
+                    for (IndexerStats indexStats : entry.getValue().get())
+                    {
+                        stats.put(indexStats.getIndexName(), indexStats);
+                    }
+                }
+                catch (ExecutionException e)
+                {
+                    _log.error("Unable to rebuild " + entry.getKey(), e.getCause());
+                    failed.add(entry.getKey() + ": " + e.getCause().getMessage());
+                }
+            }
+
+            if (!failed.isEmpty())
+            {
+                deleteNewFiles(order);
+                throw new SphinxException("Rebuild failed, nothing rotated: " + failed);
+            }
+
+            rotate();
+            _log.info("Rebuilt and rotated " + order.size() + " indexes in " + (System.currentTimeMillis() - start) + "ms");
+            for (IndexerStats indexStats : stats.values())
+            {
+                _log.info(indexStats.toString());
+            }
+
+            return stats;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+            deleteNewFiles(order);
+            throw new SphinxException("Interrupted rebuilding " + order);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Delete the new files built for the indexes, which searchd would otherwise rotate in on its next SIGHUP.
+     *
+     * @param indexNames
+     */
+    private void deleteNewFiles(List<String> indexNames)
+    {
+
+        for (String indexName : indexNames)
+        {
+            String path = _indexPaths.get(indexName);
+            if (path == null)
+            {
+                _log.warn("No path for " + indexName + " in the Sphinx config, leaving any new files in place");
+                continue;
+            }
+
+            File base = new File(path);
+            String prefix = base.getName() + ".new.";
+            File[] newFiles = base.getAbsoluteFile().getParentFile().listFiles((dir, name) -> name.startsWith(prefix));
+            if (newFiles == null)
+            {
+                continue;
+            }
+            for (File newFile : newFiles)
+            {
+                if (!newFile.delete())
+                {
+                    _log.warn("Unable to delete " + newFile);
+                }
+            }
+            if (newFiles.length > 0)
+            {
+                _log.info("Deleted " + newFiles.length + " new files of " + indexName);
+            }
+        }
+    }
+
+    /**
+     * Signal searchd to rotate in the new index files.
+     *
+     * @throws IOException
+     * @throws SphinxException
+     */
+    private void rotate() throws IOException, SphinxException
+    {
+
+        String pid = new String(Files.readAllBytes(_pidFile.toPath()), StandardCharsets.US_ASCII).trim();
+        Process proc = new ProcessBuilder("kill", "-HUP", pid).redirectErrorStream(true).start();
+        try
+        {
+            if (proc.waitFor() != 0)
+            {
+                throw new SphinxException("Unable to signal searchd " + pid + " to rotate");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SphinxException("Interrupted signalling searchd to rotate");
+        }
+    }
+
+    /**
+     * Get the run time from earlier stats.
+     *
+     * @param stats
+     * @return the run time, or 0 if unknown.
+     */
+    private static long runMillis(IndexerStats stats)
+    {
+
+        return stats != null ? stats.getRunMillis() : 0;
+    }
+}
@@ -0,0 +1,35 @@
+package org.boncey.jsphinx;
+
+import java.util.List;
+
+/**
+ * Notified when a Sphinx index has been re-indexed.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public interface ReindexListener
+{
+
+    /**
+     * Called once the index has been rebuilt and rotated in.
+     *
+     * @param indexName the name of the index.
+     */
+    void reindexed(String indexName);
+
+    /**
+     * Called once a set of indexes has been rebuilt and rotated in together; calls {@link #reindexed(String)} for
+     * each by default. Override this to act once per rotation rather than once per index.
+     *
+     * @param indexNames the names of the indexes.
+     */
+    default void reindexed(List<String> indexNames)
+    {
+
+        for (String indexName : indexNames)
+        {
+            reindexed(indexName);
+        }
+    }
+}
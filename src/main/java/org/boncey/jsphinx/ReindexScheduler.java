@@ -0,0 +1,331 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sphx.api.SphinxException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Schedules indexer runs in the background, so callers never block on indexing.
+ *
+ * Requests are debounced: a run starts once no further request for the same indexes has arrived for the debounce
+ * delay, or once the oldest waiting request reaches the maximum delay. Only one indexer run touches an index at a
+ * time, and requests that arrive during a run are merged into a single follow-up run.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class ReindexScheduler
+{
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(ReindexScheduler.class);
+
+    /**
+     * An indexer run.
+     */
+    public interface Job
+    {
+
+        /**
+         * Run the indexer.
+         *
+         * @throws IOException
+         * @throws SphinxException
+         */
+        void run() throws IOException, SphinxException;
+    }
+
+    /**
+     * The quiet period before a run starts, in milliseconds.
+     */
+    private final long _debounce;
+
+    /**
+     * The longest a request waits before its run starts, in milliseconds.
+     */
+    private final long _maxDelay;
+
+    /**
+     * Runs the jobs.
+     */
+    private final ScheduledExecutorService _executor;
+
+    /**
+     * The requests for each set of indexes.
+     */
+    private final Map<String, Request> _requests = new HashMap<>();
+
+    /**
+     * The lock held while an index is being indexed.
+     */
+    private final Map<String, ReentrantLock> _locks = new HashMap<>();
+
+    /**
+     * Default constructor.
+     *
+     * @param debounce the quiet period before a run starts, in milliseconds.
+     * @param maxDelay the longest a request waits before its run starts, in milliseconds.
+     * @param threads the maximum number of runs at once.
+     */
+    public ReindexScheduler(long debounce, long maxDelay, int threads)
+    {
+
+        _debounce = debounce;
+        _maxDelay = Math.max(debounce, maxDelay);
+        _executor = Executors.newScheduledThreadPool(threads, new DaemonThreadFactory("jsphinx-reindex"));
+    }
+
+    /**
+     * Request an indexer run for the given indexes.
+     *
+     * @param job the indexer run.
+     * @param indexNames the indexes the run writes to.
+     * @return completed once a run that started after this request finishes.
+     */
+    public synchronized CompletableFuture<Void> request(Job job, String... indexNames)
+    {
+
+        String key = key(indexNames);
+        Request request = _requests.computeIfAbsent(key, k -> new Request(indexNames));
+        request._job = job;
+
+        if (request._pending == null)
+        {
+            request._pending = new CompletableFuture<>();
+            request._firstRequested = System.currentTimeMillis();
+        }
+
+        if (!request._running)
+        {
+            schedule(key, request);
+        }
+
+        return request._pending;
+    }
+
+    /**
+     * Run a job now on the calling thread, once no other run is touching the indexes.
+     *
+     * @param job the indexer run.
+     * @param indexNames the indexes the run writes to.
+     * @throws IOException
+     * @throws SphinxException
+     */
+    public void runExclusive(Job job, String... indexNames) throws IOException, SphinxException
+    {
+
+        ReentrantLock[] locks = locks(indexNames);
+        for (ReentrantLock lock : locks)
+        {
+            lock.lock();
+        }
+        try
+        {
+            job.run();
+        }
+        finally
+        {
+            for (int i = locks.length - 1; i >= 0; i--)
+            {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    /**
+     * Is any run touching the index in progress?
+     *
+     * @param indexName
+     * @return true if it is being indexed.
+     */
+    public synchronized boolean isRunning(String indexName)
+    {
+
+        ReentrantLock lock = _locks.get(indexName);
+
+        return lock != null && lock.isLocked();
+    }
+
+    /**
+     * Stop scheduling runs; waiting requests fail.
+     */
+    public void shutdown()
+    {
+
+        _executor.shutdownNow();
+        synchronized (this)
+        {
+            for (Request request : _requests.values())
+            {
+                if (request._pending != null)
+                {
+                    request._pending.completeExceptionally(new IllegalStateException("Re-index scheduler shut down"));
+                    request._pending = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * (Re)start the debounce timer for a request.
+     *
+     * @param key
+     * @param request
+     */
+    private void schedule(String key, Request request)
+    {
+
+        if (request._timer != null)
+        {
+            request._timer.cancel(false);
+        }
+
+        long deadline = request._firstRequested + _maxDelay;
+        long delay = Math.max(0, Math.min(_debounce, deadline - System.currentTimeMillis()));
+        request._timer = _executor.schedule(() -> run(key), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run the pending request for a set of indexes.
+     *
+     * @param key
+     */
+    private void run(String key)
+    {
+
+        Request request;
+        Job job;
+        CompletableFuture<Void> pending;
+        synchronized (this)
+        {
+            request = _requests.get(key);
+            if (request._running || request._pending == null)
+            {
+                return;
+            }
+            job = request._job;
+            pending = request._pending;
+            request._pending = null;
+            request._timer = null;
+            request._running = true;
+        }
+
+        try
+        {
+            runExclusive(job, request._indexNames);
+            pending.complete(null);
+        }
+        catch (IOException | SphinxException | RuntimeException e)
+        {
+            _log.error("Unable to re-index " + key, e);
+            pending.completeExceptionally(e);
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                request._running = false;
+                if (request._pending != null && !_executor.isShutdown())
+                {
+                    schedule(key, request);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the locks for the indexes, in a consistent order.
+     *
+     * @param indexNames
+     * @return the locks.
+     */
+    private synchronized ReentrantLock[] locks(String[] indexNames)
+    {
+
+        String[] sorted = indexNames.clone();
+        Arrays.sort(sorted);
+        ReentrantLock[] locks = new ReentrantLock[sorted.length];
+        for (int i = 0; i < sorted.length; i++)
+        {
+            locks[i] = _locks.computeIfAbsent(sorted[i], k -> new ReentrantLock());
+        }
+
+        return locks;
+    }
+
+    /**
+     * Get the key for a set of indexes.
+     *
+     * @param indexNames
+     * @return the key.
+     */
+    private static String key(String[] indexNames)
+    {
+
+        String[] sorted = indexNames.clone();
+        Arrays.sort(sorted);
+
+        return String.join(" ", sorted);
+    }
+
+    /**
+     * The requests for a set of indexes.
+     */
+    private static class Request
+    {
+
+        /**
+         * The indexes the run writes to.
+         */
+        private final String[] _indexNames;
+
+        /**
+         * The most recently requested job.
+         */
+        private Job _job;
+
+        /**
+         * Completed when the next run finishes, null if no run has been requested.
+         */
+        private CompletableFuture<Void> _pending;
+
+        /**
+         * When the oldest waiting request was made.
+         */
+        private long _firstRequested;
+
+        /**
+         * The debounce timer.
+         */
+        private ScheduledFuture<?> _timer;
+
+        /**
+         * Is a run in progress?
+         */
+        private boolean _running;
+
+        /**
+         * Default constructor.
+         *
+         * @param indexNames
+         */
+        Request(String[] indexNames)
+        {
+
+            _indexNames = indexNames.clone();
+        }
+    }
+}
@@ -184,6 +184,20 @@ public class SearchCommand
         return SortOrder.DESC;
     }
 
+    /**
+     * Get a key identifying the results of this search, used for caching.
+     *
+     * The result cache appends a digest of the Sphinx query {@link SearchService#configure} builds, filters included;
+     * override and append to this if the results depend on any other state.
+     *
+     * @return the cache key.
+     */
+    public String getCacheKey()
+    {
+        return String.format("%s|%s|%d|%d|%s|%s", _indexNames, _searchPhrase, _offset, _perPage, getSortField(),
+                getSortOrder());
+    }
+
     /**
      * {@inheritDoc}
      */
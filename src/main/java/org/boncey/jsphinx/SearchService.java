@@ -7,14 +7,23 @@ import org.sphx.api.SphinxException;
 import org.sphx.api.SphinxMatch;
 import org.sphx.api.SphinxResult;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Service for searching Sphinx.
@@ -30,6 +39,31 @@ public abstract class SearchService<S extends SearchCommand>
      */
     public static final int MAX_MATCHES = 1000;
 
+    /**
+     * Default number of entries in the result cache.
+     */
+    private static final int DEFAULT_CACHE_SLOTS = 16384;
+
+    /**
+     * Default maximum size of a result cache entry in bytes.
+     */
+    private static final int DEFAULT_CACHE_SLOT_SIZE = 2048;
+
+    /**
+     * Default time to live of a result cache entry in seconds.
+     */
+    private static final int DEFAULT_CACHE_TTL = 300;
+
+    /**
+     * The most queries sent in one multi-query request, searchd's default max_batch_queries.
+     */
+    private static final int MAX_BATCH_QUERIES = 32;
+
+    /**
+     * How often searches check whether the index files have changed, in milliseconds.
+     */
+    private static final long INDEX_CHECK_INTERVAL = 5000;
+
     /**
      * Logger for log4j.
      */
@@ -61,155 +95,1949 @@ public abstract class SearchService<S extends SearchCommand>
     private final String _configFile;
 
     /**
-     * Default constructor.
-     *
-     * @param properties
+     * The optional search result cache.
+     */
+    private volatile MappedResultCache _resultCache;
+
+    /**
+     * The optional refresher of popular searches.
+     */
+    private PopularQueryRefresher<S> _refresher;
+
+    /**
+     * The optional warmer, replaying searches at startup and after a re-index.
+     */
+    private SearchWarmer<S> _warmer;
+
+    /**
+     * The optional keyword statistics cache.
+     */
+    private KeywordCache _keywordCache;
+
+    /**
+     * The optional client-side highlighter.
+     */
+    private Highlighter _highlighter;
+
+    /**
+     * The optional autocompleter.
+     */
+    private Autocompleter _autocompleter;
+
+    /**
+     * Pooled persistent connections to searchd.
+     */
+    private final SphinxClientPool _clientPool;
+
+    /**
+     * The number of threads used to build excerpts.
+     */
+    private final int _excerptThreads;
+
+    /**
+     * The number of excerpt snippets to cache.
+     */
+    private final int _excerptCacheSize;
+
+    /**
+     * The excerpt service, created on first use.
+     */
+    private ExcerptService _excerptService;
+
+    /**
+     * The number of attribute updates sent per request.
+     */
+    private final int _updateBatchSize;
+
+    /**
+     * The maximum number of buffered attribute updates.
+     */
+    private final int _updateCapacity;
+
+    /**
+     * The longest an attribute update is buffered for, in milliseconds.
+     */
+    private final long _updateFlushInterval;
+
+    /**
+     * How often to ask searchd to flush updated attributes to disk, in milliseconds (0 never).
+     */
+    private final long _flushAttributesInterval;
+
+    /**
+     * The attribute updater, created on first use.
+     */
+    private AttributeUpdater _attributeUpdater;
+
+    /**
+     * The optional local document store.
+     */
+    private DocumentStore _documentStore;
+
+    /**
+     * The proportion of superseded entries in the document store that triggers a compaction after a re-index.
+     */
+    private double _documentStoreCompactRatio;
+
+    /**
+     * The latency of recent searches.
+     */
+    private final LatencyMonitor _latencyMonitor;
+
+    /**
+     * Runs the indexer.
+     */
+    private final Indexer _indexer;
+
+    /**
+     * Limits when and how the indexer runs.
+     */
+    private final IndexerGovernor _governor;
+
+    /**
+     * The longest an indexer run may take, in milliseconds (0 no limit).
+     */
+    private final long _indexTimeout;
+
+    /**
+     * The maximum number of indexes to rebuild at once.
+     */
+    private final int _rebuildParallelism;
+
+    /**
+     * The searchd pid file, or null to find it in the Sphinx config.
+     */
+    private final String _pidFile;
+
+    /**
+     * The progress figures from the latest indexer run for each index.
+     */
+    private final Map<String, IndexerStats> _indexerStats = new ConcurrentHashMap<>();
+
+    /**
+     * Schedules indexer runs.
+     */
+    private final ReindexScheduler _reindexScheduler;
+
+    /**
+     * The name of the main index, if the delta is merged into it.
+     */
+    private final String _mainIndexName;
+
+    /**
+     * The optional merge scheduler.
+     */
+    private MergeScheduler _mergeScheduler;
+
+    /**
+     * The attribute set to 1 on soft-deleted documents, or null if soft deletes are disabled.
+     */
+    private final String _deletedAttribute;
+
+    /**
+     * The indexes soft deletes are applied to, or null for the main and delta indexes.
+     */
+    private final String _softDeleteIndexes;
+
+    /**
+     * Masks documents soft-deleted since the indexes holding them were last re-indexed, or null if soft deletes are
+     * disabled.
+     */
+    private SoftDeleteMask _softDeleteMask;
+
+    /**
+     * The optional near-real-time overlay of documents changed since the last re-index.
+     */
+    private OverlayIndex _overlay;
+
+    /**
+     * Merges the overlay's matches into searchd's results, or null if the overlay isn't enabled.
+     */
+    private OverlayMerger _overlayMerger;
+
+    /**
+     * The number of saved searches per percolation batch.
+     */
+    private final int _percolateBatchSize;
+
+    /**
+     * The number of percolation batches to run at once.
+     */
+    private final int _percolateThreads;
+
+    /**
+     * The maximum number of new matches reported per saved search.
+     */
+    private final int _percolateMaxMatches;
+
+    /**
+     * The file the percolator saves its high-water marks to, or null.
+     */
+    private final File _percolateStateFile;
+
+    /**
+     * The percolator, if one has been started.
+     */
+    private Percolator<S> _percolator;
+
+    /**
+     * Routes attribute updates to the indexes that can hold each document, if enabled.
+     */
+    private IndexRouter _indexRouter;
+
+    /**
+     * The facet count cache, if enabled.
+     */
+    private FacetCache _facetCache;
+
+    /**
+     * The client-side attribute store, if enabled.
+     */
+    private AttributeStore _attributeStore;
+
+    /**
+     * The optional change journal.
+     */
+    private ChangeJournal _changeJournal;
+
+    /**
+     * The number of changed documents since the main index was built that triggers a merge (0 never).
+     */
+    private final long _mergeChanges;
+
+    /**
+     * The number of changed documents since the main index was built that triggers a full rebuild (0 never).
+     */
+    private final long _rebuildChanges;
+
+    /**
+     * The header file of every index in the Sphinx config, watched for re-indexes made outside this process.
+     */
+    private final List<File> _indexHeaders = new ArrayList<>();
+
+    /**
+     * The fingerprint of the index files when last checked.
+     */
+    private volatile long _indexFingerprint;
+
+    /**
+     * When the index files were last checked.
+     */
+    private volatile long _indexCheckedAt;
+
+    /**
+     * Has the service warmed up?
+     */
+    private volatile boolean _ready = true;
+
+    /**
+     * Listeners to notify after a re-index.
+     */
+    private final List<ReindexListener> _reindexListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Default constructor.
+     *
+     * @param properties
+     *
+     */
+    public SearchService(Properties properties)
+    {
+
+        String host = properties.getProperty("sphinxHost");
+        if (host != null)
+        {
+            _host = host;
+        }
+        String port = properties.getProperty("sphinxPort");
+        if (port != null)
+        {
+            _port = Integer.parseInt(port);
+        }
+
+        _indexCommand = properties.getProperty("sphinxIndexCommand");
+        _configFile = properties.getProperty("sphinxConfigFile");
+
+        if (_indexCommand == null || _configFile == null)
+        {
+            throw new IllegalArgumentException("One of 'sphinxIndexCommand' or 'sphinxConfigFile' not set, cannot continue");
+        }
+
+        _clientPool = new SphinxClientPool(_host, _port, Integer.parseInt(properties.getProperty("sphinxPoolSize", "8")));
+        _excerptThreads = Integer.parseInt(properties.getProperty("sphinxExcerptThreads", "4"));
+        _excerptCacheSize = Integer.parseInt(properties.getProperty("sphinxExcerptCacheSize", "10000"));
+        _updateBatchSize = Integer.parseInt(properties.getProperty("sphinxUpdateBatchSize", "1000"));
+        _updateCapacity = Integer.parseInt(properties.getProperty("sphinxUpdateCapacity", "100000"));
+        _updateFlushInterval = Long.parseLong(properties.getProperty("sphinxUpdateFlushInterval", "100"));
+        _flushAttributesInterval = Long.parseLong(properties.getProperty("sphinxFlushAttributesInterval", "0"));
+        _latencyMonitor = new LatencyMonitor(1024, Long.parseLong(properties.getProperty("sphinxLatencyWindow", "60000")));
+        _governor = new IndexerGovernor(
+                Integer.parseInt(properties.getProperty("sphinxIndexerConcurrency", "1")),
+                IndexerGovernor.wrapper(parseInteger(properties.getProperty("sphinxIndexNice")),
+                        parseInteger(properties.getProperty("sphinxIndexIoniceClass")),
+                        parseInteger(properties.getProperty("sphinxIndexIoniceLevel"))),
+                _latencyMonitor, Double.parseDouble(properties.getProperty("sphinxLatencySlo", "0")),
+                Long.parseLong(properties.getProperty("sphinxIndexMaxPostpone", "300000")));
+        _indexTimeout = Long.parseLong(properties.getProperty("sphinxIndexTimeout", "3600000"));
+        _indexer = new Indexer(_indexCommand, _configFile, _indexTimeout, _governor);
+        _rebuildParallelism = Integer.parseInt(properties.getProperty("sphinxRebuildParallelism",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        _pidFile = properties.getProperty("sphinxPidFile");
+        _reindexScheduler = new ReindexScheduler(Long.parseLong(properties.getProperty("sphinxReindexDebounce", "1000")),
+                Long.parseLong(properties.getProperty("sphinxReindexMaxDelay", "10000")),
+                Integer.parseInt(properties.getProperty("sphinxReindexThreads", "2")));
+
+        _mainIndexName = properties.getProperty("sphinxMainIndex");
+        if (_mainIndexName != null)
+        {
+            String mergeDocs = properties.getProperty("sphinxMergeDeltaDocs");
+            String mergeMillis = properties.getProperty("sphinxMergeDeltaMillis");
+            String mergeWindow = properties.getProperty("sphinxMergeWindow");
+            if (mergeDocs != null || mergeMillis != null || mergeWindow != null)
+            {
+                _mergeScheduler = new MergeScheduler(this, mergeDocs != null ? Long.parseLong(mergeDocs) : 0,
+                        mergeMillis != null ? Long.parseLong(mergeMillis) : 0, mergeWindow);
+                addReindexListener(_mergeScheduler);
+            }
+        }
+
+        _deletedAttribute = properties.getProperty("sphinxDeletedAttribute");
+        _softDeleteIndexes = properties.getProperty("sphinxSoftDeleteIndexes");
+        String overlayMaxDocs = properties.getProperty("sphinxOverlayMaxDocs");
+        if (overlayMaxDocs != null)
+        {
+            _overlay = new OverlayIndex(Integer.parseInt(overlayMaxDocs));
+            _overlayMerger = new OverlayMerger(_overlay, MAX_MATCHES);
+        }
+        _percolateBatchSize = Integer.parseInt(properties.getProperty("sphinxPercolateBatchSize", "32"));
+        _percolateThreads = Integer.parseInt(properties.getProperty("sphinxPercolateThreads", "4"));
+        _percolateMaxMatches = Integer.parseInt(properties.getProperty("sphinxPercolateMaxMatches", "1000"));
+        _mergeChanges = Long.parseLong(properties.getProperty("sphinxMergeChanges", "0"));
+        _rebuildChanges = Long.parseLong(properties.getProperty("sphinxRebuildChanges", "0"));
+        String journalFile = properties.getProperty("sphinxChangeJournalFile");
+        if (journalFile != null)
+        {
+            try
+            {
+                _changeJournal = new ChangeJournal(new File(journalFile));
+            }
+            catch (IOException e)
+            {
+                _log.error("Unable to open change journal " + journalFile + ", continuing without it", e);
+            }
+        }
+        if (Boolean.parseBoolean(properties.getProperty("sphinxRouteUpdates")))
+        {
+            _indexRouter = new IndexRouter(this, _clientPool,
+                    Double.parseDouble(properties.getProperty("sphinxRouteUpdatesFalsePositiveRate", "0.01")));
+            addReindexListener(_indexRouter);
+        }
+        if (_deletedAttribute != null)
+        {
+            _softDeleteMask = new SoftDeleteMask(_deletedAttribute, this::getSoftDeleteIndexes, _indexRouter);
+        }
+        String facetCacheSize = properties.getProperty("sphinxFacetCacheSize");
+        if (facetCacheSize != null)
+        {
+            _facetCache = new FacetCache(Integer.parseInt(facetCacheSize));
+        }
+        String storeAttributes = properties.getProperty("sphinxAttributeStoreAttributes");
+        if (storeAttributes != null)
+        {
+            _attributeStore = new AttributeStore(this, _clientPool, properties.getProperty("sphinxAttributeStoreIndexes"),
+                    storeAttributes.trim().split("\\s*,\\s*"),
+                    Integer.parseInt(properties.getProperty("sphinxAttributeStoreDocs", "1000000")));
+            addReindexListener(_attributeStore);
+        }
+
+        String cacheFile = properties.getProperty("sphinxResultCacheFile");
+        if (cacheFile != null)
+        {
+            int slots = Integer.parseInt(properties.getProperty("sphinxResultCacheSlots", String.valueOf(DEFAULT_CACHE_SLOTS)));
+            int slotSize = Integer.parseInt(
+                    properties.getProperty("sphinxResultCacheSlotSize", String.valueOf(DEFAULT_CACHE_SLOT_SIZE)));
+            long ttl = Long.parseLong(properties.getProperty("sphinxResultCacheTtl", String.valueOf(DEFAULT_CACHE_TTL)));
+            try
+            {
+                _resultCache = new MappedResultCache(new File(cacheFile), slots, slotSize, ttl * 1000);
+            }
+            catch (IOException e)
+            {
+                _log.error("Unable to open result cache " + cacheFile + ", continuing without it", e);
+            }
+
+            String topK = properties.getProperty("sphinxRefreshTopK");
+            if (topK != null && _resultCache != null)
+            {
+                long interval = Long.parseLong(properties.getProperty("sphinxRefreshInterval", String.valueOf(ttl / 2)));
+                _refresher = new PopularQueryRefresher<>(this, Integer.parseInt(topK), Math.max(interval, 1));
+                addReindexListener(_refresher);
+            }
+        }
+
+        String percolateStateFile = properties.getProperty("sphinxPercolateStateFile");
+        _percolateStateFile = percolateStateFile != null ? new File(percolateStateFile) : null;
+
+        String keywordCacheSize = properties.getProperty("sphinxKeywordCacheSize");
+        if (keywordCacheSize != null)
+        {
+            _keywordCache = new KeywordCache(_host, _port, Integer.parseInt(keywordCacheSize));
+            addReindexListener(_keywordCache);
+            _highlighter = new Highlighter(_keywordCache);
+        }
+
+        String autocompleteIndex = properties.getProperty("sphinxAutocompleteIndex");
+        if (autocompleteIndex != null)
+        {
+            int suggestions = Integer.parseInt(properties.getProperty("sphinxAutocompleteSuggestions", "10"));
+            _autocompleter = new Autocompleter(_host, _port, autocompleteIndex, suggestions);
+            addReindexListener(_autocompleter);
+        }
+
+        String documentStoreFile = properties.getProperty("sphinxDocumentStoreFile");
+        if (documentStoreFile != null)
+        {
+            int blockSize = Integer.parseInt(properties.getProperty("sphinxDocumentStoreBlockSize", "65536"));
+            try
+            {
+                _documentStore = new DocumentStore(new File(documentStoreFile), blockSize);
+                _documentStoreCompactRatio = Double.parseDouble(
+                        properties.getProperty("sphinxDocumentStoreCompactRatio", "0.5"));
+                addReindexListener(indexName -> refreshDocumentStore());
+            }
+            catch (IOException e)
+            {
+                _log.error("Unable to open document store " + documentStoreFile + ", continuing without it", e);
+            }
+        }
+
+        String warmUpRate = properties.getProperty("sphinxWarmUpRate");
+        if (warmUpRate != null)
+        {
+            _warmer = new SearchWarmer<>(this, Double.parseDouble(warmUpRate));
+            _ready = false;
+            addReindexListener(_warmer);
+        }
+
+        if (_resultCache != null || _facetCache != null)
+        {
+            try
+            {
+                for (String path : RebuildOrchestrator.findIndexPaths(_configFile).values())
+                {
+                    _indexHeaders.add(new File(path + ".sph"));
+                }
+            }
+            catch (IOException e)
+            {
+                _log.warn("Unable to read index paths from " + _configFile
+                        + ", caches will only be invalidated by re-indexes run here", e);
+            }
+            checkIndexFiles();
+        }
+    }
+
+    /**
+     * Warm up searchd and the result cache by replaying {@link #getWarmUpSearches()}, blocking until done.
+     *
+     * Call this at startup before taking traffic; the service reports itself ready once it completes.
+     */
+    public void warmUp()
+    {
+
+        if (_warmer != null)
+        {
+            _warmer.warmUp(getWarmUpSearches());
+        }
+        _ready = true;
+    }
+
+    /**
+     * Is the service ready to take traffic, i.e. has it warmed up (if configured to)?
+     *
+     * @return true if ready.
+     */
+    public boolean isReady()
+    {
+
+        return _ready;
+    }
+
+    /**
+     * Get the service for building excerpts in parallel chunks, with cached snippets.
+     *
+     * @return the excerpt service.
+     */
+    public synchronized ExcerptService getExcerptService()
+    {
+
+        if (_excerptService == null)
+        {
+            _excerptService = new ExcerptService(_clientPool, _excerptThreads, _excerptCacheSize);
+        }
+
+        return _excerptService;
+    }
+
+    /**
+     * Start percolating saved searches after each delta re-index; add the saved searches to the returned percolator.
+     * Its high-water marks are saved to the configured state file, or only kept in memory if there isn't one.
+     *
+     * @param listener receives the new matches for each saved search.
+     * @return the percolator.
+     */
+    public synchronized Percolator<S> startPercolator(Percolator.Listener listener)
+    {
+
+        if (_percolator != null)
+        {
+            throw new IllegalStateException("Percolator already started");
+        }
+
+        _percolator = new Percolator<>(this, _clientPool, _percolateBatchSize, _percolateThreads,
+                _percolateMaxMatches, listener, _percolateStateFile);
+        addReindexListener(_percolator);
+
+        return _percolator;
+    }
+
+    /**
+     * Look up the current attributes of many documents.
+     *
+     * The docIds are split into chunks of at most {@link #MAX_MATCHES}, each a full scan query filtered on the
+     * chunk's ids and projected to the wanted attributes, sent together in multi-query requests over one pooled
+     * connection. An empty list of docIds still sends one query, to check the attributes exist.
+     *
+     * @param index the index name(s) to look in.
+     * @param docIds
+     * @param attributes
+     * @return the attributes of the documents found, in the order requested.
+     * @throws SphinxException if a query failed or an attribute doesn't exist.
+     * @throws InterruptedException if interrupted while waiting for a connection.
+     */
+    public AttributeColumns fetchAttributes(String index, long[] docIds, String... attributes)
+            throws SphinxException, InterruptedException
+    {
+
+        List<SphinxMatch> matches = new ArrayList<>(docIds.length);
+        LongLongHashMap found = new LongLongHashMap(docIds.length);
+        String[] attrNames = null;
+        int[] attrTypes = null;
+
+        SphinxClient sphinx = _clientPool.borrow();
+        try
+        {
+            sphinx.ResetFilters();
+            sphinx.ResetGroupBy();
+            sphinx.SetMatchMode(SphinxClient.SPH_MATCH_FULLSCAN);
+            sphinx.SetSortMode(SphinxClient.SPH_SORT_EXTENDED, "@id ASC");
+            sphinx.SetSelect(String.join(", ", attributes));
+            sphinx.SetLimits(0, MAX_MATCHES, MAX_MATCHES);
+
+            int chunks = Math.max(1, (docIds.length + MAX_MATCHES - 1) / MAX_MATCHES);
+            int queued = 0;
+            for (int chunk = 0; chunk < chunks; chunk++)
+            {
+                sphinx.ResetFilters();
+                if (docIds.length == 0)
+                {
+                    // Matches nothing, but still reports the attributes
+                    sphinx.SetFilterRange("@id", 0L, 0L, false);
+                }
+                else
+                {
+                    int from = chunk * MAX_MATCHES;
+                    sphinx.SetFilter("@id", Arrays.copyOfRange(docIds, from, Math.min(from + MAX_MATCHES, docIds.length)),
+                            false);
+                }
+                sphinx.AddQuery("", index, null);
+                queued++;
+                if (queued < MAX_BATCH_QUERIES && chunk + 1 < chunks)
+                {
+                    continue;
+                }
+
+                SphinxResult[] results = sphinx.RunQueries();
+                if (results == null)
+                {
+                    throw new SphinxException("Sphinx Error: " + sphinx.GetLastError());
+                }
+                for (SphinxResult res : results)
+                {
+                    if (res.getStatus() == SphinxClient.SEARCHD_ERROR)
+                    {
+                        throw new SphinxException("Sphinx Error: " + res.error);
+                    }
+                    attrNames = res.attrNames;
+                    attrTypes = res.attrTypes;
+                    for (SphinxMatch match : res.matches)
+                    {
+                        found.put(match.docId, matches.size());
+                        matches.add(match);
+                    }
+                }
+                queued = 0;
+            }
+        }
+        finally
+        {
+            // The pool resets the select list, match mode, sort, filters and limits
+            _clientPool.release(sphinx);
+        }
+
+        // Rows in the order requested
+        long[] rows = new long[matches.size()];
+        int[] positions = new int[matches.size()];
+        int size = 0;
+        for (long docId : docIds)
+        {
+            long position = found.get(docId, -1);
+            if (position >= 0)
+            {
+                rows[size] = docId;
+                positions[size++] = (int)position;
+                found.remove(docId);
+            }
+        }
+
+        Map<String, Object> columns = new LinkedHashMap<>();
+        for (String attribute : attributes)
+        {
+            int attr = -1;
+            for (int i = 0; i < attrNames.length; i++)
+            {
+                if (attrNames[i].equalsIgnoreCase(attribute))
+                {
+                    attr = i;
+                }
+            }
+            if (attr < 0)
+            {
+                throw new SphinxException("No attribute " + attribute + " in " + index);
+            }
+            columns.put(attribute, column(matches, positions, size, attr, attrTypes[attr]));
+        }
+
+        return new AttributeColumns(Arrays.copyOf(rows, size), columns);
+    }
+
+    /**
+     * Copy one attribute of the matches into a primitive column.
+     *
+     * @param matches
+     * @param positions the match for each row.
+     * @param size the number of rows.
+     * @param attr the attribute's position in the matches.
+     * @param type the attribute's SPH_ATTR_xxx type.
+     * @return the column.
+     */
+    private static Object column(List<SphinxMatch> matches, int[] positions, int size, int attr, int type)
+    {
+
+        switch (type)
+        {
+            case SphinxClient.SPH_ATTR_FLOAT:
+                float[] floats = new float[size];
+                for (int i = 0; i < size; i++)
+                {
+                    floats[i] = (Float)matches.get(positions[i]).attrValues.get(attr);
+                }
+                return floats;
+            case SphinxClient.SPH_ATTR_STRING:
+                String[] strings = new String[size];
+                for (int i = 0; i < size; i++)
+                {
+                    strings[i] = (String)matches.get(positions[i]).attrValues.get(attr);
+                }
+                return strings;
+            case SphinxClient.SPH_ATTR_MULTI:
+            case SphinxClient.SPH_ATTR_MULTI64:
+                long[][] multi = new long[size][];
+                for (int i = 0; i < size; i++)
+                {
+                    multi[i] = (long[])matches.get(positions[i]).attrValues.get(attr);
+                }
+                return multi;
+            default:
+                long[] longs = new long[size];
+                for (int i = 0; i < size; i++)
+                {
+                    longs[i] = (Long)matches.get(positions[i]).attrValues.get(attr);
+                }
+                return longs;
+        }
+    }
+
+    /**
+     * Get the client-side attribute store, starting to load it on first use.
+     *
+     * @return the store, or null if not enabled.
+     */
+    public AttributeStore getAttributeStore()
+    {
+
+        if (_attributeStore != null)
+        {
+            _attributeStore.start();
+        }
+
+        return _attributeStore;
+    }
+
+    /**
+     * Get the write-behind updater for batching attribute updates.
+     *
+     * @return the attribute updater.
+     */
+    public synchronized AttributeUpdater getAttributeUpdater()
+    {
+
+        if (_attributeUpdater == null)
+        {
+            _attributeUpdater = new AttributeUpdater(_clientPool, _updateBatchSize, _updateCapacity, _updateFlushInterval,
+                    _flushAttributesInterval, _indexRouter, _attributeStore);
+            if (_facetCache != null)
+            {
+                // Updated attributes may change the counts that depend on them
+                _attributeUpdater.addUpdateListener(new AttributeUpdateListener()
+                {
+                    @Override
+                    public void attributesUpdated(String indexNames)
+                    {
+
+                        // Only called with the attributes
+                    }
+
+                    @Override
+                    public void attributesUpdated(String indexNames, Collection<String> attributes)
+                    {
+
+                        _facetCache.attributesUpdated(attributes);
+                    }
+                });
+            }
+            if (_indexRouter != null)
+            {
+                // Updates go to every index until its filter is built
+                _indexRouter.load(getMainIndexName() != null
+                        ? new String[] { getMainIndexName(), getDeltaIndexName() }
+                        : new String[] { getDeltaIndexName() });
+            }
+        }
+
+        return _attributeUpdater;
+    }
+
+    /**
+     * Get the representative searches to replay when warming up.
+     *
+     * Override to supply recorded or configured searches; by default these are the current popular searches, if
+     * tracked.
+     *
+     * @return the searches.
+     */
+    protected List<S> getWarmUpSearches()
+    {
+
+        if (_refresher != null)
+        {
+            return _refresher.getPopularSearches();
+        }
+
+        return new ArrayList<S>();
+    }
+
+    /**
+     * Search for the given parameters, using the result cache if configured.
+     *
+     * @param searchCommand
+     * @return a List of ids.
+     * @throws SphinxException
+     */
+    public SearchResultContainer search(S searchCommand) throws SphinxException
+    {
+
+        checkIndexFiles();
+        MappedResultCache cache = _resultCache;
+        String key = cache != null ? resultCacheKey(searchCommand) : null;
+        if (cache != null && _refresher != null)
+        {
+            _refresher.record(searchCommand, key);
+        }
+
+        // Overlay matches change with every put, so merged pages aren't cached
+        List<Long> hits = overlayHits(searchCommand);
+        if (!hits.isEmpty())
+        {
+            return maskSoftDeleted(mergeOverlay(searchCommand, hits));
+        }
+
+        SearchResultContainer results;
+        if (cache == null)
+        {
+            results = query(searchCommand);
+        }
+        else
+        {
+            results = cache.get(key);
+            if (results == null)
+            {
+                results = query(searchCommand);
+                cache.put(key, results);
+            }
+            else if (_log.isDebugEnabled())
+            {
+                _log.debug("Query '" + searchCommand.getSearchPhrase() + "' served from result cache");
+            }
+        }
+
+        if (hasStale(results))
+        {
+            results = mergeOverlay(searchCommand, hits);
+        }
+
+        return maskSoftDeleted(results);
+    }
+
+    /**
+     * Search and count facets of the matches in one round trip: the search and a group-by query per facet are sent in
+     * a single multi-query request, all sharing the search's filters. Bypasses the result cache, but facets already in
+     * the facet cache (if enabled) aren't queried again.
+     *
+     * @param searchCommand
+     * @param facetedSearch the facets to count.
+     * @return the results with the counts for each facet.
+     * @throws SphinxException
+     * @throws InterruptedException if interrupted while waiting for a connection.
+     */
+    public FacetedResultContainer facetedSearch(S searchCommand, FacetedSearch facetedSearch)
+            throws SphinxException, InterruptedException
+    {
+
+        List<FacetedSearch.Facet> facets = facetedSearch.getFacets();
+        if (facets.size() >= MAX_BATCH_QUERIES)
+        {
+            throw new IllegalArgumentException("At most " + (MAX_BATCH_QUERIES - 1) + " facets per search");
+        }
+
+        // Only query the facets not already cached
+        checkIndexFiles();
+        FacetCache facetCache = _facetCache;
+        long generation = facetCache != null ? facetCache.getGeneration() : 0;
+        SphinxClient filters = null;
+        String searchKey = null;
+        if (facetCache != null)
+        {
+            // The counts depend on the filters configure() sets, not just the search command
+            filters = new SphinxClient();
+            configure(searchCommand, filters);
+            searchKey = facetCacheKey(searchCommand, filters);
+        }
+        Map<String, FacetCounts> counts = new LinkedHashMap<>();
+        List<FacetedSearch.Facet> missing = new ArrayList<>(facets.size());
+        for (FacetedSearch.Facet facet : facets)
+        {
+            FacetCounts cached = facetCache != null ? facetCache.get(searchKey + "|" + facet) : null;
+            counts.put(facet.getAttribute(), cached);
+            if (cached == null)
+            {
+                missing.add(facet);
+            }
+        }
+
+        int limit = searchCommand.getPerPage();
+        int offset = searchCommand.getOffset() > MAX_MATCHES ? MAX_MATCHES - limit : searchCommand.getOffset();
+        String searchPhrase = searchCommand.getSearchPhrase();
+        SphinxResult[] results;
+
+        SphinxClient sphinx = _clientPool.borrow();
+        try
+        {
+            sphinx.ResetFilters();
+            sphinx.ResetGroupBy();
+            configure(searchCommand, sphinx);
+            sphinx.SetLimits(offset, limit, MAX_MATCHES);
+            sphinx.AddQuery(searchPhrase, searchCommand.getIndexNames(), null);
+
+            // Each facet reuses the filters encoded above, only the grouping and limits change
+            for (FacetedSearch.Facet facet : missing)
+            {
+                sphinx.SetGroupBy(facet.getAttribute(), SphinxClient.SPH_GROUPBY_ATTR, "@count desc");
+                sphinx.SetGroupDistinct(facet.getDistinctAttribute() != null ? facet.getDistinctAttribute() : "");
+                sphinx.SetLimits(0, facet.getMaxValues(), MAX_MATCHES);
+                sphinx.AddQuery(searchPhrase, searchCommand.getIndexNames(), null);
+            }
+
+            long start = System.nanoTime();
+            results = sphinx.RunQueries();
+            _latencyMonitor.record(System.nanoTime() - start);
+            if (results == null)
+            {
+                throw new SphinxException("Sphinx Error: " + sphinx.GetLastError());
+            }
+        }
+        finally
+        {
+            _clientPool.release(sphinx);
+        }
+
+        for (SphinxResult res : results)
+        {
+            if (res.getStatus() == SphinxClient.SEARCHD_ERROR)
+            {
+                throw new SphinxException("Sphinx Error: " + res.error);
+            }
+        }
+
+        SphinxResult res = results[0];
+        if (_log.isDebugEnabled())
+        {
+            _log.debug("Faceted query '" + searchPhrase + "' retrieved " + res.total + " of " + res.totalFound + " matches and "
+                    + missing.size() + " of " + facets.size() + " facets");
+        }
+        if (_autocompleter != null)
+        {
+            _autocompleter.addQuery(searchPhrase);
+        }
+
+        List<Long> searchIds = new ArrayList<>(res.matches.length);
+        for (SphinxMatch info : res.matches)
+        {
+            searchIds.add(info.docId);
+        }
+        SearchResultContainer hits = new SearchResultContainer(searchIds, res.total);
+        List<Long> overlayHits = overlayHits(searchCommand);
+        if (!overlayHits.isEmpty() || hasStale(hits))
+        {
+            hits = mergeOverlay(searchCommand, overlayHits);
+        }
+        hits = maskSoftDeleted(hits);
+
+        for (int i = 0; i < missing.size(); i++)
+        {
+            FacetedSearch.Facet facet = missing.get(i);
+            FacetCounts facetCounts = facetCounts(facet, results[i + 1]);
+            counts.put(facet.getAttribute(), facetCounts);
+            if (facetCache != null)
+            {
+                Set<String> attributes = new HashSet<>(filters.GetFilterAttributes());
+                attributes.add(facet.getAttribute());
+                if (facet.getDistinctAttribute() != null)
+                {
+                    attributes.add(facet.getDistinctAttribute());
+                }
+                facetCache.put(searchKey + "|" + facet, generation, facetCounts, attributes);
+            }
+        }
+
+        return new FacetedResultContainer(hits.getSearchIds(), hits.getTotalResults(), counts);
+    }
+
+    /**
+     * Get the key identifying the matches of a search regardless of page and order, which its facets' counts are
+     * cached under: the indexes, the phrase and a digest of the filters.
+     *
+     * @param searchCommand
+     * @param filters a client configured for the search.
+     * @return the cache key.
+     */
+    private String facetCacheKey(S searchCommand, SphinxClient filters)
+    {
+
+        return searchCommand.getIndexNames() + "|" + searchCommand.getSearchPhrase() + "|"
+                + digest(filters.GetFilterState());
+    }
+
+    /**
+     * Get the key a search's results are cached under: the search command's own key and a digest of the query
+     * {@link #configure} builds for the page, so searches that {@link #addFilters} restricts differently, e.g. for
+     * different users, never share results.
+     *
+     * @param searchCommand
+     * @return the cache key.
+     * @throws SphinxException
+     */
+    private String resultCacheKey(S searchCommand) throws SphinxException
+    {
+
+        int limit = searchCommand.getPerPage();
+        int offset = searchCommand.getOffset() > MAX_MATCHES ? MAX_MATCHES - limit : searchCommand.getOffset();
+        SphinxClient sphinx = new SphinxClient();
+        configure(searchCommand, sphinx);
+        sphinx.SetLimits(offset, limit, MAX_MATCHES);
+        int query = sphinx.AddQuery(searchCommand.getSearchPhrase(), searchCommand.getIndexNames(), "");
+
+        return searchCommand.getCacheKey() + "|" + digest(sphinx.GetQueuedQuery(query));
+    }
+
+    /**
+     * Digest an encoded query or filters for use in a cache key.
+     *
+     * @param encoded
+     * @return the SHA-256 digest, Base64 encoded.
+     */
+    private static String digest(byte[] encoded)
+    {
+
+        try
+        {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(encoded));
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-256 not supported", e);
+        }
+    }
+
+    /**
+     * Get the facet count cache.
+     *
+     * @return the cache, or null if not enabled.
+     */
+    public FacetCache getFacetCache()
+    {
+
+        return _facetCache;
+    }
+
+    /**
+     * Read a facet's counts from its group-by result.
+     *
+     * @param facet
+     * @param res
+     * @return the counts.
+     */
+    private static FacetCounts facetCounts(FacetedSearch.Facet facet, SphinxResult res)
+    {
+
+        int groupBy = -1;
+        int count = -1;
+        int distinct = -1;
+        for (int i = 0; i < res.attrNames.length; i++)
+        {
+            switch (res.attrNames[i])
+            {
+                case "@groupby":
+                    groupBy = i;
+                    break;
+                case "@count":
+                    count = i;
+                    break;
+                case "@distinct":
+                    distinct = i;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        int size = res.matches.length;
+        long[] values = new long[size];
+        int[] counts = new int[size];
+        int[] distinctCounts = facet.getDistinctAttribute() != null && distinct >= 0 ? new int[size] : null;
+        for (int i = 0; i < size; i++)
+        {
+            List<?> attrValues = res.matches[i].attrValues;
+            values[i] = ((Number)attrValues.get(groupBy)).longValue();
+            counts[i] = ((Number)attrValues.get(count)).intValue();
+            if (distinctCounts != null)
+            {
+                distinctCounts[i] = ((Number)attrValues.get(distinct)).intValue();
+            }
+        }
+
+        return new FacetCounts(facet.getAttribute(), values, counts, distinctCounts);
+    }
+
+    /**
+     * Get the overlay's matches for a search.
+     *
+     * @param searchCommand
+     * @return the accepted docIds, best match first; empty if the overlay isn't enabled.
+     * @throws SphinxException
+     */
+    private List<Long> overlayHits(S searchCommand) throws SphinxException
+    {
+
+        List<Long> hits = new ArrayList<>();
+        if (_overlayMerger == null)
+        {
+            return hits;
+        }
+
+        for (Long docId : _overlayMerger.search(searchCommand.getSearchPhrase()))
+        {
+            if (acceptOverlayHit(searchCommand, docId))
+            {
+                hits.add(docId);
+            }
+        }
+
+        return hits;
+    }
+
+    /**
+     * Do searchd's results hold documents changed since the last re-index?
+     *
+     * @param results
+     * @return true if any are held in the overlay.
+     */
+    private boolean hasStale(SearchResultContainer results)
+    {
+
+        return _overlayMerger != null && _overlayMerger.hasStale(results);
+    }
+
+    /**
+     * Merge the overlay's matches into searchd's results, see {@link OverlayMerger}.
+     *
+     * @param searchCommand
+     * @param hits the overlay's matches.
+     * @return the merged results.
+     * @throws SphinxException
+     */
+    private SearchResultContainer mergeOverlay(S searchCommand, List<Long> hits) throws SphinxException
+    {
+
+        int limit = searchCommand.getPerPage();
+        int offset = searchCommand.getOffset() > MAX_MATCHES ? MAX_MATCHES - limit : searchCommand.getOffset();
+        SphinxResult res = runQuery(searchCommand, 0, _overlayMerger.getWindow(offset, limit));
+
+        return _overlayMerger.merge(hits, res, offset, limit,
+                searchCommand.isSortByRelevance() ? null : searchCommand.getSortField(),
+                searchCommand.getSortOrder() == SortOrder.DESC);
+    }
+
+    /**
+     * Should a document matched by the overlay be included in the results?
+     *
+     * The overlay only matches text, so by default its matches are only included in searches that
+     * {@link #addFilters} doesn't restrict; override this to check the document against the search's filters instead.
+     * Deleted documents are hidden by the overlay and by {@link #softDelete} either way.
+     *
+     * @param searchCommand
+     * @param docId
+     * @return true to include it; by default, true only if the search has no filters.
+     * @throws SphinxException
+     */
+    protected boolean acceptOverlayHit(S searchCommand, long docId) throws SphinxException
+    {
+
+        return !hasFilters(searchCommand);
+    }
+
+    /**
+     * Does {@link #addFilters} restrict a search?
+     *
+     * @param searchCommand
+     * @return true if it sets any filter.
+     * @throws SphinxException
+     */
+    protected boolean hasFilters(S searchCommand) throws SphinxException
+    {
+
+        SphinxClient sphinx = new SphinxClient();
+        addFilters(searchCommand, sphinx);
+
+        return sphinx.GetFilterCount() > 0;
+    }
+
+    /**
+     * Get the near-real-time overlay; put documents here as they change so they are searchable before the next
+     * re-index.
+     *
+     * @return the overlay, or null if not enabled.
+     */
+    public OverlayIndex getOverlay()
+    {
+
+        return _overlay;
+    }
+
+    /**
+     * Soft-delete documents: they are masked from results straight away, and excluded by searchd once the batched
+     * attribute updates setting the deleted attribute on the main and delta indexes have been sent.
+     *
+     * A document stays masked until its deletion has been sent and every index holding it has since been re-indexed.
+     * Masking happens after the search, so a page with masked documents on it comes back short by that many (and
+     * the total is reduced to match) rather than being refilled from the next page.
+     *
+     * @param docIds
+     * @throws SphinxException if soft deletes aren't enabled.
+     * @throws InterruptedException if interrupted while waiting for space in the update buffer.
+     */
+    public void softDelete(long... docIds) throws SphinxException, InterruptedException
+    {
+
+        setDeleted(docIds, true);
+    }
+
+    /**
+     * Undo a soft delete.
+     *
+     * @param docIds
+     * @throws SphinxException if soft deletes aren't enabled.
+     * @throws InterruptedException if interrupted while waiting for space in the update buffer.
+     */
+    public void restore(long... docIds) throws SphinxException, InterruptedException
+    {
+
+        setDeleted(docIds, false);
+    }
+
+    /**
+     * Set or clear the deleted attribute.
+     *
+     * @param docIds
+     * @param deleted
+     * @throws SphinxException
+     * @throws InterruptedException
+     */
+    private void setDeleted(long[] docIds, boolean deleted) throws SphinxException, InterruptedException
+    {
+
+        if (_softDeleteMask == null)
+        {
+            throw new SphinxException("'sphinxDeletedAttribute' not set, cannot soft delete");
+        }
+
+        _softDeleteMask.setDeleted(docIds, deleted, getAttributeUpdater());
+    }
+
+    /**
+     * Get the indexes soft deletes are applied to.
+     *
+     * @return the index names, space separated.
+     */
+    protected String getSoftDeleteIndexes()
+    {
+
+        if (_softDeleteIndexes != null)
+        {
+            return _softDeleteIndexes;
+        }
+
+        return getMainIndexName() != null ? getMainIndexName() + " " + getDeltaIndexName() : getDeltaIndexName();
+    }
+
+    /**
+     * Remove recently soft-deleted documents from results that may predate the delete.
+     *
+     * @param results
+     * @return the results without soft-deleted documents.
+     */
+    private SearchResultContainer maskSoftDeleted(SearchResultContainer results)
+    {
+
+        return _softDeleteMask != null ? _softDeleteMask.mask(results) : results;
+    }
+
+    /**
+     * Search Sphinx for the given parameters and replace any cached results.
+     *
+     * @param searchCommand
+     * @return a List of ids.
+     * @throws SphinxException
+     */
+    public SearchResultContainer refresh(S searchCommand) throws SphinxException
+    {
+
+        SearchResultContainer results = query(searchCommand);
+        MappedResultCache cache = _resultCache;
+        if (cache != null)
+        {
+            cache.put(resultCacheKey(searchCommand), results);
+        }
+
+        return results;
+    }
+
+    /**
+     * Search Sphinx for the given parameters, bypassing any cache.
+     *
+     * @param searchCommand
+     * @return a List of ids.
+     * @throws SphinxException
+     */
+    protected SearchResultContainer query(S searchCommand) throws SphinxException
+    {
+
+        int limit = searchCommand.getPerPage();
+        int offset = searchCommand.getOffset() > MAX_MATCHES ? MAX_MATCHES - limit : searchCommand.getOffset();
+        SphinxResult res = runQuery(searchCommand, offset, limit);
+
+        List<Long> searchIds = new ArrayList<Long>();
+        for (SphinxMatch info : res.matches)
+        {
+            searchIds.add(new Long(info.docId));
+        }
+
+        SearchResultContainer results = new SearchResultContainer(searchIds, res.total);
+
+        return results;
+    }
+
+    /**
+     * Send a search to Sphinx.
+     *
+     * @param searchCommand
+     * @param offset the offset into the matches.
+     * @param limit the number of matches to return.
+     * @return the result.
+     * @throws SphinxException
+     */
+    private SphinxResult runQuery(S searchCommand, int offset, int limit) throws SphinxException
+    {
+
+        String searchPhrase = searchCommand.getSearchPhrase();
+        SphinxClient sphinx = new SphinxClient();
+
+        sphinx.SetServer(_host, _port);
+        configure(searchCommand, sphinx);
+        sphinx.SetLimits(offset, limit, MAX_MATCHES);
+
+        long start = System.nanoTime();
+        SphinxResult res = sphinx.Query(searchPhrase, searchCommand.getIndexNames());
+        _latencyMonitor.record(System.nanoTime() - start);
+        if (res == null)
+        {
+            throw new SphinxException("Sphinx Error: " + sphinx.GetLastError());
+        }
+
+        if (sphinx.GetLastWarning() != null && sphinx.GetLastWarning().length() > 0)
+        {
+            _log.warn("WARNING: " + sphinx.GetLastWarning() + "\n");
+        }
+
+        if (_log.isDebugEnabled())
+        {
+            _log.debug(
+                    "Query '" + searchCommand.getSearchPhrase() + "' retrieved " + res.total + " of " + res.totalFound + " matches in " + res.time + " sec.");
+        }
+
+        if (_autocompleter != null)
+        {
+            _autocompleter.addQuery(searchCommand.getSearchPhrase());
+        }
+
+        return res;
+    }
+
+    /**
+     * Set the match mode, field weights, sort order and filters for a search.
+     *
+     * @param searchCommand
+     * @param sphinx
+     * @throws SphinxException
+     */
+    protected void configure(S searchCommand, SphinxClient sphinx) throws SphinxException
+    {
+
+        int mode = SphinxClient.SPH_MATCH_ALL;
+        Map<String, Integer> fieldWeights = createFieldWeightings();
+        sphinx.SetFieldWeights(fieldWeights);
+        sphinx.SetMatchMode(mode);
+
+        if (searchCommand.isSortByRelevance())
+        {
+            // Sort by relevance then specified sort field
+            sphinx.SetSortMode(SphinxClient.SPH_SORT_EXTENDED,
+                    String.format("@relevance DESC, %s %s", searchCommand.getSortField(), searchCommand.getSortOrder()));
+        }
+        else
+        {
+            int sortMode = SphinxClient.SPH_SORT_ATTR_ASC;
+            if (searchCommand.getSortOrder() == SortOrder.DESC)
+            {
+                sortMode = SphinxClient.SPH_SORT_ATTR_DESC;
+            }
+            // Sort purely by specified sort field
+            sphinx.SetSortMode(sortMode, searchCommand.getSortField());
+        }
+
+        addFilters(searchCommand, sphinx);
+        if (_deletedAttribute != null)
+        {
+            sphinx.SetFilter(_deletedAttribute, 1, true);
+        }
+    }
+
+    /**
+     * Get the field to sort by.
+     *
+     * @see <a href="http://sphinxsearch.com/docs/current.html#sorting-modes">Sphinx docs</a>
+     *
+     * @return
+     * @deprecated See {@link SearchCommand#getSortField}
+     */
+    @Deprecated
+    protected String getSortField()
+    {
+        return "";
+    }
+
+    /**
+     * Re-index the delta index, waiting for any scheduled run to finish first.
+     *
+     * @throws IOException
+     * @throws SphinxException
+     */
+    public void reIndexDelta() throws IOException, SphinxException
+    {
+
+        _reindexScheduler.runExclusive(this::indexDelta, getDeltaIndexName());
+    }
+
+    /**
+     * Request a re-index of the delta index in the background.
+     *
+     * Requests are debounced, and requests made while the indexer is running are merged into a single follow-up run.
+     *
+     * @return completed once a run that started after this request finishes.
+     */
+    public CompletableFuture<Void> reIndexDeltaAsync()
+    {
+
+        return _reindexScheduler.request(this::indexDelta, getDeltaIndexName());
+    }
+
+    /**
+     * Merge the delta index into the main index, waiting for any scheduled run on either index to finish first.
+     *
+     * @throws IOException
+     * @throws SphinxException
+     */
+    public void mergeDelta() throws IOException, SphinxException
+    {
+
+        _reindexScheduler.runExclusive(this::merge, getMainIndexName(), getDeltaIndexName());
+    }
+
+    /**
+     * Request whichever re-index the change journal calls for, in the background: nothing if nothing has changed
+     * since the last delta re-index, a full rebuild or a merge if enough documents have changed since the main index
+     * was built, otherwise a delta re-index. Without a change journal this always re-indexes the delta.
+     *
+     * @return completed once the re-index finishes.
+     */
+    public CompletableFuture<Void> reIndexChanges()
+    {
+
+        ChangeJournal journal = _changeJournal;
+        if (journal == null)
+        {
+            return reIndexDeltaAsync();
+        }
+
+        if (journal.getPending(journal.getDeltaCheckpoint()) == 0)
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        int changed = journal.getDeltaChanges().size();
+        if (getMainIndexName() != null && _rebuildChanges > 0 && changed >= _rebuildChanges)
+        {
+            _log.info(changed + " documents changed since the main index was built, rebuilding");
+            return rebuildAsync();
+        }
+        if (getMainIndexName() != null && _mergeChanges > 0 && changed >= _mergeChanges)
+        {
+            _log.info(changed + " documents changed since the main index was built, merging");
+            return mergeDeltaAsync();
+        }
+
+        return reIndexDeltaAsync();
+    }
+
+    /**
+     * Rebuild the main and delta indexes from scratch, waiting for any scheduled run on either to finish first.
+     *
+     * @throws IOException
+     * @throws SphinxException
+     */
+    public void rebuild() throws IOException, SphinxException
+    {
+
+        _reindexScheduler.runExclusive(this::indexAll, getMainIndexName(), getDeltaIndexName());
+    }
+
+    /**
+     * Request a rebuild of the main and delta indexes in the background.
+     *
+     * @return completed once a rebuild that started after this request finishes.
+     */
+    public CompletableFuture<Void> rebuildAsync()
+    {
+
+        return _reindexScheduler.request(this::indexAll, getMainIndexName(), getDeltaIndexName());
+    }
+
+    /**
+     * Run the indexer on the main and delta indexes.
+     *
+     * @throws IOException
+     * @throws SphinxException
+     */
+    private void indexAll() throws IOException, SphinxException
+    {
+
+        String mainIndexName = getMainIndexName();
+        if (mainIndexName == null)
+        {
+            throw new SphinxException("No main index set, cannot rebuild");
+        }
+
+        long journalEnd = _changeJournal != null ? _changeJournal.getEnd() : 0;
+        long overlayMark = _overlay != null ? _overlay.mark() : 0;
+        invalidateRouting(mainIndexName, getDeltaIndexName());
+        for (IndexerStats stats : _indexer.run("--rotate", mainIndexName, getDeltaIndexName()))
+        {
+            _indexerStats.put(stats.getIndexName(), stats);
+        }
+        if (_overlay != null)
+        {
+            _overlay.clearTo(overlayMark);
+        }
+        if (_changeJournal != null)
+        {
+            _changeJournal.setMainCheckpoint(journalEnd);
+            _changeJournal.compact();
+        }
+
+        fireReindexed(mainIndexName, getDeltaIndexName());
+    }
+
+    /**
+     * Rebuild the given indexes in parallel and rotate them into searchd together, waiting for any scheduled run on
+     * them to finish first.
+     *
+     * @param indexNames
+     * @return the stats for each index, including how long it took.
+     * @throws IOException
+     * @throws SphinxException if any index failed, in which case nothing was rotated.
+     */
+    public Map<String, IndexerStats> rebuildAll(String... indexNames) throws IOException, SphinxException
+    {
+
+        File pidFile = _pidFile != null ? new File(_pidFile) : RebuildOrchestrator.findPidFile(_configFile);
+        if (pidFile == null)
+        {
+            throw new SphinxException("No 'sphinxPidFile' set and no pid_file in " + _configFile + ", cannot rotate");
+        }
+
+        // Builds take their slots from the same governor as every other indexer run
+        RebuildOrchestrator orchestrator = new RebuildOrchestrator(_indexer, _rebuildParallelism, pidFile,
+                RebuildOrchestrator.findIndexPaths(_configFile));
+        List<String> names = Arrays.asList(indexNames);
+        Map<String, IndexerStats> results = new LinkedHashMap<>();
+        _reindexScheduler.runExclusive(() -> {
+            long journalEnd = _changeJournal != null ? _changeJournal.getEnd() : 0;
+            long overlayMark = _overlay != null ? _overlay.mark() : 0;
+            invalidateRouting(indexNames);
+            results.putAll(orchestrator.rebuild(names, _indexerStats));
+            _indexerStats.putAll(results);
+            if (_overlay != null && names.contains(getDeltaIndexName()))
+            {
+                _overlay.clearTo(overlayMark);
+            }
+            if (_changeJournal != null && names.contains(getMainIndexName()))
+            {
+                _changeJournal.setMainCheckpoint(journalEnd);
+                _changeJournal.compact();
+            }
+        }, indexNames);
+
+        fireReindexed(indexNames);
+
+        return results;
+    }
+
+    /**
+     * Request a merge of the delta index into the main index in the background.
+     *
+     * @return completed once a merge that started after this request finishes.
+     */
+    public CompletableFuture<Void> mergeDeltaAsync()
+    {
+
+        return _reindexScheduler.request(this::merge, getMainIndexName(), getDeltaIndexName());
+    }
+
+    /**
+     * Run the indexer to merge the delta index into the main index, then re-index the (now redundant) delta.
      *
+     * @throws IOException
+     * @throws SphinxException
      */
-    public SearchService(Properties properties)
+    private void merge() throws IOException, SphinxException
     {
 
-        String host = properties.getProperty("sphinxHost");
-        if (host != null)
+        String mainIndexName = getMainIndexName();
+        if (mainIndexName == null)
         {
-            _host = host;
+            throw new SphinxException("No main index set, cannot merge");
         }
-        String port = properties.getProperty("sphinxPort");
-        if (port != null)
+
+        invalidateRouting(mainIndexName);
+        for (IndexerStats stats : _indexer.run("--merge", mainIndexName, getDeltaIndexName(), "--rotate"))
         {
-            _port = Integer.parseInt(port);
+            _indexerStats.put(stats.getIndexName(), stats);
         }
 
-        _indexCommand = properties.getProperty("sphinxIndexCommand");
-        _configFile = properties.getProperty("sphinxConfigFile");
-
-        if (_indexCommand == null || _configFile == null)
+        if (_changeJournal != null)
         {
-            throw new IllegalArgumentException("One of 'sphinxIndexCommand' or 'sphinxConfigFile' not set, cannot continue");
+            // The main index now holds whatever the merged delta held
+            _changeJournal.setMainCheckpoint(_changeJournal.getDeltaCheckpoint());
+            _changeJournal.compact();
         }
+
+        deltaMerged();
+        fireReindexed(mainIndexName);
+        reIndexDeltaAsync();
     }
 
     /**
-     * Search for the given parameters.
+     * Called after the delta has been merged into the main index, before the delta is re-indexed.
      *
-     * @param searchCommand
-     * @return a List of ids.
+     * Override this to move the delta's starting point on (e.g. update the counter table its
+     * <code>sql_query_pre</code> reads) so the re-indexed delta no longer holds the merged documents.
+     *
+     * @throws IOException
      * @throws SphinxException
      */
-    public SearchResultContainer search(S searchCommand) throws SphinxException
+    protected void deltaMerged() throws IOException, SphinxException
     {
 
-        int totalFound = 0;
-        int limit = searchCommand.getPerPage();
-        int offset = searchCommand.getOffset() > MAX_MATCHES ? MAX_MATCHES - limit : searchCommand.getOffset();
-        String searchPhrase = searchCommand.getSearchPhrase();
-
-        List<Long> searchIds = new ArrayList<Long>();
-        int mode = SphinxClient.SPH_MATCH_ALL;
-
-        SphinxClient sphinx = new SphinxClient();
+    }
 
-        sphinx.SetServer(_host, _port);
-        Map<String, Integer> fieldWeights = createFieldWeightings();
-        sphinx.SetFieldWeights(fieldWeights);
-        sphinx.SetMatchMode(mode);
-        sphinx.SetLimits(offset, limit, MAX_MATCHES);
+    /**
+     * Run the indexer on the delta index.
+     *
+     * @throws IOException
+     * @throws SphinxException
+     */
+    private void indexDelta() throws IOException, SphinxException
+    {
 
-        if (searchCommand.isSortByRelevance())
+        long journalEnd = _changeJournal != null ? _changeJournal.getEnd() : 0;
+        long overlayMark = _overlay != null ? _overlay.mark() : 0;
+        invalidateRouting(getDeltaIndexName());
+        for (IndexerStats stats : _indexer.run("--rotate", getDeltaIndexName()))
         {
-            // Sort by relevance then specified sort field
-            sphinx.SetSortMode(SphinxClient.SPH_SORT_EXTENDED,
-                    String.format("@relevance DESC, %s %s", searchCommand.getSortField(), searchCommand.getSortOrder()));
+            _indexerStats.put(stats.getIndexName(), stats);
         }
-        else
+        if (_overlay != null)
         {
-            int sortMode = SphinxClient.SPH_SORT_ATTR_ASC;
-            if (searchCommand.getSortOrder() == SortOrder.DESC)
+            _overlay.clearTo(overlayMark);
+        }
+        if (_changeJournal != null)
+        {
+            _changeJournal.setDeltaCheckpoint(journalEnd);
+        }
+
+        fireReindexed(getDeltaIndexName());
+    }
+
+    /**
+     * Pick up the documents an indexer's document source wrote to the document store, compacting it once enough of
+     * it is superseded.
+     */
+    private void refreshDocumentStore()
+    {
+
+        try
+        {
+            _documentStore.refresh();
+            if (_documentStore.getGarbageRatio() >= _documentStoreCompactRatio)
             {
-                sortMode = SphinxClient.SPH_SORT_ATTR_DESC;
+                _documentStore.compact();
             }
-            // Sort purely by specified sort field
-            sphinx.SetSortMode(sortMode, searchCommand.getSortField());
         }
+        catch (IOException e)
+        {
+            _log.error("Unable to refresh document store", e);
+        }
+    }
 
-        addFilters(searchCommand, sphinx);
+    /**
+     * Move the result and facet caches on to the next generation, after the indexes have changed.
+     */
+    private void nextGeneration()
+    {
 
-        SphinxResult res = sphinx.Query(searchPhrase, searchCommand.getIndexNames());
-        if (res == null)
+        long fingerprint = indexFingerprint();
+        _indexFingerprint = fingerprint;
+        MappedResultCache cache = _resultCache;
+        if (cache != null && !cache.setIndexFingerprint(fingerprint))
         {
-            throw new SphinxException("Sphinx Error: " + sphinx.GetLastError());
+            cache.nextGeneration();
+        }
+        if (_facetCache != null)
+        {
+            _facetCache.nextGeneration();
         }
+    }
 
-        if (sphinx.GetLastWarning() != null && sphinx.GetLastWarning().length() > 0)
+    /**
+     * Move the result and facet caches on if the index files have changed since they were last checked, e.g. after
+     * a re-index by another process or while this one wasn't running. Checks at most every few seconds.
+     */
+    private void checkIndexFiles()
+    {
+
+        long now = System.currentTimeMillis();
+        if (_indexHeaders.isEmpty() || now - _indexCheckedAt < INDEX_CHECK_INTERVAL)
         {
-            _log.warn("WARNING: " + sphinx.GetLastWarning() + "\n");
+            return;
         }
+        _indexCheckedAt = now;
 
-        totalFound = res.total;
-        if (_log.isDebugEnabled())
+        long fingerprint = indexFingerprint();
+        MappedResultCache cache = _resultCache;
+        if (cache != null && cache.setIndexFingerprint(fingerprint))
         {
-            _log.debug(
-                    "Query '" + searchCommand.getSearchPhrase() + "' retrieved " + res.total + " of " + res.totalFound + " matches in " + res.time + " sec.");
+            _log.info("Index files changed, result cache moved on to generation " + cache.getGeneration());
+        }
+        if (_facetCache != null && fingerprint != _indexFingerprint)
+        {
+            _facetCache.nextGeneration();
         }
+        _indexFingerprint = fingerprint;
+    }
 
-        for (SphinxMatch info : res.matches)
+    /**
+     * Get a fingerprint of the index files, from the modification time of each index's header file.
+     *
+     * @return the fingerprint.
+     */
+    private long indexFingerprint()
+    {
+
+        long fingerprint = 17;
+        for (File header : _indexHeaders)
         {
-            searchIds.add(new Long(info.docId));
+            fingerprint = fingerprint * 31 + header.lastModified();
         }
 
-        SearchResultContainer results = new SearchResultContainer(searchIds, totalFound);
+        return fingerprint;
+    }
 
-        return results;
+    /**
+     * Send updates to every given index while the indexer rotates these ones; they're routed again once re-indexed.
+     *
+     * @param indexNames
+     */
+    private void invalidateRouting(String... indexNames)
+    {
+
+        if (_indexRouter != null)
+        {
+            _indexRouter.invalidate(indexNames);
+        }
     }
 
     /**
-     * Get the field to sort by.
+     * Get the latency of recent searches.
      *
-     * @see <a href="http://sphinxsearch.com/docs/current.html#sorting-modes">Sphinx docs</a>
+     * @return the latency monitor.
+     */
+    public LatencyMonitor getLatencyMonitor()
+    {
+
+        return _latencyMonitor;
+    }
+
+    /**
+     * Get the change journal the application records document changes in.
      *
-     * @return
-     * @deprecated See {@link SearchCommand#getSortField}
+     * @return the journal, or null if not enabled.
      */
-    @Deprecated
-    protected String getSortField()
+    public ChangeJournal getChangeJournal()
     {
-        return "";
+
+        return _changeJournal;
     }
 
     /**
-     * Re-index the delta index.
+     * Get the progress figures from the latest indexer run for an index.
      *
-     * @throws IOException
-     * @throws SphinxException
+     * @param indexName
+     * @return the stats, or null if the index hasn't been indexed by this service.
      */
-    public void reIndexDelta() throws IOException, SphinxException
+    public IndexerStats getIndexerStats(String indexName)
     {
 
-        Process proc = new ProcessBuilder(_indexCommand, "--config", _configFile, "--rotate", getDeltaIndexName()).start();
+        return _indexerStats.get(indexName);
+    }
 
-        try
+    /**
+     * Add a listener to be notified after a re-index.
+     *
+     * @param listener
+     */
+    public void addReindexListener(ReindexListener listener)
+    {
+
+        _reindexListeners.add(listener);
+    }
+
+    /**
+     * Remove a re-index listener.
+     *
+     * @param listener
+     */
+    public void removeReindexListener(ReindexListener listener)
+    {
+
+        _reindexListeners.remove(listener);
+    }
+
+    /**
+     * Move the caches on and notify the listeners, once, that a set of indexes has been re-indexed and rotated in
+     * together.
+     *
+     * @param indexNames
+     */
+    protected void fireReindexed(String... indexNames)
+    {
+
+        // Send the soft deletes to the new indexes before any search can cache their results
+        long flushedSeq = -1;
+        if (_softDeleteMask != null && !_softDeleteMask.isEmpty())
+        {
+            flushedSeq = _softDeleteMask.getSequence();
+            try
+            {
+                getAttributeUpdater().flush();
+            }
+            catch (SphinxException e)
+            {
+                _log.error("Unable to send soft deletes, still masking them", e);
+                flushedSeq = -1;
+            }
+        }
+
+        nextGeneration();
+
+        // searchd now excludes the documents soft-deleted before the flush from the re-indexed indexes itself
+        if (flushedSeq >= 0)
         {
-            proc.waitFor();
+            _softDeleteMask.reindexed(Arrays.asList(indexNames), flushedSeq);
         }
-        catch (InterruptedException e)
+
+        for (ReindexListener listener : _reindexListeners)
         {
-            _log.error("Failed waiting for Sphinx re-index to complete");
+            try
+            {
+                listener.reindexed(Arrays.asList(indexNames));
+            }
+            catch (RuntimeException e)
+            {
+                _log.error("Re-index listener " + listener + " failed", e);
+            }
         }
+    }
+
+    /**
+     * Release any resources held by this service.
+     */
+    public void shutdown()
+    {
 
-        if (proc.exitValue() != 0)
+        _reindexScheduler.shutdown();
+        if (_mergeScheduler != null)
+        {
+            _mergeScheduler.shutdown();
+        }
+        if (_refresher != null)
+        {
+            _refresher.shutdown();
+        }
+        if (_warmer != null)
+        {
+            _warmer.shutdown();
+        }
+        if (_keywordCache != null)
+        {
+            _keywordCache.shutdown();
+        }
+        if (_autocompleter != null)
+        {
+            _autocompleter.shutdown();
+        }
+        synchronized (this)
+        {
+            if (_excerptService != null)
+            {
+                _excerptService.shutdown();
+            }
+            if (_attributeUpdater != null)
+            {
+                _attributeUpdater.shutdown();
+            }
+            if (_percolator != null)
+            {
+                _percolator.shutdown();
+            }
+            if (_indexRouter != null)
+            {
+                _indexRouter.shutdown();
+            }
+            if (_attributeStore != null)
+            {
+                _attributeStore.shutdown();
+            }
+        }
+        _clientPool.close();
+        if (_changeJournal != null)
+        {
+            try
+            {
+                _changeJournal.close();
+            }
+            catch (IOException e)
+            {
+                _log.error("Unable to close change journal", e);
+            }
+        }
+        if (_documentStore != null)
         {
-            _log.error("Unable to re-index delta index");
-            StringBuilder errorOutput = getProcessOutput(proc.getInputStream());
-            _log.error(errorOutput.toString());
-            throw new SphinxException(errorOutput.toString());
+            try
+            {
+                _documentStore.close();
+            }
+            catch (IOException e)
+            {
+                _log.error("Unable to close document store", e);
+            }
         }
-        else if (_log.isDebugEnabled())
+
+        MappedResultCache cache = _resultCache;
+        _resultCache = null;
+        if (cache != null)
         {
-            _log.debug("Output from Sphinx delta re-indexing");
-            _log.debug(getProcessOutput(proc.getInputStream()).toString());
+            try
+            {
+                cache.close();
+            }
+            catch (IOException e)
+            {
+                _log.error("Unable to close result cache", e);
+            }
         }
     }
 
+    /**
+     * Return the name of the main index the delta is merged into.
+     *
+     * @return the name, or null if the delta isn't merged.
+     */
+    protected String getMainIndexName()
+    {
+
+        return _mainIndexName;
+    }
+
     /**
      * Return the name of the delta index.
      *
@@ -218,28 +2046,15 @@ public abstract class SearchService<S extends SearchCommand>
     protected abstract String getDeltaIndexName();
 
     /**
-     * Get the process output.
+     * Parse an optional integer property.
      *
-     * @param stream the error or stdout stream.
-     * @return
-     * @throws IOException
+     * @param value
+     * @return the integer, or null if not set.
      */
-    private StringBuilder getProcessOutput(InputStream stream) throws IOException
+    private static Integer parseInteger(String value)
     {
 
-        BufferedReader in = new BufferedReader(new InputStreamReader(stream));
-
-        String line = in.readLine();
-        StringBuilder output = new StringBuilder();
-        while (line != null)
-        {
-            output.append(line);
-            output.append("\n");
-
-            line = in.readLine();
-        }
-
-        return output;
+        return value != null ? Integer.valueOf(value.trim()) : null;
     }
 
     /**
@@ -286,4 +2101,66 @@ public abstract class SearchService<S extends SearchCommand>
         return _configFile;
     }
 
+    protected SphinxClientPool getClientPool()
+    {
+
+        return _clientPool;
+    }
+
+    protected MappedResultCache getResultCache()
+    {
+
+        return _resultCache;
+    }
+
+    /**
+     * Get the keyword statistics cache, for looking up term statistics while pre-processing queries.
+     *
+     * @return the cache or null if not configured.
+     */
+    public KeywordCache getKeywordCache()
+    {
+
+        return _keywordCache;
+    }
+
+    /**
+     * Get the highlighter, which builds excerpts locally rather than on searchd.
+     *
+     * @return the highlighter or null if the keyword cache isn't configured.
+     */
+    public Highlighter getHighlighter()
+    {
+
+        return _highlighter;
+    }
+
+    /**
+     * Get the autocompleter.
+     *
+     * @return the autocompleter or null if not configured.
+     */
+    public Autocompleter getAutocompleter()
+    {
+
+        return _autocompleter;
+    }
+
+    /**
+     * Get the local document store, holding the document text for excerpts.
+     *
+     * @return the store or null if not configured.
+     */
+    public DocumentStore getDocumentStore()
+    {
+
+        return _documentStore;
+    }
+
+    protected PopularQueryRefresher<S> getRefresher()
+    {
+
+        return _refresher;
+    }
+
 }
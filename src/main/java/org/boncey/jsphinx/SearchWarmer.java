@@ -0,0 +1,140 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sphx.api.SphinxException;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warms up searchd and the result cache by replaying representative searches at a controlled rate.
+ *
+ * Used at startup, before the service reports itself ready, and in the background after a re-index rotates in new
+ * index files.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class SearchWarmer<S extends SearchCommand> implements ReindexListener
+{
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(SearchWarmer.class);
+
+    /**
+     * The service to warm up.
+     */
+    private final SearchService<S> _searchService;
+
+    /**
+     * The pause between searches, in nanoseconds.
+     */
+    private final long _interval;
+
+    /**
+     * Runs warm-ups in the background.
+     */
+    private final ExecutorService _executor;
+
+    /**
+     * Default constructor.
+     *
+     * @param searchService the service to warm up.
+     * @param rate the maximum number of searches per second to replay.
+     */
+    public SearchWarmer(SearchService<S> searchService, double rate)
+    {
+
+        if (rate <= 0)
+        {
+            throw new IllegalArgumentException("Warm-up rate must be positive: " + rate);
+        }
+
+        _searchService = searchService;
+        _interval = (long)(TimeUnit.SECONDS.toNanos(1) / rate);
+        _executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("jsphinx-warmup"));
+    }
+
+    /**
+     * Replay the given searches, blocking until done.
+     *
+     * @param searches
+     * @return the number of searches that succeeded.
+     */
+    public int warmUp(List<S> searches)
+    {
+
+        long start = System.nanoTime();
+        long next = start;
+        int succeeded = 0;
+        for (S searchCommand : searches)
+        {
+            long wait = next - System.nanoTime();
+            if (wait > 0)
+            {
+                try
+                {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                catch (InterruptedException e)
+                {
+                    _log.warn("Interrupted warming up after " + succeeded + " searches");
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            next += _interval;
+
+            try
+            {
+                _searchService.refresh(searchCommand);
+                succeeded++;
+            }
+            catch (SphinxException e)
+            {
+                _log.warn("Unable to warm up with " + searchCommand + ": " + e.getMessage());
+            }
+        }
+
+        _log.info("Warmed up with " + succeeded + " of " + searches.size() + " searches in " +
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+
+        return succeeded;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reindexed(String indexName)
+    {
+
+        _executor.execute(() -> warmUp(_searchService.getWarmUpSearches()));
+    }
+
+    /**
+     * Warm up once however many indexes were rotated in.
+     *
+     * @param indexNames
+     */
+    @Override
+    public void reindexed(List<String> indexNames)
+    {
+
+        _executor.execute(() -> warmUp(_searchService.getWarmUpSearches()));
+    }
+
+    /**
+     * Stop any background warm-up.
+     */
+    public void shutdown()
+    {
+
+        _executor.shutdownNow();
+    }
+}
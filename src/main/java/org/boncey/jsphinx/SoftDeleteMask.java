@@ -0,0 +1,238 @@
+package org.boncey.jsphinx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Masks recently soft-deleted documents from search results that may predate the delete.
+ *
+ * Soft deletes set an attribute through the {@link AttributeUpdater} so searchd excludes the documents itself, but
+ * results already cached, or searched before the batched updates are sent, still hold them. Each document stays masked
+ * until its deletion has been sent and every soft delete index holding it has since been re-indexed. Masking happens
+ * after the search, so a page with masked documents on it comes back short by that many (and the total is reduced to
+ * match) rather than being refilled from the next page.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class SoftDeleteMask
+{
+
+    /**
+     * The attribute set to 1 on soft-deleted documents.
+     */
+    private final String _attribute;
+
+    /**
+     * Supplies the indexes soft deletes are applied to, space or comma separated.
+     */
+    private final Supplier<String> _indexNames;
+
+    /**
+     * Chooses the indexes that can hold each document, or null to assume every soft delete index does.
+     */
+    private final IndexRouter _router;
+
+    /**
+     * Soft-deleted documents, each mapped to the sequence number of the soft delete &lt;&lt; 16 | a bit per soft delete
+     * index not yet re-indexed since.
+     */
+    private final LongLongHashMap _deleted = new LongLongHashMap();
+
+    /**
+     * Held while soft deletes are recorded and buffered, so a flush can tell which it covers.
+     */
+    private final Object _lock = new Object();
+
+    /**
+     * The sequence number of the latest soft delete.
+     */
+    private long _sequence;
+
+    /**
+     * Default constructor.
+     *
+     * @param attribute the attribute set to 1 on soft-deleted documents.
+     * @param indexNames supplies the indexes soft deletes are applied to, space or comma separated.
+     * @param router chooses the indexes that can hold each document, or null to assume every soft delete index does.
+     */
+    public SoftDeleteMask(String attribute, Supplier<String> indexNames, IndexRouter router)
+    {
+
+        _attribute = attribute;
+        _indexNames = indexNames;
+        _router = router;
+    }
+
+    /**
+     * Set or clear the deleted attribute, masking the documents straight away if deleting them.
+     *
+     * @param docIds
+     * @param deleted
+     * @param updater buffers the attribute updates.
+     * @throws InterruptedException if interrupted while waiting for space in the update buffer.
+     */
+    public void setDeleted(long[] docIds, boolean deleted, AttributeUpdater updater) throws InterruptedException
+    {
+
+        String indexes = _indexNames.get();
+        synchronized (_lock)
+        {
+            long seq = ++_sequence;
+            synchronized (_deleted)
+            {
+                for (long docId : docIds)
+                {
+                    if (deleted)
+                    {
+                        String routed = _router != null ? _router.route(indexes, docId) : null;
+                        _deleted.put(docId, seq << 16 | indexBits(routed != null ? routed : indexes));
+                    }
+                    else
+                    {
+                        _deleted.remove(docId);
+                    }
+                }
+            }
+
+            for (long docId : docIds)
+            {
+                updater.update(indexes, docId, _attribute, deleted ? 1L : 0L);
+            }
+        }
+    }
+
+    /**
+     * Get the sequence number of the latest soft delete; every soft delete up to it has been buffered, so a flush
+     * started after this covers them.
+     *
+     * @return the sequence number.
+     */
+    public long getSequence()
+    {
+
+        synchronized (_lock)
+        {
+            return _sequence;
+        }
+    }
+
+    /**
+     * Stop masking the documents searchd now excludes itself: those soft-deleted up to the given sequence number
+     * whose indexes have all been re-indexed since.
+     *
+     * @param indexNames the indexes re-indexed.
+     * @param flushedSequence the sequence number taken before the soft deletes were flushed.
+     */
+    public void reindexed(Collection<String> indexNames, long flushedSequence)
+    {
+
+        long reindexed = indexBits(String.join(" ", indexNames));
+        synchronized (_deleted)
+        {
+            for (long docId : _deleted.keys())
+            {
+                long value = _deleted.get(docId, 0);
+                long remaining = value & 0xFFFF & ~reindexed;
+                if (value >>> 16 > flushedSequence)
+                {
+                    continue;
+                }
+                if (remaining == 0)
+                {
+                    _deleted.remove(docId);
+                }
+                else
+                {
+                    _deleted.put(docId, value & ~0xFFFFL | remaining);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove masked documents from the results; the page isn't refilled, so it's short by the number removed.
+     *
+     * @param results
+     * @return the results without soft-deleted documents.
+     */
+    public SearchResultContainer mask(SearchResultContainer results)
+    {
+
+        synchronized (_deleted)
+        {
+            if (_deleted.size() == 0)
+            {
+                return results;
+            }
+
+            List<Long> searchIds = new ArrayList<>(results.getSearchIds().size());
+            for (Long docId : results.getSearchIds())
+            {
+                if (!_deleted.containsKey(docId))
+                {
+                    searchIds.add(docId);
+                }
+            }
+
+            int masked = results.getSearchIds().size() - searchIds.size();
+
+            return masked == 0 ? results : new SearchResultContainer(searchIds, results.getTotalResults() - masked);
+        }
+    }
+
+    /**
+     * Is the document masked?
+     *
+     * @param docId
+     * @return true if so.
+     */
+    public boolean contains(long docId)
+    {
+
+        synchronized (_deleted)
+        {
+            return _deleted.containsKey(docId);
+        }
+    }
+
+    /**
+     * Are any documents masked?
+     *
+     * @return true if not.
+     */
+    public boolean isEmpty()
+    {
+
+        synchronized (_deleted)
+        {
+            return _deleted.size() == 0;
+        }
+    }
+
+    /**
+     * Get the bits of the given indexes among the soft delete indexes; any past the 16th share the last bit.
+     *
+     * @param indexNames space or comma separated.
+     * @return the bits.
+     */
+    private long indexBits(String indexNames)
+    {
+
+        List<String> softDeleteIndexes = Arrays.asList(_indexNames.get().trim().split("[\\s,]+"));
+        long bits = 0;
+        for (String indexName : indexNames.trim().split("[\\s,]+"))
+        {
+            int bit = softDeleteIndexes.indexOf(indexName);
+            if (bit >= 0)
+            {
+                bits |= 1L << Math.min(bit, 15);
+            }
+        }
+
+        return bits;
+    }
+}
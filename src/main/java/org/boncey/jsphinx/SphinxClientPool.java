@@ -0,0 +1,134 @@
+package org.boncey.jsphinx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sphx.api.SphinxClient;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A bounded pool of {@link SphinxClient}s holding persistent connections to searchd.
+ *
+ * A client is reset to the default settings when it is given back, so every borrower starts from a clean client.
+ * Clients whose last call failed are closed and dropped rather than reused, as their connection may be out of step
+ * with searchd or they may still hold queued queries.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class SphinxClientPool
+{
+
+    /**
+     * Logger for log4j.
+     */
+    private static Logger _log = LoggerFactory.getLogger(SphinxClientPool.class);
+
+    /**
+     * Sphinx host.
+     */
+    private final String _host;
+
+    /**
+     * Sphinx port.
+     */
+    private final int _port;
+
+    /**
+     * Idle clients.
+     */
+    private final BlockingQueue<SphinxClient> _idle;
+
+    /**
+     * Limits the number of clients borrowed at once.
+     */
+    private final Semaphore _permits;
+
+    /**
+     * Default constructor.
+     *
+     * @param host Sphinx host.
+     * @param port Sphinx port.
+     * @param size the maximum number of connections.
+     */
+    public SphinxClientPool(String host, int port, int size)
+    {
+
+        _host = host;
+        _port = port;
+        _idle = new ArrayBlockingQueue<>(size);
+        _permits = new Semaphore(size, true);
+    }
+
+    /**
+     * Borrow a client, blocking until one is available.
+     *
+     * @return the client, which must be given back with {@link #release(SphinxClient)}.
+     * @throws InterruptedException
+     */
+    public SphinxClient borrow() throws InterruptedException
+    {
+
+        _permits.acquire();
+        SphinxClient sphinx = _idle.poll();
+        if (sphinx == null)
+        {
+            sphinx = new SphinxClient(_host, _port);
+            if (!sphinx.Open())
+            {
+                // Still usable, it will just connect per request
+                _log.warn("Unable to open persistent connection: " + sphinx.GetLastError());
+            }
+        }
+
+        return sphinx;
+    }
+
+    /**
+     * Give back a borrowed client; clients whose last call failed are discarded.
+     *
+     * @param sphinx
+     */
+    public void release(SphinxClient sphinx)
+    {
+
+        try
+        {
+            String error = sphinx.GetLastError();
+            if (sphinx.IsConnectError() || (error != null && !error.isEmpty()))
+            {
+                if (_log.isDebugEnabled())
+                {
+                    _log.debug("Discarding client after error: " + error);
+                }
+                sphinx.Close();
+                return;
+            }
+
+            sphinx.ResetQuery();
+            if (!_idle.offer(sphinx))
+            {
+                sphinx.Close();
+            }
+        }
+        finally
+        {
+            _permits.release();
+        }
+    }
+
+    /**
+     * Close all idle connections.
+     */
+    public void close()
+    {
+
+        SphinxClient sphinx;
+        while ((sphinx = _idle.poll()) != null)
+        {
+            sphinx.Close();
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package org.boncey.jsphinx;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+/**
+ * Writes the text of each document streamed to the indexer into a {@link DocumentStore}, so the store always holds
+ * what was last indexed.
+ *
+ * Wraps another source; the given full-text fields of each document are stored, joined by newlines. Documents on the
+ * kill-list that weren't streamed in this run (i.e. deleted ones) are removed from the store. To use from an
+ * <code>xmlpipe_command</code>, extend this with a no-argument constructor that opens the source and the store; the
+ * store can stay open in the application at the same time.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class StoringDocumentSource implements DocumentSource
+{
+
+    /**
+     * The wrapped source.
+     */
+    private final DocumentSource _source;
+
+    /**
+     * The store to write to.
+     */
+    private final DocumentStore _store;
+
+    /**
+     * The positions of the stored fields within each document's values.
+     */
+    private final int[] _fields;
+
+    /**
+     * The docIds streamed so far.
+     */
+    private final LongLongHashMap _streamed = new LongLongHashMap();
+
+    /**
+     * Default constructor.
+     *
+     * @param source the source to wrap.
+     * @param store the store to write to; flushed, but not closed, when this source is closed.
+     * @param fields the names of the full-text fields to store, or none to store every field.
+     */
+    public StoringDocumentSource(DocumentSource source, DocumentStore store, String... fields)
+    {
+
+        _source = source;
+        _store = store;
+
+        List<String> schemaFields = source.getSchema().getFields();
+        List<Integer> positions = new ArrayList<>();
+        if (fields.length == 0)
+        {
+            for (int i = 0; i < schemaFields.size(); i++)
+            {
+                positions.add(i);
+            }
+        }
+        for (String field : fields)
+        {
+            int position = schemaFields.indexOf(field);
+            if (position < 0)
+            {
+                throw new IllegalArgumentException("No field " + field + " in " + schemaFields);
+            }
+            positions.add(position);
+        }
+        _fields = positions.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PipeSchema getSchema()
+    {
+
+        return _source.getSchema();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext()
+    {
+
+        return _source.hasNext();
+    }
+
+    /**
+     * Get the next document, storing its text.
+     *
+     * @return the document.
+     * @throws UncheckedIOException if the document can't be stored.
+     */
+    @Override
+    public PipeDocument next()
+    {
+
+        PipeDocument document = _source.next();
+        Object[] values = document.getValues();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < _fields.length; i++)
+        {
+            if (i > 0)
+            {
+                text.append('\n');
+            }
+            Object value = values[_fields[i]];
+            if (value != null)
+            {
+                text.append(value);
+            }
+        }
+
+        try
+        {
+            _store.put(document.getId(), text.toString());
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Unable to store document " + document.getId(), e);
+        }
+        _streamed.put(document.getId(), 0);
+
+        return document;
+    }
+
+    /**
+     * Get the wrapped source's kill-list, removing the documents not streamed in this run from the store.
+     *
+     * @return the ids.
+     */
+    @Override
+    public PrimitiveIterator.OfLong getKillList()
+    {
+
+        PrimitiveIterator.OfLong killList = _source.getKillList();
+
+        return new PrimitiveIterator.OfLong()
+        {
+            @Override
+            public boolean hasNext()
+            {
+
+                return killList.hasNext();
+            }
+
+            @Override
+            public long nextLong()
+            {
+
+                long docId = killList.nextLong();
+                if (!_streamed.containsKey(docId))
+                {
+                    try
+                    {
+                        _store.put(docId, null);
+                    }
+                    catch (IOException e)
+                    {
+                        throw new UncheckedIOException("Unable to remove document " + docId, e);
+                    }
+                }
+
+                return docId;
+            }
+        };
+    }
+
+    /**
+     * Flush the store and close the wrapped source.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException
+    {
+
+        try
+        {
+            _store.flush();
+        }
+        finally
+        {
+            _source.close();
+        }
+    }
+}
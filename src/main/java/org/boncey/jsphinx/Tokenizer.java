@@ -0,0 +1,93 @@
+package org.boncey.jsphinx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A simple approximation of Sphinx's default tokenizing, splitting on anything that isn't a letter or digit.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+final class Tokenizer
+{
+
+    /**
+     * Not instantiable.
+     */
+    private Tokenizer()
+    {
+
+    }
+
+    /**
+     * Split the text into lower-cased words.
+     *
+     * @param text
+     * @return the words, in order.
+     */
+    static List<String> tokenize(String text)
+    {
+
+        List<String> tokens = new ArrayList<>();
+        if (text == null)
+        {
+            return tokens;
+        }
+
+        int[] spans = spans(text);
+        for (int i = 0; i < spans.length; i += 2)
+        {
+            tokens.add(text.substring(spans[i], spans[i + 1]).toLowerCase());
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Find the words in the text.
+     *
+     * @param text
+     * @return the start and end offset of each word, in pairs.
+     */
+    static int[] spans(String text)
+    {
+
+        int[] spans = new int[16];
+        int n = 0;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++)
+        {
+            boolean wordChar = i < text.length() && isWordChar(text.charAt(i));
+            if (wordChar && start < 0)
+            {
+                start = i;
+            }
+            else if (!wordChar && start >= 0)
+            {
+                if (n + 2 > spans.length)
+                {
+                    spans = Arrays.copyOf(spans, spans.length * 2);
+                }
+                spans[n++] = start;
+                spans[n++] = i;
+                start = -1;
+            }
+        }
+
+        return Arrays.copyOf(spans, n);
+    }
+
+    /**
+     * Is the character part of a word?
+     *
+     * @param c
+     * @return true if so.
+     */
+    static boolean isWordChar(char c)
+    {
+
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
@@ -0,0 +1,87 @@
+package org.boncey.jsphinx;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Streams documents as tsvpipe rows: the document id then each value in schema order, tab separated.
+ *
+ * The column order must match the <code>tsvpipe_field</code> and <code>tsvpipe_attr_*</code> settings in the source.
+ * Tabs and line breaks in values are written as spaces. tsvpipe has no kill-list, so the source's is ignored.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class TsvPipeWriter extends PipeWriter
+{
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long write(DocumentSource source, OutputStream out) throws IOException
+    {
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        long documents = 0;
+        try (DocumentSource docs = source)
+        {
+            PipeSchema schema = docs.getSchema();
+            int fields = schema.getFields().size();
+            List<PipeSchema.AttributeType> types = schema.getTypes();
+            while (docs.hasNext())
+            {
+                PipeDocument doc = docs.next();
+                Object[] values = doc.getValues();
+                if (values.length != schema.size())
+                {
+                    throw new IOException("Document " + doc.getId() + " has " + values.length + " values, expected " + schema.size());
+                }
+
+                writer.write(Long.toString(doc.getId()));
+                for (int i = 0; i < values.length; i++)
+                {
+                    writer.write('\t');
+                    String value = i < fields
+                            ? (values[i] == null ? "" : values[i].toString())
+                            : format(values[i], types.get(i - fields));
+                    writeEscaped(writer, value);
+                }
+                writer.write('\n');
+                documents++;
+            }
+            writer.flush();
+        }
+
+        return documents;
+    }
+
+    /**
+     * Write a value, replacing tabs and line breaks with spaces.
+     *
+     * @param writer
+     * @param value
+     * @throws IOException
+     */
+    private void writeEscaped(Writer writer, String value) throws IOException
+    {
+
+        int start = 0;
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c == '\t' || c == '\n' || c == '\r')
+            {
+                writer.write(value, start, i - start);
+                writer.write(' ');
+                start = i + 1;
+            }
+        }
+        writer.write(value, start, value.length() - start);
+    }
+}
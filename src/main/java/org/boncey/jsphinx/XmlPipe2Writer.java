@@ -0,0 +1,202 @@
+package org.boncey.jsphinx;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Streams documents as xmlpipe2 using StAX, one document at a time, ending with the source's kill-list.
+ *
+ * Characters that aren't allowed in XML are dropped from text values.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class XmlPipe2Writer extends PipeWriter
+{
+
+    /**
+     * The xmlpipe2 namespace prefix.
+     */
+    private static final String PREFIX = "sphinx";
+
+    /**
+     * The xmlpipe2 namespace.
+     */
+    private static final String NAMESPACE = "http://sphinxsearch.com/";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long write(DocumentSource source, OutputStream out) throws IOException
+    {
+
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        long documents = 0;
+        try (DocumentSource docs = source)
+        {
+            XMLStreamWriter xml = XMLOutputFactory.newFactory().createXMLStreamWriter(writer);
+            xml.writeStartDocument("utf-8", "1.0");
+            xml.writeCharacters("\n");
+            xml.writeStartElement(PREFIX, "docset", NAMESPACE);
+            xml.writeNamespace(PREFIX, NAMESPACE);
+            xml.writeCharacters("\n");
+
+            PipeSchema schema = docs.getSchema();
+            writeSchema(xml, schema);
+
+            List<String> fields = schema.getFields();
+            List<String> attributes = schema.getAttributes();
+            List<PipeSchema.AttributeType> types = schema.getTypes();
+            while (docs.hasNext())
+            {
+                PipeDocument doc = docs.next();
+                Object[] values = doc.getValues();
+                if (values.length != schema.size())
+                {
+                    throw new IOException("Document " + doc.getId() + " has " + values.length + " values, expected " + schema.size());
+                }
+
+                xml.writeStartElement(PREFIX, "document", NAMESPACE);
+                xml.writeAttribute("id", Long.toString(doc.getId()));
+                for (int i = 0; i < fields.size(); i++)
+                {
+                    writeElement(xml, fields.get(i), values[i] == null ? "" : values[i].toString());
+                }
+                for (int i = 0; i < attributes.size(); i++)
+                {
+                    writeElement(xml, attributes.get(i), format(values[fields.size() + i], types.get(i)));
+                }
+                xml.writeEndElement();
+                xml.writeCharacters("\n");
+                documents++;
+            }
+
+            PrimitiveIterator.OfLong killList = docs.getKillList();
+            if (killList.hasNext())
+            {
+                xml.writeStartElement(PREFIX, "killlist", NAMESPACE);
+                while (killList.hasNext())
+                {
+                    writeElement(xml, "id", Long.toString(killList.nextLong()));
+                }
+                xml.writeEndElement();
+                xml.writeCharacters("\n");
+            }
+
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.writeEndDocument();
+            xml.flush();
+            writer.flush();
+        }
+        catch (XMLStreamException e)
+        {
+            throw new IOException("Unable to write xmlpipe2: " + e.getMessage(), e);
+        }
+
+        return documents;
+    }
+
+    /**
+     * Write the schema element.
+     *
+     * @param xml
+     * @param schema
+     * @throws XMLStreamException
+     */
+    private void writeSchema(XMLStreamWriter xml, PipeSchema schema) throws XMLStreamException
+    {
+
+        xml.writeStartElement(PREFIX, "schema", NAMESPACE);
+        for (String field : schema.getFields())
+        {
+            xml.writeEmptyElement(PREFIX, "field", NAMESPACE);
+            xml.writeAttribute("name", field);
+        }
+
+        List<String> attributes = schema.getAttributes();
+        List<PipeSchema.AttributeType> types = schema.getTypes();
+        for (int i = 0; i < attributes.size(); i++)
+        {
+            xml.writeEmptyElement(PREFIX, "attr", NAMESPACE);
+            xml.writeAttribute("name", attributes.get(i));
+            xml.writeAttribute("type", types.get(i).getName());
+            if (types.get(i) == PipeSchema.AttributeType.BIGINT)
+            {
+                xml.writeAttribute("bits", "64");
+            }
+        }
+        xml.writeEndElement();
+        xml.writeCharacters("\n");
+    }
+
+    /**
+     * Write an element holding text.
+     *
+     * @param xml
+     * @param name
+     * @param text
+     * @throws XMLStreamException
+     */
+    private void writeElement(XMLStreamWriter xml, String name, String text) throws XMLStreamException
+    {
+
+        xml.writeStartElement(name);
+        xml.writeCharacters(clean(text));
+        xml.writeEndElement();
+    }
+
+    /**
+     * Drop characters that aren't allowed in XML 1.0, copying only if there are any.
+     *
+     * @param text
+     * @return the clean text.
+     */
+    private static String clean(String text)
+    {
+
+        int i = 0;
+        while (i < text.length() && isXmlChar(text.charAt(i)))
+        {
+            i++;
+        }
+        if (i == text.length())
+        {
+            return text;
+        }
+
+        StringBuilder clean = new StringBuilder(text.length());
+        clean.append(text, 0, i);
+        for (; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (isXmlChar(c))
+            {
+                clean.append(c);
+            }
+        }
+
+        return clean.toString();
+    }
+
+    /**
+     * Is the character allowed in XML 1.0? Surrogates are allowed so pairs pass through.
+     *
+     * @param c
+     * @return true if allowed.
+     */
+    private static boolean isXmlChar(char c)
+    {
+
+        return c >= 0x20 ? c != 0xFFFE && c != 0xFFFF : c == '\t' || c == '\n' || c == '\r';
+    }
+}
@@ -36,6 +36,7 @@ import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /** Sphinx client class */
@@ -134,6 +135,7 @@ public class SphinxClient
 	private ByteArrayOutputStream	_rawFilters;
 	private DataOutputStream		_filters;
 	private int			_filterCount;
+	private ArrayList<String>	_filterAttrs;
 	private String		_groupBy;
 	private int			_groupFunc;
 	private String		_groupSort;
@@ -185,6 +187,7 @@ public class SphinxClient
 		_maxId	= 0;
 
 		_filterCount	= 0;
+		_filterAttrs	= new ArrayList<String>();
 		_rawFilters		= new ByteArrayOutputStream();
 		_filters		= new DataOutputStream(_rawFilters);
 
@@ -607,6 +610,7 @@ public class SphinxClient
 			myAssert ( false, "IOException: " + e.getMessage() );
 		}
 		_filterCount++;
+		_filterAttrs.add ( attribute );
 	}
 
 	/** Set values filter. Only match records where attribute value is in given set. */
@@ -629,6 +633,7 @@ public class SphinxClient
 			myAssert ( false, "IOException: " + e.getMessage() );
 		}
 		_filterCount++;
+		_filterAttrs.add ( attribute );
 	}
 
 	/** Set values filter. Only match records where attribute value matches. */
@@ -649,6 +654,7 @@ public class SphinxClient
 			myAssert ( false, "IOException: " + e.getMessage() );
 		}
 		_filterCount++;
+		_filterAttrs.add ( attribute );
 	}
 
 	/** Set values filter with a single value (syntax sugar; see {@link #SetFilter(String,int[],boolean)}). */
@@ -682,6 +688,7 @@ public class SphinxClient
 			myAssert ( false, "IOException: " + e.getMessage() );
 		}
 		_filterCount++;
+		_filterAttrs.add ( attribute );
 	}
 
 	/** Set integer range filter.  Only match records if attribute value is beetwen min and max (inclusive). */
@@ -706,6 +713,7 @@ public class SphinxClient
 			myAssert ( false, "IOException: " + e.getMessage() );
 		}
 		_filterCount++;
+		_filterAttrs.add ( attribute );
 	}
 
 	/** Setup geographical anchor point. Required to use @geodist in filters and sorting; distance will be computed to this point. */
@@ -792,6 +800,7 @@ public class SphinxClient
 		_rawFilters = new ByteArrayOutputStream();
 		_filters = new DataOutputStream(_rawFilters);
 		_filterCount = 0;
+		_filterAttrs = new ArrayList<String>();
 
 		/* reset GEO anchor */
 		_latitudeAttr = null;
@@ -800,6 +809,30 @@ public class SphinxClient
 		_longitude = 0;
 	}
 
+	/** Get the number of filters set since the last reset. */
+	public int GetFilterCount()
+	{
+		return _filterCount;
+	}
+
+	/** Get the attributes filtered on since the last reset, in the order the filters were set. */
+	public List<String> GetFilterAttributes()
+	{
+		return new ArrayList<String>(_filterAttrs);
+	}
+
+	/** Get the filters set since the last reset, encoded as they are sent to searchd. */
+	public byte[] GetFilterState()
+	{
+		return _rawFilters.toByteArray();
+	}
+
+	/** Get a query queued by AddQuery(), encoded as it is sent to searchd. */
+	public byte[] GetQueuedQuery ( int index )
+	{
+		return (byte[]) _reqs.get ( index );
+	}
+
 	/** Clear groupby settings (for multi-queries). */
 	public void ResetGroupBy ()
 	{
@@ -816,6 +849,40 @@ public class SphinxClient
 		_overrideValues.clear ();
     }
 
+	/** Reset every query setting, timeout, queued query, error and warning to the constructor's defaults, keeping the server and any open connection (for pooled clients). */
+	public void ResetQuery ()
+	{
+		_offset			= 0;
+		_limit			= 20;
+		_mode			= SPH_MATCH_EXTENDED2;
+		_sort			= SPH_SORT_RELEVANCE;
+		_sortby			= "";
+		_minId			= 0;
+		_maxId			= 0;
+		_maxMatches		= 1000;
+		_cutoff			= 0;
+		_retrycount		= 0;
+		_retrydelay		= 0;
+
+		ResetFilters ();
+		ResetGroupBy ();
+		ResetOverrides ();
+
+		_error			= "";
+		_warning		= "";
+		_connerror		= false;
+		_timeout		= 1000;
+
+		_reqs			= new ArrayList<byte[]>();
+		_weights		= null;
+		_indexWeights	= new LinkedHashMap<String, Integer>();
+		_fieldWeights	= new LinkedHashMap<String, Integer>();
+		_ranker			= SPH_RANK_PROXIMITY_BM25;
+		_rankexpr		= "";
+		_maxQueryTime	= 0;
+		_select			= "*";
+	}
+
 
 
 	/** Connect to searchd server and run current search query against all indexes (syntax sugar). */
@@ -1256,7 +1323,9 @@ public class SphinxClient
 	 * @param index		index name(s) to update; might be distributed
 	 * @param attrs		array with the names of the attributes to update
 	 * @param values	array of updates; each long[] entry must contains document ID
-	 *					in the first element, and all new attribute values in the following ones
+	 *					in the first element, and all new attribute values in the following ones;
+	 *					values are sent as 32bit values, so must fit in a signed or unsigned int
+	 *					(float attributes take the value of Float.floatToIntBits())
 	 * @param ignorenonexistent	the flag whether to silently ignore non existent columns up update request
 	 * @return			-1 on failure, amount of actually found and updated documents (might be 0) on success
 	 *
@@ -1272,6 +1341,9 @@ public class SphinxClient
 		{
 			myAssert ( values[i]!=null, "update entry #" + i + " is null" );
 			myAssert ( values[i].length==1+attrs.length, "update entry #" + i + " has wrong length" );
+			for ( int j=1; j<values[i].length; j++ )
+				myAssert ( values[i][j]>=Integer.MIN_VALUE && values[i][j]<=0xFFFFFFFFL,
+					"update entry #" + i + " value " + values[i][j] + " does not fit in 32 bits" );
 		}
 
 		/* build and send request */
@@ -1294,7 +1366,7 @@ public class SphinxClient
 			{
 				req.writeLong ( values[i][0] ); /* send docid as 64bit value */
 				for ( int j=1; j<values[i].length; j++ )
-					req.writeInt ( (int)values[i][j] ); /* send values as 32bit values; FIXME! what happens when they are over 2^31? */
+					req.writeInt ( (int)values[i][j] ); /* send values as 32bit values; range checked above */
 			}
 
 			req.flush();
@@ -1347,16 +1419,46 @@ public class SphinxClient
 	 * @throws SphinxException on invalid parameters
 	 */
 	public int UpdateAttributesMVA ( String index, long docid, String[] attrs, int[][] values, boolean ignorenonexistent ) throws SphinxException
+	{
+		myAssert ( values!=null && values.length>0, "no update entries provided" );
+		return UpdateAttributesMVA ( index, attrs, new long[] { docid }, new int[][][] { values }, ignorenonexistent );
+	}
+
+	/**
+	 * Connect to searchd server and update given MVA attributes on many documents in given indexes, in a single request.
+	 * Sample code that will set tags=(1, 2) where id=10 and tags=(3) where id=11
+	 *
+	 * <pre>
+	 * String[] attrs = { "tags" };
+	 * long[] docids = { 10, 11 };
+	 * int[][][] values = { { { 1, 2 } }, { { 3 } } };
+	 *
+	 * int res = cl.UpdateAttributesMVA ( "test1", attrs, docids, values, false );
+	 * </pre>
+	 *
+	 * @param index		index name(s) to update; might be distributed
+	 * @param attrs		array with the names of the attributes to update
+	 * @param docids		ids of documents to update
+	 * @param values		array of updates, one per document; each int[][] entry must contain all new attribute values
+	 * @param ignorenonexistent	the flag whether to silently ignore non existent columns up update request
+	 * @return			-1 on failure, amount of actually found and updated documents (might be 0) on success
+	 *
+	 * @throws SphinxException on invalid parameters
+	 */
+	public int UpdateAttributesMVA ( String index, String[] attrs, long[] docids, int[][][] values, boolean ignorenonexistent ) throws SphinxException
 	{
 		/* check args */
 		myAssert ( index!=null && index.length()>0, "no index name provided" );
-		myAssert ( docid>0, "invalid document id" );
 		myAssert ( attrs!=null && attrs.length>0, "no attribute names provided" );
-		myAssert ( values!=null && values.length>0, "no update entries provided" );
-		myAssert ( values.length==attrs.length, "update entry has wrong length" );
-		for ( int i=0; i<values.length; i++ )
+		myAssert ( docids!=null && docids.length>0, "no document ids provided" );
+		myAssert ( values!=null && values.length==docids.length, "update entries and document ids differ in length" );
+		for ( int i=0; i<docids.length; i++ )
 		{
+			myAssert ( docids[i]>0, "invalid document id #" + i );
 			myAssert ( values[i]!=null, "update entry #" + i + " is null" );
+			myAssert ( values[i].length==attrs.length, "update entry #" + i + " has wrong length" );
+			for ( int j=0; j<values[i].length; j++ )
+				myAssert ( values[i][j]!=null, "update entry #" + i + " value #" + j + " is null" );
 		}
 
 		/* build and send request */
@@ -1374,14 +1476,17 @@ public class SphinxClient
 				req.writeInt ( 1 ); // MVA attr
 			}
 
-			req.writeInt ( 1 );
-			req.writeLong ( docid ); /* send docid as 64bit value */
-
-			for ( int i=0; i<values.length; i++ )
+			req.writeInt ( docids.length );
+			for ( int i=0; i<docids.length; i++ )
 			{
-				req.writeInt ( values[i].length ); /* send MVA's count */
-				for ( int j=0; j<values[i].length; j++ ) /* send MVAs itself*/
-					req.writeInt ( values[i][j] );
+				req.writeLong ( docids[i] ); /* send docid as 64bit value */
+
+				for ( int j=0; j<values[i].length; j++ )
+				{
+					req.writeInt ( values[i][j].length ); /* send MVA's count */
+					for ( int k=0; k<values[i][j].length; k++ ) /* send MVAs itself*/
+						req.writeInt ( values[i][j][k] );
+				}
 			}
 
 			req.flush();
@@ -1422,6 +1527,31 @@ public class SphinxClient
      * Returns null on failure, an array of Maps with misc per-keyword info on success.
      */
 	public Map[] BuildKeywords ( String query, String index, boolean hits ) throws SphinxException
+	{
+		SphinxKeyword[] keywords = BuildKeywordList ( query, index, hits );
+		if ( keywords==null )
+			return null;
+
+		Map[] res = new Map[keywords.length];
+		for ( int i=0; i<keywords.length; i++ )
+		{
+			res[i] = new LinkedHashMap ();
+			res[i].put ( "tokenized", keywords[i].tokenized );
+			res[i].put ( "normalized", keywords[i].normalized );
+			if ( hits )
+			{
+				res[i].put ( "docs", new Long ( keywords[i].docs ) );
+				res[i].put ( "hits", new Long ( keywords[i].hits ) );
+			}
+		}
+		return res;
+	}
+
+	/**
+     * Connect to searchd server, and generate keyword list for a given query.
+     * Returns null on failure, an array of per-keyword records on success.
+     */
+	public SphinxKeyword[] BuildKeywordList ( String query, String index, boolean hits ) throws SphinxException
 	{
 		/* build request */
 		ByteArrayOutputStream reqBuf = new ByteArrayOutputStream();
@@ -1447,18 +1577,19 @@ public class SphinxClient
 		try
 		{
 			int iNumWords = in.readInt ();
-			Map[] res = new Map[iNumWords];
+			SphinxKeyword[] res = new SphinxKeyword[iNumWords];
 
 			for ( int i=0; i<iNumWords; i++ )
 			{
-				res[i] = new LinkedHashMap ();
-				res[i].put ( "tokenized", readNetUTF8 ( in ) );
-				res[i].put ( "normalized", readNetUTF8 ( in ) );
+				String tokenized = readNetUTF8 ( in );
+				String normalized = readNetUTF8 ( in );
+				long docs = 0, nhits = 0;
 				if ( hits )
 				{
-					res[i].put ( "docs", new Long ( readDword ( in ) ) );
-					res[i].put ( "hits", new Long ( readDword ( in ) ) );
+					docs = readDword ( in );
+					nhits = readDword ( in );
 				}
+				res[i] = new SphinxKeyword ( tokenized, normalized, docs, nhits );
 			}
 			return res;
 
@@ -0,0 +1,34 @@
+/*
+ * $Id$
+ */
+
+package org.sphx.api;
+
+/** Per-keyword information, as returned by BuildKeywordList(). */
+public class SphinxKeyword
+{
+	/** Keyword as tokenized from the query. */
+	public String	tokenized;
+
+	/** Keyword after morphology and other normalization (stemmed, lemmatized, etc). */
+	public String	normalized;
+
+	/** Total amount of matching documents in collection (zero unless hits were requested). */
+	public long		docs;
+
+	/** Total amount of hits (occurences) in collection (zero unless hits were requested). */
+	public long		hits;
+
+	/** Trivial constructor. */
+	public SphinxKeyword ( String tokenized, String normalized, long docs, long hits )
+	{
+		this.tokenized = tokenized;
+		this.normalized = normalized;
+		this.docs = docs;
+		this.hits = hits;
+	}
+}
+
+/*
+ * $Id$
+ */
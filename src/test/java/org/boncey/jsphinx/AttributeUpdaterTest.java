@@ -0,0 +1,337 @@
+package org.boncey.jsphinx;
+
+import org.junit.After;
+import org.junit.Test;
+import org.sphx.api.SphinxClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link AttributeUpdater}, against a client that records the requests it is asked to send.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class AttributeUpdaterTest
+{
+
+    /**
+     * Long enough that the flush timer never fires during a test.
+     */
+    private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * The requests sent, in order.
+     */
+    private final BlockingQueue<Request> _requests = new LinkedBlockingQueue<>();
+
+    /**
+     * The updater under test.
+     */
+    private AttributeUpdater _updater;
+
+    /**
+     * Shut the updater down.
+     */
+    @After
+    public void tearDown()
+    {
+
+        if (_updater != null)
+        {
+            _updater.shutdown();
+        }
+    }
+
+    /**
+     * Only the latest value for each document and attribute is sent, with documents updating the same attributes
+     * sent together.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testCoalesce() throws Exception
+    {
+
+        _updater = new AttributeUpdater(new RecordingPool(), 10, 20, NEVER, 0);
+        List<String> updated = new ArrayList<>();
+        _updater.addUpdateListener(new AttributeUpdateListener()
+        {
+            @Override
+            public void attributesUpdated(String indexNames)
+            {
+
+            }
+
+            @Override
+            public void attributesUpdated(String indexNames, Collection<String> attributes)
+            {
+
+                updated.add(indexNames + ":" + new TreeSet<>(attributes));
+            }
+        });
+
+        _updater.update("idx", 1, "views", 10);
+        _updater.update("idx", 1, "views", 11);
+        _updater.update("idx", 1, "score", 1.5f);
+        _updater.update("idx", 2, "views", 20);
+        _updater.update("idx", 2, "score", 2.5f);
+        _updater.update("idx", 3, "views", 30);
+        assertEquals(5, _updater.size());
+
+        _updater.flush();
+        assertEquals(0, _updater.size());
+        assertEquals(Collections.singletonList("idx:[score, views]"), updated);
+
+        Map<String, Request> byAttrs = new HashMap<>();
+        for (Request request : _requests)
+        {
+            assertEquals("idx", request._index);
+            byAttrs.put(Arrays.toString(request._attrs), request);
+        }
+        assertEquals(2, byAttrs.size());
+
+        Map<Long, long[]> both = rows(byAttrs.get("[score, views]"));
+        assertEquals(2, both.size());
+        assertArrayEquals(new long[] { 1, Float.floatToIntBits(1.5f), 11 }, both.get(1L));
+        assertArrayEquals(new long[] { 2, Float.floatToIntBits(2.5f), 20 }, both.get(2L));
+
+        Map<Long, long[]> viewsOnly = rows(byAttrs.get("[views]"));
+        assertEquals(1, viewsOnly.size());
+        assertArrayEquals(new long[] { 3, 30 }, viewsOnly.get(3L));
+    }
+
+    /**
+     * A full batch is flushed in the background, and large flushes are split into batch sized requests.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFlushOnBatchSize() throws Exception
+    {
+
+        _updater = new AttributeUpdater(new RecordingPool(), 2, 4, NEVER, 0);
+        _updater.update("idx", 1, "views", 10);
+        assertTrue(_requests.isEmpty());
+        _updater.update("idx", 2, "views", 20);
+
+        Request request = _requests.poll(10, TimeUnit.SECONDS);
+        assertNotNull("Full batch not flushed", request);
+        assertEquals(2, request._rows.length);
+
+        AttributeUpdater updater = new AttributeUpdater(new RecordingPool(), 2, 10, NEVER, 0);
+        try
+        {
+            for (long docId = 1; docId <= 5; docId++)
+            {
+                updater.update("other", docId, "views", docId);
+            }
+            updater.flush();
+        }
+        finally
+        {
+            updater.shutdown();
+        }
+
+        int rows = 0;
+        while (rows < 5)
+        {
+            request = _requests.poll(10, TimeUnit.SECONDS);
+            assertNotNull("Updates not flushed", request);
+            assertTrue(request._rows.length <= 2);
+            rows += request._rows.length;
+        }
+        assertEquals(5, rows);
+    }
+
+    /**
+     * Values that don't fit in 32 bits are rejected, unsigned ones are accepted.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testValueRange() throws Exception
+    {
+
+        _updater = new AttributeUpdater(new RecordingPool(), 10, 20, NEVER, 0);
+        _updater.update("idx", 1, "views", 0xFFFFFFFFL);
+        _updater.update("idx", 2, "views", Integer.MIN_VALUE);
+        try
+        {
+            _updater.update("idx", 3, "views", 0x100000000L);
+            fail("Accepted a value wider than 32 bits");
+        }
+        catch (IllegalArgumentException e)
+        {
+            assertTrue(e.getMessage().contains("32 bits"));
+        }
+        assertEquals(2, _updater.size());
+    }
+
+    /**
+     * Bulk MVA updates are split into requests within the size limit, always sending at least one document.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMvaSplit() throws Exception
+    {
+
+        _updater = new AttributeUpdater(new RecordingPool(), 10, 20, NEVER, 0);
+        String[] attrs = { "tags" };
+        long[] docIds = { 1, 2, 3, 4, 5 };
+        int[][][] values = new int[docIds.length][][];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = new int[][] { { i, i + 1 } };
+        }
+
+        // A header of 24 bytes for the index and 24 for the attribute, then 20 bytes per document
+        int[] counts = _updater.updateMva("idx", attrs, docIds, values, 48 + 40);
+        assertArrayEquals(new int[] { 2, 2, 1 }, counts);
+        assertArrayEquals(new long[] { 1, 2 }, _requests.poll()._docIds);
+        assertArrayEquals(new long[] { 3, 4 }, _requests.poll()._docIds);
+        assertArrayEquals(new long[] { 5 }, _requests.poll()._docIds);
+
+        counts = _updater.updateMva("idx", attrs, docIds, values, 1);
+        assertEquals(5, counts.length);
+    }
+
+    /**
+     * Index the rows of a request by docId.
+     *
+     * @param request
+     * @return the rows.
+     */
+    private static Map<Long, long[]> rows(Request request)
+    {
+
+        Map<Long, long[]> rows = new HashMap<>();
+        for (long[] row : request._rows)
+        {
+            rows.put(row[0], row);
+        }
+
+        return rows;
+    }
+
+    /**
+     * A request sent to searchd.
+     */
+    private static class Request
+    {
+
+        /**
+         * The index name(s) updated.
+         */
+        private final String _index;
+
+        /**
+         * The attributes updated.
+         */
+        private final String[] _attrs;
+
+        /**
+         * The docId and values of each document, for attribute updates.
+         */
+        private final long[][] _rows;
+
+        /**
+         * The documents updated, for MVA updates.
+         */
+        private final long[] _docIds;
+
+        /**
+         * Default constructor.
+         *
+         * @param index
+         * @param attrs
+         * @param rows
+         * @param docIds
+         */
+        Request(String index, String[] attrs, long[][] rows, long[] docIds)
+        {
+
+            _index = index;
+            _attrs = attrs;
+            _rows = rows;
+            _docIds = docIds;
+        }
+    }
+
+    /**
+     * A pool of clients that record requests rather than sending them.
+     */
+    private class RecordingPool extends SphinxClientPool
+    {
+
+        /**
+         * Default constructor.
+         */
+        RecordingPool()
+        {
+
+            super("localhost", 9312, 1);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public SphinxClient borrow()
+        {
+
+            return new SphinxClient()
+            {
+                @Override
+                public int UpdateAttributes(String index, String[] attrs, long[][] values)
+                {
+
+                    _requests.add(new Request(index, attrs, values, null));
+                    return values.length;
+                }
+
+                @Override
+                public int UpdateAttributesMVA(String index, String[] attrs, long[] docids, int[][][] values,
+                        boolean ignorenonexistent)
+                {
+
+                    _requests.add(new Request(index, attrs, null, docids));
+                    return docids.length;
+                }
+
+                @Override
+                public int FlushAttributes()
+                {
+
+                    return 0;
+                }
+            };
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void release(SphinxClient sphinx)
+        {
+
+        }
+    }
+}
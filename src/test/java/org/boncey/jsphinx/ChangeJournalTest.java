@@ -0,0 +1,196 @@
+package org.boncey.jsphinx;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link ChangeJournal}.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class ChangeJournalTest
+{
+
+    /**
+     * Holds the journal files.
+     */
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    /**
+     * The journal file.
+     */
+    private File _file;
+
+    /**
+     * Set up the journal file.
+     *
+     * @throws IOException
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+
+        _file = new File(_folder.getRoot(), "changes.journal");
+    }
+
+    /**
+     * Compaction discards the records the main index holds and keeps the rest, with the checkpoints moved to match.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testCompact() throws IOException
+    {
+
+        try (ChangeJournal journal = new ChangeJournal(_file))
+        {
+            journal.record(1, ChangeJournal.ChangeType.INSERT);
+            journal.record(2, ChangeJournal.ChangeType.INSERT);
+            long main = journal.getEnd();
+            journal.record(3, ChangeJournal.ChangeType.UPDATE);
+            long delta = journal.getEnd();
+            journal.record(4, ChangeJournal.ChangeType.DELETE);
+            journal.record(3, ChangeJournal.ChangeType.DELETE);
+
+            journal.setMainCheckpoint(main);
+            journal.setDeltaCheckpoint(delta);
+            journal.compact();
+
+            assertEquals(journal.getEnd() - 3 * (delta - main), journal.getMainCheckpoint());
+            assertEquals(3, journal.getPending(journal.getMainCheckpoint()));
+            assertEquals(2, journal.getPending(journal.getDeltaCheckpoint()));
+
+            ChangeJournal.ChangeSet changes = journal.getDeltaChanges();
+            assertEquals(2, changes.size());
+            assertNull(changes.getChange(1));
+            assertEquals(ChangeJournal.ChangeType.DELETE, changes.getChange(3));
+            assertEquals(ChangeJournal.ChangeType.DELETE, changes.getChange(4));
+            assertEquals(0, changes.getLive().length);
+        }
+    }
+
+    /**
+     * A delta checkpoint before the main checkpoint is moved up to the start of the journal.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testCompactPastDelta() throws IOException
+    {
+
+        try (ChangeJournal journal = new ChangeJournal(_file))
+        {
+            journal.record(1, ChangeJournal.ChangeType.INSERT);
+            long start = journal.getMainCheckpoint();
+            journal.setDeltaCheckpoint(journal.getEnd());
+            journal.record(2, ChangeJournal.ChangeType.INSERT);
+            journal.record(3, ChangeJournal.ChangeType.INSERT);
+            journal.setMainCheckpoint(journal.getEnd() - (journal.getEnd() - start) / 3);
+            journal.compact();
+
+            assertEquals(start, journal.getMainCheckpoint());
+            assertEquals(start, journal.getDeltaCheckpoint());
+            assertArrayEquals(new long[] {3}, journal.getDeltaChanges().getLive());
+        }
+    }
+
+    /**
+     * Compacting a large journal copies the records in several chunks and survives a reopen.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testCompactLarge() throws IOException
+    {
+
+        try (ChangeJournal journal = new ChangeJournal(_file))
+        {
+            for (long docId = 1; docId <= 50000; docId++)
+            {
+                journal.record(docId, ChangeJournal.ChangeType.INSERT);
+                if (docId == 10000)
+                {
+                    journal.setMainCheckpoint(journal.getEnd());
+                }
+            }
+            journal.compact();
+        }
+
+        try (ChangeJournal journal = new ChangeJournal(_file))
+        {
+            long[] live = journal.getDeltaChanges().getLive();
+            Arrays.sort(live);
+            assertEquals(40000, live.length);
+            assertEquals(10001, live[0]);
+            assertEquals(50000, live[live.length - 1]);
+        }
+    }
+
+    /**
+     * A read-only journal reads the changes another instance records, including after it grows, and can't be changed.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testReadOnly() throws IOException
+    {
+
+        try (ChangeJournal journal = new ChangeJournal(_file);
+             ChangeJournal reader = new ChangeJournal(_file, true))
+        {
+            for (long docId = 1; docId <= 100000; docId++)
+            {
+                journal.record(docId, ChangeJournal.ChangeType.UPDATE);
+            }
+
+            assertEquals(100000, reader.getDeltaChanges().size());
+            try
+            {
+                reader.record(1, ChangeJournal.ChangeType.DELETE);
+                fail("Recorded a change in a read-only journal");
+            }
+            catch (IllegalStateException e)
+            {
+                assertTrue(e.getMessage().contains("read-only"));
+            }
+        }
+    }
+
+    /**
+     * A file that isn't a journal is rejected rather than truncated.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testRejectsOtherFiles() throws IOException
+    {
+
+        byte[] contents = "not a journal, but precious".getBytes(StandardCharsets.UTF_8);
+        Files.write(_file.toPath(), contents);
+        try
+        {
+            new ChangeJournal(_file).close();
+            fail("Opened a file that isn't a journal");
+        }
+        catch (IOException e)
+        {
+            assertArrayEquals(contents, Files.readAllBytes(_file.toPath()));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.boncey.jsphinx;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CountMinSketch}.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class CountMinSketchTest
+{
+
+    /**
+     * Counts are exact without collisions, and never undercount with them.
+     */
+    @Test
+    public void testEstimate()
+    {
+
+        CountMinSketch sketch = new CountMinSketch(64, 4);
+        for (int i = 0; i < 1000; i++)
+        {
+            sketch.add("query " + (i % 100));
+        }
+        for (int i = 0; i < 50; i++)
+        {
+            sketch.add("popular");
+        }
+
+        assertTrue(sketch.estimate("popular") >= 50);
+        for (int i = 0; i < 100; i++)
+        {
+            assertTrue(sketch.estimate("query " + i) >= 10);
+        }
+
+        CountMinSketch wide = new CountMinSketch(1 << 16, 4);
+        assertEquals(1, wide.add("once"));
+        assertEquals(2, wide.add("once"));
+        assertEquals(2, wide.estimate("once"));
+        assertEquals(0, wide.estimate("never"));
+    }
+
+    /**
+     * Decay halves every count.
+     */
+    @Test
+    public void testDecay()
+    {
+
+        CountMinSketch sketch = new CountMinSketch(1 << 16, 4);
+        for (int i = 0; i < 9; i++)
+        {
+            sketch.add("query");
+        }
+        sketch.decay();
+        assertEquals(4, sketch.estimate("query"));
+        sketch.decay();
+        sketch.decay();
+        sketch.decay();
+        assertEquals(0, sketch.estimate("query"));
+    }
+
+    /**
+     * The dimensions must be positive.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidDimensions()
+    {
+
+        new CountMinSketch(0, 4);
+    }
+}
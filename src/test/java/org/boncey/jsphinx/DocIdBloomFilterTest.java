@@ -0,0 +1,57 @@
+package org.boncey.jsphinx;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link DocIdBloomFilter}.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class DocIdBloomFilterTest
+{
+
+    /**
+     * Every document added is found, and the false positive rate is near the one asked for.
+     */
+    @Test
+    public void testMightContain()
+    {
+
+        DocIdBloomFilter filter = new DocIdBloomFilter(100000, 0.01);
+        for (long docId = 1; docId <= 100000; docId++)
+        {
+            filter.add(docId * 7);
+        }
+
+        for (long docId = 1; docId <= 100000; docId++)
+        {
+            assertTrue(filter.mightContain(docId * 7));
+        }
+
+        int falsePositives = 0;
+        for (long docId = 1; docId <= 100000; docId++)
+        {
+            if (filter.mightContain(docId * 7 + 1))
+            {
+                falsePositives++;
+            }
+        }
+        assertTrue("False positives: " + falsePositives, falsePositives < 2000);
+    }
+
+    /**
+     * The filter is sized from the expected documents and rate.
+     */
+    @Test
+    public void testSize()
+    {
+
+        // About 9.6 bits per document for a 1% rate
+        long bytes = new DocIdBloomFilter(1000000, 0.01).getBytes();
+        assertTrue("Bytes: " + bytes, bytes > 1100000 && bytes < 1300000);
+        assertTrue(new DocIdBloomFilter(0, 0.01).getBytes() >= 8);
+    }
+}
@@ -0,0 +1,97 @@
+package org.boncey.jsphinx;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link FacetCache}.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class FacetCacheTest
+{
+
+    /**
+     * The cache under test.
+     */
+    private FacetCache _cache;
+
+    /**
+     * Some counts to cache.
+     */
+    private FacetCounts _counts;
+
+    /**
+     * Set up the cache.
+     */
+    @Before
+    public void setUp()
+    {
+
+        _cache = new FacetCache(10);
+        _counts = new FacetCounts("category", new long[] {1, 2}, new int[] {5, 3}, null);
+    }
+
+    /**
+     * Updating an attribute drops only the counts that depend on it.
+     */
+    @Test
+    public void testAttributesUpdated()
+    {
+
+        long generation = _cache.getGeneration();
+        _cache.put("a", generation, _counts, new HashSet<>(Arrays.asList("category", "deleted")));
+        _cache.put("b", generation, _counts, new HashSet<>(Arrays.asList("author", "deleted")));
+
+        _cache.attributesUpdated(Collections.singleton("category"));
+        assertNull(_cache.get("a"));
+        assertSame(_counts, _cache.get("b"));
+
+        _cache.attributesUpdated(Collections.singleton("deleted"));
+        assertEquals(0, _cache.size());
+    }
+
+    /**
+     * Counts queried before an attribute they depend on changed aren't cached; others are.
+     */
+    @Test
+    public void testStalePut()
+    {
+
+        long generation = _cache.getGeneration();
+        _cache.attributesUpdated(Collections.singleton("category"));
+
+        _cache.put("a", generation, _counts, Collections.singleton("category"));
+        _cache.put("b", generation, _counts, Collections.singleton("author"));
+        assertNull(_cache.get("a"));
+        assertSame(_counts, _cache.get("b"));
+
+        _cache.put("a", _cache.getGeneration(), _counts, Collections.singleton("category"));
+        assertSame(_counts, _cache.get("a"));
+    }
+
+    /**
+     * Moving on a generation drops everything and rejects counts queried before it.
+     */
+    @Test
+    public void testNextGeneration()
+    {
+
+        long generation = _cache.getGeneration();
+        _cache.put("a", generation, _counts, Collections.singleton("category"));
+        _cache.nextGeneration();
+
+        assertNull(_cache.get("a"));
+        _cache.put("b", generation, _counts, Collections.singleton("author"));
+        assertEquals(0, _cache.size());
+    }
+}
@@ -0,0 +1,195 @@
+package org.boncey.jsphinx;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sphx.api.SphinxKeyword;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link Highlighter}, against a keyword cache with a fixed morphology.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class HighlighterTest
+{
+
+    /**
+     * The normalized form of each indexed word; "the" is a stopword.
+     */
+    private static final Map<String, String> STEMS = new HashMap<>();
+
+    static
+    {
+        STEMS.put("mouse", "mouse");
+        STEMS.put("mice", "mouse");
+        STEMS.put("run", "run");
+        STEMS.put("running", "run");
+        STEMS.put("ran", "run");
+        STEMS.put("runner", "runner");
+        STEMS.put("sea", "sea");
+        STEMS.put("seal", "seal");
+        STEMS.put("search", "search");
+        STEMS.put("cat", "cat");
+        STEMS.put("dog", "dog");
+        STEMS.put("sat", "sat");
+    }
+
+    /**
+     * The highlighter under test.
+     */
+    private Highlighter _highlighter;
+
+    /**
+     * The options, with the whole document fitting.
+     */
+    private ExcerptOptions _options;
+
+    /**
+     * Set up the highlighter.
+     */
+    @Before
+    public void setUp()
+    {
+
+        _highlighter = new Highlighter(new FixedKeywordCache());
+        _options = new ExcerptOptions();
+    }
+
+    /**
+     * Document words match when the index normalizes them to the same form as a keyword, irregular ones included.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testNormalizedMatch() throws Exception
+    {
+
+        assertEquals("The <b>mice</b> and a <b>Mouse</b>", _highlighter.highlight("The mice and a Mouse", "idx", "mouse", _options));
+        assertEquals("<b>Running</b>, <b>ran</b> and a runner", _highlighter.highlight("Running, ran and a runner", "idx", "run", _options));
+    }
+
+    /**
+     * Words that only share a prefix with a keyword aren't highlighted.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testNoPrefixMatch() throws Exception
+    {
+
+        assertEquals("A <b>sea</b> seal search", _highlighter.highlight("A sea seal search", "idx", "sea", _options));
+        assertEquals("No matches", _highlighter.highlight("No matches", "idx", "sea", _options));
+        assertEquals("The sea", _highlighter.highlight("The sea", "idx", "the", _options));
+    }
+
+    /**
+     * Several documents are highlighted at once, with tags stripped if asked to.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDocuments() throws Exception
+    {
+
+        _options.setHtmlStripMode("strip");
+        _options.setBeforeMatch("[");
+        _options.setAfterMatch("]");
+        String[] snippets = _highlighter.highlight(new String[] { "<p>The cat sat</p>", "<i>mice</i> ran" }, "idx", "cat mice",
+                _options);
+
+        assertArrayEquals(new String[] { "The [cat] sat", "[mice] ran" }, snippets);
+    }
+
+    /**
+     * With an exact phrase only the whole phrase, in order, is highlighted.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testExactPhrase() throws Exception
+    {
+
+        _options.setExactPhrase(true);
+
+        assertEquals("cat dog <b>cat</b> <b>sat</b>", _highlighter.highlight("cat dog cat sat", "idx", "cat sat", _options));
+    }
+
+    /**
+     * Only the best passage around the matches is kept once the document is over the limit.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testPassages() throws Exception
+    {
+
+        _options.setAround(1);
+        _options.setLimitPassages(1);
+        String doc = "dog dog dog dog cat dog dog dog dog dog cat sat mice dog dog";
+
+        assertEquals("...dog <b>cat</b> <b>sat</b> <b>mice</b> dog...", _highlighter.highlight(doc, "idx", "cat sat mouse", _options));
+    }
+
+    /**
+     * A keyword cache that normalizes from {@link #STEMS} rather than asking searchd.
+     */
+    private static class FixedKeywordCache extends KeywordCache
+    {
+
+        /**
+         * Default constructor.
+         */
+        FixedKeywordCache()
+        {
+
+            super("localhost", 9312, 100);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public List<SphinxKeyword> getKeywords(String query, String index)
+        {
+
+            List<SphinxKeyword> keywords = new ArrayList<>();
+            for (String token : Tokenizer.tokenize(query))
+            {
+                if (STEMS.containsKey(token))
+                {
+                    keywords.add(new SphinxKeyword(token, STEMS.get(token), 1, 1));
+                }
+            }
+
+            return keywords;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Map<String, String> getNormalized(Collection<String> tokens, String index)
+        {
+
+            Map<String, String> normalized = new HashMap<>();
+            for (String token : tokens)
+            {
+                if (STEMS.containsKey(token))
+                {
+                    normalized.put(token, STEMS.get(token));
+                }
+            }
+
+            return normalized;
+        }
+    }
+}
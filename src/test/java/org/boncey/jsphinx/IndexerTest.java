@@ -0,0 +1,189 @@
+package org.boncey.jsphinx;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sphx.api.SphinxException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link Indexer}, running a script that prints what the Sphinx indexer does.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class IndexerTest
+{
+
+    /**
+     * Output from indexing two indexes.
+     */
+    private static final String INDEX_OUTPUT = String.join("\n",
+            "Sphinx 2.2.11-id64-release (95ae9a6)",
+            "using config file 'sphinx.conf'...",
+            "indexing index 'main'...",
+            "collected 1234 docs, 5.6 MB",
+            "sorted 0.9 Mhits, 100.0% done",
+            "total 1234 docs, 5678901 bytes",
+            "total 2.500 sec, 2271560 bytes/sec, 493.60 docs/sec",
+            "indexing index 'delta'...",
+            "collected 12 docs, 0.0 MB",
+            "total 12 docs, 3456 bytes",
+            "total 0.015 sec, 230400 bytes/sec, 800.00 docs/sec",
+            "rotating indices: successfully sent SIGHUP to searchd (pid=1234).");
+
+    /**
+     * Holds the scripts.
+     */
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    /**
+     * The figures for each index built are parsed from the output.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testIndexStats() throws Exception
+    {
+
+        List<IndexerStats> stats = indexer(INDEX_OUTPUT, 0).run("--rotate", "main", "delta");
+
+        assertEquals(2, stats.size());
+        IndexerStats main = stats.get(0);
+        assertEquals("main", main.getIndexName());
+        assertEquals(1234, main.getDocuments());
+        assertEquals(5678901, main.getBytes());
+        assertEquals(2.5, main.getElapsedSeconds(), 0.0001);
+        assertEquals(493.6, main.getDocsPerSecond(), 0.0001);
+        assertTrue(main.getRunMillis() >= 0);
+
+        IndexerStats delta = stats.get(1);
+        assertEquals("delta", delta.getIndexName());
+        assertEquals(12, delta.getDocuments());
+        assertEquals(3456, delta.getBytes());
+        assertEquals(800.0, delta.getDocsPerSecond(), 0.0001);
+    }
+
+    /**
+     * A merge is reported against the index merged into.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMergeStats() throws Exception
+    {
+
+        String output = String.join("\n",
+                "merging index 'delta' into index 'main'...",
+                "total 1246 docs, 5682357 bytes",
+                "total 0.300 sec, 18941190 bytes/sec, 4153.33 docs/sec");
+        List<IndexerStats> stats = indexer(output, 0).run("--merge", "main", "delta", "--rotate");
+
+        assertEquals(1, stats.size());
+        assertEquals("main", stats.get(0).getIndexName());
+        assertEquals(1246, stats.get(0).getDocuments());
+        assertEquals(0.3, stats.get(0).getElapsedSeconds(), 0.0001);
+    }
+
+    /**
+     * Lines before the first index, and unrecognised lines, are ignored.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testNoIndex() throws Exception
+    {
+
+        String output = String.join("\n",
+                "total 99 docs, 100 bytes",
+                "WARNING: no indexes to build");
+
+        assertTrue(indexer(output, 0).run("--all").isEmpty());
+    }
+
+    /**
+     * A non-zero exit fails the run with the output.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFailure() throws Exception
+    {
+
+        try
+        {
+            indexer("FATAL: failed to open sphinx.conf", 1).run("delta");
+            fail("Failed indexer run succeeded");
+        }
+        catch (SphinxException e)
+        {
+            assertTrue(e.getMessage().contains("FATAL: failed to open sphinx.conf"));
+        }
+    }
+
+    /**
+     * An indexer that runs too long is killed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTimeout() throws Exception
+    {
+
+        File script = script("sleep 30\n");
+        try
+        {
+            new Indexer(script.getPath(), "sphinx.conf", 200).run("delta");
+            fail("Indexer wasn't timed out");
+        }
+        catch (SphinxException e)
+        {
+            assertTrue(e.getMessage().contains("timed out"));
+        }
+    }
+
+    /**
+     * Create an indexer running a script that prints the output and exits.
+     *
+     * @param output
+     * @param exitCode
+     * @return the indexer.
+     * @throws IOException
+     */
+    private Indexer indexer(String output, int exitCode) throws IOException
+    {
+
+        File outputFile = _folder.newFile();
+        Files.write(outputFile.toPath(), output.getBytes(StandardCharsets.UTF_8));
+        File script = script("cat '" + outputFile.getPath() + "'\nexit " + exitCode + "\n");
+
+        return new Indexer(script.getPath(), "sphinx.conf", 10000);
+    }
+
+    /**
+     * Create an executable shell script.
+     *
+     * @param body the commands.
+     * @return the script.
+     * @throws IOException
+     */
+    private File script(String body) throws IOException
+    {
+
+        File script = _folder.newFile();
+        Files.write(script.toPath(), ("#!/bin/sh\n" + body).getBytes(StandardCharsets.UTF_8));
+        assertTrue(script.setExecutable(true));
+
+        return script;
+    }
+}
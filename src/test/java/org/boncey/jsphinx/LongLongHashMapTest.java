@@ -0,0 +1,111 @@
+package org.boncey.jsphinx;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LongLongHashMap}.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class LongLongHashMapTest
+{
+
+    /**
+     * Values can be put, replaced, read and removed, growing past the initial capacity.
+     */
+    @Test
+    public void testPutGetRemove()
+    {
+
+        LongLongHashMap map = new LongLongHashMap();
+        for (long key = 0; key < 1000; key++)
+        {
+            map.put(key, key * 10);
+        }
+        map.put(5, 55);
+
+        assertEquals(1000, map.size());
+        assertEquals(55, map.get(5, -1));
+        assertEquals(9990, map.get(999, -1));
+        assertEquals(-1, map.get(1000, -1));
+
+        assertTrue(map.remove(5));
+        assertFalse(map.remove(5));
+        assertFalse(map.containsKey(5));
+        assertEquals(999, map.size());
+    }
+
+    /**
+     * Removing from colliding runs keeps every other key reachable, checked against a HashMap.
+     */
+    @Test
+    public void testRandomOperations()
+    {
+
+        LongLongHashMap map = new LongLongHashMap(4);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++)
+        {
+            // A small key range forces collisions and long probe runs
+            long key = random.nextInt(2000) - 1000;
+            if (random.nextInt(3) == 0)
+            {
+                assertEquals(expected.remove(key) != null, map.remove(key));
+            }
+            else
+            {
+                map.put(key, i);
+                expected.put(key, (long)i);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet())
+        {
+            assertEquals((long)entry.getValue(), map.get(entry.getKey(), -1));
+        }
+
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(expected.keySet().stream().mapToLong(Long::longValue).sorted().toArray(), keys);
+    }
+
+    /**
+     * Clearing empties the map.
+     */
+    @Test
+    public void testClear()
+    {
+
+        LongLongHashMap map = new LongLongHashMap();
+        map.put(Long.MAX_VALUE, 1);
+        map.put(-1, 2);
+        map.clear();
+
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(Long.MAX_VALUE));
+        assertEquals(0, map.keys().length);
+    }
+
+    /**
+     * The empty marker can't be used as a key.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidKey()
+    {
+
+        new LongLongHashMap().put(Long.MIN_VALUE, 1);
+    }
+}
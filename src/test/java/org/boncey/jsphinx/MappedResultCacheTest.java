@@ -0,0 +1,186 @@
+package org.boncey.jsphinx;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link MappedResultCache}.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class MappedResultCacheTest
+{
+
+    /**
+     * Holds the cache files.
+     */
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    /**
+     * Ids in any order, including negative and extreme ones, come back exactly as they were cached.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+
+        try (MappedResultCache cache = new MappedResultCache(_folder.newFile(), 16, 512, 0))
+        {
+            List<Long> ids = Arrays.asList(1L, 2L, 1000000L, 5L, -7L, 0L, Long.MAX_VALUE, Long.MIN_VALUE, 127L, 128L);
+            cache.put("query", new SearchResultContainer(ids, 12345));
+            cache.put("empty", new SearchResultContainer(Collections.<Long>emptyList(), 0));
+
+            SearchResultContainer results = cache.get("query");
+            assertEquals(ids, results.getSearchIds());
+            assertEquals(12345, results.getTotalResults());
+            assertTrue(cache.get("empty").getSearchIds().isEmpty());
+            assertNull(cache.get("missing"));
+        }
+    }
+
+    /**
+     * Results too large for a slot are not cached, and a newer entry for the same slot replaces an older one.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSlots() throws Exception
+    {
+
+        try (MappedResultCache cache = new MappedResultCache(_folder.newFile(), 1, 64, 0))
+        {
+            List<Long> ids = new ArrayList<>();
+            for (long id = 0; id < 100; id++)
+            {
+                ids.add(id * 1000000007L);
+            }
+            cache.put("large", new SearchResultContainer(ids, 100));
+            assertNull(cache.get("large"));
+
+            cache.put("first", new SearchResultContainer(Collections.singletonList(1L), 1));
+            cache.put("second", new SearchResultContainer(Collections.singletonList(2L), 1));
+            assertNull(cache.get("first"));
+            assertEquals(Collections.singletonList(2L), cache.get("second").getSearchIds());
+        }
+    }
+
+    /**
+     * Entries survive a reopen, but not a move to the next generation.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGeneration() throws Exception
+    {
+
+        File file = _folder.newFile();
+        try (MappedResultCache cache = new MappedResultCache(file, 16, 256, 0))
+        {
+            cache.put("query", new SearchResultContainer(Arrays.asList(3L, 1L), 2));
+            assertEquals(1, cache.nextGeneration());
+            assertNull(cache.get("query"));
+            cache.put("query", new SearchResultContainer(Arrays.asList(4L, 5L), 2));
+        }
+
+        try (MappedResultCache cache = new MappedResultCache(file, 16, 256, 0))
+        {
+            assertEquals(1, cache.getGeneration());
+            assertEquals(Arrays.asList(4L, 5L), cache.get("query").getSearchIds());
+        }
+    }
+
+    /**
+     * A changed index fingerprint moves on to the next generation, the same one doesn't, and it survives a reopen.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFingerprint() throws Exception
+    {
+
+        File file = _folder.newFile();
+        try (MappedResultCache cache = new MappedResultCache(file, 16, 256, 0))
+        {
+            assertTrue(cache.setIndexFingerprint(42));
+            cache.put("query", new SearchResultContainer(Collections.singletonList(1L), 1));
+        }
+
+        try (MappedResultCache cache = new MappedResultCache(file, 16, 256, 0))
+        {
+            assertEquals(42, cache.getIndexFingerprint());
+            assertFalse(cache.setIndexFingerprint(42));
+            assertEquals(Collections.singletonList(1L), cache.get("query").getSearchIds());
+
+            assertTrue(cache.setIndexFingerprint(43));
+            assertEquals(2, cache.getGeneration());
+            assertNull(cache.get("query"));
+        }
+    }
+
+    /**
+     * A file with other dimensions or a bad header is started afresh.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInvalidFile() throws Exception
+    {
+
+        File file = _folder.newFile();
+        try (MappedResultCache cache = new MappedResultCache(file, 16, 256, 0))
+        {
+            cache.setIndexFingerprint(42);
+            cache.put("query", new SearchResultContainer(Collections.singletonList(1L), 1));
+        }
+
+        try (MappedResultCache cache = new MappedResultCache(file, 32, 256, 0))
+        {
+            assertEquals(0, cache.getGeneration());
+            assertEquals(0, cache.getIndexFingerprint());
+            assertNull(cache.get("query"));
+            cache.put("query", new SearchResultContainer(Collections.singletonList(1L), 1));
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+        {
+            raf.writeInt(0);
+        }
+        try (MappedResultCache cache = new MappedResultCache(file, 32, 256, 0))
+        {
+            assertNull(cache.get("query"));
+        }
+    }
+
+    /**
+     * Entries expire after the time to live.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTtl() throws Exception
+    {
+
+        try (MappedResultCache cache = new MappedResultCache(_folder.newFile(), 16, 256, 1))
+        {
+            cache.put("query", new SearchResultContainer(Collections.singletonList(1L), 1));
+            Thread.sleep(20);
+            assertNull(cache.get("query"));
+        }
+    }
+}
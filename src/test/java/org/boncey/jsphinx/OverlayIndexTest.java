@@ -0,0 +1,127 @@
+package org.boncey.jsphinx;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link OverlayIndex}.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class OverlayIndexTest
+{
+
+    /**
+     * The overlay under test.
+     */
+    private OverlayIndex _overlay;
+
+    /**
+     * Set up the overlay.
+     */
+    @Before
+    public void setUp()
+    {
+
+        _overlay = new OverlayIndex(3);
+    }
+
+    /**
+     * Matches contain every word, most occurrences first then most recently changed.
+     */
+    @Test
+    public void testSearch()
+    {
+
+        _overlay.put(1, "Sphinx search engine");
+        _overlay.put(2, "search search SPHINX");
+        _overlay.put(3, "sphinx search");
+
+        assertEquals(Arrays.asList(2L, 3L, 1L), _overlay.search("sphinx search"));
+        assertEquals(Collections.singletonList(1L), _overlay.search("engine"));
+        assertTrue(_overlay.search("sphinx missing").isEmpty());
+        assertTrue(_overlay.search("").isEmpty());
+    }
+
+    /**
+     * Replacing a document drops its old words, and deleting one hides it while still marking searchd's copy stale.
+     */
+    @Test
+    public void testReplaceAndDelete()
+    {
+
+        _overlay.put(1, "old words");
+        _overlay.put(1, "new words");
+        assertTrue(_overlay.search("old").isEmpty());
+        assertEquals(Collections.singletonList(1L), _overlay.search("new"));
+
+        _overlay.delete(1);
+        assertTrue(_overlay.search("new").isEmpty());
+        assertTrue(_overlay.contains(1));
+        assertEquals(1, _overlay.size());
+    }
+
+    /**
+     * Clearing to a mark drops only the changes made before it.
+     */
+    @Test
+    public void testClearTo()
+    {
+
+        _overlay.put(1, "first");
+        _overlay.put(2, "second");
+        long mark = _overlay.mark();
+        _overlay.put(3, "third");
+        _overlay.put(1, "first again");
+
+        _overlay.clearTo(mark);
+        assertFalse(_overlay.contains(2));
+        assertTrue(_overlay.contains(1));
+        assertTrue(_overlay.contains(3));
+        assertEquals(Collections.singletonList(1L), _overlay.search("first"));
+    }
+
+    /**
+     * The oldest document is dropped once the overlay is full.
+     */
+    @Test
+    public void testMaxDocs()
+    {
+
+        for (long docId = 1; docId <= 4; docId++)
+        {
+            _overlay.put(docId, "doc");
+        }
+
+        assertEquals(3, _overlay.size());
+        assertFalse(_overlay.contains(1));
+        assertEquals(Arrays.asList(4L, 3L, 2L), _overlay.search("doc"));
+    }
+
+    /**
+     * Attribute values are held with the document and dropped with it.
+     */
+    @Test
+    public void testAttributes()
+    {
+
+        _overlay.put(1, "doc", Collections.singletonMap("date", 20261019L));
+        _overlay.put(2, "doc");
+
+        assertEquals(20261019L, _overlay.getAttribute(1, "date"));
+        assertNull(_overlay.getAttribute(1, "views"));
+        assertNull(_overlay.getAttribute(2, "date"));
+
+        _overlay.put(1, "doc");
+        assertNull(_overlay.getAttribute(1, "date"));
+    }
+}
@@ -0,0 +1,144 @@
+package org.boncey.jsphinx;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sphx.api.SphinxMatch;
+import org.sphx.api.SphinxResult;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link OverlayMerger}.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class OverlayMergerTest
+{
+
+    /**
+     * The overlay being merged.
+     */
+    private OverlayIndex _overlay;
+
+    /**
+     * The merger under test.
+     */
+    private OverlayMerger _merger;
+
+    /**
+     * Set up the merger.
+     */
+    @Before
+    public void setUp()
+    {
+
+        _overlay = new OverlayIndex(10);
+        _merger = new OverlayMerger(_overlay, 20);
+    }
+
+    /**
+     * Results are only stale once they hold a document the overlay has changed.
+     */
+    @Test
+    public void testHasStale()
+    {
+
+        SearchResultContainer results = new SearchResultContainer(Arrays.asList(1L, 2L), 2);
+        assertFalse(_merger.hasStale(results));
+
+        _overlay.put(3, "sphinx");
+        assertFalse(_merger.hasStale(results));
+        _overlay.delete(2);
+        assertTrue(_merger.hasStale(results));
+    }
+
+    /**
+     * The window covers the page plus the overlay, within the most searchd returns.
+     */
+    @Test
+    public void testGetWindow()
+    {
+
+        _overlay.put(1, "one");
+        _overlay.put(2, "two");
+
+        assertEquals(12, _merger.getWindow(0, 10));
+        assertEquals(20, _merger.getWindow(15, 10));
+    }
+
+    /**
+     * Sorted by relevance, overlay matches lead, stale hits are dropped and the total adjusted to match.
+     */
+    @Test
+    public void testMergeByRelevance()
+    {
+
+        _overlay.put(5, "sphinx");
+        _overlay.put(2, "changed");
+        SphinxResult res = result(new long[] { 1, 2, 3, 4 }, null);
+
+        SearchResultContainer page = _merger.merge(_merger.search("sphinx"), res, 0, 3, null, false);
+        assertEquals(Arrays.asList(5L, 1L, 3L), page.getSearchIds());
+        assertEquals(4, page.getTotalResults());
+
+        // The match pushed off the first page leads the next
+        page = _merger.merge(_merger.search("sphinx"), res, 3, 3, null, false);
+        assertEquals(Collections.singletonList(4L), page.getSearchIds());
+    }
+
+    /**
+     * Sorted by an attribute, overlay matches holding it take their place in the order, exactly for large integers,
+     * and those without it lead.
+     */
+    @Test
+    public void testMergeByAttribute()
+    {
+
+        _overlay.put(5, "sphinx", Collections.singletonMap("date", 25L));
+        _overlay.put(6, "sphinx");
+        SphinxResult res = result(new long[] { 1, 2, 3 }, new long[] { 30, 20, 10 });
+
+        assertEquals(Arrays.asList(6L, 1L, 5L, 2L, 3L),
+                _merger.merge(_merger.search("sphinx"), res, 0, 10, "date", true).getSearchIds());
+        assertEquals(Arrays.asList(6L, 3L, 2L, 5L, 1L),
+                _merger.merge(_merger.search("sphinx"), res, 0, 10, "date", false).getSearchIds());
+
+        _overlay.put(5, "sphinx", Collections.singletonMap("date", Long.MAX_VALUE - 1));
+        res = result(new long[] { 1 }, new long[] { Long.MAX_VALUE });
+        assertEquals(Arrays.asList(6L, 1L, 5L),
+                _merger.merge(_merger.search("sphinx"), res, 0, 10, "date", true).getSearchIds());
+    }
+
+    /**
+     * Build a result from searchd.
+     *
+     * @param docIds
+     * @param dates the date attribute of each document, or null for none.
+     * @return the result.
+     */
+    @SuppressWarnings("unchecked")
+    private static SphinxResult result(long[] docIds, long[] dates)
+    {
+
+        SphinxResult res = new SphinxResult();
+        res.total = docIds.length;
+        res.attrNames = dates != null ? new String[] { "date" } : new String[0];
+        res.matches = new SphinxMatch[docIds.length];
+        for (int i = 0; i < docIds.length; i++)
+        {
+            res.matches[i] = new SphinxMatch(docIds[i], 1);
+            if (dates != null)
+            {
+                res.matches[i].attrValues.add(dates[i]);
+            }
+        }
+
+        return res;
+    }
+}
@@ -0,0 +1,188 @@
+package org.boncey.jsphinx;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.stream.LongStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link XmlPipe2Writer} and {@link TsvPipeWriter}.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class PipeWriterTest
+{
+
+    /**
+     * The schema of the test documents.
+     */
+    private static final PipeSchema SCHEMA = new PipeSchema()
+            .addField("title")
+            .addField("body")
+            .addAttribute("published", PipeSchema.AttributeType.BOOL)
+            .addAttribute("tags", PipeSchema.AttributeType.MULTI)
+            .addAttribute("views", PipeSchema.AttributeType.BIGINT);
+
+    /**
+     * xmlpipe2 output has the schema, each document and the kill-list, with illegal characters dropped.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testXmlPipe2() throws Exception
+    {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long documents = new XmlPipe2Writer().write(source(
+                new PipeDocument(1, "Hello <world>", "tab\there\u0001", true, new long[] {3, 4}, 10000000000L),
+                new PipeDocument(2, "Second", null, 0, new int[] {5}, null)), out);
+        assertEquals(2, documents);
+
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document xml = factory.newDocumentBuilder().parse(new ByteArrayInputStream(out.toByteArray()));
+
+        NodeList attrs = xml.getElementsByTagNameNS("http://sphinxsearch.com/", "attr");
+        assertEquals(3, attrs.getLength());
+        assertEquals("bigint", ((Element)attrs.item(2)).getAttribute("type"));
+        assertEquals("64", ((Element)attrs.item(2)).getAttribute("bits"));
+
+        NodeList docs = xml.getElementsByTagNameNS("http://sphinxsearch.com/", "document");
+        assertEquals(2, docs.getLength());
+        Element first = (Element)docs.item(0);
+        assertEquals("1", first.getAttribute("id"));
+        assertEquals("Hello <world>", text(first, "title"));
+        assertEquals("tab\there", text(first, "body"));
+        assertEquals("1", text(first, "published"));
+        assertEquals("3,4", text(first, "tags"));
+        assertEquals("10000000000", text(first, "views"));
+
+        Element second = (Element)docs.item(1);
+        assertEquals("", text(second, "body"));
+        assertEquals("0", text(second, "published"));
+        assertEquals("5", text(second, "tags"));
+        assertEquals("", text(second, "views"));
+
+        NodeList killList = xml.getElementsByTagNameNS("http://sphinxsearch.com/", "killlist");
+        assertEquals(1, killList.getLength());
+        assertEquals(2, ((Element)killList.item(0)).getElementsByTagName("id").getLength());
+    }
+
+    /**
+     * tsvpipe output has a row per document with tabs and line breaks in values replaced.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTsvPipe() throws Exception
+    {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long documents = new TsvPipeWriter().write(source(
+                new PipeDocument(1, "Hello", "tab\there\r\nnext", false, new long[] {3, 4}, 7L),
+                new PipeDocument(2, "Second", null, 1, null, null)), out);
+        assertEquals(2, documents);
+
+        assertEquals("1\tHello\ttab here  next\t0\t3,4\t7\n2\tSecond\t\t1\t\t\n",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A document with the wrong number of values is rejected.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testWrongValues() throws Exception
+    {
+
+        try
+        {
+            new TsvPipeWriter().write(source(new PipeDocument(1, "Hello")), new ByteArrayOutputStream());
+            fail("Wrote a document with missing values");
+        }
+        catch (IOException e)
+        {
+            assertTrue(e.getMessage().contains("expected 5"));
+        }
+    }
+
+    /**
+     * Get the text of a document's child element.
+     *
+     * @param doc
+     * @param name
+     * @return the text.
+     */
+    private static String text(Element doc, String name)
+    {
+
+        return doc.getElementsByTagName(name).item(0).getTextContent();
+    }
+
+    /**
+     * Create a source of the documents, kill-listing each of them.
+     *
+     * @param documents
+     * @return the source.
+     */
+    private static DocumentSource source(PipeDocument... documents)
+    {
+
+        List<PipeDocument> docs = Arrays.asList(documents);
+        Iterator<PipeDocument> iterator = docs.iterator();
+
+        return new DocumentSource()
+        {
+            @Override
+            public PipeSchema getSchema()
+            {
+
+                return SCHEMA;
+            }
+
+            @Override
+            public boolean hasNext()
+            {
+
+                return iterator.hasNext();
+            }
+
+            @Override
+            public PipeDocument next()
+            {
+
+                return iterator.next();
+            }
+
+            @Override
+            public PrimitiveIterator.OfLong getKillList()
+            {
+
+                return LongStream.of(docs.stream().mapToLong(PipeDocument::getId).toArray()).iterator();
+            }
+
+            @Override
+            public void close()
+            {
+
+            }
+        };
+    }
+}
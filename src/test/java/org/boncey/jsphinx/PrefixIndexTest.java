@@ -0,0 +1,86 @@
+package org.boncey.jsphinx;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link PrefixIndex}.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class PrefixIndexTest
+{
+
+    /**
+     * The index under test, with two precomputed completions per short prefix.
+     */
+    private PrefixIndex _index;
+
+    /**
+     * Set up the index.
+     */
+    @Before
+    public void setUp()
+    {
+
+        Map<String, Long> terms = new HashMap<>();
+        terms.put("search", 50L);
+        terms.put("sea", 80L);
+        terms.put("seal", 5L);
+        terms.put("season", 30L);
+        terms.put("sphinx", 100L);
+        terms.put("apple", 10L);
+        _index = new PrefixIndex(terms, 2);
+    }
+
+    /**
+     * Completions come back most frequent first, whether precomputed or scanned.
+     */
+    @Test
+    public void testComplete()
+    {
+
+        assertEquals(Arrays.asList("sphinx", "sea"), _index.complete("s", 2));
+        assertEquals(Arrays.asList("sea", "search"), _index.complete("se", 2));
+        assertEquals(Arrays.asList("sea", "search", "season", "seal"), _index.complete("se", 10));
+        assertEquals(Collections.singletonList("search"), _index.complete("sear", 5));
+        assertEquals(Collections.singletonList("sea"), _index.complete("se", 1));
+    }
+
+    /**
+     * Prefixes matching nothing, and an empty prefix, are handled.
+     */
+    @Test
+    public void testNoMatch()
+    {
+
+        assertTrue(_index.complete("x", 2).isEmpty());
+        assertTrue(_index.complete("zz", 2).isEmpty());
+        assertTrue(_index.complete("seaz", 2).isEmpty());
+        assertTrue(_index.complete("se", 0).isEmpty());
+        assertEquals(Arrays.asList("sphinx", "sea", "search"), _index.complete("", 3));
+    }
+
+    /**
+     * Document frequencies are looked up exactly.
+     */
+    @Test
+    public void testGetDocs()
+    {
+
+        assertEquals(6, _index.size());
+        assertEquals(80, _index.getDocs("sea"));
+        assertEquals(5, _index.getDocs("seal"));
+        assertEquals(0, _index.getDocs("se"));
+        assertEquals(0, _index.getDocs("zebra"));
+    }
+}
@@ -0,0 +1,211 @@
+package org.boncey.jsphinx;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link ReindexScheduler}.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class ReindexSchedulerTest
+{
+
+    /**
+     * The scheduler under test.
+     */
+    private ReindexScheduler _scheduler;
+
+    /**
+     * The number of runs.
+     */
+    private final AtomicInteger _runs = new AtomicInteger();
+
+    /**
+     * Set up the scheduler.
+     */
+    @Before
+    public void setUp()
+    {
+
+        _scheduler = new ReindexScheduler(100, 300, 2);
+    }
+
+    /**
+     * Stop the scheduler.
+     */
+    @After
+    public void tearDown()
+    {
+
+        _scheduler.shutdown();
+    }
+
+    /**
+     * Requests within the debounce delay share a single run.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testDebounce() throws Exception
+    {
+
+        CompletableFuture<Void> first = _scheduler.request(_runs::incrementAndGet, "delta");
+        CompletableFuture<Void> second = _scheduler.request(_runs::incrementAndGet, "delta");
+        assertSame(first, second);
+
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals(1, _runs.get());
+    }
+
+    /**
+     * A steady stream of requests still runs once the oldest reaches the maximum delay.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMaxDelay() throws Exception
+    {
+
+        CompletableFuture<Void> first = _scheduler.request(_runs::incrementAndGet, "delta");
+        long end = System.currentTimeMillis() + 2000;
+        while (!first.isDone() && System.currentTimeMillis() < end)
+        {
+            Thread.sleep(20);
+            _scheduler.request(_runs::incrementAndGet, "delta");
+        }
+
+        assertTrue(first.isDone());
+        assertEquals(1, _runs.get());
+    }
+
+    /**
+     * Requests made during a run are merged into one follow-up run.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFollowUp() throws Exception
+    {
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> first = _scheduler.request(() -> {
+            _runs.incrementAndGet();
+            started.countDown();
+            await(release);
+        }, "delta");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(_scheduler.isRunning("delta"));
+
+        CompletableFuture<Void> second = _scheduler.request(_runs::incrementAndGet, "delta");
+        CompletableFuture<Void> third = _scheduler.request(_runs::incrementAndGet, "delta");
+        assertNotSame(first, second);
+        assertSame(second, third);
+
+        // The follow-up waits for the run in progress
+        Thread.sleep(300);
+        assertEquals(1, _runs.get());
+        assertFalse(second.isDone());
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(2, _runs.get());
+        assertFalse(_scheduler.isRunning("delta"));
+    }
+
+    /**
+     * Requests for the same indexes in any order share a run.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testIndexOrder() throws Exception
+    {
+
+        CompletableFuture<Void> first = _scheduler.request(_runs::incrementAndGet, "main", "delta");
+        CompletableFuture<Void> second = _scheduler.request(_runs::incrementAndGet, "delta", "main");
+        assertSame(first, second);
+
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals(1, _runs.get());
+    }
+
+    /**
+     * A failed run fails the requests it covered.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFailure() throws Exception
+    {
+
+        CompletableFuture<Void> request = _scheduler.request(() -> {
+            throw new IOException("indexer failed");
+        }, "delta");
+
+        try
+        {
+            request.get(5, TimeUnit.SECONDS);
+            fail("Failed run completed normally");
+        }
+        catch (ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    /**
+     * Shutting down fails the waiting requests.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testShutdown() throws Exception
+    {
+
+        ReindexScheduler scheduler = new ReindexScheduler(10000, 10000, 1);
+        CompletableFuture<Void> request = scheduler.request(_runs::incrementAndGet, "delta");
+        scheduler.shutdown();
+
+        assertTrue(request.isCompletedExceptionally());
+        assertEquals(0, _runs.get());
+    }
+
+    /**
+     * Wait for a latch in a job.
+     *
+     * @param latch
+     * @throws IOException if interrupted.
+     */
+    private static void await(CountDownLatch latch) throws IOException
+    {
+
+        try
+        {
+            latch.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.boncey.jsphinx;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sphx.api.SphinxClient;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link SoftDeleteMask}, buffering its updates in an updater whose client records them.
+ *
+ * @author Darren Greaves
+ * Copyright (c) 2026 Darren Greaves.
+ */
+public class SoftDeleteMaskTest
+{
+
+    /**
+     * The value of the deleted attribute sent for each document.
+     */
+    private final Map<Long, Long> _sent = new ConcurrentHashMap<>();
+
+    /**
+     * The updater the mask buffers its updates in.
+     */
+    private AttributeUpdater _updater;
+
+    /**
+     * The mask under test.
+     */
+    private SoftDeleteMask _mask;
+
+    /**
+     * Set up the mask over a main and delta index.
+     */
+    @Before
+    public void setUp()
+    {
+
+        _updater = new AttributeUpdater(new RecordingPool(), 100, 100, TimeUnit.HOURS.toMillis(1), 0);
+        _mask = new SoftDeleteMask("deleted", () -> "main delta", null);
+    }
+
+    /**
+     * Shut the updater down.
+     */
+    @After
+    public void tearDown()
+    {
+
+        _updater.shutdown();
+    }
+
+    /**
+     * Deleted documents are masked straight away, reducing the total, and restored ones are unmasked.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMask() throws Exception
+    {
+
+        SearchResultContainer results = new SearchResultContainer(Arrays.asList(1L, 2L, 3L), 10);
+        assertTrue(_mask.isEmpty());
+        assertSame(results, _mask.mask(results));
+
+        _mask.setDeleted(new long[] { 2, 4 }, true, _updater);
+        assertFalse(_mask.isEmpty());
+        assertEquals(2, _updater.size());
+        SearchResultContainer masked = _mask.mask(results);
+        assertEquals(Arrays.asList(1L, 3L), masked.getSearchIds());
+        assertEquals(9, masked.getTotalResults());
+
+        _mask.setDeleted(new long[] { 2 }, false, _updater);
+        assertEquals(Collections.singletonList(3L), _mask.mask(new SearchResultContainer(Arrays.asList(3L, 4L), 2)).getSearchIds());
+        assertSame(results, _mask.mask(results));
+
+        _updater.flush();
+        assertEquals(Long.valueOf(0), _sent.get(2L));
+        assertEquals(Long.valueOf(1), _sent.get(4L));
+    }
+
+    /**
+     * A document stays masked until every soft delete index has been re-indexed since its deletion was flushed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testReindexed() throws Exception
+    {
+
+        _mask.setDeleted(new long[] { 1 }, true, _updater);
+        long flushed = _mask.getSequence();
+        _mask.setDeleted(new long[] { 2 }, true, _updater);
+
+        _mask.reindexed(Collections.singletonList("delta"), flushed);
+        assertTrue(_mask.contains(1));
+        _mask.reindexed(Collections.singletonList("other"), flushed);
+        assertTrue(_mask.contains(1));
+        _mask.reindexed(Collections.singletonList("main"), flushed);
+        assertFalse(_mask.contains(1));
+
+        // Deleted after the flush, so still masked
+        assertTrue(_mask.contains(2));
+        _mask.reindexed(Arrays.asList("main", "delta"), _mask.getSequence());
+        assertTrue(_mask.isEmpty());
+    }
+
+    /**
+     * A pool of clients that record the deleted attribute values rather than sending them.
+     */
+    private class RecordingPool extends SphinxClientPool
+    {
+
+        /**
+         * Default constructor.
+         */
+        RecordingPool()
+        {
+
+            super("localhost", 9312, 1);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public SphinxClient borrow()
+        {
+
+            return new SphinxClient()
+            {
+                @Override
+                public int UpdateAttributes(String index, String[] attrs, long[][] values)
+                {
+
+                    for (long[] row : values)
+                    {
+                        _sent.put(row[0], row[1]);
+                    }
+                    return values.length;
+                }
+
+                @Override
+                public int FlushAttributes()
+                {
+
+                    return 0;
+                }
+            };
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void release(SphinxClient sphinx)
+        {
+
+        }
+    }
+}